@@ -20,6 +20,7 @@ import java.io.PrintStream;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.Supplier;
 import org.apache.log4j.Level;
 
 /**
@@ -72,6 +73,12 @@ public abstract class LogManager {
     /** Prefix for the property subset to use with the LogManager */
     public static final String PROPERTIES_PREFIX = "pegasus.log.manager";
 
+    /**
+     * The key in the property subset for the LogManager, that indicates whether messages are to be
+     * written out asynchronously by a separate thread.
+     */
+    public static final String ASYNC_PROPERTY_KEY = "async";
+
     /** Suffix for an event completion message. */
     public static final String MESSAGE_DONE_PREFIX = " -DONE";
 
@@ -298,6 +305,17 @@ public abstract class LogManager {
      */
     public abstract int getLevel();
 
+    /**
+     * Returns whether a message at a particular level would be logged. Callers can use this to
+     * guard the construction of expensive messages.
+     *
+     * @param level the level of the message
+     * @return true if messages at the level are logged
+     */
+    public boolean isLoggable(int level) {
+        return level <= this.getLevel();
+    }
+
     /**
      * Sets both the output writer and the error writer to the same underlying writer identified by
      * the filename passed.
@@ -323,6 +341,12 @@ public abstract class LogManager {
      */
     public abstract PrintStream getWriter(STREAM_TYPE type);
 
+    /**
+     * Releases the resources held by the logger, after the messages logged so far are written out.
+     * The logger can still be used afterwards. The default implementation does nothing.
+     */
+    public void close() {}
+
     /**
      * Log the message represented by the internal log buffer. The log buffer is populated via the
      * add methods.
@@ -369,13 +393,79 @@ public abstract class LogManager {
      * to the level set for the Logger. For INFO level message, the boolean indicating that a
      * completion message is to follow is set to true always.
      *
+     * <p>The message is formatted while holding the lock on the formatter, so that messages logged
+     * by concurrent threads are not interleaved in the formatter buffer.
+     *
      * @param message the message to be logged.
      * @param level the level on which the message has to be logged.
      * @see #setLevel(int)
      */
     public void log(String message, int level) {
-        mLogFormatter.add(message);
-        this.logAlreadyFormattedMessage(mLogFormatter.createLogMessageAndReset(), level);
+        if (!this.isLoggable(level)) {
+            return;
+        }
+        String formatted;
+        synchronized (mLogFormatter) {
+            mLogFormatter.add(message);
+            formatted = mLogFormatter.createLogMessageAndReset();
+        }
+        this.logAlreadyFormattedMessage(formatted, level);
+    }
+
+    /**
+     * Logs the message returned by the supplier, if messages at the level are logged. The supplier
+     * is not invoked otherwise, so that disabled messages cost nothing to construct.
+     *
+     * @param message the supplier of the message to be logged.
+     * @param level the level on which the message has to be logged.
+     * @see #log(String,int)
+     */
+    public void log(Supplier<String> message, int level) {
+        if (this.isLoggable(level)) {
+            this.log(message.get(), level);
+        }
+    }
+
+    /**
+     * Logs a message constructed by substituting the arguments for the <code>{}</code> placeholders
+     * in the pattern, in order. The message is only constructed if messages at the level are
+     * logged.
+     *
+     * @param level the level on which the message has to be logged.
+     * @param pattern the message pattern
+     * @param arguments the arguments to substitute
+     * @see #log(String,int)
+     */
+    public void log(int level, String pattern, Object... arguments) {
+        if (this.isLoggable(level)) {
+            this.log(LogManager.format(pattern, arguments), level);
+        }
+    }
+
+    /**
+     * Substitutes the arguments for the <code>{}</code> placeholders in the pattern, in order.
+     * Placeholders without a corresponding argument are left as is.
+     *
+     * @param pattern the message pattern
+     * @param arguments the arguments to substitute
+     * @return the message
+     */
+    public static String format(String pattern, Object... arguments) {
+        if (pattern == null || arguments == null || arguments.length == 0) {
+            return pattern;
+        }
+        StringBuilder sb = new StringBuilder(pattern.length() + 16 * arguments.length);
+        int start = 0;
+        for (Object argument : arguments) {
+            int index = pattern.indexOf("{}", start);
+            if (index < 0) {
+                break;
+            }
+            sb.append(pattern, start, index).append(argument);
+            start = index + 2;
+        }
+        sb.append(pattern, start, pattern.length());
+        return sb.toString();
     }
 
     /**
@@ -399,7 +489,9 @@ public abstract class LogManager {
      */
     public void logEventStart(String name, String entityName, String entityID, int level) {
         mLogFormatter.addEvent(name, entityName, entityID);
-        this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        if (this.isLoggable(level)) {
+            this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        }
     }
 
     /**
@@ -421,7 +513,9 @@ public abstract class LogManager {
      */
     public void logEventStart(String name, Map<String, String> map, int level) {
         mLogFormatter.addEvent(name, map);
-        this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        if (this.isLoggable(level)) {
+            this.logAlreadyFormattedMessage(mLogFormatter.getStartEventMessage(), level);
+        }
     }
 
     /** Logs the completion message on the basis of the debug level. */
@@ -469,6 +563,9 @@ public abstract class LogManager {
             Collection<String> childIDs,
             int level) {
 
+        if (!this.isLoggable(level)) {
+            return;
+        }
         this.logAlreadyFormattedMessage(
                 mLogFormatter.createEntityHierarchyMessage(
                         parentType, parentID, childIDType, childIDs),
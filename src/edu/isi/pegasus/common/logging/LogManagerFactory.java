@@ -80,6 +80,25 @@ public class LogManagerFactory {
     public static LogManager loadInstance(PegasusProperties properties)
             throws LogManagerFactoryException {
 
+        /* store reference for singleton return */
+        mSingletonInstance = loadNonSingletonInstance(properties);
+
+        return mSingletonInstance;
+    }
+
+    /**
+     * Loads the appropriate LogManager class as specified by properties. The singleton instance is
+     * not updated with the instance loaded.
+     *
+     * @param properties is an instance of properties to use.
+     * @return handle to the Log Manager.
+     * @throws LogManagerFactoryException that nests any error that might occur during the
+     *     instantiation
+     * @see #DEFAULT_PACKAGE_NAME
+     */
+    public static LogManager loadNonSingletonInstance(PegasusProperties properties)
+            throws LogManagerFactoryException {
+
         if (properties == null) {
             throw new LogManagerFactoryException("Invalid NULL properties passed");
         }
@@ -91,7 +110,7 @@ public class LogManagerFactory {
         Properties initialize = properties.matchingSubset(LogManager.PROPERTIES_PREFIX, false);
 
         // determine the class that implements the site catalog
-        return loadInstance(logImplementor, formatImplementor, initialize);
+        return loadNonSingletonInstance(logImplementor, formatImplementor, initialize);
     }
 
     /**
@@ -109,6 +128,28 @@ public class LogManagerFactory {
             String implementor, String formatImplementor, Properties properties)
             throws LogManagerFactoryException {
 
+        /* store reference for singleton return */
+        mSingletonInstance = loadNonSingletonInstance(implementor, formatImplementor, properties);
+
+        return mSingletonInstance;
+    }
+
+    /**
+     * Loads the Log Formatter specified. The singleton instance is not updated with the instance
+     * loaded.
+     *
+     * @param implementor the name of the class implementing LogManager
+     * @param formatImplementor the name of the class implementing the formatting technique
+     * @param properties properties
+     * @return handle to the LogManager
+     * @throws LogManagerFactoryException that nests any error that might occur during the
+     *     instantiation
+     * @see #DEFAULT_PACKAGE_NAME
+     */
+    private static LogManager loadNonSingletonInstance(
+            String implementor, String formatImplementor, Properties properties)
+            throws LogManagerFactoryException {
+
         // implementor = implementor == null ? "Default" : implementor;
         // formatImplementor = formatImplementor == null ? "Simple" : formatImplementor;
 
@@ -141,9 +182,6 @@ public class LogManagerFactory {
             throw new LogManagerFactoryException("Unable to instantiate Logger ", implementor, e);
         }
 
-        /* store reference for singleton return */
-        mSingletonInstance = result;
-
         return result;
     }
 }
@@ -60,6 +60,10 @@ public class LoggingKeys {
     public static final String EVENT_PEGASUS_GENERATE_WORKDIR =
             "event.pegasus.generate.workdir-nodes";
     public static final String EVENT_PEGASUS_CODE_GENERATION = "event.pegasus.code.generation";
+    public static final String EVENT_PEGASUS_CODE_GENERATION_SUBMIT_FILES =
+            "event.pegasus.code.generation.submit-files";
+    public static final String EVENT_PEGASUS_CODE_GENERATION_WORKFLOW_FILES =
+            "event.pegasus.code.generation.workflow-files";
     public static final String EVENT_PEGASUS_LOAD_TRANSIENT_CACHE = "event.pegasus.load.cache";
     public static final String EVENT_PEGASUS_LOAD_DIRECTORY_CACHE = "event.pegasus.load.directory";
     public static final String EVENT_PEGASUS_PARSE_SITE_CATALOG =
@@ -33,7 +33,7 @@ public class NetloggerEvent implements Event {
     /** The current event object. */
     private LogEvent mLogEvent;
 
-    /** The current log event message. */
+    /** The current log event message, created lazily on the first addition. */
     private EventLogMessage mMessage;
 
     /** The default constructor. */
@@ -110,7 +110,7 @@ public class NetloggerEvent implements Event {
 
     /** Reset the internal log message buffer associated with the event */
     public void reset() {
-        mMessage = mLogEvent.createLogMsg();
+        mMessage = null;
     }
 
     /**
@@ -121,7 +121,7 @@ public class NetloggerEvent implements Event {
      * @return Self-reference, so calls can be chained
      */
     public Event add(String key, String value) {
-        mMessage = mMessage.addWQ(key, value);
+        mMessage = this.message().addWQ(key, value);
         return this;
     }
 
@@ -131,7 +131,7 @@ public class NetloggerEvent implements Event {
      * @return the log message
      */
     public String createLogMessage() {
-        return mMessage.toString();
+        return this.message().toString();
     }
 
     /**
@@ -141,11 +141,23 @@ public class NetloggerEvent implements Event {
      * @return the log message
      */
     public String createLogMessageAndReset() {
-        String result = mMessage.toString();
+        String result = this.message().toString();
         this.reset();
         return result;
     }
 
+    /**
+     * Returns the current log event message, creating it if required.
+     *
+     * @return the log event message
+     */
+    private EventLogMessage message() {
+        if (mMessage == null) {
+            mMessage = mLogEvent.createLogMsg();
+        }
+        return mMessage;
+    }
+
     /**
      * Creates a log message that connects the parent entities with the children. For e.g. can we
      * use to create the log messages connecting the jobs with the workflow they are part of.
@@ -21,7 +21,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Level;
 
 /**
@@ -113,6 +120,9 @@ public class Default extends LogManager {
     /** tracks whether to log timestamp or not */
     private boolean mPrefixTimestamp;
 
+    /** The writer that writes out the messages asynchronously, null if written synchronously. */
+    private AsyncWriter mAsyncWriter;
+
     /** The constructor. */
     public Default() {
         mDebugLevel = 0;
@@ -133,6 +143,11 @@ public class Default extends LogManager {
      */
     public void initialize(LogFormatter formatter, Properties properties) {
         mLogFormatter = formatter;
+        this.close();
+        if (edu.isi.pegasus.common.util.Boolean.parse(
+                properties.getProperty(LogManager.ASYNC_PROPERTY_KEY), false)) {
+            mAsyncWriter = new AsyncWriter();
+        }
     }
 
     /**
@@ -207,6 +222,16 @@ public class Default extends LogManager {
         return mDebugLevel;
     }
 
+    /**
+     * Returns whether a message at a particular level would be logged.
+     *
+     * @param level the level of the message
+     * @return true if messages at the level are logged
+     */
+    public boolean isLoggable(int level) {
+        return (level >= 0 && level < 31) && ((1 << level) & mMask) != 0x0;
+    }
+
     /**
      * Sets both the output writer and the error writer to the same underlying writer identified by
      * the filename passed.
@@ -357,6 +382,9 @@ public class Default extends LogManager {
      * @see #log(String,int)
      */
     public void log(String message, Exception e, int level) {
+        if (!this.isLoggable(level)) {
+            return;
+        }
         StringBuffer msg = new StringBuffer();
         msg.append(message).append(" ").append(e.getClass()).append(": ").append(e.getMessage());
         log(msg.toString(), level);
@@ -391,11 +419,15 @@ public class Default extends LogManager {
             // we need to log the message
             // get hold of the writer to be used to logging the message.
             PrintStream writer = getPrintStream(level);
+            String prefix = getPrefix(type);
+            message = prefix + " " + message;
+            if (mAsyncWriter != null) {
+                write(writer, mPrefixTimestamp, message, level);
+                return;
+            }
             if (mPrefixTimestamp) {
                 writer.print(Default.mFormatter.now());
             }
-            String prefix = getPrefix(type);
-            message = prefix + " " + message;
             /*
                           *uncomment if we want commpetion message for INFO
                           *on same line
@@ -442,11 +474,9 @@ public class Default extends LogManager {
      * @param level the debug level of the start message for whose completion you want.
      */
     public void logEventCompletion(int level) {
-        String message = mLogFormatter.getEndEventMessage();
-        mLogFormatter.popEvent();
-
         int type = (int) Math.pow(2, level);
         if ((type & mMask) != 0x0) {
+            String message = mLogFormatter.getEndEventMessage();
             PrintStream writer = getPrintStream(level);
             /*uncomment if we want commpetion message for INFO
               on same line
@@ -460,10 +490,53 @@ public class Default extends LogManager {
             */
             String prefix = getPrefix(type);
             message = prefix + " " + message;
-            writer.print(Default.mFormatter.now());
-            writer.println(message);
+            if (mAsyncWriter != null) {
+                write(writer, true, message, level);
+            } else {
+                writer.print(Default.mFormatter.now());
+                writer.println(message);
+            }
             // writer.println(message + " (completed)");
         }
+        mLogFormatter.popEvent();
+    }
+
+    /**
+     * Hands a message over to the asynchronous writer. Error and fatal messages are not returned
+     * from until they, and all messages before them, are written out.
+     *
+     * @param writer the stream to write the message to
+     * @param timestamp whether to prefix the message with the time it was logged at
+     * @param message the message
+     * @param level the level of the message
+     */
+    private void write(PrintStream writer, boolean timestamp, String message, int level) {
+        mAsyncWriter.write(writer, timestamp ? System.currentTimeMillis() : -1, message);
+        if (level <= ERROR_MESSAGE_LEVEL) {
+            mAsyncWriter.flush();
+        }
+    }
+
+    /**
+     * Waits for all the messages logged so far to be written out. Returns immediately if the
+     * messages are written synchronously.
+     */
+    public void flush() {
+        if (mAsyncWriter != null) {
+            mAsyncWriter.flush();
+        }
+    }
+
+    /**
+     * Waits for all the messages logged so far to be written out, and stops the thread that writes
+     * them out. Messages logged afterwards are written synchronously.
+     */
+    @Override
+    public void close() {
+        if (mAsyncWriter != null) {
+            mAsyncWriter.close();
+            mAsyncWriter = null;
+        }
     }
 
     /**
@@ -573,4 +646,164 @@ public class Default extends LogManager {
                 ? mErrStream
                 : mOutStream;
     }
+
+    /**
+     * Writes out messages on a separate daemon thread, in the order they were logged. The
+     * timestamps are formatted on the writer thread, and the logging thread blocks only when the
+     * queue of pending messages is full. The pending messages are written out when the JVM exits,
+     * or when the writer is closed.
+     */
+    private static class AsyncWriter implements Runnable {
+
+        /** The maximum number of messages pending to be written. */
+        private static final int QUEUE_SIZE = 8192;
+
+        /** The maximum number of messages taken off the queue at a time. */
+        private static final int BATCH_SIZE = 512;
+
+        /** The time in milliseconds the writer waits for messages before flushing the streams. */
+        private static final long IDLE_FLUSH_INTERVAL = 100;
+
+        /** The messages pending to be written. */
+        private final BlockingQueue<Record> mQueue;
+
+        /** The formatter for the timestamps, used only by the writer thread. */
+        private final Currently mTimestamps;
+
+        /** The thread writing out the messages. */
+        private final Thread mThread;
+
+        /** The shutdown hook writing out the pending messages when the JVM exits. */
+        private final Thread mFlusher;
+
+        public AsyncWriter() {
+            mQueue = new ArrayBlockingQueue<Record>(QUEUE_SIZE);
+            mTimestamps = new Currently("yyyy.MM.dd HH:mm:ss.SSS zzz: ");
+            mThread = new Thread(this, "pegasus-log-writer");
+            mThread.setDaemon(true);
+            mThread.start();
+            mFlusher =
+                    new Thread("pegasus-log-flusher") {
+                        public void run() {
+                            AsyncWriter.this.flush();
+                        }
+                    };
+            Runtime.getRuntime().addShutdownHook(mFlusher);
+        }
+
+        /**
+         * Queues a message to be written.
+         *
+         * @param stream the stream to write the message to
+         * @param time the time the message was logged at, negative if not to be prefixed
+         * @param message the message
+         */
+        public void write(PrintStream stream, long time, String message) {
+            this.put(new Record(stream, time, message, null));
+        }
+
+        /**
+         * Waits for all the messages queued so far to be written out. Returns early if the writer
+         * thread has been stopped.
+         */
+        public void flush() {
+            CountDownLatch latch = new CountDownLatch(1);
+            this.put(new Record(null, -1, null, latch));
+            try {
+                while (!latch.await(IDLE_FLUSH_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (!mThread.isAlive()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits for all the messages queued so far to be written out, then stops the writer thread
+         * and removes the shutdown hook.
+         */
+        public void close() {
+            this.flush();
+            try {
+                Runtime.getRuntime().removeShutdownHook(mFlusher);
+            } catch (IllegalStateException e) {
+                // the JVM is already exiting, and runs the hook
+            }
+            mThread.interrupt();
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void run() {
+            PrintStream last = null;
+            List<Record> batch = new ArrayList<Record>(BATCH_SIZE);
+            while (true) {
+                try {
+                    // the streams are flushed only once no messages arrive for a while
+                    Record r = mQueue.poll(IDLE_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (r == null) {
+                        if (last != null) {
+                            last.flush();
+                        }
+                        r = mQueue.take();
+                    }
+                    batch.add(r);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mQueue.drainTo(batch, BATCH_SIZE - 1);
+                for (Record r : batch) {
+                    if (r.mStream != null) {
+                        if (last != null && last != r.mStream) {
+                            last.flush();
+                        }
+                        if (r.mTime >= 0) {
+                            r.mStream.print(mTimestamps.now(new Date(r.mTime)));
+                        }
+                        r.mStream.println(r.mMessage);
+                        last = r.mStream;
+                    }
+                    if (r.mLatch != null) {
+                        if (last != null) {
+                            last.flush();
+                        }
+                        r.mLatch.countDown();
+                    }
+                }
+                batch.clear();
+            }
+        }
+
+        private void put(Record r) {
+            try {
+                mQueue.put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** A message to be written, or a marker to be signalled once the messages before it are. */
+    private static class Record {
+
+        private final PrintStream mStream;
+
+        private final long mTime;
+
+        private final String mMessage;
+
+        private final CountDownLatch mLatch;
+
+        public Record(PrintStream stream, long time, String message, CountDownLatch latch) {
+            mStream = stream;
+            mTime = time;
+            mMessage = message;
+            mLatch = latch;
+        }
+    }
 }
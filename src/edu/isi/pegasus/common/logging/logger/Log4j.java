@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Properties;
 import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -38,6 +39,12 @@ public class Log4j extends LogManager {
     /** The property that specifies the path to the log4j properties file. */
     private static final String LOG4J_CONF_PROPERTY = "log4j.conf";
 
+    /** The name of the asynchronous appender wrapping the appenders of the root logger. */
+    private static final String ASYNC_APPENDER_NAME = "pegasus-async";
+
+    /** The number of messages buffered by the asynchronous appender. */
+    private static final int ASYNC_BUFFER_SIZE = 8192;
+
     // level  constants that loosely match Log4J and are used
     // to generate the appropriate mask values.
 
@@ -92,6 +99,31 @@ public class Log4j extends LogManager {
         if (conf != null) {
             PropertyConfigurator.configure(conf);
         }
+
+        if (edu.isi.pegasus.common.util.Boolean.parse(
+                properties.getProperty(LogManager.ASYNC_PROPERTY_KEY), false)) {
+            Log4j.makeAsync();
+        }
+    }
+
+    /**
+     * Moves the appenders of the root logger behind an asynchronous appender, so that the messages
+     * are written out by a separate thread. The asynchronous appender blocks the logging thread
+     * only when its buffer is full, so that no messages are discarded.
+     */
+    private static synchronized void makeAsync() {
+        if (mRoot == null || mRoot.getAppender(Log4j.ASYNC_APPENDER_NAME) != null) {
+            return;
+        }
+        AsyncAppender async = new AsyncAppender();
+        async.setName(Log4j.ASYNC_APPENDER_NAME);
+        async.setBlocking(true);
+        async.setBufferSize(Log4j.ASYNC_BUFFER_SIZE);
+        for (Enumeration e = mRoot.getAllAppenders(); e.hasMoreElements(); ) {
+            async.addAppender((Appender) e.nextElement());
+        }
+        mRoot.removeAllAppenders();
+        mRoot.addAppender(async);
     }
 
     /**
@@ -197,6 +229,44 @@ public class Log4j extends LogManager {
         return mDebugLevel;
     }
 
+    /**
+     * Returns whether a message at a particular level would be logged by the underlying log4j
+     * logger.
+     *
+     * @param level the level of the message
+     * @return true if messages at the level are logged
+     */
+    public boolean isLoggable(int level) {
+        Level l;
+        switch (level) {
+            case LogManager.FATAL_MESSAGE_LEVEL:
+                l = Level.FATAL;
+                break;
+
+            case LogManager.ERROR_MESSAGE_LEVEL:
+                l = Level.ERROR;
+                break;
+
+            case LogManager.WARNING_MESSAGE_LEVEL:
+                l = Level.WARN;
+                break;
+
+            case LogManager.CONFIG_MESSAGE_LEVEL:
+            case LogManager.INFO_MESSAGE_LEVEL:
+                l = Level.INFO;
+                break;
+
+            case LogManager.DEBUG_MESSAGE_LEVEL:
+                l = Level.DEBUG;
+                break;
+
+            default:
+                // other levels are not logged by this implementation
+                return false;
+        }
+        return mLogger.isEnabledFor(l);
+    }
+
     /**
      * Sets both the output writer and the error writer to the same underlying writer.
      *
@@ -315,8 +385,9 @@ public class Log4j extends LogManager {
      * @param level the debug level of the start message for whose completion you want.
      */
     public void logEventCompletion(int level) {
-        String message = mLogFormatter.getEndEventMessage();
-        logAlreadyFormattedMessage(message, level);
+        if (this.isLoggable(level)) {
+            logAlreadyFormattedMessage(mLogFormatter.getEndEventMessage(), level);
+        }
         mLogFormatter.popEvent();
     }
 }
@@ -7,15 +7,20 @@ package edu.isi.pegasus.common.util;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A common PegasusURL class to use by the planner and other components.
  *
  * <p>The class parses the PegasusURL into 3 main components - protocol - hostname - path
  *
- * <p>The class is consistent with the PegasusURL parsing scheme used in pegasus-transfer.
+ * <p>The class is consistent with the PegasusURL parsing scheme used in pegasus-transfer, that
+ * matches URL's against the regular expression <code>([\w]+)://([\w\.\-:@#]*)(/?[\S]*)</code>. The
+ * URL is scanned by hand instead, since URL's are parsed for every file of every job. The protocol
+ * and host are interned, and the URL prefixes parsed are cached, so that the URL's referring to the
+ * same file server share the protocol, host and prefix strings. The path is only extracted when
+ * asked for.
  *
  * @author Karan Vahi
  * @author Mats Rynge
@@ -49,32 +54,45 @@ public class PegasusURL {
     /** Docker hub protocol scheme */
     public static String DOCKER_PROTOCOL_SCHEME = "docker";
 
+    /** The separator between the protocol and the host. */
+    private static final String PROTOCOL_SEPARATOR = "://";
+
+    /** The size of the cache of URL prefixes. Has to be a power of 2. */
+    private static final int PREFIX_CACHE_SIZE = 256;
+
+    /** The maximum number of protocol and host strings interned. */
+    private static final int MAX_INTERNED = 4096;
+
     /**
-     * Stores the regular expressions necessary to parse a PegasusURL into 3 components protocol,
-     * host and path
+     * The cache of the URL prefixes parsed, indexed by the hash of the prefix. Since the prefixes
+     * are immutable, a racy update at worst loses an entry.
      */
-    private static final String mRegexExpression = "([\\w]+)://([\\w\\.\\-:@#]*)(/?[\\S]*)";
+    private static final Prefix[] mPrefixCache = new Prefix[PREFIX_CACHE_SIZE];
 
-    /** Stores compiled patterns at first use, quasi-Singleton. */
-    private static Pattern mPattern = null;
+    /** The interned protocol and host strings. */
+    private static final Map<String, String> mInterned = new ConcurrentHashMap<String, String>();
 
-    /** The protocol referred to by the PegasusURL */
-    private String mProtocol;
+    /** The prefix for URL's without a protocol. */
+    private static final Prefix mDefaultPrefix =
+            new Prefix(DEFAULT_PROTOCOL + PROTOCOL_SEPARATOR, DEFAULT_PROTOCOL, "");
 
-    /** The hostname referred to by the PegasusURL. Can include the port also */
-    private String mHost;
+    /** The protocol, hostname and prefix referred to by the PegasusURL */
+    private Prefix mPrefix;
 
-    /** The path referred to by the PegasusURL */
+    /** The path referred to by the PegasusURL, extracted on first use */
     private String mPath;
 
+    /** The offset of the path in the URL. */
+    private int mPathStart;
+
     /** The URL. */
     private String mURL;
 
+    /** The URL as passed, that is without the default protocol added. */
+    private String mInput;
+
     /** The default constructor. */
     public PegasusURL() {
-        if (mPattern == null) {
-            mPattern = Pattern.compile(mRegexExpression);
-        }
         reset();
     }
 
@@ -97,21 +115,48 @@ public class PegasusURL {
     public void parse(String url) {
         // reset internal variables
         reset();
+        mInput = url;
 
         // special case for file url's
-        if (url.indexOf(":") == -1) {
-            url = PegasusURL.DEFAULT_PROTOCOL + "://" + url;
+        if (url.indexOf(':') == -1) {
+            // file://url, with the host till the first character not
+            // allowed in a host name
+            int hostEnd = scanHost(url, 0);
+            if (!noWhitespace(url, hostEnd)) {
+                throw new RuntimeException(
+                        "Unable to parse URL " + DEFAULT_PROTOCOL + PROTOCOL_SEPARATOR + url);
+            }
+            mPrefix =
+                    (hostEnd == 0)
+                            ? mDefaultPrefix
+                            : lookupPrefix(
+                                    DEFAULT_PROTOCOL + PROTOCOL_SEPARATOR + url,
+                                    DEFAULT_PROTOCOL.length(),
+                                    DEFAULT_PROTOCOL.length()
+                                            + PROTOCOL_SEPARATOR.length()
+                                            + hostEnd);
+            mPathStart = hostEnd;
+            mURL = null;
+            return;
         }
         mURL = url;
 
-        Matcher m = mPattern.matcher(url);
-        if (m.matches()) {
-            mProtocol = m.group(1);
-            mHost = m.group(2);
-            mPath = m.group(3);
-        } else {
+        // the protocol is made of word characters, followed by ://
+        int protocolEnd = 0;
+        while (protocolEnd < url.length() && isWordCharacter(url.charAt(protocolEnd))) {
+            protocolEnd++;
+        }
+        if (protocolEnd == 0 || !url.startsWith(PROTOCOL_SEPARATOR, protocolEnd)) {
             throw new RuntimeException("Unable to parse URL " + url);
         }
+
+        // the host is as long as possible, and the rest is the path
+        int hostEnd = scanHost(url, protocolEnd + PROTOCOL_SEPARATOR.length());
+        if (!noWhitespace(url, hostEnd)) {
+            throw new RuntimeException("Unable to parse URL " + url);
+        }
+        mPrefix = lookupPrefix(url, protocolEnd, hostEnd);
+        mPathStart = hostEnd;
     }
 
     /**
@@ -120,7 +165,7 @@ public class PegasusURL {
      * @return the protocol else empty
      */
     public String getProtocol() {
-        return mProtocol;
+        return mPrefix.mProtocol;
     }
 
     /**
@@ -129,7 +174,7 @@ public class PegasusURL {
      * @return the host else empty
      */
     public String getHost() {
-        return mHost;
+        return mPrefix.mHost;
     }
 
     /**
@@ -138,6 +183,9 @@ public class PegasusURL {
      * @return the host else empty
      */
     public String getPath() {
+        if (mPath == null) {
+            mPath = mInput.substring(mPathStart);
+        }
         return mPath;
     }
 
@@ -156,9 +204,7 @@ public class PegasusURL {
      * @return the host else empty
      */
     public String getURLPrefix() {
-        StringBuffer prefix = new StringBuffer();
-        prefix.append(this.getProtocol()).append("://").append(this.getHost());
-        return prefix.toString();
+        return mPrefix.mPrefix;
     }
 
     /**
@@ -167,15 +213,119 @@ public class PegasusURL {
      * @return String
      */
     public String getURL() {
+        if (mURL == null) {
+            mURL = DEFAULT_PROTOCOL + PROTOCOL_SEPARATOR + mInput;
+        }
         return mURL;
     }
 
     /** Resets the internal member variables */
     public void reset() {
-        mProtocol = "";
-        mHost = "";
-        mPath = "";
+        mPrefix = Prefix.EMPTY;
+        mPath = null;
+        mPathStart = 0;
         mURL = "";
+        mInput = "";
+    }
+
+    /**
+     * Returns the prefix for the protocol and host of a URL, from the cache if the prefix has been
+     * parsed before.
+     *
+     * @param url the url, with the protocol
+     * @param protocolEnd the end of the protocol
+     * @param hostEnd the end of the host
+     * @return the prefix
+     */
+    private static Prefix lookupPrefix(String url, int protocolEnd, int hostEnd) {
+        int hash = 0;
+        for (int i = 0; i < hostEnd; i++) {
+            hash = 31 * hash + url.charAt(i);
+        }
+        int index = (hash ^ (hash >>> 16)) & (PREFIX_CACHE_SIZE - 1);
+        Prefix prefix = mPrefixCache[index];
+        if (prefix != null
+                && prefix.mPrefix.length() == hostEnd
+                && url.startsWith(prefix.mPrefix)) {
+            return prefix;
+        }
+        prefix =
+                new Prefix(
+                        url.substring(0, hostEnd),
+                        intern(url.substring(0, protocolEnd)),
+                        intern(url.substring(protocolEnd + PROTOCOL_SEPARATOR.length(), hostEnd)));
+        mPrefixCache[index] = prefix;
+        return prefix;
+    }
+
+    /**
+     * Interns a protocol or host string, as long as not too many strings have been interned.
+     *
+     * @param value the string
+     * @return the interned string
+     */
+    private static String intern(String value) {
+        String interned = mInterned.get(value);
+        if (interned == null) {
+            if (mInterned.size() >= MAX_INTERNED) {
+                return value;
+            }
+            interned = mInterned.putIfAbsent(value, value);
+            if (interned == null) {
+                interned = value;
+            }
+        }
+        return interned;
+    }
+
+    /**
+     * Returns the end of the host starting at an offset in a url, that is the offset of the first
+     * character not allowed in a host.
+     *
+     * @param url the url
+     * @param start the offset of the host
+     * @return the end of the host
+     */
+    private static int scanHost(String url, int start) {
+        int i = start;
+        while (i < url.length()) {
+            char c = url.charAt(i);
+            if (!(isWordCharacter(c) || c == '.' || c == '-' || c == ':' || c == '@' || c == '#')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns whether a url has no whitespace from an offset on.
+     *
+     * @param url the url
+     * @param start the offset
+     * @return boolean
+     */
+    private static boolean noWhitespace(String url, int start) {
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\013' || c == '\f' || c == '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a character is a word character, as matched by \w in a regular expression.
+     *
+     * @param c the character
+     * @return boolean
+     */
+    private static boolean isWordCharacter(char c) {
+        return (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9')
+                || c == '_';
     }
 
     /**
@@ -263,6 +413,35 @@ public class PegasusURL {
         return sb.toString();
     }
 
+    /** The protocol and host of a URL, and the prefix they make up. */
+    private static class Prefix {
+
+        /** The prefix of an unparsed URL. */
+        private static final Prefix EMPTY = new Prefix("://", "", "");
+
+        /** The URL prefix, that is protocol://host */
+        private final String mPrefix;
+
+        /** The protocol */
+        private final String mProtocol;
+
+        /** The hostname, including the port */
+        private final String mHost;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param prefix the url prefix
+         * @param protocol the protocol
+         * @param host the host
+         */
+        Prefix(String prefix, String protocol, String host) {
+            mPrefix = prefix;
+            mProtocol = protocol;
+            mHost = host;
+        }
+    }
+
     /**
      * Test program
      *
@@ -51,6 +51,9 @@ public class ReplicaFactory {
     public static final String FILE_CATALOG_IMPLEMENTOR =
             edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile.class.getCanonicalName();
 
+    public static final String REGEX_CATALOG_IMPLEMENTOR =
+            edu.isi.pegasus.planner.catalog.replica.impl.Regex.class.getCanonicalName();
+
     /** The default basename of the yaml transformation catalog file. */
     public static final String DEFAULT_YAML_REPLICA_CATALOG_BASENAME = "replicas.yml";
 
@@ -253,6 +256,48 @@ public class ReplicaFactory {
         return result;
     }
 
+    /**
+     * Returns the file the replica catalog configured in the properties is loaded from, without
+     * loading the catalog. The file is determined the same way as in {@link
+     * #loadInstance(PegasusBag, String)}.
+     *
+     * @param bag bag of Pegasus initialization objects
+     * @return the file, or null if the configured catalog is not a file based catalog
+     */
+    public static File getFileSource(PegasusBag bag) {
+        PegasusProperties properties = bag.getPegasusProperties();
+        String catalogImplementor = properties.getProperty(ReplicaCatalog.c_prefix);
+        if (catalogImplementor != null) {
+            if (catalogImplementor.equalsIgnoreCase("File")) {
+                catalogImplementor = FILE_CATALOG_IMPLEMENTOR;
+            }
+            if (catalogImplementor.indexOf('.') == -1) {
+                catalogImplementor = DEFAULT_PACKAGE + "." + catalogImplementor;
+            }
+            if (!(catalogImplementor.equals(YAML_CATALOG_IMPLEMENTOR)
+                    || catalogImplementor.equals(FILE_CATALOG_IMPLEMENTOR)
+                    || catalogImplementor.equals(REGEX_CATALOG_IMPLEMENTOR))) {
+                return null;
+            }
+        }
+
+        Properties connectProps = properties.matchingSubset(ReplicaCatalog.c_prefix, false);
+        if (connectProps.containsKey("file")) {
+            return new File(connectProps.getProperty("file"));
+        }
+        File dir = bag.getPlannerDirectory();
+        if (catalogImplementor == null && dir != null) {
+            File defaultYAML = new File(dir, ReplicaFactory.DEFAULT_YAML_REPLICA_CATALOG_BASENAME);
+            File defaultText = new File(dir, ReplicaFactory.DEFAULT_FILE_REPLICA_CATALOG_BASENAME);
+            if (exists(defaultYAML)) {
+                return defaultYAML.getAbsoluteFile();
+            } else if (exists(defaultText)) {
+                return defaultText.getAbsoluteFile();
+            }
+        }
+        return null;
+    }
+
     public static ReplicaCatalog loadInstance(CommonProperties props) {
         throw new UnsupportedOperationException(
                 "Not supported yet."); // To change body of generated methods, choose Tools |
@@ -0,0 +1,678 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.classes;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A persistent lookup cache for file based replica catalogs, that is shared across planner
+ * invocations. For each catalog file a cache file is maintained in the cache directory, that
+ * records the entries for the LFN's looked up so far, sorted by LFN. The cache file is memory
+ * mapped and searched in place, so only the entries for the LFN's being looked up are ever
+ * deserialized.
+ *
+ * <p>A cache file is tied to the modification time and size of the catalog file it was built from,
+ * and is ignored and rebuilt as soon as either changes. If the catalog does not contain any regex
+ * entries, the whole catalog is recorded the first time it is loaded and the cache file is marked
+ * complete. A complete cache file answers lookups for LFN's that are not in the catalog, without
+ * the catalog being loaded at all. Otherwise only the LFN's that were looked up are recorded, as a
+ * regex entry may add replicas for any LFN, including the ones listed literally in the catalog.
+ *
+ * <p>Cache files are written to a temporary file first and then renamed in place, so that
+ * concurrent planner invocations, for example for the sub workflows of a hierarchical workflow,
+ * always see a consistent cache file.
+ */
+public class ReplicaLookupCache {
+
+    /** The suffix for the cache files. */
+    public static final String CACHE_FILE_SUFFIX = ".rcc";
+
+    /** The magic number at the start of each cache file. */
+    private static final int MAGIC = 0x50524343;
+
+    /** The version of the cache file format. */
+    private static final int VERSION = 1;
+
+    /** The directory where the cache files reside. */
+    private final File mDirectory;
+
+    /** The handle to the logger. */
+    private final LogManager mLogger;
+
+    /** The number of LFN's that were resolved from the cache. */
+    private long mHits;
+
+    /** The number of LFN's that had to be looked up in the backing catalog. */
+    private long mMisses;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param directory the directory where the cache files reside. Created if it does not exist.
+     * @param logger the logger to use
+     */
+    public ReplicaLookupCache(File directory, LogManager logger) {
+        mDirectory = directory;
+        mLogger = logger;
+        mHits = 0;
+        mMisses = 0;
+    }
+
+    /**
+     * Looks up a set of LFN's in the cache for a catalog file. The LFN's that cannot be resolved
+     * from the cache are returned as misses in the returned lookup, and should be resolved against
+     * the catalog by calling {@link Lookup#resolve(ReplicaCatalog)}.
+     *
+     * @param implementor the catalog implementor that is used to load the catalog file
+     * @param source the catalog file
+     * @param lfns the LFN's to look up
+     * @return the lookup
+     */
+    public Lookup lookup(String implementor, File source, Set<String> lfns) {
+        Lookup lookup = new Lookup(implementor, source);
+        CacheFile cache = null;
+        try {
+            cache = CacheFile.open(lookup.mCacheFile, implementor, lookup.mSource);
+        } catch (IOException e) {
+            mLogger.log(
+                    "Ignoring unreadable replica lookup cache " + lookup.mCacheFile,
+                    e,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+        }
+        lookup.mCache = cache;
+
+        for (String lfn : lfns) {
+            Collection<ReplicaCatalogEntry> rces = (cache == null) ? null : cache.get(lfn);
+            if (rces == null) {
+                lookup.mMisses.add(lfn);
+            } else if (!rces.isEmpty()) {
+                lookup.mEntries.put(lfn, rces);
+            }
+        }
+        int hits = lfns.size() - lookup.mMisses.size();
+        mHits += hits;
+        mMisses += lookup.mMisses.size();
+        mLogger.log(
+                "Replica lookup cache "
+                        + lookup.mCacheFile
+                        + " for "
+                        + source
+                        + ": "
+                        + hits
+                        + " hits, "
+                        + lookup.mMisses.size()
+                        + " misses",
+                LogManager.DEBUG_MESSAGE_LEVEL);
+        return lookup;
+    }
+
+    /**
+     * Returns the number of LFN's that were resolved from the cache.
+     *
+     * @return the hits
+     */
+    public long getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of LFN's that had to be looked up in the backing catalog.
+     *
+     * @return the misses
+     */
+    public long getMisses() {
+        return mMisses;
+    }
+
+    /** The result of a lookup against the cache, for a single catalog file. */
+    public class Lookup {
+
+        /** The catalog file. */
+        private final Stat mSource;
+
+        /** The catalog implementor. */
+        private final String mImplementor;
+
+        /** The cache file for the catalog file. */
+        private final File mCacheFile;
+
+        /** The valid cache file, or null if there was none. */
+        private CacheFile mCache;
+
+        /** The entries found so far. */
+        private final Map<String, Collection<ReplicaCatalogEntry>> mEntries;
+
+        /** The LFN's not resolved so far. */
+        private final Set<String> mMisses;
+
+        private Lookup(String implementor, File source) {
+            mImplementor = implementor;
+            mSource = Stat.of(source);
+            mCacheFile = new File(mDirectory, cacheFileName(implementor, mSource.mPath));
+            mEntries = new HashMap<String, Collection<ReplicaCatalogEntry>>();
+            mMisses = new LinkedHashSet<String>();
+        }
+
+        /**
+         * Returns the entries found for the LFN's. LFN's for which the catalog has no entries are
+         * not part of the map.
+         *
+         * @return map indexed by LFN
+         */
+        public Map<String, Collection<ReplicaCatalogEntry>> getEntries() {
+            return mEntries;
+        }
+
+        /**
+         * Returns the LFN's that could not be resolved from the cache.
+         *
+         * @return the misses
+         */
+        public Set<String> getMisses() {
+            return mMisses;
+        }
+
+        /**
+         * Resolves the misses against the catalog, and updates the cache file with the results.
+         *
+         * @param catalog the catalog loaded from the catalog file
+         */
+        public void resolve(ReplicaCatalog catalog) {
+            if (mMisses.isEmpty()) {
+                return;
+            }
+            Map<String, Collection<ReplicaCatalogEntry>> found = catalog.lookup(mMisses);
+            TreeMap<byte[], Collection<ReplicaCatalogEntry>> records =
+                    new TreeMap<byte[], Collection<ReplicaCatalogEntry>>(CacheFile.KEY_COMPARATOR);
+            boolean complete = false;
+            if (mCache == null) {
+                // record the whole catalog only if we can answer negative lookups
+                // from it. with regex entries in the catalog, the literal entries
+                // are not the complete answer for an LFN, as the LFN may match a
+                // regex entry as well
+                TreeMap<byte[], Collection<ReplicaCatalogEntry>> all =
+                        new TreeMap<byte[], Collection<ReplicaCatalogEntry>>(
+                                CacheFile.KEY_COMPARATOR);
+                complete = addRecords(all, catalog.lookup(new HashMap()));
+                if (complete) {
+                    records = all;
+                }
+            } else {
+                mCache.addTo(records);
+            }
+            for (String lfn : mMisses) {
+                Collection<ReplicaCatalogEntry> rces = (found == null) ? null : found.get(lfn);
+                if (rces == null) {
+                    rces = new ArrayList<ReplicaCatalogEntry>(0);
+                }
+                if (!rces.isEmpty()) {
+                    mEntries.put(lfn, rces);
+                }
+                if (!complete && cacheable(rces)) {
+                    records.put(CacheFile.encode(lfn), rces);
+                }
+            }
+            mMisses.clear();
+
+            // the catalog file may have changed underneath us while it was being loaded
+            if (!mSource.equals(Stat.of(mSource.mFile))) {
+                mLogger.log(
+                        "Not updating replica lookup cache as " + mSource.mPath + " was modified",
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+                return;
+            }
+            try {
+                CacheFile.write(mCacheFile, mImplementor, mSource, complete, records);
+            } catch (IOException e) {
+                mLogger.log(
+                        "Unable to write replica lookup cache " + mCacheFile,
+                        e,
+                        LogManager.WARNING_MESSAGE_LEVEL);
+            }
+        }
+    }
+
+    /**
+     * Adds the cacheable entries to the records. The records are only usable if all of the entries
+     * could be added.
+     *
+     * @param records the records to add to
+     * @param entries the complete contents of a catalog, indexed by LFN
+     * @return true if all the entries could be added and none of them are regex entries
+     */
+    private static boolean addRecords(
+            Map<byte[], Collection<ReplicaCatalogEntry>> records,
+            Map<String, Collection<ReplicaCatalogEntry>> entries) {
+        boolean complete = true;
+        for (Map.Entry<String, Collection<ReplicaCatalogEntry>> entry : entries.entrySet()) {
+            Collection<ReplicaCatalogEntry> rces = entry.getValue();
+            if (!cacheable(rces)) {
+                complete = false;
+                continue;
+            }
+            boolean regex = false;
+            for (ReplicaCatalogEntry rce : rces) {
+                regex = regex || rce.isRegex();
+            }
+            if (regex) {
+                complete = false;
+                continue;
+            }
+            records.put(CacheFile.encode(entry.getKey()), rces);
+        }
+        return complete;
+    }
+
+    /**
+     * Returns whether replica catalog entries can be recorded in a cache file. Only entries with
+     * String valued attributes can be recorded.
+     *
+     * @param rces the entries
+     * @return boolean
+     */
+    private static boolean cacheable(Collection<ReplicaCatalogEntry> rces) {
+        for (ReplicaCatalogEntry rce : rces) {
+            if (rce.getPFN() == null) {
+                return false;
+            }
+            for (Iterator it = rce.getAttributeIterator(); it.hasNext(); ) {
+                String key = (String) it.next();
+                if (!(rce.getAttribute(key) instanceof String)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name of the cache file for a catalog file.
+     *
+     * @param implementor the catalog implementor
+     * @param path the canonical path to the catalog file
+     * @return the basename of the cache file
+     */
+    private static String cacheFileName(String implementor, String path) {
+        StringBuilder name = new StringBuilder();
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest((implementor + "\n" + path).getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            name.append(String.format("%08x", (implementor + "\n" + path).hashCode()));
+        }
+        return name.append(CACHE_FILE_SUFFIX).toString();
+    }
+
+    /** The modification time and size of a catalog file. */
+    private static class Stat {
+
+        private final File mFile;
+
+        private final String mPath;
+
+        private final long mModified;
+
+        private final long mSize;
+
+        private Stat(File file, String path, long modified, long size) {
+            mFile = file;
+            mPath = path;
+            mModified = modified;
+            mSize = size;
+        }
+
+        private static Stat of(File file) {
+            String path;
+            try {
+                path = file.getCanonicalPath();
+            } catch (IOException e) {
+                path = file.getAbsolutePath();
+            }
+            return new Stat(file, path, file.lastModified(), file.length());
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Stat)) {
+                return false;
+            }
+            Stat s = (Stat) o;
+            return mPath.equals(s.mPath) && mModified == s.mModified && mSize == s.mSize;
+        }
+
+        public int hashCode() {
+            return mPath.hashCode();
+        }
+    }
+
+    /**
+     * A memory mapped cache file. The layout of the file is
+     *
+     * <pre>
+     * int      magic
+     * int      version
+     * long     size of the catalog file
+     * long     modification time of the catalog file
+     * string   path to the catalog file
+     * string   catalog implementor
+     * byte     1 if the cache file has all the LFN's in the catalog
+     * int      number of records
+     * int[]    offsets of the records, sorted by LFN
+     * record[] the records, each being the LFN, the number of entries and for each entry the
+     *          PFN, the number of attributes and the attribute key value pairs
+     * </pre>
+     *
+     * where the strings are written as the number of bytes followed by the UTF-8 bytes, and the
+     * LFN's are sorted by their UTF-8 bytes.
+     */
+    static class CacheFile {
+
+        /** Compares the UTF-8 bytes of two keys. */
+        static final Comparator<byte[]> KEY_COMPARATOR =
+                new Comparator<byte[]>() {
+                    public int compare(byte[] a, byte[] b) {
+                        int n = Math.min(a.length, b.length);
+                        for (int i = 0; i < n; i++) {
+                            int c = (a[i] & 0xff) - (b[i] & 0xff);
+                            if (c != 0) {
+                                return c;
+                            }
+                        }
+                        return a.length - b.length;
+                    }
+                };
+
+        /** The mapped contents of the file. */
+        private final ByteBuffer mBuffer;
+
+        /** The position of the offsets in the file. */
+        private final int mIndex;
+
+        /** The number of records. */
+        private final int mCount;
+
+        /** Whether all the LFN's in the catalog are in the file. */
+        private final boolean mComplete;
+
+        private CacheFile(ByteBuffer buffer, int index, int count, boolean complete) {
+            mBuffer = buffer;
+            mIndex = index;
+            mCount = count;
+            mComplete = complete;
+        }
+
+        /**
+         * Opens a cache file.
+         *
+         * @param file the cache file
+         * @param implementor the catalog implementor
+         * @param source the catalog file
+         * @return the cache file, or null if it does not exist or does not match the catalog file
+         * @throws IOException in case of an unreadable cache file
+         */
+        private static CacheFile open(File file, String implementor, Stat source)
+                throws IOException {
+            if (!file.isFile() || file.length() > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buffer;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                    FileChannel channel = raf.getChannel()) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            try {
+                if (buffer.getInt() != MAGIC
+                        || buffer.getInt() != VERSION
+                        || buffer.getLong() != source.mSize
+                        || buffer.getLong() != source.mModified
+                        || !readString(buffer).equals(source.mPath)
+                        || !readString(buffer).equals(implementor)) {
+                    return null;
+                }
+                boolean complete = buffer.get() == 1;
+                int count = buffer.getInt();
+                int index = buffer.position();
+                if (count < 0 || (long) index + 4L * count > buffer.limit()) {
+                    throw new IOException("Corrupt replica lookup cache " + file);
+                }
+                return new CacheFile(buffer, index, count, complete);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt replica lookup cache " + file, e);
+            }
+        }
+
+        /**
+         * Returns the entries for an LFN.
+         *
+         * @param lfn the LFN
+         * @return the entries, an empty collection if the catalog has no entries for the LFN, or
+         *     null if the cache has no information about the LFN
+         */
+        Collection<ReplicaCatalogEntry> get(String lfn) {
+            byte[] key = encode(lfn);
+            int low = 0;
+            int high = mCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int offset = mBuffer.getInt(mIndex + 4 * mid);
+                int c = compareKey(offset, key);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    ByteBuffer record = mBuffer.duplicate();
+                    record.position(offset);
+                    readString(record);
+                    return readEntries(record);
+                }
+            }
+            return mComplete ? new ArrayList<ReplicaCatalogEntry>(0) : null;
+        }
+
+        /**
+         * Adds all the records in the file to a map.
+         *
+         * @param records map indexed by the UTF-8 bytes of the LFN's
+         */
+        void addTo(Map<byte[], Collection<ReplicaCatalogEntry>> records) {
+            ByteBuffer record = mBuffer.duplicate();
+            for (int i = 0; i < mCount; i++) {
+                record.position(mBuffer.getInt(mIndex + 4 * i));
+                byte[] key = new byte[record.getInt()];
+                record.get(key);
+                records.put(key, readEntries(record));
+            }
+        }
+
+        /**
+         * Compares the LFN of the record at an offset with a key.
+         *
+         * @param offset the offset of the record
+         * @param key the UTF-8 bytes of the key
+         * @return the comparison
+         */
+        private int compareKey(int offset, byte[] key) {
+            int length = mBuffer.getInt(offset);
+            int n = Math.min(length, key.length);
+            for (int i = 0; i < n; i++) {
+                int c = (mBuffer.get(offset + 4 + i) & 0xff) - (key[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return length - key.length;
+        }
+
+        /**
+         * Writes out a cache file.
+         *
+         * @param file the cache file
+         * @param implementor the catalog implementor
+         * @param source the catalog file
+         * @param complete whether all the LFN's in the catalog are in the records
+         * @param records sorted map indexed by the UTF-8 bytes of the LFN's
+         * @throws IOException in case of error while writing
+         */
+        static void write(
+                File file,
+                String implementor,
+                Stat source,
+                boolean complete,
+                TreeMap<byte[], Collection<ReplicaCatalogEntry>> records)
+                throws IOException {
+            File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+            File temp = File.createTempFile(file.getName() + ".", ".tmp", directory);
+            try {
+                try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+                    byte[] path = encode(source.mPath);
+                    byte[] name = encode(implementor);
+                    long index = 4 + 4 + 8 + 8 + 4 + path.length + 4 + name.length + 1 + 4;
+                    long position = index + 4L * records.size();
+                    int[] offsets = new int[records.size()];
+
+                    // the records go after the offsets
+                    raf.seek(position);
+                    DataOutputStream out =
+                            new DataOutputStream(
+                                    new BufferedOutputStream(
+                                            Channels.newOutputStream(raf.getChannel())));
+                    int i = 0;
+                    for (Map.Entry<byte[], Collection<ReplicaCatalogEntry>> record :
+                            records.entrySet()) {
+                        if (position + out.size() > Integer.MAX_VALUE) {
+                            throw new IOException("Replica lookup cache too large " + file);
+                        }
+                        offsets[i++] = (int) position + out.size();
+                        writeBytes(out, record.getKey());
+                        writeEntries(out, record.getValue());
+                    }
+                    out.flush();
+
+                    raf.seek(0);
+                    out =
+                            new DataOutputStream(
+                                    new BufferedOutputStream(
+                                            Channels.newOutputStream(raf.getChannel())));
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeLong(source.mSize);
+                    out.writeLong(source.mModified);
+                    writeBytes(out, path);
+                    writeBytes(out, name);
+                    out.writeByte(complete ? 1 : 0);
+                    out.writeInt(offsets.length);
+                    for (int offset : offsets) {
+                        out.writeInt(offset);
+                    }
+                    out.flush();
+                }
+                try {
+                    Files.move(
+                            temp.toPath(),
+                            file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                temp.delete();
+            }
+        }
+
+        static byte[] encode(String s) {
+            return s.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static String readString(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static Collection<ReplicaCatalogEntry> readEntries(ByteBuffer buffer) {
+            int n = buffer.getInt();
+            List<ReplicaCatalogEntry> rces = new ArrayList<ReplicaCatalogEntry>(n);
+            for (int i = 0; i < n; i++) {
+                String pfn = readString(buffer);
+                int attributes = buffer.getInt();
+                Map<String, String> m = new HashMap<String, String>();
+                for (int j = 0; j < attributes; j++) {
+                    String key = readString(buffer);
+                    m.put(key, readString(buffer));
+                }
+                rces.add(new ReplicaCatalogEntry(pfn, m));
+            }
+            return rces;
+        }
+
+        private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static void writeEntries(DataOutputStream out, Collection<ReplicaCatalogEntry> rces)
+                throws IOException {
+            out.writeInt(rces.size());
+            for (ReplicaCatalogEntry rce : rces) {
+                writeBytes(out, encode(rce.getPFN()));
+                Set<String> keys = new HashSet<String>();
+                for (Iterator it = rce.getAttributeIterator(); it.hasNext(); ) {
+                    keys.add((String) it.next());
+                }
+                out.writeInt(keys.size());
+                for (String key : keys) {
+                    writeBytes(out, encode(key));
+                    writeBytes(out, encode((String) rce.getAttribute(key)));
+                }
+            }
+        }
+    }
+}
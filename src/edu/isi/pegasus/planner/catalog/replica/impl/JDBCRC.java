@@ -166,9 +166,44 @@ public class JDBCRC implements ReplicaCatalog {
         "DELETE FROM rc_lfn WHERE lfn_id IN (SELECT rc_lfn.lfn_id FROM rc_lfn LEFT JOIN rc_pfn ON rc_lfn.lfn_id=rc_pfn.lfn_id WHERE rc_pfn.lfn_id IS NULL)"
     };
 
+    /**
+     * The statement prefix to slurp the pfns and attributes for a chunk of LFNs in a single joined
+     * result set. The IN clause is appended on demand.
+     */
+    private static final String c_batch_lookup =
+            "SELECT l.lfn,l.lfn_id,p.pfn_id,p.pfn,p.site,m.key,m.value FROM rc_lfn l "
+                    + "LEFT JOIN rc_pfn p ON l.lfn_id=p.lfn_id "
+                    + "LEFT JOIN rc_meta m ON l.lfn_id=m.lfn_id WHERE l.lfn IN ";
+
+    /**
+     * The statement prefix to slurp only the pfns for a chunk of LFNs. The IN clause is appended on
+     * demand.
+     */
+    private static final String c_batch_lookup_no_attributes =
+            "SELECT l.lfn,p.pfn FROM rc_lfn l "
+                    + "LEFT JOIN rc_pfn p ON l.lfn_id=p.lfn_id WHERE l.lfn IN ";
+
+    /**
+     * The maximum number of LFNs bound in a single batched query. SQLite by default limits a
+     * statement to 999 host parameters.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
     /** Remembers if obtaining generated keys will work or not. */
     private boolean m_autoinc = false;
 
+    /**
+     * The number of LFNs queried together in the multiple LFN lookup functions. A value of 1 means
+     * a query per LFN. Set via the property pegasus.catalog.replica.chunk.size
+     */
+    private int mBatchSize = 1;
+
+    /** The prepared statements for the batched lookups indexed by the query. */
+    private Map<String, PreparedStatement> mBatchStatements = new HashMap();
+
+    /** The number of queries executed against the database by the batched lookups. */
+    private long mBatchQueryCount = 0;
+
     /**
      * Convenience c'tor: Establishes the connection to the replica catalog database. The usual
      * suspects for the class name include:
@@ -297,6 +332,23 @@ public class JDBCRC implements ReplicaCatalog {
             temp.delete();
         }
 
+        // lookups for multiple LFNs can be done in chunks
+        String chunk = (String) props.remove(ReplicaCatalog.BATCH_KEY);
+        if (chunk != null) {
+            try {
+                this.setBatchSize(Integer.parseInt(chunk.trim()));
+            } catch (NumberFormatException nfe) {
+                mLogger.log(
+                        "Invalid value specified for property "
+                                + ReplicaCatalog.c_prefix
+                                + "."
+                                + ReplicaCatalog.BATCH_KEY
+                                + " "
+                                + chunk,
+                        LogManager.WARNING_MESSAGE_LEVEL);
+            }
+        }
+
         // class loader: Will propagate any runtime errors!!!
         String driver = (String) props.remove("db.driver");
 
@@ -392,6 +444,15 @@ public class JDBCRC implements ReplicaCatalog {
             }
         }
 
+        for (PreparedStatement ps : mBatchStatements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+        mBatchStatements.clear();
+
         if (mConnection != null) {
             try {
                 mConnection.close();
@@ -450,6 +511,34 @@ public class JDBCRC implements ReplicaCatalog {
         return mStatements[i];
     }
 
+    /**
+     * Sets the number of LFNs that are queried together in a single statement by the functions that
+     * lookup multiple LFNs. The value is capped at {@link #MAX_BATCH_SIZE}.
+     *
+     * @param size the chunk size. A value of 1 or less results in a query per LFN.
+     */
+    public void setBatchSize(int size) {
+        mBatchSize = Math.max(1, Math.min(size, MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Returns the number of LFNs that are queried together by the multiple LFN lookup functions.
+     *
+     * @return the chunk size
+     */
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    /**
+     * Returns the number of queries issued to the database by the batched lookups so far.
+     *
+     * @return the number of queries
+     */
+    public long getBatchQueryCount() {
+        return mBatchQueryCount;
+    }
+
     /**
      * Retrieves the entry for a given filename and site handle from the replica catalog.
      *
@@ -606,6 +695,7 @@ public class JDBCRC implements ReplicaCatalog {
         // sanity check
         if (lfns == null || lfns.size() == 0) return result;
         if (mConnection == null) throw new RuntimeException(c_error);
+        if (mBatchSize > 1) return lookupInChunks(lfns, null, true);
 
         try {
             ResultSet rs = null;
@@ -646,6 +736,7 @@ public class JDBCRC implements ReplicaCatalog {
         // sanity check
         if (lfns == null || lfns.size() == 0) return result;
         if (mConnection == null) throw new RuntimeException(c_error);
+        if (mBatchSize > 1) return lookupInChunks(lfns, null, false);
 
         try {
             ResultSet rs = null;
@@ -688,6 +779,7 @@ public class JDBCRC implements ReplicaCatalog {
         // sanity check
         if (lfns == null || lfns.size() == 0) return result;
         if (mConnection == null) throw new RuntimeException(c_error);
+        if (mBatchSize > 1) return lookupInChunks(lfns, handle, true);
 
         try {
             ResultSet rs = null;
@@ -733,6 +825,7 @@ public class JDBCRC implements ReplicaCatalog {
         // sanity check
         if (lfns == null || lfns.size() == 0) return result;
         if (mConnection == null) throw new RuntimeException(c_error);
+        if (mBatchSize > 1) return lookupInChunks(lfns, handle, false);
 
         try {
             ResultSet rs = null;
@@ -757,6 +850,175 @@ public class JDBCRC implements ReplicaCatalog {
         return result;
     }
 
+    /**
+     * Retrieves multiple entries for a set of logical filenames, querying the LFNs in chunks of the
+     * configured batch size. For each chunk a single statement with an IN clause is executed that
+     * joins in the pfns and, if required, the attributes from rc_meta. This replaces the query per
+     * LFN plus the query per PFN for the attributes, done by the unbatched lookups.
+     *
+     * @param lfns is a set of logical filename strings to look up.
+     * @param handle is the resource handle, restricting the LFNs. Can be null.
+     * @param attributes boolean indicating whether to retrieve the attributes or not.
+     * @return a map indexed by the LFN. Each value is either a collection of replica catalog
+     *     entries, or a set of physical filenames, depending on the attributes parameter.
+     */
+    private Map lookupInChunks(Set lfns, String handle, boolean attributes) {
+        Map result = new HashMap();
+        int size = Math.min(mBatchSize, lfns.size());
+        String query = batchQuery(size, handle != null, attributes);
+        long queries = mBatchQueryCount;
+
+        try {
+            PreparedStatement ps = getBatchStatement(query);
+            List<String> chunk = new ArrayList(size);
+            // track the quoted lfns that are passed to the database
+            Map<String, String> quoted = new HashMap();
+            for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+                String lfn = (String) i.next();
+                String q = quote(lfn);
+                quoted.put(q, lfn);
+                chunk.add(q);
+                result.put(lfn, attributes ? new ArrayList() : new TreeSet());
+
+                if (chunk.size() == size || !i.hasNext()) {
+                    // the last chunk is padded with the last lfn, to
+                    // reuse the prepared statement
+                    int index = 1;
+                    for (; index <= size; index++) {
+                        ps.setString(index, chunk.get(Math.min(index, chunk.size()) - 1));
+                    }
+                    if (handle != null) {
+                        ps.setString(index, quote(handle));
+                    }
+                    ResultSet rs = ps.executeQuery();
+                    mBatchQueryCount++;
+                    if (attributes) {
+                        this.slurpEntries(rs, quoted, result);
+                    } else {
+                        this.slurpPFNs(rs, quoted, result);
+                    }
+                    rs.close();
+                    chunk.clear();
+                    quoted.clear();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(
+                    "Unable to query database with " + query + ": " + e.getMessage());
+        }
+
+        mLogger.log(
+                "Looked up "
+                        + lfns.size()
+                        + " LFNs in chunks of "
+                        + size
+                        + " with "
+                        + (mBatchQueryCount - queries)
+                        + " queries",
+                LogManager.DEBUG_MESSAGE_LEVEL);
+        return result;
+    }
+
+    /**
+     * Builds the replica catalog entries from the result set of a batched lookup with attributes.
+     * The rows are ordered by lfn_id and pfn_id, with a row for each attribute of the LFN.
+     *
+     * @param rs the result set of the batched query
+     * @param quoted map of the quoted LFN to the LFN passed by the caller
+     * @param result the map indexed by LFN to which the entries are added
+     * @throws SQLException
+     */
+    private void slurpEntries(ResultSet rs, Map<String, String> quoted, Map result)
+            throws SQLException {
+        String current = null;
+        String pfn = null;
+        Map attrs = null;
+        List value = null;
+        while (rs.next()) {
+            String id = rs.getString("lfn_id") + "#" + rs.getString("pfn_id");
+            if (!id.equals(current)) {
+                if (value != null) {
+                    value.add(new ReplicaCatalogEntry(pfn, attrs));
+                }
+                current = id;
+                value = (List) result.get(quoted.get(rs.getString("lfn")));
+                pfn = rs.getString("pfn");
+                attrs = new TreeMap();
+                String site = rs.getString("site");
+                if (site != null && !site.equals("NULL")) {
+                    attrs.put(ReplicaCatalogEntry.RESOURCE_HANDLE, site);
+                }
+            }
+            String key = rs.getString("key");
+            if (key != null) {
+                attrs.put(key, rs.getString("value"));
+            }
+        }
+        if (value != null) {
+            value.add(new ReplicaCatalogEntry(pfn, attrs));
+        }
+    }
+
+    /**
+     * Collects the physical filenames from the result set of a batched lookup without attributes.
+     *
+     * @param rs the result set of the batched query
+     * @param quoted map of the quoted LFN to the LFN passed by the caller
+     * @param result the map indexed by LFN to which the PFNs are added
+     * @throws SQLException
+     */
+    private void slurpPFNs(ResultSet rs, Map<String, String> quoted, Map result)
+            throws SQLException {
+        while (rs.next()) {
+            Set value = (Set) result.get(quoted.get(rs.getString("lfn")));
+            String pfn = rs.getString("pfn");
+            if (value != null && pfn != null) {
+                value.add(pfn);
+            }
+        }
+    }
+
+    /**
+     * Builds the query for a batched lookup.
+     *
+     * @param size the number of LFNs in the IN clause
+     * @param handle whether to restrict on the site handle
+     * @param attributes whether to join in the attributes
+     * @return the query
+     */
+    private String batchQuery(int size, boolean handle, boolean attributes) {
+        StringBuilder q = new StringBuilder(256 + 2 * size);
+        q.append(attributes ? c_batch_lookup : c_batch_lookup_no_attributes).append("(");
+        for (int i = 0; i < size; i++) {
+            q.append(i == 0 ? "?" : ",?");
+        }
+        q.append(")");
+        if (handle) {
+            q.append(" AND p.site=?");
+        }
+        if (attributes) {
+            q.append(" ORDER BY l.lfn_id,p.pfn_id");
+        }
+        return q.toString();
+    }
+
+    /**
+     * Singleton manager for the prepared statements of the batched lookups.
+     *
+     * @param query the query to prepare
+     * @return a handle to the prepared statement.
+     */
+    private PreparedStatement getBatchStatement(String query) throws SQLException {
+        PreparedStatement ps = mBatchStatements.get(query);
+        if (ps == null) {
+            ps = mConnection.prepareStatement(query);
+            mBatchStatements.put(query, ps);
+        } else {
+            ps.clearParameters();
+        }
+        return ps;
+    }
+
     /**
      * Retrieves multiple entries for a given logical filename, up to the complete catalog.
      * Retrieving full catalogs should be harmful, but may be helpful in online display or portal.
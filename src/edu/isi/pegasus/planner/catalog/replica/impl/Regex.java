@@ -94,7 +94,8 @@ public class Regex implements ReplicaCatalog {
 
     protected Map<String, Collection<ReplicaCatalogEntry>> m_lfn_regex = null;
 
-    protected Map<String, Pattern> m_lfn_pattern = null;
+    /** The index over the compiled patterns of the regex LFNs. */
+    protected RegexIndex m_lfn_pattern = null;
 
     /** A boolean indicating whether the catalog is read only or not. */
     boolean m_readonly;
@@ -330,7 +331,7 @@ public class Regex implements ReplicaCatalog {
         m_filename = filename;
         m_lfn = new LinkedHashMap<String, Collection<ReplicaCatalogEntry>>();
         m_lfn_regex = new LinkedHashMap<String, Collection<ReplicaCatalogEntry>>();
-        m_lfn_pattern = new LinkedHashMap<String, Pattern>();
+        m_lfn_pattern = new RegexIndex();
         try {
             File f = new File(filename);
             if (f.exists()) {
@@ -549,7 +550,7 @@ public class Regex implements ReplicaCatalog {
         Matcher m = null;
         String pool = null;
         ReplicaCatalogEntry rce = null;
-        for (String l : m_lfn_regex.keySet()) {
+        for (String l : m_lfn_pattern.candidates(lfn)) {
             p = m_lfn_pattern.get(l);
             m = p.matcher(lfn);
             if (m.matches()) {
@@ -558,11 +559,7 @@ public class Regex implements ReplicaCatalog {
                     pool = entry.getResourceHandle();
                     if (pool == null && handle == null
                             || pool != null && handle != null && pool.equals(handle)) {
-                        String tmpPFN = entry.getPFN();
-                        for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                            // tmpPFN = tmpPFN.replaceAll ("\\$" + k, m.group (k));
-                            tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                        }
+                        String tmpPFN = m_lfn_pattern.substitute(entry.getPFN(), m);
                         if (tmpPFN.indexOf('[') >= 0) {
                             // PFN still has variables left.
                         }
@@ -596,7 +593,7 @@ public class Regex implements ReplicaCatalog {
         ReplicaCatalogEntry rce = null;
         Pattern p = null;
         Matcher m = null;
-        for (String l : m_lfn_regex.keySet()) {
+        for (String l : m_lfn_pattern.candidates(lfn)) {
             p = m_lfn_pattern.get(l);
             m = p.matcher(lfn);
             if (m.matches()) {
@@ -604,10 +601,7 @@ public class Regex implements ReplicaCatalog {
                 Collection<ReplicaCatalogEntry> entriesResult =
                         new ArrayList<ReplicaCatalogEntry>();
                 for (ReplicaCatalogEntry entry : entries) {
-                    String tmpPFN = entry.getPFN();
-                    for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                        tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                    }
+                    String tmpPFN = m_lfn_pattern.substitute(entry.getPFN(), m);
                     if (tmpPFN.indexOf('[') >= 0) {
                         // PFN still has variables left.
                     }
@@ -733,7 +727,7 @@ public class Regex implements ReplicaCatalog {
                 }
             }
             // Lookup regex LFN's
-            for (String l : m_lfn_regex.keySet()) {
+            for (String l : m_lfn_pattern.candidates(lfn)) {
                 p = m_lfn_pattern.get(l); // Get one pattern
                 m = p.matcher(lfn); // See if f.a matches pattern
                 if (m.matches()) // Pattern matches?
@@ -745,11 +739,8 @@ public class Regex implements ReplicaCatalog {
                         // Entry matches handle requirement?
                         if (pool == null && handle == null
                                 || pool != null && handle != null && pool.equals(handle)) {
-                            String tmpPFN = entry.getPFN();
                             // Substitute variables in PFN before returning
-                            for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                                tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                            }
+                            String tmpPFN = m_lfn_pattern.substitute(entry.getPFN(), m);
                             // Are there unsubstituted variables?
                             if (tmpPFN.indexOf('[') >= 0) {
                                 // PFN still has variables left.
@@ -0,0 +1,484 @@
+/**
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An index over the compiled LFN patterns of the regex based replica catalog backends. Instead of
+ * trying every pattern against every LFN, the literal prefix and suffix of each pattern is
+ * extracted when it is added, and the patterns are stored in a prefix trie and a reversed suffix
+ * trie. A lookup walks the tries along the LFN, and only the candidate patterns whose literal
+ * prefix and suffix agree with the LFN are returned. Patterns for which no literal prefix or suffix
+ * can be determined safely (for example ones with alternation, inline flags or lookarounds) are
+ * always returned as candidates.
+ *
+ * <p>The candidates are returned in the order in which the patterns were added, so that callers
+ * relying on the first matching pattern see the same behavior as a linear scan.
+ *
+ * <p>The index also caches the parsed form of the PFN templates, where [k] is substituted by the
+ * k-th group of the LFN match.
+ */
+public class RegexIndex {
+
+    /** The compiled patterns indexed by the regex, in insertion order. */
+    private final Map<String, Pattern> mPatterns;
+
+    /** The patterns by their ordinal position. */
+    private final List<String> mKeys;
+
+    /** The trie over the literal prefixes of the patterns. */
+    private Node mPrefixTrie;
+
+    /** The trie over the reversed literal suffixes of patterns that have no literal prefix. */
+    private Node mSuffixTrie;
+
+    /** The literal suffix of each pattern indexed by the ordinal. Can be empty. */
+    private final List<String> mSuffixes;
+
+    /** The parsed PFN templates indexed by the PFN. */
+    private final Map<String, Object[]> mTemplates;
+
+    /** The ordinals of the patterns that cannot be indexed. */
+    private int[] mUnindexed;
+
+    /** The number of patterns that cannot be indexed. */
+    private int mUnindexedCount;
+
+    /** The default constructor. */
+    public RegexIndex() {
+        mPatterns = new LinkedHashMap<String, Pattern>();
+        mKeys = new ArrayList<String>();
+        mSuffixes = new ArrayList<String>();
+        mTemplates = new HashMap<String, Object[]>();
+        this.clear();
+    }
+
+    /**
+     * Adds a pattern to the index. Adding a regex that is already indexed has no effect.
+     *
+     * @param regex the regex
+     * @param pattern the compiled pattern for the regex
+     */
+    public void put(String regex, Pattern pattern) {
+        if (mPatterns.containsKey(regex)) {
+            return;
+        }
+        mPatterns.put(regex, pattern);
+        int ordinal = mKeys.size();
+        mKeys.add(regex);
+
+        String[] literals = RegexIndex.literals(regex);
+        if (literals == null) {
+            mSuffixes.add("");
+            this.addUnindexed(ordinal);
+            return;
+        }
+        String prefix = literals[0];
+        String suffix = literals[1];
+        mSuffixes.add(suffix);
+        if (prefix.length() > 0) {
+            mPrefixTrie.add(prefix, false, ordinal);
+        } else if (suffix.length() > 0) {
+            mSuffixTrie.add(suffix, true, ordinal);
+        } else {
+            this.addUnindexed(ordinal);
+        }
+    }
+
+    /**
+     * Returns the compiled pattern for a regex.
+     *
+     * @param regex the regex
+     * @return the pattern, else null if not indexed
+     */
+    public Pattern get(String regex) {
+        return mPatterns.get(regex);
+    }
+
+    /**
+     * Returns the number of patterns in the index.
+     *
+     * @return the number of patterns
+     */
+    public int size() {
+        return mPatterns.size();
+    }
+
+    /** Removes all the patterns from the index. */
+    public void clear() {
+        mPatterns.clear();
+        mKeys.clear();
+        mSuffixes.clear();
+        mTemplates.clear();
+        mPrefixTrie = new Node();
+        mSuffixTrie = new Node();
+        mUnindexed = new int[8];
+        mUnindexedCount = 0;
+    }
+
+    /**
+     * Returns the regexes of the patterns that can potentially match an LFN, in the order the
+     * patterns were added to the index. A pattern that is not returned cannot match the LFN.
+     *
+     * @param lfn the lfn to match
+     * @return list of candidate regexes, possibly empty
+     */
+    public List<String> candidates(String lfn) {
+        int[] ordinals = new int[mUnindexedCount + 8];
+        int count = 0;
+
+        // patterns whose literal prefix is a prefix of the lfn
+        Node node = mPrefixTrie;
+        for (int i = 0; node != null; i++) {
+            for (int j = 0; j < node.mCount; j++) {
+                int ordinal = node.mOrdinals[j];
+                if (lfn.endsWith(mSuffixes.get(ordinal))) {
+                    ordinals = RegexIndex.append(ordinals, count++, ordinal);
+                }
+            }
+            node = (i < lfn.length()) ? node.child(lfn.charAt(i)) : null;
+        }
+
+        // patterns with no literal prefix, whose literal suffix is a suffix of the lfn
+        node = mSuffixTrie;
+        for (int i = lfn.length() - 1; node != null; i--) {
+            for (int j = 0; j < node.mCount; j++) {
+                ordinals = RegexIndex.append(ordinals, count++, node.mOrdinals[j]);
+            }
+            node = (i >= 0) ? node.child(lfn.charAt(i)) : null;
+        }
+
+        for (int j = 0; j < mUnindexedCount; j++) {
+            ordinals = RegexIndex.append(ordinals, count++, mUnindexed[j]);
+        }
+
+        Arrays.sort(ordinals, 0, count);
+        List<String> result = new ArrayList<String>(count);
+        for (int j = 0; j < count; j++) {
+            result.add(mKeys.get(ordinals[j]));
+        }
+        return result;
+    }
+
+    /**
+     * Substitutes the [k] placeholders in a PFN with the k-th group of the match, for all k up to
+     * the group count of the match. The parsed template is cached per PFN.
+     *
+     * @param pfn the pfn containing the placeholders
+     * @param m the matcher that matched the LFN
+     * @return the substituted pfn
+     */
+    public String substitute(String pfn, Matcher m) {
+        Object[] template = mTemplates.get(pfn);
+        if (template == null) {
+            template = RegexIndex.parseTemplate(pfn);
+            mTemplates.put(pfn, template);
+        }
+        if (template.length == 1 && template[0] instanceof String) {
+            // no placeholders
+            return pfn;
+        }
+
+        int groups = m.groupCount();
+        StringBuilder sb = new StringBuilder(pfn.length() + 32);
+        for (Object segment : template) {
+            if (segment instanceof String) {
+                sb.append((String) segment);
+            } else {
+                int k = (Integer) segment;
+                if (k <= groups) {
+                    String group = m.group(k);
+                    sb.append(group == null ? "" : group);
+                } else {
+                    // not a group of this match, leave as is
+                    sb.append('[').append(k).append(']');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a PFN into literal String segments and Integer group references for [k] placeholders.
+     *
+     * @param pfn the pfn
+     * @return the segments
+     */
+    static Object[] parseTemplate(String pfn) {
+        List<Object> segments = new ArrayList<Object>();
+        int start = 0;
+        int open = pfn.indexOf('[');
+        while (open >= 0) {
+            int close = open + 1;
+            while (close < pfn.length() && Character.isDigit(pfn.charAt(close))) {
+                close++;
+            }
+            if (close > open + 1 && close < pfn.length() && pfn.charAt(close) == ']') {
+                if (open > start) {
+                    segments.add(pfn.substring(start, open));
+                }
+                segments.add(Integer.parseInt(pfn.substring(open + 1, close)));
+                start = close + 1;
+                open = pfn.indexOf('[', start);
+            } else {
+                open = pfn.indexOf('[', open + 1);
+            }
+        }
+        if (start < pfn.length() || segments.isEmpty()) {
+            segments.add(pfn.substring(start));
+        }
+        return segments.toArray();
+    }
+
+    /**
+     * Determines the literal prefix and suffix that any string matching the regex in its entirety
+     * must start and end with. The analysis is conservative, and gives up on constructs it does not
+     * understand.
+     *
+     * @param regex the regex
+     * @return array with the prefix and the suffix, possibly empty strings. null if the regex
+     *     cannot be analyzed.
+     */
+    static String[] literals(String regex) {
+        // null entries are non literal atoms
+        List<Character> atoms = new ArrayList<Character>();
+        int n = regex.length();
+        for (int i = 0; i < n; i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '|':
+                    // alternation, can appear anywhere
+                    return null;
+
+                case '\\':
+                    if (i + 1 >= n) {
+                        return null;
+                    }
+                    char e = regex.charAt(++i);
+                    if (!Character.isLetterOrDigit(e)) {
+                        atoms.add(e);
+                    } else if ("dDsSwWbBAGZzRXhHvV".indexOf(e) >= 0) {
+                        atoms.add(null);
+                    } else if (e == 'p' || e == 'P') {
+                        atoms.add(null);
+                        if (i + 1 < n && regex.charAt(i + 1) == '{') {
+                            i = regex.indexOf('}', i + 1);
+                            if (i < 0) {
+                                return null;
+                            }
+                        } else {
+                            i++;
+                        }
+                    } else {
+                        // quoting, back references, octal, hex and control characters
+                        return null;
+                    }
+                    break;
+
+                case '[':
+                    i = RegexIndex.endOfClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    atoms.add(null);
+                    break;
+
+                case '*':
+                case '+':
+                case '?':
+                    RegexIndex.quantify(atoms);
+                    break;
+
+                case '{':
+                    RegexIndex.quantify(atoms);
+                    i = regex.indexOf('}', i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+
+                case '(':
+                    if (i + 1 < n && regex.charAt(i + 1) == '?') {
+                        // inline flags, lookarounds, named groups
+                        return null;
+                    }
+                    atoms.add(null);
+                    break;
+
+                case '^':
+                    if (i != 0) {
+                        atoms.add(null);
+                    }
+                    break;
+
+                case '$':
+                    if (i != n - 1) {
+                        atoms.add(null);
+                    }
+                    break;
+
+                case '.':
+                case ')':
+                    atoms.add(null);
+                    break;
+
+                default:
+                    atoms.add(c);
+            }
+        }
+
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < atoms.size() && atoms.get(i) != null; i++) {
+            prefix.append(atoms.get(i).charValue());
+        }
+        StringBuilder suffix = new StringBuilder();
+        for (int i = atoms.size() - 1; i >= 0 && atoms.get(i) != null; i--) {
+            suffix.append(atoms.get(i).charValue());
+        }
+        return new String[] {prefix.toString(), suffix.reverse().toString()};
+    }
+
+    /**
+     * Marks the last atom as non literal, as a quantifier applies to it.
+     *
+     * @param atoms the atoms parsed so far
+     */
+    private static void quantify(List<Character> atoms) {
+        if (!atoms.isEmpty()) {
+            atoms.set(atoms.size() - 1, null);
+        }
+        atoms.add(null);
+    }
+
+    /**
+     * Returns the index of the closing bracket of a character class, taking care of escapes, nested
+     * classes and a leading closing bracket.
+     *
+     * @param regex the regex
+     * @param start index of the opening bracket
+     * @return index of the closing bracket, -1 if none is found
+     */
+    private static int endOfClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                i++;
+                // a ] right after [ or [^ is a literal
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == ']' && --depth == 0) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends an ordinal to the array, growing it if required.
+     *
+     * @param ordinals the array
+     * @param index the index to set
+     * @param ordinal the ordinal
+     * @return the array
+     */
+    private static int[] append(int[] ordinals, int index, int ordinal) {
+        if (index == ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, ordinals.length * 2);
+        }
+        ordinals[index] = ordinal;
+        return ordinals;
+    }
+
+    /**
+     * Tracks a pattern that always needs to be tried.
+     *
+     * @param ordinal the ordinal of the pattern
+     */
+    private void addUnindexed(int ordinal) {
+        mUnindexed = RegexIndex.append(mUnindexed, mUnindexedCount++, ordinal);
+    }
+
+    /** A node in the tries. */
+    private static class Node {
+
+        /** The children indexed by the next character. */
+        private Map<Character, Node> mChildren;
+
+        /** The ordinals of the patterns whose literal ends at this node. */
+        private int[] mOrdinals;
+
+        /** The number of ordinals. */
+        private int mCount;
+
+        /**
+         * Returns the child for a character.
+         *
+         * @param c the character
+         * @return the child, null if none exists
+         */
+        private Node child(char c) {
+            return (mChildren == null) ? null : mChildren.get(c);
+        }
+
+        /**
+         * Adds an ordinal along the path of a literal.
+         *
+         * @param literal the literal
+         * @param reverse whether to walk the literal from the end
+         * @param ordinal the ordinal of the pattern
+         */
+        private void add(String literal, boolean reverse, int ordinal) {
+            Node node = this;
+            int n = literal.length();
+            for (int i = 0; i < n; i++) {
+                char c = literal.charAt(reverse ? n - 1 - i : i);
+                if (node.mChildren == null) {
+                    node.mChildren = new HashMap<Character, Node>(4);
+                }
+                Node next = node.mChildren.get(c);
+                if (next == null) {
+                    next = new Node();
+                    node.mChildren.put(c, next);
+                }
+                node = next;
+            }
+            if (node.mOrdinals == null) {
+                node.mOrdinals = new int[2];
+            }
+            node.mOrdinals = RegexIndex.append(node.mOrdinals, node.mCount++, ordinal);
+        }
+    }
+}
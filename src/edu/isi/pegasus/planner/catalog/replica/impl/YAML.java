@@ -156,7 +156,8 @@ public class YAML implements ReplicaCatalog {
 
     protected Map<String, ReplicaLocation> mLFNRegex = null;
 
-    protected Map<String, Pattern> mLFNPattern = null;
+    /** The index over the compiled patterns of the regex LFNs. */
+    protected RegexIndex mLFNPattern = null;
 
     /** A boolean indicating whether the catalog is read only or not. */
     boolean m_readonly;
@@ -203,7 +204,7 @@ public class YAML implements ReplicaCatalog {
         mFilename = filename;
         mLFN = new LinkedHashMap<String, ReplicaLocation>();
         mLFNRegex = new LinkedHashMap<String, ReplicaLocation>();
-        mLFNPattern = new LinkedHashMap<String, Pattern>();
+        mLFNPattern = new RegexIndex();
 
         File replicaFile = new File(filename);
         // first attempt to validate only if it exists
@@ -413,7 +414,7 @@ public class YAML implements ReplicaCatalog {
         Matcher m = null;
         String pool = null;
         ReplicaCatalogEntry rce = null;
-        for (String l : mLFNRegex.keySet()) {
+        for (String l : mLFNPattern.candidates(lfn)) {
             p = mLFNPattern.get(l);
             m = p.matcher(lfn);
             if (m.matches()) {
@@ -422,11 +423,7 @@ public class YAML implements ReplicaCatalog {
                     pool = entry.getResourceHandle();
                     if (pool == null && handle == null
                             || pool != null && handle != null && pool.equals(handle)) {
-                        String tmpPFN = entry.getPFN();
-                        for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                            // tmpPFN = tmpPFN.replaceAll ("\\$" + k, m.group (k));
-                            tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                        }
+                        String tmpPFN = mLFNPattern.substitute(entry.getPFN(), m);
                         if (tmpPFN.indexOf('[') >= 0) {
                             // PFN still has variables left.
                         }
@@ -471,7 +468,7 @@ public class YAML implements ReplicaCatalog {
         ReplicaCatalogEntry rce = null;
         Pattern p = null;
         Matcher m = null;
-        for (String l : mLFNRegex.keySet()) {
+        for (String l : mLFNPattern.candidates(lfn)) {
             p = mLFNPattern.get(l);
             m = p.matcher(lfn);
             if (m.matches()) {
@@ -479,10 +476,7 @@ public class YAML implements ReplicaCatalog {
                 Collection<ReplicaCatalogEntry> entriesResult =
                         new ArrayList<ReplicaCatalogEntry>();
                 for (ReplicaCatalogEntry entry : entries.getPFNList()) {
-                    String tmpPFN = entry.getPFN();
-                    for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                        tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                    }
+                    String tmpPFN = mLFNPattern.substitute(entry.getPFN(), m);
                     if (tmpPFN.indexOf('[') >= 0) {
                         // PFN still has variables left.
                     }
@@ -616,7 +610,7 @@ public class YAML implements ReplicaCatalog {
                 }
             }
             // Lookup regex LFN's
-            for (String l : mLFNRegex.keySet()) {
+            for (String l : mLFNPattern.candidates(lfn)) {
                 p = mLFNPattern.get(l); // Get one pattern
                 m = p.matcher(lfn); // See if f.a matches pattern
                 if (m.matches()) // Pattern matches?
@@ -628,11 +622,8 @@ public class YAML implements ReplicaCatalog {
                         // Entry matches handle requirement?
                         if (pool == null && handle == null
                                 || pool != null && handle != null && pool.equals(handle)) {
-                            String tmpPFN = entry.getPFN();
                             // Substitute variables in PFN before returning
-                            for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                                tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]", m.group(k));
-                            }
+                            String tmpPFN = mLFNPattern.substitute(entry.getPFN(), m);
                             // Are there unsubstituted variables?
                             if (tmpPFN.indexOf('[') >= 0) {
                                 // PFN still has variables left.
@@ -17,6 +17,7 @@ import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.client.SubWorkflowPlanner;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.mapper.StagingMapper;
 import edu.isi.pegasus.planner.mapper.SubmitMapper;
@@ -38,7 +39,7 @@ public class PegasusBag implements Bag, Cloneable {
         "pegasus-properties", "planner-options", "replica-catalog", "site-catalog",
         "transformation-catalog", "transformation-mapper", "pegasus-logger", "site-store",
         "planner-cache", "worker-package-map", "uses-pmc", "planner-metrics",
-        "submit-mapper", "staging-mapper", "planner-directory"
+        "submit-mapper", "staging-mapper", "planner-directory", "subworkflow-planner"
     };
 
     /** The constant to be passed to the accessor functions to get or set the PegasusProperties. */
@@ -125,6 +126,9 @@ public class PegasusBag implements Bag, Cloneable {
     /** The directory from which the planner is invoked */
     public static final Integer PLANNER_DIRECTORY = 14;
 
+    /** The handle to the planner that plans the sub workflows eagerly */
+    public static final Integer SUBWORKFLOW_PLANNER = 15;
+
     /** The handle to the <code>PegasusProperties</code>. */
     private PegasusProperties mProps;
 
@@ -176,6 +180,9 @@ public class PegasusBag implements Bag, Cloneable {
     /** the directory from which the planner is invoked */
     private File mPlannerDirectory;
 
+    /** the planner for the sub workflows that are planned eagerly */
+    private SubWorkflowPlanner mSubWorkflowPlanner;
+
     /** The default constructor. */
     public PegasusBag() {
         // by default uses PMC is set to false
@@ -277,6 +284,12 @@ public class PegasusBag implements Bag, Cloneable {
                 else valid = false;
                 break;
 
+            case 15: // Sub Workflow Planner
+                if (value != null && value instanceof SubWorkflowPlanner)
+                    mSubWorkflowPlanner = (SubWorkflowPlanner) value;
+                else valid = false;
+                break;
+
             default:
                 throw new RuntimeException(
                         " Wrong Pegasus Bag key. Please use one of the predefined Integer key types");
@@ -367,6 +380,9 @@ public class PegasusBag implements Bag, Cloneable {
             case 14: // Staging Mapper
                 return this.mPlannerDirectory;
 
+            case 15: // Sub Workflow Planner
+                return this.mSubWorkflowPlanner;
+
             default:
                 throw new RuntimeException(
                         " Wrong Pegasus Bag key. Please use one of the predefined Integer key types");
@@ -446,6 +462,15 @@ public class PegasusBag implements Bag, Cloneable {
         return (File) get(PegasusBag.REPLICA_CATALOG_FILE_SOURCE);
     }
 
+    /**
+     * A convenience method to return the planner metrics
+     *
+     * @return the planner metrics else null
+     */
+    public PlannerMetrics getPlannerMetrics() {
+        return (PlannerMetrics) get(PegasusBag.PLANNER_METRICS);
+    }
+
     /**
      * A convenience method to get the handle to the transformation mapper.
      *
@@ -500,6 +525,15 @@ public class PegasusBag implements Bag, Cloneable {
         return (File) get(PegasusBag.PLANNER_DIRECTORY);
     }
 
+    /**
+     * A convenience method to get the planner for the sub workflows that are planned eagerly
+     *
+     * @return the sub workflow planner, else null
+     */
+    public SubWorkflowPlanner getSubWorkflowPlanner() {
+        return (SubWorkflowPlanner) get(PegasusBag.SUBWORKFLOW_PLANNER);
+    }
+
     /**
      * Returns a new copy of the Object. It is only a shallow clone.
      *
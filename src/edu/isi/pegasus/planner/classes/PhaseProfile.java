@@ -0,0 +1,159 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+import java.text.DecimalFormat;
+
+/**
+ * The resources consumed by the planner in a single planning phase. Counters that the JVM does not
+ * support are set to -1.
+ */
+public class PhaseProfile {
+
+    /** The name of the phase. */
+    @Expose
+    @SerializedName("name")
+    private String mName;
+
+    /** The wall time in seconds. */
+    @Expose
+    @SerializedName("wall_time")
+    private double mWallTime;
+
+    /** The CPU time in seconds consumed by the planner process, including GC and worker threads. */
+    @Expose
+    @SerializedName("cpu_time")
+    private double mCPUTime;
+
+    /** The CPU time in seconds consumed by the thread running the phase. */
+    @Expose
+    @SerializedName("thread_cpu_time")
+    private double mThreadCPUTime;
+
+    /**
+     * The bytes allocated on the heap by the threads alive at the end of the phase. Threads that
+     * terminated during the phase are not counted.
+     */
+    @Expose
+    @SerializedName("allocated_bytes")
+    private long mAllocatedBytes;
+
+    /** The peak heap usage in bytes during the phase. */
+    @Expose
+    @SerializedName("peak_heap")
+    private long mPeakHeap;
+
+    /** The heap usage in bytes at the end of the phase. */
+    @Expose
+    @SerializedName("heap_used")
+    private long mHeapUsed;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param name the name of the phase
+     * @param wallTime the wall time in seconds
+     * @param cpuTime the CPU time in seconds consumed by the planner process
+     * @param threadCPUTime the CPU time in seconds consumed by the thread running the phase
+     * @param allocatedBytes the bytes allocated on the heap
+     * @param peakHeap the peak heap usage in bytes
+     * @param heapUsed the heap usage in bytes at the end of the phase
+     */
+    public PhaseProfile(
+            String name,
+            double wallTime,
+            double cpuTime,
+            double threadCPUTime,
+            long allocatedBytes,
+            long peakHeap,
+            long heapUsed) {
+        mName = name;
+        mWallTime = wallTime;
+        mCPUTime = cpuTime;
+        mThreadCPUTime = threadCPUTime;
+        mAllocatedBytes = allocatedBytes;
+        mPeakHeap = peakHeap;
+        mHeapUsed = heapUsed;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public double getWallTime() {
+        return mWallTime;
+    }
+
+    public double getCPUTime() {
+        return mCPUTime;
+    }
+
+    public double getThreadCPUTime() {
+        return mThreadCPUTime;
+    }
+
+    public long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    public long getPeakHeap() {
+        return mPeakHeap;
+    }
+
+    public long getHeapUsed() {
+        return mHeapUsed;
+    }
+
+    /**
+     * Returns a textual description of the object.
+     *
+     * @return the description
+     */
+    public String toString() {
+        DecimalFormat seconds = new DecimalFormat("0.###");
+        StringBuilder sb = new StringBuilder();
+        sb.append(mName).append(" wall=").append(seconds.format(mWallTime)).append("s");
+        if (mCPUTime >= 0) {
+            sb.append(" cpu=").append(seconds.format(mCPUTime)).append("s");
+        }
+        if (mThreadCPUTime >= 0) {
+            sb.append(" thread.cpu=").append(seconds.format(mThreadCPUTime)).append("s");
+        }
+        append(sb, "allocated", mAllocatedBytes);
+        append(sb, "heap.peak", mPeakHeap);
+        append(sb, "heap.used", mHeapUsed);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a counter in bytes as megabytes, if it is supported.
+     *
+     * @param sb the StringBuilder to append to
+     * @param key the name of the counter
+     * @param bytes the value of the counter
+     */
+    private void append(StringBuilder sb, String key, long bytes) {
+        if (bytes >= 0) {
+            sb.append(" ")
+                    .append(key)
+                    .append("=")
+                    .append(new DecimalFormat("0.#").format(bytes / (1024.0 * 1024.0)))
+                    .append("MB");
+        }
+    }
+}
@@ -23,7 +23,9 @@ import edu.isi.pegasus.planner.namespace.Metadata;
 import java.io.File;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -135,6 +137,31 @@ public class PlannerMetrics extends Data {
     @SerializedName("app_metrics")
     private Properties mApplicationMetrics;
 
+    /** The number of LFN's resolved from the persistent replica lookup cache */
+    @Expose
+    @SerializedName("rc_cache_hits")
+    private Long mReplicaLookupCacheHits;
+
+    /** The number of LFN's not found in the persistent replica lookup cache */
+    @Expose
+    @SerializedName("rc_cache_misses")
+    private Long mReplicaLookupCacheMisses;
+
+    /** The makespan in seconds of the workflow as estimated by the HEFT site selector */
+    @Expose
+    @SerializedName("heft_makespan")
+    private Long mHEFTMakespan;
+
+    /** The time in seconds taken by the HEFT site selector to schedule the workflow */
+    @Expose
+    @SerializedName("heft_scheduling_time")
+    private Double mHEFTSchedulingTime;
+
+    /** The resources used by each planning phase, if profiled */
+    @Expose
+    @SerializedName("phases")
+    private List<PhaseProfile> mPhaseProfiles;
+
     /** The error message to be logged */
     @Expose
     @SerializedName("error")
@@ -247,6 +274,94 @@ public class PlannerMetrics extends Data {
         return this.mApplicationMetrics;
     }
 
+    /**
+     * Adds to the hits and misses against the persistent replica lookup cache. The counts are only
+     * serialized if this method has been called.
+     *
+     * @param hits the number of LFN's resolved from the cache
+     * @param misses the number of LFN's that had to be looked up in the replica catalog
+     */
+    public void addReplicaLookupCacheCounts(long hits, long misses) {
+        mReplicaLookupCacheHits =
+                (mReplicaLookupCacheHits == null) ? hits : mReplicaLookupCacheHits + hits;
+        mReplicaLookupCacheMisses =
+                (mReplicaLookupCacheMisses == null) ? misses : mReplicaLookupCacheMisses + misses;
+    }
+
+    /**
+     * Returns the number of LFN's resolved from the persistent replica lookup cache.
+     *
+     * @return the hits, or null if the cache was not used
+     */
+    public Long getReplicaLookupCacheHits() {
+        return mReplicaLookupCacheHits;
+    }
+
+    /**
+     * Returns the number of LFN's not found in the persistent replica lookup cache.
+     *
+     * @return the misses, or null if the cache was not used
+     */
+    public Long getReplicaLookupCacheMisses() {
+        return mReplicaLookupCacheMisses;
+    }
+
+    /**
+     * Adds a workflow scheduled by the HEFT site selector. The makespan is the maximum across all
+     * the calls, while the scheduling time is summed up. The values are only serialized if this
+     * method has been called.
+     *
+     * @param makespan the estimated makespan of the workflow in seconds
+     * @param schedulingTime the time taken to schedule the workflow in seconds
+     */
+    public void addHEFTSchedule(long makespan, double schedulingTime) {
+        mHEFTMakespan = (mHEFTMakespan == null) ? makespan : Math.max(mHEFTMakespan, makespan);
+        mHEFTSchedulingTime =
+                (mHEFTSchedulingTime == null)
+                        ? schedulingTime
+                        : mHEFTSchedulingTime + schedulingTime;
+    }
+
+    /**
+     * Adds the profile of a planning phase. The profiles are only serialized if this method has
+     * been called.
+     *
+     * @param profile the profile of the phase
+     */
+    public void addPhaseProfile(PhaseProfile profile) {
+        if (mPhaseProfiles == null) {
+            mPhaseProfiles = new ArrayList<PhaseProfile>();
+        }
+        mPhaseProfiles.add(profile);
+    }
+
+    /**
+     * Returns the profiles of the planning phases, in the order they were run.
+     *
+     * @return the profiles, or null if the phases were not profiled
+     */
+    public List<PhaseProfile> getPhaseProfiles() {
+        return mPhaseProfiles;
+    }
+
+    /**
+     * Returns the makespan of the workflow as estimated by the HEFT site selector.
+     *
+     * @return the makespan in seconds, or null if the HEFT site selector was not used
+     */
+    public Long getHEFTMakespan() {
+        return mHEFTMakespan;
+    }
+
+    /**
+     * Returns the time taken by the HEFT site selector to schedule the workflow.
+     *
+     * @return the scheduling time in seconds, or null if the HEFT site selector was not used
+     */
+    public Double getHEFTSchedulingTime() {
+        return mHEFTSchedulingTime;
+    }
+
     /**
      * Returns the username.
      *
@@ -648,6 +763,19 @@ public class PlannerMetrics extends Data {
         append(sb, "data.configuration", this.mDataConfiguration);
         append(sb, "root.wf.uuid", this.mRootWorkflowUUID);
         append(sb, "wf.uuid", this.mWorkflowUUID);
+        if (this.mReplicaLookupCacheHits != null) {
+            append(sb, "rc.cache.hits", this.mReplicaLookupCacheHits.toString());
+            append(sb, "rc.cache.misses", this.mReplicaLookupCacheMisses.toString());
+        }
+        if (this.mHEFTMakespan != null) {
+            append(sb, "heft.makespan", this.mHEFTMakespan.toString());
+            append(sb, "heft.scheduling.time", mNumFormatter.format(mHEFTSchedulingTime));
+        }
+        if (this.mPhaseProfiles != null) {
+            for (PhaseProfile profile : this.mPhaseProfiles) {
+                append(sb, "phase", profile.toString());
+            }
+        }
         sb.append(this.getWorkflowMetrics());
         if (this.mApplicationMetrics != null) {
             append(sb, "app.metrics", this.mApplicationMetrics.toString());
@@ -702,6 +830,9 @@ public class PlannerMetrics extends Data {
         if (this.mApplicationMetrics != null) {
             pm.setApplicationMetrics((Properties) this.mApplicationMetrics.clone());
         }
+        if (this.mPhaseProfiles != null) {
+            pm.mPhaseProfiles = new ArrayList<PhaseProfile>(this.mPhaseProfiles);
+        }
         return pm;
     }
 }
@@ -492,6 +492,15 @@ public class PlannerOptions extends Data implements Cloneable {
         mProperties.setProperty(args[0], args[1]);
     }
 
+    /**
+     * Returns the properties passed on the command line.
+     *
+     * @return the properties
+     */
+    public Properties getProperties() {
+        return mProperties;
+    }
+
     /**
      * Returns whether to submit the workflow or not.
      *
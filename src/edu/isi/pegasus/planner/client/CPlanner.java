@@ -45,6 +45,7 @@ import edu.isi.pegasus.planner.code.generator.Braindump;
 import edu.isi.pegasus.planner.common.PegasusConfiguration;
 import edu.isi.pegasus.planner.common.PegasusDBAdmin;
 import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.common.PlannerProfiler;
 import edu.isi.pegasus.planner.common.RunDirectoryFilenameFilter;
 import edu.isi.pegasus.planner.namespace.Dagman;
 import edu.isi.pegasus.planner.namespace.Metadata;
@@ -152,6 +153,12 @@ public class CPlanner extends Executable {
     /** A boolean indicating whether metrics should be sent to metrics server or not */
     private boolean mSendMetrics;
 
+    /** The planner for the sub workflows of the workflow, that are planned eagerly. */
+    private SubWorkflowPlanner mSubWorkflowPlanner;
+
+    /** The planner that planned this workflow eagerly as a sub workflow, else null. */
+    private SubWorkflowPlanner mOuterSubWorkflowPlanner;
+
     /** Default constructor. */
     public CPlanner() {
         this(null);
@@ -168,6 +175,16 @@ public class CPlanner extends Executable {
 
     public void initialize(String[] opts, char confChar) {
         super.initialize(opts, confChar);
+    }
+
+    /**
+     * Initializes the planner with properties that have already been loaded. Used when the planner
+     * is invoked in the same JVM as the planner for the outer level workflow.
+     *
+     * @param properties the properties to use
+     */
+    public void initialize(PegasusProperties properties) {
+        super.initialize(properties);
         mLogMsg = "";
         mVersion = Version.instance().toString();
         mNumFormatter = new DecimalFormat("0000");
@@ -199,7 +216,6 @@ public class CPlanner extends Executable {
         int result = 0;
         Date startDate = new Date();
         Date endDate = null;
-        double starttime = startDate.getTime();
         double duration = -1;
 
         Exception plannerException = null;
@@ -237,29 +253,66 @@ public class CPlanner extends Executable {
             endDate = new Date();
         }
 
+        duration = cPlanner.logMetrics(startDate, endDate, result, plannerException);
+
+        // 2012-03-06 (jsv): Copy dax file to submit directory. It's
+        // MUCH SIMPLER to use the parsed CLI options at this point than
+        // drill open the shell wrapper without messing up everything.
+        if (result == 0) {
+            cPlanner.copyDAXToSubmitDirectory();
+        }
+
+        // warn about non zero exit code
+        if (result != 0) {
+            cPlanner.log(
+                    "Exiting with non-zero exit-code " + result, LogManager.DEBUG_MESSAGE_LEVEL);
+        } else {
+            // log the time taken to execute
+            cPlanner.log(
+                    "Time taken to execute is " + duration + " seconds",
+                    LogManager.CONSOLE_MESSAGE_LEVEL);
+        }
+
+        cPlanner.mLogger.logEventCompletion();
+        System.exit(result);
+    }
+
+    /**
+     * Populates the planner metrics with the end time, duration and exitcode of the planner run,
+     * and writes them out to the metrics file.
+     *
+     * @param startDate the time the planner started
+     * @param endDate the time the planner ended
+     * @param exitcode the exitcode of the planner
+     * @param plannerException the exception encountered during planning, can be null
+     * @return the duration of the planner run in seconds
+     */
+    protected double logMetrics(
+            Date startDate, Date endDate, int exitcode, Exception plannerException) {
+        double duration = -1;
         try {
-            cPlanner.mPMetrics.setEndTime(endDate);
+            mPMetrics.setEndTime(endDate);
             double endtime = endDate.getTime();
-            duration = (endtime - starttime) / 1000;
-            cPlanner.mPMetrics.setDuration(duration);
-            cPlanner.mPMetrics.setExitcode(result);
+            duration = (endtime - startDate.getTime()) / 1000;
+            mPMetrics.setDuration(duration);
+            mPMetrics.setExitcode(exitcode);
 
             if (plannerException != null) {
                 // we want the stack trace to a String Writer.
                 StringWriter sw = new StringWriter();
                 plannerException.printStackTrace(new PrintWriter(sw));
-                cPlanner.mPMetrics.setMetricsTypeToError();
-                cPlanner.mPMetrics.setErrorMessage(sw.toString());
+                mPMetrics.setMetricsTypeToError();
+                mPMetrics.setErrorMessage(sw.toString());
             }
             // lets write out the metrics
-            if (cPlanner.mSendMetrics) {
+            if (mSendMetrics) {
                 edu.isi.pegasus.planner.code.generator.Metrics metrics =
                         new edu.isi.pegasus.planner.code.generator.Metrics();
-                metrics.initialize(cPlanner.mBag);
-                metrics.logMetrics(cPlanner.mPMetrics);
+                metrics.initialize(mBag);
+                metrics.logMetrics(mPMetrics);
             } else {
                 // log
-                cPlanner.log(
+                log(
                         "No metrics logged or sent to the metrics server",
                         LogManager.DEBUG_MESSAGE_LEVEL);
             }
@@ -267,47 +320,66 @@ public class CPlanner extends Executable {
         } catch (Exception e) {
             System.out.println("ERROR while logging metrics " + e.getMessage());
         }
+        return duration;
+    }
 
-        // 2012-03-06 (jsv): Copy dax file to submit directory. It's
-        // MUCH SIMPLER to use the parsed CLI options at this point than
-        // drill open the shell wrapper without messing up everything.
-        if (result == 0) {
-            try {
-                File src_file = new File(cPlanner.mPOptions.getDAX());
-                File dst_file =
-                        new File(cPlanner.mPOptions.getSubmitDirectory(), src_file.getName());
-                if (!dst_file.exists()) dst_file.createNewFile();
+    /** Copies the DAX file to the submit directory. The copy is best effort. */
+    protected void copyDAXToSubmitDirectory() {
+        try {
+            File src_file = new File(mPOptions.getDAX());
+            File dst_file = new File(mPOptions.getSubmitDirectory(), src_file.getName());
+            if (!dst_file.exists()) dst_file.createNewFile();
 
-                FileChannel fc_src = null;
-                FileChannel fc_dst = null;
-                try {
-                    fc_src = new FileInputStream(src_file).getChannel();
-                    fc_dst = new FileOutputStream(dst_file).getChannel();
-                    fc_dst.transferFrom(fc_src, 0, fc_src.size());
-                } finally {
-                    if (fc_src != null) fc_src.close();
-                    if (fc_dst != null) fc_dst.close();
-                }
-            } catch (IOException ieo) {
-                // ignore -- copy is best effort for now
-            } catch (NullPointerException npe) {
-                // also ignore
+            FileChannel fc_src = null;
+            FileChannel fc_dst = null;
+            try {
+                fc_src = new FileInputStream(src_file).getChannel();
+                fc_dst = new FileOutputStream(dst_file).getChannel();
+                fc_dst.transferFrom(fc_src, 0, fc_src.size());
+            } finally {
+                if (fc_src != null) fc_src.close();
+                if (fc_dst != null) fc_dst.close();
             }
+        } catch (IOException ieo) {
+            // ignore -- copy is best effort for now
+        } catch (NullPointerException npe) {
+            // also ignore
         }
+    }
 
-        // warn about non zero exit code
-        if (result != 0) {
-            cPlanner.log(
-                    "Exiting with non-zero exit-code " + result, LogManager.DEBUG_MESSAGE_LEVEL);
-        } else {
-            // log the time taken to execute
-            cPlanner.log(
-                    "Time taken to execute is " + duration + " seconds",
-                    LogManager.CONSOLE_MESSAGE_LEVEL);
+    /**
+     * Plans a sub workflow in the same JVM as the planner for the outer level workflow. Does what
+     * main does for a pegasus-plan invocation, except that errors are thrown instead of being
+     * mapped to an exitcode. Should be called after the planner has been initialized.
+     *
+     * @param options the options for the sub workflow
+     * @param outer the planner that plans the sub workflow eagerly
+     * @throws Exception in case of error while planning
+     */
+    void plan(PlannerOptions options, SubWorkflowPlanner outer) throws Exception {
+        Date startDate = new Date();
+        mOuterSubWorkflowPlanner = outer;
+        mPMetrics.setStartTime(startDate);
+        int result = 0;
+        Exception plannerException = null;
+        try {
+            executeCommand(options);
+        } catch (FactoryException fe) {
+            plannerException = fe;
+            log(fe.convertException(), LogManager.FATAL_MESSAGE_LEVEL);
+            result = 2;
+        } catch (RuntimeException rte) {
+            plannerException = rte;
+            log(convertException(rte, mLogger.getLevel()), LogManager.FATAL_MESSAGE_LEVEL);
+            result = 1;
         }
 
-        cPlanner.mLogger.logEventCompletion();
-        System.exit(result);
+        double duration = logMetrics(startDate, new Date(), result, plannerException);
+        if (result != 0) {
+            throw plannerException;
+        }
+        copyDAXToSubmitDirectory();
+        log("Time taken to execute is " + duration + " seconds", LogManager.CONSOLE_MESSAGE_LEVEL);
     }
 
     /** Loads all the properties that are needed by this class. */
@@ -335,6 +407,7 @@ public class CPlanner extends Executable {
         mBag.add(PegasusBag.PEGASUS_PROPERTIES, mProps);
         mBag.add(PegasusBag.PLANNER_OPTIONS, mPOptions);
         mBag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        mBag.add(PegasusBag.PLANNER_METRICS, mPMetrics);
         // PM-1486 set the planner directory
         mBag.add(PegasusBag.PLANNER_DIRECTORY, new File(System.getProperty("user.dir")));
 
@@ -369,6 +442,17 @@ public class CPlanner extends Executable {
         PegasusConfiguration configurator = new PegasusConfiguration(mLogger);
         configurator.loadConfigurationPropertiesAndOptions(mProps, mPOptions);
 
+        if (mProps.planSubWorkflowsEagerly()) {
+            // the sub workflows are planned in this JVM after the code
+            // for this workflow is generated
+            mSubWorkflowPlanner =
+                    new SubWorkflowPlanner(
+                            mLogger,
+                            mProps.getSubWorkflowPlannerThreads(),
+                            mOuterSubWorkflowPlanner);
+            mBag.add(PegasusBag.SUBWORKFLOW_PLANNER, mSubWorkflowPlanner);
+        }
+
         mLogger.log(
                 "Planner launched in the following directory " + System.getProperty("user.dir"),
                 LogManager.INFO_MESSAGE_LEVEL);
@@ -399,7 +483,14 @@ public class CPlanner extends Executable {
         }
 
         // load the parser and parse the dax
-        ADag orgDag = this.parseDAX(dax, mPOptions, mProps);
+        PlannerProfiler profiler = new PlannerProfiler(mBag);
+        profiler.start("parse");
+        ADag orgDag;
+        try {
+            orgDag = this.parseDAX(dax, mPOptions, mProps);
+        } finally {
+            profiler.stop();
+        }
         mLogger.log(
                 "Parsed DAX with following metrics " + orgDag.getWorkflowMetrics().toJson(),
                 LogManager.DEBUG_MESSAGE_LEVEL);
@@ -629,7 +720,12 @@ public class CPlanner extends Executable {
                     LoggingKeys.DAX_ID,
                     finalDag.getAbstractWorkflowName());
 
-            result = codeGenerator.generateCode(finalDag);
+            profiler.start("code_generation");
+            try {
+                result = codeGenerator.generateCode(finalDag);
+            } finally {
+                profiler.stop();
+            }
 
         } catch (Exception e) {
             throw new RuntimeException("Unable to generate code", e);
@@ -640,6 +736,11 @@ public class CPlanner extends Executable {
             mLogger.logEventCompletion();
         }
 
+        if (mSubWorkflowPlanner != null) {
+            // plan the sub workflows that were not deferred to the prescripts
+            mSubWorkflowPlanner.planAll();
+        }
+
         // PM-1003 update metrics with whether pmc was used or not.
         mPMetrics.setUsesPMC(Braindump.plannerUsedPMC(mBag));
 
@@ -1678,6 +1779,32 @@ public class CPlanner extends Executable {
                     LogManager.DEBUG_MESSAGE_LEVEL);
         }
 
+        // the site catalog may have been parsed already by the planner
+        // for the outer level workflow, when planning sub workflows eagerly
+        SubWorkflowPlanner shared =
+                (mSubWorkflowPlanner == null) ? mOuterSubWorkflowPlanner : mSubWorkflowPlanner;
+        SiteStore parsed =
+                (catalog == null || shared == null)
+                        ? null
+                        : shared.getSiteStore(catalog.getFileSource());
+        if (parsed != null) {
+            mLogger.log(
+                    "Sites loaded from the site catalog parsed earlier " + catalog.getFileSource(),
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            for (Iterator<SiteCatalogEntry> it = parsed.entryIterator(); it.hasNext(); ) {
+                SiteCatalogEntry s = it.next();
+                if (result.lookup(s.getSiteHandle()) == null) {
+                    // PM-1515 prefer entries from DAX SiteStore.
+                    result.addEntry(s);
+                }
+            }
+            try {
+                catalog.close();
+            } catch (Exception e) {
+            }
+            catalog = null;
+        }
+
         if (catalog != null) {
             // PM-1515 make sure catalog was instantiated
             Set<String> toLoad = new HashSet<String>();
@@ -1698,14 +1825,22 @@ public class CPlanner extends Executable {
                     // we need to load all sites into the site store
                     toLoad.addAll(catalog.list());
                 }
+                SiteStore loaded = new SiteStore();
                 for (Iterator<String> it = toLoad.iterator(); it.hasNext(); ) {
                     SiteCatalogEntry s = catalog.lookup(it.next());
+                    if (s != null) {
+                        loaded.addEntry(s);
+                    }
                     if (s != null && result.lookup(s.getSiteHandle()) == null) {
                         // PM-1515 prefer entries from DAX SiteStore.
                         // Only load from catalog if not in DAX SiteStore
                         result.addEntry(s);
                     }
                 }
+                if (shared != null) {
+                    // sites are cloned before the planner updates them
+                    shared.putSiteStore(catalog.getFileSource(), loaded);
+                }
             } catch (SiteCatalogException e) {
                 throw new RuntimeException("Unable to load from site catalog ", e);
             } finally {
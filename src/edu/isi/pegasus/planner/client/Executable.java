@@ -108,7 +108,20 @@ public abstract class Executable {
     protected void initialize(String[] opts, char confChar) {
         this.commandLineOpts = opts;
         String propertyFile = lookupConfProperty(getCommandLineOptions(), confChar);
-        mProps = PegasusProperties.getInstance(propertyFile);
+        initialize(PegasusProperties.getInstance(propertyFile));
+    }
+
+    /**
+     * Initialize the executable object with properties that have already been loaded, for
+     * executables that are invoked in the same JVM as another executable.
+     *
+     * @param properties the properties to use
+     */
+    protected void initialize(PegasusProperties properties) {
+        if (this.commandLineOpts == null) {
+            this.commandLineOpts = new String[0];
+        }
+        mProps = properties;
         mVersion = Version.instance().toString();
         // setup logging before doing anything with properties
         try {
@@ -18,9 +18,11 @@ import edu.isi.pegasus.common.util.Currently;
 import edu.isi.pegasus.common.util.Version;
 import gnu.getopt.*;
 import java.io.*;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.griphyn.vdl.dbschema.*;
 import org.griphyn.vdl.directive.*;
 import org.griphyn.vdl.toolkit.*;
@@ -38,7 +40,7 @@ import org.griphyn.vdl.util.ChimeraProperties;
 public class ExitCode extends Toolkit {
     /** Just a string to denote the short usage. */
     public static final String m_usage1 =
-            "[-d dbprefix | -n | -N] [-e] [-f] [-i] [-v] [-l tag -m ISO] file [..]";
+            "[-d dbprefix | -n | -N] [-e] [-f] [-i] [-v] [-l tag -m ISO] [-b n [-t n]] file [..]";
 
     /** ctor: Constructs a new instance object with the given application name. */
     public ExitCode(String appName) {
@@ -79,6 +81,10 @@ public class ExitCode extends Toolkit {
                         + linefeed
                         + "                 Options -l and -m must be used in conjunction!"
                         + linefeed
+                        + " -b|--batch n    parse all files, adding n records per database transaction."
+                        + linefeed
+                        + " -t|--threads n  parse files with n threads in batch mode, default is 1."
+                        + linefeed
                         + linefeed
                         + "The following exit codes are returned (except in -i mode):"
                         + linefeed
@@ -104,7 +110,7 @@ public class ExitCode extends Toolkit {
 
     /** Creates a set of options. */
     protected LongOpt[] generateValidOptions() {
-        LongOpt[] lo = new LongOpt[11];
+        LongOpt[] lo = new LongOpt[13];
 
         lo[0] = new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h');
         lo[1] = new LongOpt("dbase", LongOpt.REQUIRED_ARGUMENT, null, 'd');
@@ -119,6 +125,8 @@ public class ExitCode extends Toolkit {
         lo[8] = new LongOpt("fail", LongOpt.NO_ARGUMENT, null, 'f');
         lo[9] = new LongOpt("label", LongOpt.REQUIRED_ARGUMENT, null, 'l');
         lo[10] = new LongOpt("mtime", LongOpt.REQUIRED_ARGUMENT, null, 'm');
+        lo[11] = new LongOpt("batch", LongOpt.REQUIRED_ARGUMENT, null, 'b');
+        lo[12] = new LongOpt("threads", LongOpt.REQUIRED_ARGUMENT, null, 't');
 
         return lo;
     }
@@ -144,6 +152,8 @@ public class ExitCode extends Toolkit {
         String wf_label = null;
         Date wf_mtime = null;
         int wf_flag = 0;
+        int batch = 0;
+        int threads = 1;
 
         try {
             me = new ExitCode("exitcode");
@@ -154,7 +164,11 @@ public class ExitCode extends Toolkit {
 
             // get the commandline options
             Getopt opts =
-                    new Getopt(me.m_application, args, "d:hefil:m:nNvV", me.generateValidOptions());
+                    new Getopt(
+                            me.m_application,
+                            args,
+                            "b:d:hefil:m:nNt:vV",
+                            me.generateValidOptions());
             opts.setOpterr(false);
             int option = 0;
             while ((option = opts.getopt()) != -1) {
@@ -164,6 +178,10 @@ public class ExitCode extends Toolkit {
                         System.out.println("VDS version " + Version.instance().toString());
                         return;
 
+                    case 'b':
+                        batch = Integer.parseInt(opts.getOptarg());
+                        break;
+
                     case 'd':
                         // currently inactive option
                         opts.getOptarg();
@@ -200,6 +218,10 @@ public class ExitCode extends Toolkit {
                         ignoreDBFail = true;
                         break;
 
+                    case 't':
+                        threads = Integer.parseInt(opts.getOptarg());
+                        break;
+
                     case 'v':
                         verbose = me.increaseVerbosity();
                         break;
@@ -281,9 +303,18 @@ public class ExitCode extends Toolkit {
             pks.setWorkflowTimestamp(wf_mtime); // null ok
             dbschema = null; // decrease reference counter
 
+            // in batch mode, parse all files at once
+            Map batched = null;
+            if (batch > 0) {
+                pks.setCommitSize(batch);
+                pks.setThreads(threads);
+                batched =
+                        pks.parseFiles(Arrays.asList(args).subList(opts.getOptind(), args.length));
+            }
+
             // for all files specified
             for (int i = opts.getOptind(); i < args.length; ++i) {
-                List l = pks.parseFile(args[i]);
+                List l = (batched == null) ? pks.parseFile(args[i]) : (List) batched.get(args[i]);
 
                 // determine result code
                 if (failOver) {
@@ -0,0 +1,431 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.client;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.Version;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plans the sub workflows referred to by the DAX jobs in a workflow eagerly, at the time the outer
+ * level workflow is planned, instead of in the pegasus-plan prescripts of the corresponding DAG
+ * jobs. The SUBDAX generator registers a plan for each DAX job that can be planned up-front, and
+ * the planner plans them once the code for the outer level workflow has been generated.
+ *
+ * <p>With a single thread, the sub workflows are planned one after the other in the same JVM as the
+ * planner for the outer level workflow. The site catalog is then parsed once, and each sub workflow
+ * planner is handed a clone of the parsed site catalog entries. The planners for nested sub
+ * workflows share the parsed catalogs with the planner for the outer level workflow. The planner is
+ * not safe to run concurrently in a JVM, as it relies on a singleton logger and on static state.
+ * With more than one thread, each sub workflow is therefore planned in a JVM of its own, in the
+ * same manner as the prescript would, and these JVMs run concurrently.
+ */
+public class SubWorkflowPlanner {
+
+    /** The logger to use. */
+    private final LogManager mLogger;
+
+    /** The number of threads to plan the sub workflows with. */
+    private final int mThreads;
+
+    /** The plans registered so far. */
+    private final List<Plan> mPlans;
+
+    /** The parsed site catalogs, indexed by the path, size and modification time of the source. */
+    private final Map<String, SiteStore> mSiteStores;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param logger the logger to use
+     * @param threads the number of threads to plan the sub workflows with
+     */
+    public SubWorkflowPlanner(LogManager logger, int threads) {
+        this(logger, threads, null);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param logger the logger to use
+     * @param threads the number of threads to plan the sub workflows with
+     * @param outer the planner that planned the workflow containing the DAX jobs, whose parsed
+     *     catalogs are shared. Can be null.
+     */
+    public SubWorkflowPlanner(LogManager logger, int threads, SubWorkflowPlanner outer) {
+        mLogger = logger;
+        mThreads = (threads < 1) ? 1 : threads;
+        mPlans = new LinkedList<Plan>();
+        mSiteStores =
+                (outer == null) ? new ConcurrentHashMap<String, SiteStore>() : outer.mSiteStores;
+    }
+
+    /**
+     * Registers a sub workflow to be planned.
+     *
+     * @param jobID the id of the DAX job
+     * @param options the options with which the sub workflow is to be planned
+     * @param rootUUID the root workflow uuid
+     * @param properties the properties file to use, if the options do not specify one
+     * @param log the log file for the planner output
+     */
+    public void register(
+            String jobID, PlannerOptions options, String rootUUID, String properties, String log) {
+        mPlans.add(new Plan(jobID, options, rootUUID, properties, log));
+    }
+
+    /**
+     * Returns the number of sub workflows registered.
+     *
+     * @return the number of plans
+     */
+    public int size() {
+        return mPlans.size();
+    }
+
+    /**
+     * Returns a copy of the site catalog entries parsed earlier from a site catalog.
+     *
+     * @param source the site catalog file
+     * @return the site store if the catalog was parsed earlier and has not changed since, else null
+     */
+    public SiteStore getSiteStore(File source) {
+        String key = key(source);
+        SiteStore store = (key == null) ? null : mSiteStores.get(key);
+        return (store == null) ? null : (SiteStore) store.clone();
+    }
+
+    /**
+     * Stores a copy of the site catalog entries parsed from a site catalog.
+     *
+     * @param source the site catalog file
+     * @param store the site catalog entries
+     */
+    public void putSiteStore(File source, SiteStore store) {
+        String key = key(source);
+        if (key != null) {
+            mSiteStores.put(key, (SiteStore) store.clone());
+        }
+    }
+
+    /**
+     * Plans all the sub workflows registered, and waits for them to complete.
+     *
+     * @throws RuntimeException if planning any of the sub workflows fails.
+     */
+    public void planAll() {
+        if (mPlans.isEmpty()) {
+            return;
+        }
+        try {
+            if (mThreads == 1 || mPlans.size() == 1) {
+                mLogger.log(
+                        "Planning " + mPlans.size() + " sub workflows eagerly in the planner JVM",
+                        LogManager.INFO_MESSAGE_LEVEL);
+                for (Plan plan : mPlans) {
+                    try {
+                        plan(plan);
+                    } catch (Exception e) {
+                        throw failed(plan, e);
+                    }
+                    mLogger.log(
+                            "Planned the sub workflow for DAX job " + plan.mJobID,
+                            LogManager.DEBUG_MESSAGE_LEVEL);
+                }
+            } else {
+                planInJVMs(Math.min(mThreads, mPlans.size()));
+            }
+        } finally {
+            mPlans.clear();
+        }
+    }
+
+    /**
+     * Plans all the sub workflows registered concurrently, each in a JVM of its own, and waits for
+     * them to complete.
+     *
+     * @param threads the number of sub workflows to plan at a time
+     * @throws RuntimeException if planning any of the sub workflows fails.
+     */
+    private void planInJVMs(int threads) {
+        mLogger.log(
+                "Planning "
+                        + mPlans.size()
+                        + " sub workflows eagerly in separate JVMs, "
+                        + threads
+                        + " at a time",
+                LogManager.INFO_MESSAGE_LEVEL);
+
+        ExecutorService pool =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            private final AtomicInteger mCount = new AtomicInteger(0);
+
+                            public Thread newThread(Runnable r) {
+                                Thread t =
+                                        new Thread(
+                                                r,
+                                                "pegasus-subwf-planner-"
+                                                        + mCount.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+        List<Future<?>> futures = new ArrayList<Future<?>>(mPlans.size());
+        try {
+            for (final Plan plan : mPlans) {
+                futures.add(
+                        pool.submit(
+                                new Callable<Void>() {
+                                    public Void call() throws Exception {
+                                        planInJVM(plan);
+                                        return null;
+                                    }
+                                }));
+            }
+
+            // errors are reported in the order in which the sub workflows were registered
+            int i = 0;
+            for (Plan plan : mPlans) {
+                try {
+                    futures.get(i++).get();
+                } catch (ExecutionException e) {
+                    throw failed(plan, e.getCause());
+                }
+                mLogger.log(
+                        "Planned the sub workflow for DAX job " + plan.mJobID,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while planning the sub workflows", ie);
+        } finally {
+            // interrupts the threads still waiting for their planners, which kill them
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plans a single sub workflow with its own planner and logger, in this JVM.
+     *
+     * @param plan the plan
+     * @throws Exception in case of error while planning
+     */
+    private void plan(Plan plan) throws Exception {
+        PlannerOptions options = plan.mOptions;
+
+        // PM-667 the dax jobs can have a conf option specified
+        String conf = (options.getConfFile() == null) ? plan.mProperties : options.getConfFile();
+        PegasusProperties properties = PegasusProperties.getInstance(conf);
+        // the properties that are passed as jvm options to the prescript
+        properties.setProperty(PegasusProperties.ROOT_WORKFLOW_UUID_PROPERTY_KEY, plan.mRootUUID);
+        Properties jvmOptions = options.getProperties();
+        for (String key : jvmOptions.stringPropertyNames()) {
+            properties.setProperty(key, jvmOptions.getProperty(key));
+        }
+
+        LogManager logger = LogManagerFactory.loadNonSingletonInstance(properties);
+        logger.setWriters(backupFile(plan.mLog).getAbsolutePath());
+        logger.logEventStart(
+                "event.pegasus.planner", "planner.version", Version.instance().toString());
+        try {
+            CPlanner planner = new CPlanner(logger);
+            planner.initialize(properties);
+            planner.plan(options, this);
+        } finally {
+            logger.logEventCompletion();
+            logger.close();
+        }
+    }
+
+    /**
+     * Plans a single sub workflow in a JVM of its own, with the same arguments as the pegasus-plan
+     * prescript. The output of the planner is written to the log file for the prescript.
+     *
+     * @param plan the plan
+     * @throws Exception in case of error while planning
+     */
+    private void planInJVM(Plan plan) throws Exception {
+        PlannerOptions options = plan.mOptions;
+        List<String> command = new ArrayList<String>();
+        command.add(
+                new File(new File(System.getProperty("java.home"), "bin"), "java")
+                        .getAbsolutePath());
+        // the heap settings and the install locations that pegasus-plan passed to this JVM
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-Xmx") || arg.startsWith("-Xms") || arg.startsWith("-Xss")) {
+                command.add(arg);
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("pegasus.home.")) {
+                command.add("-D" + key + "=" + System.getProperty(key));
+            }
+        }
+        command.add(
+                "-D" + PegasusProperties.ROOT_WORKFLOW_UUID_PROPERTY_KEY + "=" + plan.mRootUUID);
+        addArguments(command, options.toJVMOptions());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CPlanner.class.getName());
+
+        // PM-667 the dax jobs can have a conf option specified
+        if (options.getConfFile() == null) {
+            command.add("--conf");
+            command.add(plan.mProperties);
+        }
+        addArguments(command, options.toOptions());
+        command.add(options.getDAX());
+
+        File log = backupFile(plan.mLog);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(log);
+        Process p = builder.start();
+        int status;
+        try {
+            status = p.waitFor();
+        } catch (InterruptedException ie) {
+            p.destroy();
+            throw ie;
+        }
+        if (status != 0) {
+            throw new RuntimeException("The planner exited with status " + status);
+        }
+    }
+
+    /**
+     * Adds the whitespace separated arguments in a string to a command.
+     *
+     * @param command the command
+     * @param arguments the arguments
+     */
+    private void addArguments(List<String> command, String arguments) {
+        for (String arg : arguments.trim().split("\\s+")) {
+            if (arg.length() > 0) {
+                command.add(arg);
+            }
+        }
+    }
+
+    /**
+     * Returns the exception to throw when planning a sub workflow fails.
+     *
+     * @param plan the plan
+     * @param cause the cause
+     * @return the exception
+     */
+    private RuntimeException failed(Plan plan, Throwable cause) {
+        return new RuntimeException(
+                "Unable to plan the sub workflow for DAX job "
+                        + plan.mJobID
+                        + " . The planner output is in "
+                        + plan.mLog,
+                cause);
+    }
+
+    /**
+     * Returns the backup file to log to for a log file, in the same manner as pegasus-plan.
+     *
+     * @param log the log file
+     * @return the first backup file that does not exist
+     */
+    private File backupFile(String log) {
+        File f = new File(log);
+        File dir = f.getParentFile();
+        NumberFormat formatter = new DecimalFormat("000");
+        File backup = null;
+        for (int i = 0; i < 999; i++) {
+            backup = new File(dir, f.getName() + "." + formatter.format(i));
+            if (!backup.exists()) {
+                break;
+            }
+        }
+        return backup;
+    }
+
+    /**
+     * Returns the key for a site catalog file
+     *
+     * @param source the site catalog file
+     * @return the key, else null if the file does not exist
+     */
+    private String key(File source) {
+        if (source == null || !source.isFile()) {
+            return null;
+        }
+        return source.getAbsolutePath() + ":" + source.length() + ":" + source.lastModified();
+    }
+
+    /** A sub workflow to be planned. */
+    private static class Plan {
+
+        /** The id of the DAX job. */
+        private final String mJobID;
+
+        /** The options for the sub workflow. */
+        private final PlannerOptions mOptions;
+
+        /** The root workflow uuid. */
+        private final String mRootUUID;
+
+        /** The properties file. */
+        private final String mProperties;
+
+        /** The log file for the planner. */
+        private final String mLog;
+
+        public Plan(
+                String jobID,
+                PlannerOptions options,
+                String rootUUID,
+                String properties,
+                String log) {
+            mJobID = jobID;
+            mOptions = options;
+            mRootUUID = rootUUID;
+            mProperties = properties;
+            mLog = log;
+        }
+    }
+}
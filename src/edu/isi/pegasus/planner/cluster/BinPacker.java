@@ -0,0 +1,390 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Packs items with pre-computed runtimes into bins, for runtime based horizontal clustering. The
+ * items are ordered once in decreasing order of their runtimes, and are then placed
+ *
+ * <pre>
+ *   1) into bins of a fixed capacity using best fit decreasing. The open bins are kept in a
+ *      balanced tree ordered by their remaining capacity, so that the tightest bin that can
+ *      accommodate an item is found in logarithmic time.
+ *   2) into a fixed number of bins using longest processing time first. The bins are kept in a
+ *      heap ordered by their load, so that each item is placed in the least loaded bin in
+ *      logarithmic time.
+ * </pre>
+ *
+ * Ties are broken by the order in which the items were passed and the bins were opened, so that the
+ * packing is deterministic. The bins are returned in the order in which they were opened.
+ *
+ * @param <T> the type of the items packed
+ */
+public class BinPacker<T> {
+
+    /** The items to be packed. */
+    private final List<T> mItems;
+
+    /** The runtimes of the items, indexed by the position of the item. */
+    private final double[] mRuntimes;
+
+    /** The statistics of the last packing. */
+    private Statistics mStatistics;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param items the items to be packed
+     * @param runtimes the runtimes of the items, in the same order as the items
+     */
+    public BinPacker(List<T> items, double[] runtimes) {
+        if (items.size() != runtimes.length) {
+            throw new IllegalArgumentException(
+                    "Number of runtimes "
+                            + runtimes.length
+                            + " does not match the number of items "
+                            + items.size());
+        }
+        mItems = (items instanceof java.util.RandomAccess) ? items : new ArrayList<T>(items);
+        mRuntimes = runtimes;
+    }
+
+    /**
+     * Packs the items into bins such that the sum of the runtimes of the items in a bin does not
+     * exceed the capacity. Items whose runtime exceeds the capacity are not placed in any bin, and
+     * are returned by {@link #getUnpacked()}.
+     *
+     * @param capacity the capacity of each bin
+     * @return the bins, in the order in which they were opened
+     */
+    public List<List<T>> packByCapacity(double capacity) {
+        Integer[] order = this.decreasingOrder();
+        List<Bin> bins = new ArrayList<Bin>();
+
+        // the open bins ordered by their remaining capacity, and then by the order they were opened
+        TreeSet<Bin> open =
+                new TreeSet<Bin>(
+                        new Comparator<Bin>() {
+                            public int compare(Bin b1, Bin b2) {
+                                int result = Double.compare(b1.remaining(), b2.remaining());
+                                return (result == 0)
+                                        ? Integer.compare(b1.mIndex, b2.mIndex)
+                                        : result;
+                            }
+                        });
+        // the smallest runtime of all items, as a bin that cannot accommodate it can be closed
+        double smallest = (order.length == 0) ? 0 : mRuntimes[order[order.length - 1]];
+        Bin probe = new Bin(-1, capacity);
+        for (int i : order) {
+            double runtime = mRuntimes[i];
+            if (runtime > capacity) {
+                continue;
+            }
+            // the tightest open bin with a remaining capacity of at least the runtime
+            probe.mLoad = capacity - runtime;
+            Bin bin = open.ceiling(probe);
+            if (bin == null) {
+                bin = new Bin(bins.size(), capacity);
+                bins.add(bin);
+            } else {
+                open.remove(bin);
+            }
+            bin.add(i, runtime);
+            if (bin.remaining() >= smallest) {
+                open.add(bin);
+            }
+        }
+        return this.toLists(bins, capacity);
+    }
+
+    /**
+     * Packs the items into a fixed number of bins, balancing the sum of the runtimes of the items
+     * in each bin. If there are fewer items than bins, one bin is created per item.
+     *
+     * @param count the number of bins, at least one
+     * @return the bins, in the order in which they were opened
+     */
+    public List<List<T>> packByCount(int count) {
+        Integer[] order = this.decreasingOrder();
+        count = Math.min(Math.max(count, 1), order.length);
+        List<Bin> bins = new ArrayList<Bin>(count);
+        PriorityQueue<Bin> heap =
+                new PriorityQueue<Bin>(
+                        Math.max(count, 1),
+                        new Comparator<Bin>() {
+                            public int compare(Bin b1, Bin b2) {
+                                int result = Double.compare(b1.mLoad, b2.mLoad);
+                                return (result == 0)
+                                        ? Integer.compare(b1.mIndex, b2.mIndex)
+                                        : result;
+                            }
+                        });
+        for (int i = 0; i < count; i++) {
+            Bin bin = new Bin(i, Double.POSITIVE_INFINITY);
+            bins.add(bin);
+            heap.add(bin);
+        }
+        for (int i : order) {
+            Bin bin = heap.poll();
+            bin.add(i, mRuntimes[i]);
+            heap.add(bin);
+        }
+        return this.toLists(bins, Double.NaN);
+    }
+
+    /**
+     * Returns the items that were not placed in any bin by the last packing, as their runtime
+     * exceeded the capacity of the bins.
+     *
+     * @return the items not packed, in the order they were passed
+     */
+    public List<T> getUnpacked() {
+        List<T> result = new ArrayList<T>();
+        if (mStatistics == null || mStatistics.getUnpacked() == 0) {
+            return result;
+        }
+        for (int i = 0; i < mRuntimes.length; i++) {
+            if (mRuntimes[i] > mStatistics.mCapacity) {
+                result.add(mItems.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the statistics of the last packing.
+     *
+     * @return the statistics, else null if no packing was done
+     */
+    public Statistics getStatistics() {
+        return mStatistics;
+    }
+
+    /**
+     * Returns the positions of the items in decreasing order of their runtimes. Items with the same
+     * runtime retain the order they were passed in.
+     *
+     * @return the positions
+     */
+    private Integer[] decreasingOrder() {
+        Integer[] order = new Integer[mRuntimes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(
+                order,
+                new Comparator<Integer>() {
+                    public int compare(Integer i1, Integer i2) {
+                        return Double.compare(mRuntimes[i2], mRuntimes[i1]);
+                    }
+                });
+        return order;
+    }
+
+    /**
+     * Converts the bins to lists of items, and computes the statistics of the packing.
+     *
+     * @param bins the bins
+     * @param capacity the capacity of the bins, NaN if the number of bins was fixed
+     * @return the lists of items in each bin
+     */
+    private List<List<T>> toLists(List<Bin> bins, double capacity) {
+        List<List<T>> result = new ArrayList<List<T>>(bins.size());
+        double[] loads = new double[bins.size()];
+        int packed = 0;
+        for (Bin bin : bins) {
+            List<T> items = new ArrayList<T>(bin.mSize);
+            for (int j = 0; j < bin.mSize; j++) {
+                items.add(mItems.get(bin.mItems[j]));
+            }
+            result.add(items);
+            loads[bin.mIndex] = bin.mLoad;
+            packed += bin.mSize;
+        }
+        mStatistics = new Statistics(loads, capacity, mRuntimes.length - packed);
+        return result;
+    }
+
+    /** A bin holding the positions of the items placed in it. */
+    private static class Bin {
+
+        /** The order in which the bin was opened. */
+        private final int mIndex;
+
+        /** The capacity of the bin. */
+        private final double mCapacity;
+
+        /** The sum of the runtimes of the items in the bin. */
+        private double mLoad;
+
+        /** The positions of the items in the bin. */
+        private int[] mItems;
+
+        /** The number of items in the bin. */
+        private int mSize;
+
+        public Bin(int index, double capacity) {
+            mIndex = index;
+            mCapacity = capacity;
+            mLoad = 0;
+            mItems = new int[4];
+            mSize = 0;
+        }
+
+        public void add(int item, double runtime) {
+            if (mSize == mItems.length) {
+                mItems = Arrays.copyOf(mItems, mSize * 2);
+            }
+            mItems[mSize++] = item;
+            mLoad += runtime;
+        }
+
+        public double remaining() {
+            return mCapacity - mLoad;
+        }
+    }
+
+    /** The statistics describing how evenly the runtimes are spread across the bins. */
+    public static class Statistics {
+
+        /** The number of bins. */
+        private final int mBins;
+
+        /** The capacity of the bins, NaN if the number of bins was fixed. */
+        private final double mCapacity;
+
+        /** The number of items not placed in any bin. */
+        private final int mUnpacked;
+
+        /** The smallest load of a bin. */
+        private final double mMin;
+
+        /** The largest load of a bin. */
+        private final double mMax;
+
+        /** The mean load of the bins. */
+        private final double mMean;
+
+        /** The standard deviation of the load of the bins. */
+        private final double mStdDev;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param loads the sum of the runtimes of the items in each bin
+         * @param capacity the capacity of the bins, NaN if the number of bins was fixed
+         * @param unpacked the number of items not placed in any bin
+         */
+        public Statistics(double[] loads, double capacity, int unpacked) {
+            mBins = loads.length;
+            mCapacity = capacity;
+            mUnpacked = unpacked;
+            double min = (mBins == 0) ? 0 : Double.MAX_VALUE;
+            double max = 0;
+            double sum = 0;
+            for (double load : loads) {
+                min = Math.min(min, load);
+                max = Math.max(max, load);
+                sum += load;
+            }
+            mMin = min;
+            mMax = max;
+            mMean = (mBins == 0) ? 0 : sum / mBins;
+            double squares = 0;
+            for (double load : loads) {
+                squares += (load - mMean) * (load - mMean);
+            }
+            mStdDev = (mBins == 0) ? 0 : Math.sqrt(squares / mBins);
+        }
+
+        public int getBins() {
+            return mBins;
+        }
+
+        public int getUnpacked() {
+            return mUnpacked;
+        }
+
+        public double getMin() {
+            return mMin;
+        }
+
+        public double getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mMean;
+        }
+
+        public double getStandardDeviation() {
+            return mStdDev;
+        }
+
+        /**
+         * Returns the ratio of the largest load to the mean load. A perfectly balanced packing has
+         * an imbalance of 1.
+         *
+         * @return the imbalance
+         */
+        public double getImbalance() {
+            return (mMean == 0) ? 1 : mMax / mMean;
+        }
+
+        /**
+         * Returns the fraction of the total capacity of the bins that is used.
+         *
+         * @return the utilization, NaN if the number of bins was fixed
+         */
+        public double getUtilization() {
+            return (mBins == 0 || Double.isNaN(mCapacity)) ? Double.NaN : mMean / mCapacity;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("bins=")
+                    .append(mBins)
+                    .append(" min=")
+                    .append(format(mMin))
+                    .append(" max=")
+                    .append(format(mMax))
+                    .append(" mean=")
+                    .append(format(mMean))
+                    .append(" stddev=")
+                    .append(format(mStdDev))
+                    .append(" imbalance=")
+                    .append(format(getImbalance()));
+            if (!Double.isNaN(mCapacity)) {
+                sb.append(" utilization=").append(format(getUtilization()));
+            }
+            if (mUnpacked > 0) {
+                sb.append(" unpacked=").append(mUnpacked);
+            }
+            return sb.toString();
+        }
+
+        private static String format(double value) {
+            return String.format("%.2f", value);
+        }
+    }
+}
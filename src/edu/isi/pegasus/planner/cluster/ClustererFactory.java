@@ -83,6 +83,11 @@ public class ClustererFactory {
             throw new ClustererFactoryException(
                     "No matching partitioner found for clustering technique " + clusterer);
         }
+        if (properties.streamLabelPartitions()
+                && partitionerClass.equals(PartitionerFactory.LABEL_BASED_PARTITIONING_CLASS)) {
+            // hand off the label based partitions to the clusterer as they complete
+            partitionerClass = PartitionerFactory.STREAMING_LABEL_BASED_PARTITIONING_CLASS;
+        }
 
         // now load the partitioner
         Partitioner partitioner = null;
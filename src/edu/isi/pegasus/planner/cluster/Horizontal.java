@@ -323,8 +323,6 @@ public class Horizontal
                                     + cFactor[2],
                             LogManager.DEBUG_MESSAGE_LEVEL);
 
-                    Collections.sort(l, getBinPackingComparator());
-
                     mLogger.log(
                             "Job Type: "
                                     + ((Job) l.get(0)).getCompleteTCName()
@@ -357,7 +355,6 @@ public class Horizontal
                             "Clustering into fixed number of bins " + clusterNum,
                             LogManager.DEBUG_MESSAGE_LEVEL);
 
-                    Collections.sort(l, getBinPackingComparator());
                     bins = bestFitBinPack(l, clusterNum);
                 }
 
@@ -456,159 +453,101 @@ public class Horizontal
     }
 
     /**
-     * Perform best fit bin packing.
+     * Perform best fit decreasing bin packing.
      *
-     * @param jobs List of jobs sorted in decreasing order of the job runtime.
+     * @param jobs List of jobs to be clustered.
      * @param maxTime The maximum time for which the clustered job should run.
      * @return List of List of Jobs where each List <Job> is the set of jobs which should be
-     *     clustered together so as to run in under maxTime.
+     *     clustered together so as to run in under maxTime. Jobs whose runtime exceeds maxTime are
+     *     not clustered.
      */
     private List<List<Job>> bestFitBinPack(List<Job> jobs, double maxTime) {
+        BinPacker<Job> packer = new BinPacker<Job>(jobs, getRunTimes(jobs));
+        List<List<Job>> bins = packer.packByCapacity(maxTime);
 
-        List<List<Job>> bins = new LinkedList<List<Job>>();
-        List<List<Job>> returnBins = new LinkedList<List<Job>>();
-        List<Double> binTime = new LinkedList<Double>();
-        double minJobRunTime = Double.MAX_VALUE;
-
-        if (jobs != null && jobs.size() > 0) {
-            minJobRunTime = Double.parseDouble(getRunTime(jobs.get(jobs.size() - 1)));
-        }
-
-        for (Job j : jobs) {
-            List<Job> bin;
-            double currentBinTime;
-            boolean isBreak = false;
-            double jobRunTime = Double.parseDouble(getRunTime(j));
-
+        for (Job j : packer.getUnpacked()) {
             mLogger.log(
-                    "Job " + j.getID() + " runtime " + jobRunTime, LogManager.DEBUG_MESSAGE_LEVEL);
-
-            // Create first bin.
-            if (bins.size() == 0) {
-                bins.add(new LinkedList<Job>());
-                binTime.add(0, 0d);
-            }
-
-            // Loop through each job.
-            for (int i = 0, k = bins.size(); i < k; ++i) {
-                currentBinTime = binTime.get(i);
-
-                // Is the job runtime greater than the max allowed runtime? Then
-                // do not cluster this job.
-                if (maxTime < jobRunTime) {
-                    mLogger.log(
-                            "Job "
-                                    + j.getID()
-                                    + " runtime "
-                                    + jobRunTime
-                                    + " is greater than clusters max run time "
-                                    + maxTime
-                                    + " specified by the Pegasus profile "
-                                    + Pegasus.MAX_RUN_TIME,
-                            LogManager.DEBUG_MESSAGE_LEVEL);
-                    break;
-                }
-
-                // Can we fit the job in an existing bin?
-                if (maxTime >= currentBinTime + jobRunTime) {
-                    bin = bins.get(i);
-                    bin.add(j);
-                    binTime.set(i, currentBinTime + jobRunTime);
-                    isBreak = true;
-                } else if (i == k - 1) {
-                    // We cannot fit the job in any of the open bins, so create
-                    // a new one.
-                    bin = new LinkedList<Job>();
-                    bin.add(j);
-                    bins.add(bin);
-                    binTime.add(binTime.size(), jobRunTime);
-                }
-
-                // Either this bin is full, or it does not even have space to
-                // fit the job with the smallest run time. So lets avoid trying
-                // to fit jobs in this bin.
-                if (binTime.get(i) + minJobRunTime > maxTime) {
-                    returnBins.add(bins.remove(i));
-                    binTime.remove(i);
-                }
-
-                // Job has been assigned a bin, no need to check other bins for
-                // space.
-                if (isBreak) break;
-            }
+                    "Job "
+                            + j.getID()
+                            + " runtime "
+                            + getRunTime(j)
+                            + " is greater than clusters max run time "
+                            + maxTime
+                            + " specified by the Pegasus profile "
+                            + Pegasus.MAX_RUN_TIME,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
         }
-
-        returnBins.addAll(bins);
-        return returnBins;
+        logStatistics(jobs, packer.getStatistics());
+        return bins;
     }
 
     /**
-     * Perform best fit bin packing.
+     * Perform bin packing into a fixed number of bins, placing the jobs in decreasing order of
+     * their runtimes into the bin with the shortest combined runtime.
      *
-     * @param jobs List of jobs sorted in decreasing order of the job runtime.
+     * @param jobs List of jobs to be clustered.
      * @param maxBins The fixed-number of bins taht should be created
      * @return List of List of Jobs where each List <Job> is the set of jobs which should be
-     *     clustered together so as to run in under maxTime.
+     *     clustered together.
      */
     private List<List<Job>> bestFitBinPack(List<Job> jobs, int maxBins) {
+        BinPacker<Job> packer = new BinPacker<Job>(jobs, getRunTimes(jobs));
+        List<List<Job>> bins = packer.packByCount(maxBins);
+        logStatistics(jobs, packer.getStatistics());
+        return bins;
+    }
 
-        class Bin {
-            private List<Job> bin = new LinkedList<Job>();
-            private double time = 0;
-
-            public void addJob(Job j) {
-                bin.add(j);
-                double jobRunTime = Double.parseDouble(getRunTime(j));
-                time += jobRunTime;
-            }
-
-            public List<Job> getJobs() {
-                return bin;
+    /**
+     * Returns the runtimes of the jobs, parsed once from the runtime profile of each job.
+     *
+     * @param jobs the jobs
+     * @return the runtimes in the same order as the jobs
+     */
+    private double[] getRunTimes(List<Job> jobs) {
+        double[] runtimes = new double[jobs.size()];
+        boolean debug = mLogger.getLevel() >= LogManager.DEBUG_MESSAGE_LEVEL;
+        int i = 0;
+        for (Job j : jobs) {
+            String runtime = getRunTime(j);
+            try {
+                runtimes[i++] = Double.parseDouble(runtime);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(
+                        "Profile Key: "
+                                + Pegasus.RUNTIME_KEY
+                                + " is not a valid number for the job "
+                                + j.getID(),
+                        e);
             }
-
-            public double getTime() {
-                return time;
+            if (debug) {
+                mLogger.log(
+                        "Job " + j.getID() + " runtime " + runtime, LogManager.DEBUG_MESSAGE_LEVEL);
             }
         }
+        return runtimes;
+    }
 
-        PriorityQueue<Bin> bins =
-                new PriorityQueue<Bin>(
-                        maxBins,
-                        new Comparator<Bin>() {
-                            @Override
-                            public int compare(Bin bin1, Bin bin2) {
-                                return (int) (bin1.getTime() - bin2.getTime());
-                            }
-                        });
-
-        // Initialize the bins, to the specified number of bins.
-        // If the number of jobs n is less than @maxBins then create n bins
-        maxBins = Math.min(maxBins, jobs.size());
-
-        for (int i = 0; i < maxBins; ++i) {
-            bins.add(new Bin());
-        }
-
-        for (Job j : jobs) {
-            Bin bin;
-            mLogger.log(
-                    "Job " + j.getID() + " runtime " + getRunTime(j),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
-
-            // Add the job to the bin with the shortest combined runtime
-            bin = bins.poll();
-            bin.addJob(j);
-            bins.offer(bin);
-        }
-
-        List<List<Job>> returnBins = new LinkedList<List<Job>>();
-
-        for (Bin b : bins) {
-            mLogger.log("Bin Size: " + b.getTime(), LogManager.DEBUG_MESSAGE_LEVEL);
-            returnBins.add(b.getJobs());
+    /**
+     * Logs how evenly the runtimes of the jobs are spread across the clustered jobs.
+     *
+     * @param jobs the jobs that were clustered
+     * @param statistics the statistics of the bin packing
+     */
+    private void logStatistics(List<Job> jobs, BinPacker.Statistics statistics) {
+        if (jobs.isEmpty()) {
+            return;
         }
-
-        return returnBins;
+        Job job = jobs.get(0);
+        mLogger.log(
+                "Runtime clustering of "
+                        + jobs.size()
+                        + " jobs of type "
+                        + job.getTXName()
+                        + " on site "
+                        + job.getSiteHandle()
+                        + " "
+                        + statistics,
+                LogManager.INFO_MESSAGE_LEVEL);
     }
 
     private String getRunTime(Job job) {
@@ -633,47 +572,6 @@ public class Horizontal
                 "Profile Key: " + Pegasus.RUNTIME_KEY + " is not set for the job " + job.getID());
     }
 
-    /**
-     * The comparator is used to sort a collection of jobs in decreasing order of their run times as
-     * specified by the Pegasus.DEPRECATED_RUNTIME_KEY property.
-     *
-     * @return
-     */
-    private Comparator<Job> getBinPackingComparator() {
-        return new Comparator<Job>() {
-
-            @Override
-            public int compare(Job job1, Job job2) {
-                String s1 = getRunTime(job1);
-                String s2 = getRunTime(job2);
-
-                double jobTime1 = Double.parseDouble(s1);
-                double jobTime2 = Double.parseDouble(s2);
-
-                return (int) (jobTime2 - jobTime1);
-            }
-
-            private String getRunTime(Job job) {
-
-                String sTmp = (String) job.vdsNS.get(Pegasus.RUNTIME_KEY);
-                if (sTmp != null && sTmp.length() > 0) {
-                    return sTmp;
-                }
-
-                sTmp = (String) job.vdsNS.get(Pegasus.DEPRECATED_RUNTIME_KEY);
-                if (sTmp != null && sTmp.length() > 0) {
-                    return sTmp;
-                }
-
-                throw new RuntimeException(
-                        "Profile Key: "
-                                + Pegasus.RUNTIME_KEY
-                                + " is not set for the job "
-                                + job.getID());
-            }
-        };
-    }
-
     /**
      * Returns the clustered workflow.
      *
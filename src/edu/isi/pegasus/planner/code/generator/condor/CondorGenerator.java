@@ -70,6 +70,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.griphyn.vdl.euryale.VTorInUseException;
 
 /**
@@ -244,6 +250,18 @@ public class CondorGenerator extends Abstract {
     /** The app name picked from pegasus properties */
     private String mAppName;
 
+    /** The number of threads to use for writing out the submit files. */
+    private int mSubmitFileWriterThreads;
+
+    /**
+     * The bounded pool writing out the rendered submit files. Is null, if the submit files are
+     * written out by the planner thread.
+     */
+    private ThreadPoolExecutor mSubmitFileWriterPool;
+
+    /** Tracks the first exception encountered while writing out a submit file in the pool. */
+    private AtomicReference<IOException> mSubmitFileWriterException;
+
     /** The default constructor. */
     public CondorGenerator() {
         super();
@@ -271,6 +289,7 @@ public class CondorGenerator extends Abstract {
         mSiteStore = bag.getHandleToSiteStore();
         mAssignDefaultJobPriorities = mProps.assignDefaultJobPriorities();
         mAssociateConcurrencyLimits = mProps.associateCondorConcurrencyLimits();
+        mSubmitFileWriterThreads = mProps.getCodeGeneratorThreads();
         mAppName = mProps.getProperty(PegasusProperties.PEGASUS_APP_METRICS_PREFIX);
         if (mAppName == null) {
             // can still be null but it is fine
@@ -383,9 +402,19 @@ public class CondorGenerator extends Abstract {
         // write out any category based dagman knobs to the dagman file
         printDagString(this.getCategoryDAGManKnobs(mProps));
 
+        // the submit files are rendered in the planner thread, as the
+        // styles and gridstart implementations are not thread safe.
+        // the rendered files can be written out by a pool of writers
+        this.startSubmitFileWriters();
+        mLogger.logEventStart(
+                LoggingKeys.EVENT_PEGASUS_CODE_GENERATION_SUBMIT_FILES,
+                LoggingKeys.DAX_ID,
+                dag.getAbstractWorkflowName(),
+                LogManager.DEBUG_MESSAGE_LEVEL);
         for (Iterator it = dag.iterator(); it.hasNext(); ) {
             GraphNode node = (GraphNode) it.next();
             Job job = (Job) node.getContent();
+            boolean written = true;
 
             if (this.mAssignDefaultJobPriorities) {
                 int priority = 0;
@@ -408,12 +437,11 @@ public class CondorGenerator extends Abstract {
                         Condor.PRIORITY_KEY, new Integer(priority).toString());
 
                 // log to debug
-                StringBuffer sb = new StringBuffer();
-                sb.append("Applying priority of ")
-                        .append(priority)
-                        .append(" to ")
-                        .append(job.getID());
-                mLogger.log(sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
+                mLogger.log(
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "Applying priority of {} to {}",
+                        priority,
+                        job.getID());
             }
 
             // HTCondor ticket 5749 . We can assign DAG priorities only if
@@ -476,6 +504,8 @@ public class CondorGenerator extends Abstract {
                     // the submit file for the job needs to be written out
                     // write out a condor submit file
                     generateCode(dag, job);
+                    // the writer pool logs once the file is written out
+                    written = (mSubmitFileWriterPool == null);
                 }
 
                 // write out all the dagman profile variables associated
@@ -483,13 +513,24 @@ public class CondorGenerator extends Abstract {
                 printDagString(job.dagmanVariables.toString(job.getName()));
             }
 
-            mLogger.log(
-                    "Written Submit file : "
-                            + job.getFileFullPath(this.mSubmitFileDir, SUBMIT_FILE_SUFFIX),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
+            if (written) {
+                mLogger.log(
+                        "Written Submit file : "
+                                + job.getFileFullPath(this.mSubmitFileDir, SUBMIT_FILE_SUFFIX),
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+            }
         }
+
+        // wait for all the submit files to be written out
+        this.stopSubmitFileWriters(dag);
         mLogger.logEventCompletion(LogManager.DEBUG_MESSAGE_LEVEL);
 
+        mLogger.logEventStart(
+                LoggingKeys.EVENT_PEGASUS_CODE_GENERATION_WORKFLOW_FILES,
+                LoggingKeys.DAX_ID,
+                dag.getAbstractWorkflowName(),
+                LogManager.DEBUG_MESSAGE_LEVEL);
+
         // writing the tail of .dag file
         // that contains the relation pairs
         this.writeDagFileTail(dag);
@@ -538,6 +579,8 @@ public class CondorGenerator extends Abstract {
 
         // write out the dag.condor.sub file
         this.writeOutDAGManSubmitFile(dag, orgDAGFile);
+        mLogger.logEventCompletion(LogManager.DEBUG_MESSAGE_LEVEL);
+        mLogger.logEventCompletion(LogManager.DEBUG_MESSAGE_LEVEL);
 
         // we are donedirectory
         mDone = true;
@@ -567,13 +610,20 @@ public class CondorGenerator extends Abstract {
             mInitializeGridStart = false;
         }
 
-        // intialize the print stream to the file
+        // intialize the print stream to the file, or to a buffer
+        // if the file is written out by the writer pool
         PrintWriter writer = null;
-        try {
-            writer = getWriter(job, SUBMIT_FILE_SUFFIX);
-        } catch (IOException ioe) {
-            throw new CodeGeneratorException(
-                    "IOException while writing submit file for job " + job.getName(), ioe);
+        StringWriter buffer = null;
+        if (mSubmitFileWriterPool != null) {
+            buffer = new StringWriter(4096);
+            writer = new PrintWriter(buffer);
+        } else {
+            try {
+                writer = getWriter(job, SUBMIT_FILE_SUFFIX);
+            } catch (IOException ioe) {
+                throw new CodeGeneratorException(
+                        "IOException while writing submit file for job " + job.getName(), ioe);
+            }
         }
 
         // handle the globus rsl parameters
@@ -636,9 +686,126 @@ public class CondorGenerator extends Abstract {
 
         // close the print stream to the file (flush)
         writer.close();
+
+        if (buffer != null) {
+            this.writeSubmitFile(
+                    new File(
+                            File.separator
+                                    + job.getFileFullPath(mSubmitFileDir, SUBMIT_FILE_SUFFIX)),
+                    buffer.toString());
+        }
         return;
     }
 
+    /**
+     * Starts the pool of threads that write out the rendered submit files, if more than one thread
+     * is configured. The pool has a bounded queue, and when the queue is full the planner thread
+     * writes out the submit file itself. This bounds the number of rendered submit files held in
+     * memory.
+     */
+    protected void startSubmitFileWriters() {
+        mSubmitFileWriterException = new AtomicReference<IOException>();
+        if (mSubmitFileWriterThreads <= 1) {
+            mSubmitFileWriterPool = null;
+            return;
+        }
+        mLogger.log(
+                "Writing out submit files with " + mSubmitFileWriterThreads + " threads",
+                LogManager.DEBUG_MESSAGE_LEVEL);
+        mSubmitFileWriterPool =
+                new ThreadPoolExecutor(
+                        mSubmitFileWriterThreads,
+                        mSubmitFileWriterThreads,
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(mSubmitFileWriterThreads * 64),
+                        new ThreadFactory() {
+                            private final AtomicInteger mCount = new AtomicInteger(0);
+
+                            public Thread newThread(Runnable r) {
+                                Thread t =
+                                        new Thread(
+                                                r,
+                                                "pegasus-submit-writer-"
+                                                        + mCount.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Waits for the writer pool to write out all the rendered submit files, and shuts it down.
+     *
+     * @param dag the workflow
+     * @throws CodeGeneratorException if any of the submit files could not be written out.
+     */
+    protected void stopSubmitFileWriters(ADag dag) throws CodeGeneratorException {
+        if (mSubmitFileWriterPool != null) {
+            mSubmitFileWriterPool.shutdown();
+            try {
+                while (!mSubmitFileWriterPool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    mLogger.log(
+                            "Waiting for "
+                                    + mSubmitFileWriterPool.getQueue().size()
+                                    + " submit files to be written out",
+                            LogManager.DEBUG_MESSAGE_LEVEL);
+                }
+            } catch (InterruptedException ie) {
+                mSubmitFileWriterPool.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new CodeGeneratorException(
+                        "Interrupted while writing out the submit files for workflow "
+                                + dag.getAbstractWorkflowName(),
+                        ie);
+            } finally {
+                mSubmitFileWriterPool = null;
+            }
+        }
+        IOException ioe = mSubmitFileWriterException.get();
+        if (ioe != null) {
+            throw new CodeGeneratorException(
+                    "IOException while writing submit files for workflow "
+                            + dag.getAbstractWorkflowName(),
+                    ioe);
+        }
+    }
+
+    /**
+     * Writes out the rendered contents of a submit file using the writer pool.
+     *
+     * @param file the submit file
+     * @param contents the contents of the submit file
+     */
+    protected void writeSubmitFile(final File file, final String contents) {
+        mSubmitFileWriterPool.execute(
+                new Runnable() {
+                    public void run() {
+                        Writer writer = null;
+                        try {
+                            writer = new BufferedWriter(new FileWriter(file));
+                            writer.write(contents);
+                            writer.close();
+                            writer = null;
+                            mLogger.log(
+                                    "Written Submit file : " + file.getPath(),
+                                    LogManager.DEBUG_MESSAGE_LEVEL);
+                        } catch (IOException ioe) {
+                            mSubmitFileWriterException.compareAndSet(null, ioe);
+                        } finally {
+                            if (writer != null) {
+                                try {
+                                    writer.close();
+                                } catch (IOException ioe) {
+                                    mSubmitFileWriterException.compareAndSet(null, ioe);
+                                }
+                            }
+                        }
+                    }
+                });
+    }
+
     /**
      * Starts monitoring of the workflow by invoking a workflow monitor daemon tailstatd. The
      * tailstatd is picked up from the default path of $PEGASUS_HOME/bin/tailstatd.
@@ -1426,13 +1593,13 @@ public class CondorGenerator extends Abstract {
 
             if (quote && args != null) {
                 try {
-                    mLogger.log("Unquoted arguments are " + args, LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "Unquoted arguments are {}", args);
 
                     // insert a comment for the old args
                     // job.condorVariables.construct("#arguments",args);
                     args = CondorQuoteParser.quote(args, true);
                     job.condorVariables.construct(Condor.ARGUMENTS_KEY, args);
-                    mLogger.log("Quoted arguments are " + args, LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "Quoted arguments are {}", args);
                 } catch (CondorQuoteParserException e) {
                     throw new RuntimeException("CondorQuoting Problem " + e.getMessage());
                 }
@@ -27,11 +27,14 @@ import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
 import edu.isi.pegasus.planner.catalog.transformation.classes.TCType;
 import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.DAGJob;
 import edu.isi.pegasus.planner.classes.DAXJob;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.client.CPlanner;
+import edu.isi.pegasus.planner.client.SubWorkflowPlanner;
 import edu.isi.pegasus.planner.code.GridStart;
 import edu.isi.pegasus.planner.code.GridStartFactory;
 import edu.isi.pegasus.planner.code.generator.DAXReplicaStore;
@@ -62,6 +65,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -608,6 +612,22 @@ public class SUBDAXGenerator {
             // PM-846 add a +pegasus_execution_sites classad
             insertExecutionSitesClassAd(job, options.getExecutionSites());
 
+            SubWorkflowPlanner planner = mBag.getSubWorkflowPlanner();
+            if (planner != null && this.canBePlannedEagerly(job, dax)) {
+                // the sub workflow is planned in the planner JVM once the
+                // code for this workflow is generated. no prescript required
+                mLogger.log(
+                        "Sub workflow for DAX job " + job.getID() + " will be planned eagerly",
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+                planner.register(
+                        job.getID(),
+                        options,
+                        mDAG.getRootWorkflowUUID(),
+                        propertiesFile,
+                        log.toString());
+                return dagJob;
+            }
+
             File wrapper =
                     constructPlannerPrescriptWrapper(
                             dagJob,
@@ -1689,6 +1709,50 @@ public class SUBDAXGenerator {
         return s;
     }
 
+    /**
+     * Returns whether the sub workflow for a DAX job can be planned eagerly at the time the outer
+     * level workflow is planned. That is the case only if the DAX file exists, and none of the
+     * ancestors of the job can regenerate it at runtime. An ancestor regenerates the DAX file if it
+     * is a job that lists the LFN of the DAX file as an output, or if it is a DAX or DAG job, whose
+     * outputs are not known at planning time. The latter also covers the parent DAX jobs, whose
+     * cache files the planner for the sub workflow requires.
+     *
+     * @param job the DAX job
+     * @param dax the DAX file for the sub workflow
+     * @return boolean
+     */
+    protected boolean canBePlannedEagerly(Job job, File dax) {
+        if (!dax.exists()) {
+            return false;
+        }
+        String lfn = (job instanceof DAXJob) ? ((DAXJob) job).getDAXLFN() : null;
+        if (lfn == null) {
+            lfn = dax.getName();
+        }
+
+        // walk all the ancestors of the job
+        Set<GraphNode> visited = new HashSet<GraphNode>();
+        LinkedList<GraphNode> queue = new LinkedList<GraphNode>();
+        queue.addAll(this.mDAG.getNode(job.getID()).getParents());
+        while (!queue.isEmpty()) {
+            GraphNode ancestor = queue.removeFirst();
+            if (!visited.add(ancestor)) {
+                continue;
+            }
+            Job a = (Job) ancestor.getContent();
+            if (a instanceof DAXJob || a instanceof DAGJob) {
+                return false;
+            }
+            for (PegasusFile pf : a.getOutputFiles()) {
+                if (pf.getLFN().equals(lfn)) {
+                    return false;
+                }
+            }
+            queue.addAll(ancestor.getParents());
+        }
+        return true;
+    }
+
     /**
      * Updates the job with a class add designating the execution sites
      *
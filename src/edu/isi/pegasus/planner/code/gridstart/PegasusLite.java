@@ -60,13 +60,20 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * This class launches all the jobs using Pegasus Lite a shell script based wrapper.
@@ -150,6 +157,42 @@ public class PegasusLite implements GridStart {
     /** The environment/shell variable that if set points to the file where PegasusLite log goes. */
     public static final String PEGASUS_LITE_LOG_ENV_KEY = "pegasus_lite_log_file";
 
+    /** The prefix for the basename of the shared wrappers written out in the submit directory. */
+    public static final String SHARED_WRAPPER_PREFIX = "pegasus-lite-";
+
+    /**
+     * The suffix for the file containing the job specific part of the wrapper, when shared wrappers
+     * are used and the job specific part is too large to be passed in the environment.
+     */
+    public static final String TASK_FILE_SUFFIX = ".task";
+
+    /**
+     * The prefix of the environment variables that hold the base64 encoded job specific parameters
+     * of the wrapper, when shared wrappers are used. The parameters are numbered from 1.
+     */
+    public static final String PEGASUS_LITE_PARAMETER_ENV_PREFIX = "pegasus_lite_param_";
+
+    /**
+     * The maximum total length of the encoded job specific parameters that are passed in the
+     * environment of the job. For larger ones the job specific part is written out to a task file
+     * instead.
+     */
+    public static final int MAX_INLINED_PARAMETERS_LENGTH = 8192;
+
+    /**
+     * The job specific part of a shared wrapper that sources the task file passed as the only
+     * argument.
+     */
+    protected static final String TASK_FILE_SNIPPET =
+            "# the job specific part of the wrapper\n" + ". \"$pegasus_lite_start_dir/$1\"\n";
+
+    /**
+     * The pattern to match a line that starts a here document. The groups are the line up to the
+     * redirection, the dash if any, the quote around the delimiter if any, and the delimiter.
+     */
+    private static final Pattern HEREDOC_PATTERN =
+            Pattern.compile("^(.*<<(-?)\\s*)(['\"]?)(\\w+)\\3\\s*$");
+
     /** Stores the major version of the planner. */
     private String mMajorVersionLevel;
 
@@ -251,6 +294,12 @@ public class PegasusLite implements GridStart {
     /** path to a setup script on the submit host that needs to be sourced in PegasusLite. */
     protected String mSetupScriptOnTheSubmitHost;
 
+    /** Whether the jobs share wrappers that are written out once to the submit directory. */
+    protected boolean mUseSharedWrappers;
+
+    /** The basenames of the shared wrappers written out so far. */
+    protected Set<String> mSharedWrappers;
+
     /**
      * Initializes the GridStart implementation.
      *
@@ -314,6 +363,9 @@ public class PegasusLite implements GridStart {
                 mSiteStore.lookup("local").getProfiles().get(Profiles.NAMESPACES.pegasus);
         mSetupScriptOnTheSubmitHost =
                 (String) localSitePegasusProfiles.get(Pegasus.PEGASUS_LITE_ENV_SOURCE_KEY);
+
+        mUseSharedWrappers = mProps.useSharedPegasusLiteWrappers();
+        mSharedWrappers = new HashSet<String>();
     }
 
     /**
@@ -730,11 +782,10 @@ public class PegasusLite implements GridStart {
         // should be disabled
         updateChildrenForIntegrityChecking(job, jobGridStartImplementation);
 
+        // the shared wrappers are not used for the dax jobs, whose arguments
+        // are picked up from the wrapper by the SUBDAX generator
+        boolean shared = mUseSharedWrappers && !(job instanceof DAXJob);
         try {
-            OutputStream ostream = new FileOutputStream(shellWrapper, true);
-            PrintWriter writer =
-                    new PrintWriter(new BufferedWriter(new OutputStreamWriter(ostream)));
-
             StringBuffer sb = new StringBuffer();
             sb.append("#!/bin/bash").append('\n');
             sb.append("set -e").append('\n');
@@ -865,6 +916,10 @@ public class PegasusLite implements GridStart {
                 sb.append('\n');
             }
 
+            // the job specific part of the wrapper starts from here
+            String prologue = sb.toString();
+            sb = new StringBuffer();
+
             if (isCompute
                     && // PM-971 for non compute jobs we don't do any sls transfers
                     sls.needsSLSInputTransfers(job)) {
@@ -951,11 +1006,6 @@ public class PegasusLite implements GridStart {
                 }
             }
 
-            writer.print(sb.toString());
-            writer.flush();
-
-            sb = new StringBuffer();
-
             // enable the job via kickstart
             // separate calls for aggregated and normal jobs
             ContainerShellWrapper containerWrapper =
@@ -978,6 +1028,9 @@ public class PegasusLite implements GridStart {
 
             sb.append("set -e").append("\n");
             sb.append('\n');
+            String task = sb.toString();
+            String command = job.getRemoteExecutable() + " " + job.getArguments();
+            sb = new StringBuffer();
 
             // the pegasus lite wrapped job itself does not have any
             // arguments passed
@@ -1052,16 +1105,29 @@ public class PegasusLite implements GridStart {
             sb.append("trap - EXIT").append('\n');
             sb.append("pegasus_lite_final_exit").append('\n');
             sb.append("\n");
+            String epilogue = sb.toString();
 
-            writer.print(sb.toString());
-            writer.flush();
-
-            writer.close();
-            ostream.close();
+            if (shared) {
+                List<String> parameters = new LinkedList<String>();
+                String skeleton = parameterizeTask(task, command, parameters);
+                if (inlineParameters(job, parameters)) {
+                    shellWrapper = getSharedWrapper(prologue, skeleton, epilogue);
+                } else {
+                    // the job specific part is sourced by the shared wrapper from
+                    // the directory in which the job is launched
+                    shellWrapper = getSharedWrapper(prologue, TASK_FILE_SNIPPET, epilogue);
+                    File taskFile = new File(job.getFileFullPath(mSubmitDir, TASK_FILE_SUFFIX));
+                    write(taskFile, task, false);
+                    job.condorVariables.addIPFileForTransfer(taskFile.getAbsolutePath());
+                    job.setArguments(taskFile.getName());
+                }
+            } else {
+                write(shellWrapper, prologue + task + epilogue, true);
 
-            // set the xbit on the shell script
-            // for 3.2, we will have 1.6 as the minimum jdk requirement
-            shellWrapper.setExecutable(true);
+                // set the xbit on the shell script
+                // for 3.2, we will have 1.6 as the minimum jdk requirement
+                shellWrapper.setExecutable(true);
+            }
 
             // JIRA PM-543
             job.setDirectory(null);
@@ -1101,6 +1167,179 @@ public class PegasusLite implements GridStart {
         return shellWrapper;
     }
 
+    /**
+     * Splits the job specific part of the wrapper into a skeleton that can be shared across jobs,
+     * and the job specific parameters. The parameters are the bodies of the here documents with a
+     * quoted delimiter, such as the transfer and integrity check inputs, and the line that launches
+     * the job. In the skeleton they are replaced by references to the environment variables that
+     * {@link #inlineParameters(Job, List)} sets. The transfer inputs are JSON, and are put on a
+     * single line. Anything else stays in the skeleton as is.
+     *
+     * @param task the job specific part of the wrapper
+     * @param command the line that launches the job
+     * @param parameters the list to which the parameters are added
+     * @return the skeleton
+     */
+    protected String parameterizeTask(String task, String command, List<String> parameters) {
+        StringBuilder sb = new StringBuilder();
+        String[] lines = task.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String separator = (i == lines.length - 1) ? "" : "\n";
+            Matcher m = HEREDOC_PATTERN.matcher(line);
+            int end = i + 1;
+            if (m.matches()) {
+                while (end < lines.length && !lines[end].equals(m.group(4))) {
+                    end++;
+                }
+            }
+            if (m.matches() && end < lines.length) {
+                String delimiter = m.group(4);
+                // the value of a variable is not expanded in a here document, but
+                // trailing empty lines are dropped by the command substitution
+                if (m.group(2).isEmpty()
+                        && !m.group(3).isEmpty()
+                        && end > i + 1
+                        && !lines[end - 1].isEmpty()) {
+                    boolean json = line.contains("pegasus-transfer");
+                    StringBuilder body = new StringBuilder();
+                    for (int j = i + 1; j < end; j++) {
+                        if (json) {
+                            body.append(lines[j].trim());
+                        } else {
+                            body.append(j == i + 1 ? "" : "\n").append(lines[j]);
+                        }
+                    }
+                    parameters.add(body.toString());
+                    sb.append(m.group(1)).append(delimiter).append('\n');
+                    sb.append("$(").append(decodeParameter(parameters.size())).append(")\n");
+                    sb.append(delimiter).append('\n');
+                } else {
+                    for (int j = i; j <= end; j++) {
+                        sb.append(lines[j]).append('\n');
+                    }
+                }
+                i = end;
+            } else if (line.equals(command) && !command.trim().isEmpty()) {
+                parameters.add(command);
+                sb.append("eval \"$(")
+                        .append(decodeParameter(parameters.size()))
+                        .append(")\"")
+                        .append(separator);
+            } else {
+                sb.append(line).append(separator);
+            }
+        }
+
+        if (parameters.isEmpty()) {
+            return sb.toString();
+        }
+        // the parameters are not passed on to the job
+        StringBuilder skeleton = new StringBuilder();
+        skeleton.append("# the job specific parameters of the wrapper").append('\n');
+        skeleton.append("for pegasus_lite_param in ${!")
+                .append(PEGASUS_LITE_PARAMETER_ENV_PREFIX)
+                .append("*}; do\n");
+        skeleton.append("    export -n \"$pegasus_lite_param\"\n");
+        skeleton.append("done\n");
+        return skeleton.append(sb).toString();
+    }
+
+    /**
+     * Returns the shell snippet that decodes a job specific parameter.
+     *
+     * @param index the index of the parameter, starting at 1
+     * @return the snippet
+     */
+    private String decodeParameter(int index) {
+        return "echo \"$" + PEGASUS_LITE_PARAMETER_ENV_PREFIX + index + "\" | base64 -d";
+    }
+
+    /**
+     * Passes the job specific parameters to the shared wrapper in the environment of the job,
+     * base64 encoded, so that no file needs to be written out for the job. Not done if the encoded
+     * parameters are longer than {@link #MAX_INLINED_PARAMETERS_LENGTH} in total.
+     *
+     * @param job the job
+     * @param parameters the job specific parameters
+     * @return true if the parameters were put in the environment of the job, else false
+     */
+    protected boolean inlineParameters(Job job, List<String> parameters) {
+        List<String> encoded = new LinkedList<String>();
+        int length = 0;
+        for (String parameter : parameters) {
+            String value =
+                    Base64.getEncoder().encodeToString(parameter.getBytes(StandardCharsets.UTF_8));
+            length += value.length();
+            encoded.add(value);
+        }
+        if (length > MAX_INLINED_PARAMETERS_LENGTH) {
+            return false;
+        }
+        int index = 1;
+        for (String value : encoded) {
+            job.envVariables.construct(PEGASUS_LITE_PARAMETER_ENV_PREFIX + index++, value);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the shared wrapper for a job, writing it out to the submit directory if it has not
+     * been written out already. The shared wrapper is named by a digest of its contents, so that
+     * all jobs whose wrappers differ only in the job specific parameters refer to the same file.
+     *
+     * @param prologue the part of the wrapper before the job specific part
+     * @param task the skeleton of the job specific part, or {@link #TASK_FILE_SNIPPET}
+     * @param epilogue the part of the wrapper after the job specific part
+     * @return the shared wrapper
+     * @throws IOException in case of error while writing out the wrapper
+     */
+    protected File getSharedWrapper(String prologue, String task, String epilogue)
+            throws IOException {
+        String contents = prologue + task + epilogue;
+
+        String digest;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = md.digest(contents.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", bytes[i]));
+            }
+            digest = hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to compute digest for the shared wrapper", e);
+        }
+
+        File wrapper = new File(mSubmitDir, SHARED_WRAPPER_PREFIX + digest + ".sh");
+        if (mSharedWrappers.add(wrapper.getName())) {
+            if (!wrapper.exists()) {
+                mLogger.log(
+                        "Writing out shared PegasusLite wrapper " + wrapper,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+                write(wrapper, contents, false);
+            }
+            wrapper.setExecutable(true);
+        }
+        return wrapper;
+    }
+
+    /**
+     * Writes out contents to a file.
+     *
+     * @param file the file
+     * @param contents the contents
+     * @param append whether to append to the file or not
+     * @throws IOException in case of error while writing
+     */
+    private void write(File file, String contents, boolean append) throws IOException {
+        OutputStream ostream = new FileOutputStream(file, append);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(ostream)));
+        writer.print(contents);
+        writer.close();
+        ostream.close();
+    }
+
     /**
      * Convers the collection of files into an input format suitable for the transfer executable
      *
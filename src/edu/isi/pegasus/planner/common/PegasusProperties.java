@@ -64,6 +64,9 @@ public class PegasusProperties implements Cloneable {
     public static final String PEGASUS_TRANSFER_WORKER_PACKAGE_AUTODOWNLOAD_PROPERTY =
             "pegasus.transfer.worker.package.autodownload";
 
+    public static final String PEGASUS_LITE_SHARED_WRAPPERS_PROPERTY =
+            "pegasus.gridstart.pegasuslite.shared";
+
     public static final String PEGASUS_TRANSFER_ARGUMENTS_KEY = "pegasus.transfer.arguments";
 
     public static final String PEGASUS_TRANSFER_LITE_ARGUMENTS_KEY =
@@ -90,6 +93,8 @@ public class PegasusProperties implements Cloneable {
 
     public static final String PEGASUS_APP_METRICS_PREFIX = "pegasus.metrics.app";
 
+    public static final String PEGASUS_METRICS_PHASES_PROPERTY = "pegasus.metrics.phases";
+
     /** The property key for pegasus mode. */
     public static final String PEGASUS_MODE_PROPERTY_KEY = "pegasus.mode";
 
@@ -140,6 +145,8 @@ public class PegasusProperties implements Cloneable {
 
     public static final String DEFAULT_SITE_SELECTOR_KEEP = "onerror";
 
+    public static final String DEFAULT_SITE_SELECTOR_BATCH_SIZE = "1000";
+
     /// some simulator constants that are used
     public static final String DEFAULT_DATA_MULTIPLICATION_FACTOR = "1";
 
@@ -888,6 +895,17 @@ public class PegasusProperties implements Cloneable {
         return val;
     }
 
+    /**
+     * Returns the directory where the persistent replica lookup cache files are maintained.
+     *
+     * <p>Referred to by the "pegasus.catalog.replica.lookup.cache.dir" property.
+     *
+     * @return the directory if specified, else null to denote the lookup cache is disabled.
+     */
+    public String getReplicaLookupCacheDirectory() {
+        return mProps.getProperty("pegasus.catalog.replica.lookup.cache.dir");
+    }
+
     // PROPERTIES RELATED TO SITE CATALOG
     /**
      * Returns the mode to be used for accessing the pool information.
@@ -1020,6 +1038,27 @@ public class PegasusProperties implements Cloneable {
         return Boolean.parse(mProps.getProperty("pegasus.transfer.bypass.input.staging"), false);
     }
 
+    /**
+     * Returns the number of threads used to resolve the replicas for the input files of the jobs
+     * into the stage-in transfers. A value of 1 results in the stage-in transfers being resolved by
+     * the main planner thread, while the workflow is traversed.
+     *
+     * <p>Referred to by the "pegasus.transfer.stagein.resolver.threads" property.
+     *
+     * @return the value specified in the properties file, else 1 if non integer value or no value
+     *     specified.
+     */
+    public int getStageInResolverThreads() {
+        String prop = mProps.getProperty("pegasus.transfer.stagein.resolver.threads", "1");
+        int val;
+        try {
+            val = Integer.parseInt(prop.trim());
+        } catch (Exception e) {
+            return 1;
+        }
+        return (val < 1) ? 1 : val;
+    }
+
     /**
      * Returns the default priority for the transfer jobs if specified in the properties file.
      *
@@ -1244,6 +1283,20 @@ public class PegasusProperties implements Cloneable {
                 mProps.getProperty(PEGASUS_TRANSFER_WORKER_PACKAGE_AUTODOWNLOAD_PROPERTY), true);
     }
 
+    /**
+     * A Boolean property to indicate whether the PegasusLite jobs share wrappers that are written
+     * out once to the submit directory, with the job specific parameters passed in the environment
+     * of each job.
+     *
+     * <p>Referred to by "pegasus.gridstart.pegasuslite.shared" property.
+     *
+     * @return boolean value specified in the properties file,else false in case of non boolean
+     *     value being specified or property not being set.
+     */
+    public boolean useSharedPegasusLiteWrappers() {
+        return Boolean.parse(mProps.getProperty(PEGASUS_LITE_SHARED_WRAPPERS_PROPERTY), false);
+    }
+
     /**
      * Returns the arguments with which the transfer executable needs to be invoked.
      *
@@ -1452,6 +1505,42 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty("pegasus.selector.site.keep.tmp", DEFAULT_SITE_SELECTOR_KEEP);
     }
 
+    /**
+     * Returns a boolean indicating whether the external site selector should be invoked once for
+     * the whole workflow, with the jobs passed to it in batches on its stdin, instead of once per
+     * job.
+     *
+     * <p>Referred to by the "pegasus.selector.site.batch" property.
+     *
+     * @return the value specified in the properties file, else false
+     */
+    public boolean batchSiteSelectorCallouts() {
+        return Boolean.parse(mProps.getProperty("pegasus.selector.site.batch"), false);
+    }
+
+    /**
+     * Returns the number of jobs passed to the external site selector in a batch, before waiting
+     * for the selector to return the sites for them. A value of 0 implies that all the jobs in the
+     * workflow are passed in a single batch.
+     *
+     * <p>Referred to by the "pegasus.selector.site.batch.size" property.
+     *
+     * @return the value specified in the properties file, else DEFAULT_SITE_SELECTOR_BATCH_SIZE
+     * @see #DEFAULT_SITE_SELECTOR_BATCH_SIZE
+     */
+    public int getSiteSelectorBatchSize() {
+        String prop =
+                mProps.getProperty(
+                        "pegasus.selector.site.batch.size", DEFAULT_SITE_SELECTOR_BATCH_SIZE);
+        int val;
+        try {
+            val = Integer.parseInt(prop);
+        } catch (Exception e) {
+            return Integer.parseInt(DEFAULT_SITE_SELECTOR_BATCH_SIZE);
+        }
+        return val;
+    }
+
     // PROPERTIES RELATED TO KICKSTART AND EXITCODE
 
     /**
@@ -1905,6 +1994,18 @@ public class PegasusProperties implements Cloneable {
         return Boolean.parse(mProps.getProperty("pegasus.log.memory.usage"), false);
     }
 
+    /**
+     * Returns a boolean indicating whether to profile the time and memory used by each planning
+     * phase, and record them in the metrics file.
+     *
+     * <p>Referred to by the "pegasus.metrics.phases" property.
+     *
+     * @return boolean value specified in properties else false.
+     */
+    public boolean profilePlannerPhases() {
+        return Boolean.parse(mProps.getProperty(PEGASUS_METRICS_PHASES_PROPERTY), false);
+    }
+
     // SOME MISCELLANEOUS PROPERTIES
 
     /**
@@ -2048,6 +2149,62 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty("pegasus.code.generator", "condor");
     }
 
+    /**
+     * Returns the number of threads the code generator uses to write out the job submit files. A
+     * value of 1 results in the submit files being written out by the main planner thread.
+     *
+     * <p>Referred to by the "pegasus.code.generator.threads" property.
+     *
+     * @return the value specified in the properties file, else 1 if non integer value or no value
+     *     specified.
+     */
+    public int getCodeGeneratorThreads() {
+        String prop = mProps.getProperty("pegasus.code.generator.threads", "1");
+        int val;
+        try {
+            val = Integer.parseInt(prop.trim());
+        } catch (Exception e) {
+            return 1;
+        }
+        return (val < 1) ? 1 : val;
+    }
+
+    /**
+     * Returns a boolean indicating whether the sub workflows corresponding to the DAX jobs should
+     * be planned eagerly in the planner JVM, instead of in the pegasus-plan prescript of the
+     * corresponding DAG jobs.
+     *
+     * <p>Referred to by the "pegasus.code.generator.subwf.eager" property.
+     *
+     * @return the boolean value specified in the properties files, else false.
+     */
+    public boolean planSubWorkflowsEagerly() {
+        return Boolean.parse(mProps.getProperty("pegasus.code.generator.subwf.eager"), false);
+    }
+
+    /**
+     * Returns the number of sub workflows that are planned eagerly at a time. If more than one,
+     * each sub workflow is planned in a separate JVM.
+     *
+     * <p>Referred to by the "pegasus.code.generator.subwf.threads" property.
+     *
+     * @return the value specified in the properties file, else 1 if non integer value or no value
+     *     specified.
+     */
+    public int getSubWorkflowPlannerThreads() {
+        String prop = mProps.getProperty("pegasus.code.generator.subwf.threads");
+        if (prop == null) {
+            return 1;
+        }
+        int val;
+        try {
+            val = Integer.parseInt(prop.trim());
+        } catch (Exception e) {
+            return 1;
+        }
+        return (val < 1) ? 1 : val;
+    }
+
     /**
      * Returns the mode for parsing the dax while writing out the partitioned daxes.
      *
@@ -2070,6 +2227,41 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty("pegasus.data.reuse.scope");
     }
 
+    /**
+     * Returns the number of threads used by the data reuse module to determine the jobs that can be
+     * deleted from the workflow. A value of 1 results in the workflow being reduced by the main
+     * planner thread.
+     *
+     * <p>Referred to by the "pegasus.data.reuse.threads" property.
+     *
+     * @return the value specified in the properties file, else 1 if non integer value or no value
+     *     specified.
+     */
+    public int getDataReuseThreads() {
+        String prop = mProps.getProperty("pegasus.data.reuse.threads", "1");
+        int val;
+        try {
+            val = Integer.parseInt(prop.trim());
+        } catch (Exception e) {
+            return 1;
+        }
+        return (val < 1) ? 1 : val;
+    }
+
+    /**
+     * Returns the algorithm to use for removing the redundant edges in the executable workflow. The
+     * edges are not reduced if the property is not set, or is set to none.
+     *
+     * <p>Referred to by the "pegasus.workflow.reduce.edges" property.
+     *
+     * @return the value specified in the properties file, else null
+     * @see edu.isi.pegasus.planner.refiner.ReduceEdges.ALGORITHM
+     */
+    public String getReduceEdgesAlgorithm() {
+        String value = mProps.getProperty("pegasus.workflow.reduce.edges");
+        return (value == null || value.trim().equalsIgnoreCase("none")) ? null : value.trim();
+    }
+
     // JOB COLLAPSING PROPERTIES
 
     /**
@@ -2160,6 +2352,19 @@ public class PegasusProperties implements Cloneable {
         return Boolean.parse(mProps.getProperty("pegasus.clusterer.allow.single"), false);
     }
 
+    /**
+     * Returns a boolean indicating whether label based partitions should be passed on for
+     * clustering as soon as they are complete, instead of after the whole workflow has been
+     * partitioned.
+     *
+     * <p>Referred to by the "pegasus.clusterer.label.streaming" property.
+     *
+     * @return the value specified in the properties file, else false
+     */
+    public boolean streamLabelPartitions() {
+        return Boolean.parse(mProps.getProperty("pegasus.clusterer.label.streaming"), false);
+    }
+
     /**
      * Returns a boolean indicating whether to enable integrity checking or not.
      *
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.common;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PhaseProfile;
+import edu.isi.pegasus.planner.classes.PlannerMetrics;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Profiles the planning phases, recording the wall time, CPU time, allocated bytes and heap usage
+ * of each phase into the planner metrics, which are written out to the metrics file in the submit
+ * directory. Profiling is enabled by the property pegasus.metrics.phases, and the profiler does
+ * nothing otherwise.
+ *
+ * <p>The phases are not nested, and are run by one thread at a time. The CPU time is that of the
+ * whole process, so that it includes the worker threads and the garbage collector. The allocated
+ * bytes are summed up across the threads that are alive at the end of the phase. The JVM does not
+ * report the allocation of threads that have terminated, so that the allocated bytes undercount
+ * phases that start and shut down a thread pool, such as the stage-in resolver threads of the
+ * transfer phase. The allocation and process CPU counters are only available on HotSpot based JVMs,
+ * and are recorded as -1 otherwise.
+ */
+public class PlannerProfiler {
+
+    /** The metrics to record the phases in. */
+    private final PlannerMetrics mMetrics;
+
+    /** The logger. */
+    private final LogManager mLogger;
+
+    /** Whether profiling is enabled. */
+    private final boolean mEnabled;
+
+    /** The name of the phase being profiled, null if none is. */
+    private String mPhase;
+
+    /** The wall time in nanoseconds when the phase started. */
+    private long mStartWallTime;
+
+    /** The process CPU time in nanoseconds when the phase started. */
+    private long mStartCPUTime;
+
+    /** The CPU time in nanoseconds of the profiling thread when the phase started. */
+    private long mStartThreadCPUTime;
+
+    /** The bytes allocated by each thread when the phase started. */
+    private Map<Long, Long> mStartAllocatedBytes;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param bag the bag of pegasus objects
+     */
+    public PlannerProfiler(PegasusBag bag) {
+        mMetrics = bag.getPlannerMetrics();
+        mLogger = bag.getLogger();
+        mEnabled = mMetrics != null && bag.getPegasusProperties().profilePlannerPhases();
+    }
+
+    /**
+     * Returns whether profiling is enabled.
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Starts profiling a phase. A phase already being profiled is stopped first.
+     *
+     * @param phase the name of the phase
+     */
+    public void start(String phase) {
+        if (!mEnabled) {
+            return;
+        }
+        if (mPhase != null) {
+            this.stop();
+        }
+        mPhase = phase;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        mStartAllocatedBytes = allocatedBytes();
+        mStartThreadCPUTime = threadCPUTime();
+        mStartCPUTime = processCPUTime();
+        mStartWallTime = System.nanoTime();
+    }
+
+    /**
+     * Stops profiling the current phase, and records it in the planner metrics. Callers should stop
+     * the phase in a finally block, so that a failed phase is not left running. The bytes allocated
+     * by threads that terminated during the phase are not included.
+     *
+     * @return the profile of the phase, or null if profiling is disabled or no phase was started
+     */
+    public PhaseProfile stop() {
+        if (!mEnabled || mPhase == null) {
+            return null;
+        }
+        long wallTime = System.nanoTime() - mStartWallTime;
+        long cpuTime = processCPUTime();
+        long threadCPUTime = threadCPUTime();
+        Map<Long, Long> allocated = allocatedBytes();
+
+        long allocatedBytes = -1;
+        if (allocated != null && mStartAllocatedBytes != null) {
+            allocatedBytes = 0;
+            for (Map.Entry<Long, Long> entry : allocated.entrySet()) {
+                Long start = mStartAllocatedBytes.get(entry.getKey());
+                allocatedBytes += entry.getValue() - (start == null ? 0 : start);
+            }
+        }
+        long peakHeap = 0;
+        long heapUsed = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+                heapUsed += pool.getUsage().getUsed();
+            }
+        }
+
+        PhaseProfile profile =
+                new PhaseProfile(
+                        mPhase,
+                        wallTime / 1e9,
+                        (cpuTime < 0 || mStartCPUTime < 0) ? -1 : (cpuTime - mStartCPUTime) / 1e9,
+                        (threadCPUTime < 0 || mStartThreadCPUTime < 0)
+                                ? -1
+                                : (threadCPUTime - mStartThreadCPUTime) / 1e9,
+                        allocatedBytes,
+                        peakHeap,
+                        heapUsed);
+        mMetrics.addPhaseProfile(profile);
+        mLogger.log("Profiled phase " + profile, LogManager.INFO_MESSAGE_LEVEL);
+        mPhase = null;
+        mStartAllocatedBytes = null;
+        return profile;
+    }
+
+    /**
+     * Returns the process CPU time.
+     *
+     * @return nanoseconds, or -1 if not supported
+     */
+    private static long processCPUTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the CPU time of the current thread.
+     *
+     * @return nanoseconds, or -1 if not supported
+     */
+    private static long threadCPUTime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Returns the bytes allocated so far by each live thread.
+     *
+     * @return map indexed by thread id, or null if not supported
+     */
+    private static Map<Long, Long> allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+        if (!t.isThreadAllocatedMemorySupported() || !t.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long[] ids = t.getAllThreadIds();
+        long[] bytes = t.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<Long, Long>();
+        for (int i = 0; i < ids.length; i++) {
+            // threads that have terminated are reported as -1
+            if (bytes[i] >= 0) {
+                result.put(ids[i], bytes[i]);
+            }
+        }
+        return result;
+    }
+}
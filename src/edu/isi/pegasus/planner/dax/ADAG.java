@@ -1137,6 +1137,34 @@ public class ADAG {
      */
     public void toXML(XMLWriter writer) {
         int indent = 0;
+        this.toXMLHead(writer, indent);
+        for (AbstractJob j : mJobs.values()) {
+            j.toXML(writer, indent + 1);
+        }
+        // print dependencies
+        writer.writeXMLComment(
+                "Section 7: Dependencies - Parent Child relationships (can be empty)", true);
+
+        for (String child : mDependencies.keySet()) {
+            writer.startElement("child", indent + 1).writeAttribute("ref", child);
+            for (Edge e : mDependencies.get(child)) {
+                e.toXMLParent(writer, indent + 2);
+            }
+            writer.endElement(indent + 1);
+        }
+        // end adag
+        writer.endElement();
+    }
+
+    /**
+     * Generates the DAX representation of the sections preceding the jobs, leaving the adag element
+     * open for the jobs to be written.
+     *
+     * @param writer the xml writer
+     * @param indent the indent of the adag element
+     * @see StreamingADAG
+     */
+    void toXMLHead(XMLWriter writer, int indent) {
         writer.startElement("adag");
         writer.writeAttribute("xmlns", SCHEMA_NAMESPACE);
         writer.writeAttribute("xmlns:xsi", SCHEMA_NAMESPACE_XSI);
@@ -1183,22 +1211,6 @@ public class ADAG {
         writer.writeXMLComment(
                 "Section 6: Job's, DAX's or Dag's - Defines a JOB or DAX or DAG (Atleast 1 required)",
                 true);
-        for (AbstractJob j : mJobs.values()) {
-            j.toXML(writer, indent + 1);
-        }
-        // print dependencies
-        writer.writeXMLComment(
-                "Section 7: Dependencies - Parent Child relationships (can be empty)", true);
-
-        for (String child : mDependencies.keySet()) {
-            writer.startElement("child", indent + 1).writeAttribute("ref", child);
-            for (Edge e : mDependencies.get(child)) {
-                e.toXMLParent(writer, indent + 2);
-            }
-            writer.endElement(indent + 1);
-        }
-        // end adag
-        writer.endElement();
     }
 
     /**
@@ -1219,6 +1231,69 @@ public class ADAG {
          */
         public void serialize(ADAG adag, JsonGenerator gen, SerializerProvider sp)
                 throws IOException, UnsupportedOperationException {
+            serializeHead(adag, gen);
+
+            // jobs
+            gen.writeArrayFieldStart("jobs");
+            for (AbstractJob j : adag.mJobs.values()) {
+                gen.writeObject(j);
+            }
+            gen.writeEndArray();
+
+            // dependencies
+            if (!adag.mDependencies.isEmpty()) {
+                // mDependencies is given as map of child ids with
+                // sets of edges. In the YAML schema, this is flipped
+                // where each parent is given and a list of their
+                // children. To preserve the toXML function, mDependencies
+                // is being left as is and we are re-mapping things here.
+                Map<String, List<String>> deps = new HashMap<>();
+
+                for (Map.Entry<String, Set<Edge>> child : adag.mDependencies.entrySet()) {
+                    for (Edge e : child.getValue()) {
+                        if (deps.containsKey(e.getParent())) {
+                            deps.get(e.getParent()).add(e.getChild());
+                        } else {
+                            List<String> children = new ArrayList<>();
+                            children.add(e.getChild());
+                            deps.put(e.getParent(), children);
+                        }
+                    }
+                }
+
+                gen.writeArrayFieldStart("jobDependencies");
+
+                for (Map.Entry<String, List<String>> parent : deps.entrySet()) {
+                    gen.writeStartObject();
+
+                    gen.writeStringField("id", parent.getKey());
+
+                    gen.writeArrayFieldStart("children");
+                    for (String child : parent.getValue()) {
+                        gen.writeString(child);
+                    }
+                    gen.writeEndArray();
+
+                    gen.writeEndObject();
+                }
+
+                gen.writeEndArray();
+            }
+
+            gen.writeEndObject();
+        }
+
+        /**
+         * Serializes the sections of the ADAG preceding the jobs, leaving the workflow object open
+         * for the jobs to be written.
+         *
+         * @param adag the adag being serialized
+         * @param gen the json generator
+         * @throws IOException exception
+         * @see StreamingADAG
+         */
+        static void serializeHead(ADAG adag, JsonGenerator gen)
+                throws IOException, UnsupportedOperationException {
             gen.writeStartObject();
             // pegasus
             gen.writeStringField("pegasus", "5.0");
@@ -1288,55 +1363,6 @@ public class ADAG {
                 throw new UnsupportedOperationException(
                         "Compound transformations not supported when converting to YAML. Use Executable.addRequirement() instead.");
             }
-
-            // jobs
-            gen.writeArrayFieldStart("jobs");
-            for (AbstractJob j : adag.mJobs.values()) {
-                gen.writeObject(j);
-            }
-            gen.writeEndArray();
-
-            // dependencies
-            if (!adag.mDependencies.isEmpty()) {
-                // mDependencies is given as map of child ids with
-                // sets of edges. In the YAML schema, this is flipped
-                // where each parent is given and a list of their
-                // children. To preserve the toXML function, mDependencies
-                // is being left as is and we are re-mapping things here.
-                Map<String, List<String>> deps = new HashMap<>();
-
-                for (Map.Entry<String, Set<Edge>> child : adag.mDependencies.entrySet()) {
-                    for (Edge e : child.getValue()) {
-                        if (deps.containsKey(e.getParent())) {
-                            deps.get(e.getParent()).add(e.getChild());
-                        } else {
-                            List<String> children = new ArrayList<>();
-                            children.add(e.getChild());
-                            deps.put(e.getParent(), children);
-                        }
-                    }
-                }
-
-                gen.writeArrayFieldStart("jobDependencies");
-
-                for (Map.Entry<String, List<String>> parent : deps.entrySet()) {
-                    gen.writeStartObject();
-
-                    gen.writeStringField("id", parent.getKey());
-
-                    gen.writeArrayFieldStart("children");
-                    for (String child : parent.getValue()) {
-                        gen.writeString(child);
-                    }
-                    gen.writeEndArray();
-
-                    gen.writeEndObject();
-                }
-
-                gen.writeEndArray();
-            }
-
-            gen.writeEndObject();
         }
     }
 
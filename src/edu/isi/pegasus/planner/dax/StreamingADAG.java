@@ -0,0 +1,587 @@
+/**
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.dax;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
+import edu.isi.pegasus.common.util.XMLWriter;
+import edu.isi.pegasus.planner.dax.Invoke.WHEN;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A builder for abstract workflows too large to be held in memory as an {@link ADAG}. The workflow
+ * is written out to the writer as it is built.
+ *
+ * <p>The metadata, notifications, files, executables and transformations of the workflow have to be
+ * added first. They are written out when the first job is added, after which they can no longer be
+ * added. Each job, dax and dag is then written out as soon as it is added, and is not retained. The
+ * dependencies are spooled to a temporary file, since the schema places them after all the jobs,
+ * and are written out on {@link #close()}. A dependency may refer to a job that is added later. The
+ * references are validated on close, which fails if a job was never added.
+ *
+ * <p>Only the ids of the jobs are kept in memory. The dependencies between the same parent (in
+ * YAML) or the same child (in XML) are grouped only if they are added one after the other. For the
+ * same reason, a dependency is dropped only if it repeats the one added just before it. Other
+ * repeated dependencies are written out as is, and are merged when the workflow is parsed by the
+ * planner.
+ *
+ * <pre>
+ * StreamingADAG dax = new StreamingADAG("diamond", new BufferedWriter(new FileWriter(file)));
+ * dax.addExecutable(preprocess).addExecutable(findrange).addExecutable(analyze);
+ * for (...) {
+ *     dax.addJob(job);
+ *     dax.addDependency(parent, job.getId());
+ * }
+ * dax.close();
+ * </pre>
+ *
+ * @see ADAG
+ */
+public class StreamingADAG implements Closeable {
+
+    /** Holds the sections of the workflow preceding the jobs. */
+    private ADAG mHead;
+
+    /** The format in which the workflow is written. */
+    private ADAG.FORMAT mFormat;
+
+    /** The writer to which the workflow is written. */
+    private Writer mOut;
+
+    /** The generator used to write YAML. */
+    private JsonGenerator mGenerator;
+
+    /** The writer used to write XML. */
+    private XMLWriter mXMLWriter;
+
+    /** The ids of the jobs, daxes and dags written out so far. */
+    private Set<String> mJobIds;
+
+    /** The temporary file to which the dependencies are spooled. */
+    private java.io.File mEdgeFile;
+
+    /** The stream to the temporary file with the dependencies. */
+    private DataOutputStream mEdges;
+
+    /** The number of dependencies spooled. */
+    private long mEdgeCount;
+
+    /** The parent, child and label of the dependency spooled last. */
+    private String[] mLastEdge;
+
+    /** Whether the sections preceding the jobs have been written out. */
+    private boolean mHeadWritten;
+
+    /** Whether the workflow has been closed. */
+    private boolean mClosed;
+
+    /**
+     * The Simple constructor, that writes the workflow in the default format.
+     *
+     * @param name DAX LABEL
+     * @param writer the writer to which the workflow is written, and which is closed on close
+     */
+    public StreamingADAG(String name, Writer writer) {
+        this(name, writer, ADAG.DEFAULT_FORMAT);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param name DAX LABEL
+     * @param writer the writer to which the workflow is written, and which is closed on close
+     * @param format how should the workflow be formatted
+     */
+    public StreamingADAG(String name, Writer writer, ADAG.FORMAT format) {
+        this(name, 0, 1, writer, format);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param name DAX Label
+     * @param index Index of DAX out of N DAX's
+     * @param count Number of DAXS in a group
+     * @param writer the writer to which the workflow is written, and which is closed on close
+     * @param format how should the workflow be formatted
+     */
+    public StreamingADAG(String name, int index, int count, Writer writer, ADAG.FORMAT format) {
+        if (format == null) {
+            throw new RuntimeException("Unsupported format " + format);
+        }
+        mHead = new ADAG(name, index, count);
+        mOut = writer;
+        mFormat = format;
+        mJobIds = new HashSet<String>();
+        try {
+            mEdgeFile = java.io.File.createTempFile("pegasus-dax-", ".edges");
+            mEdgeFile.deleteOnExit();
+            mEdges =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mEdgeFile)));
+        } catch (IOException ioe) {
+            throw new RuntimeException(
+                    "Unable to create the temporary file for the dependencies of workflow " + name,
+                    ioe);
+        }
+    }
+
+    /**
+     * Return the name/label of the dax
+     *
+     * @return the name
+     */
+    public String getName() {
+        return mHead.getName();
+    }
+
+    /**
+     * Returns the number of jobs, daxes and dags written out so far.
+     *
+     * @return the number of jobs
+     */
+    public int getJobCount() {
+        return mJobIds.size();
+    }
+
+    /**
+     * Add a Notification for this Workflow
+     *
+     * @param when when to invoke
+     * @param what what executable to invoke including the arguments
+     * @return StreamingADAG
+     */
+    public StreamingADAG addNotification(WHEN when, String what) {
+        this.checkHeadOpen("notification");
+        mHead.addNotification(when, what);
+        return this;
+    }
+
+    /**
+     * Add a Notification for this Workflow
+     *
+     * @param invoke the invoke object containing the notification
+     * @return StreamingADAG
+     */
+    public StreamingADAG addNotification(Invoke invoke) {
+        this.checkHeadOpen("notification");
+        mHead.addNotification(invoke);
+        return this;
+    }
+
+    /**
+     * Adds metadata to the workflow
+     *
+     * @param key key name for metadata
+     * @param value value
+     * @return StreamingADAG
+     */
+    public StreamingADAG addMetaData(String key, String value) {
+        this.checkHeadOpen("metadata");
+        mHead.addMetaData(key, value);
+        return this;
+    }
+
+    /**
+     * Add a RC File object to the top of the DAX.
+     *
+     * @param file File object to be added to the RC section
+     * @return StreamingADAG
+     */
+    public StreamingADAG addFile(File file) {
+        this.checkHeadOpen("file");
+        mHead.addFile(file);
+        return this;
+    }
+
+    /**
+     * Add Files to the RC Section on top of the DAX
+     *
+     * @param files List of File objects to be added to the RC Section
+     * @return StreamingADAG
+     */
+    public StreamingADAG addFiles(List<File> files) {
+        this.checkHeadOpen("file");
+        mHead.addFiles(files);
+        return this;
+    }
+
+    /**
+     * Add Executable to the DAX
+     *
+     * @param executable Executable to be added
+     * @return StreamingADAG
+     */
+    public StreamingADAG addExecutable(Executable executable) {
+        this.checkHeadOpen("executable");
+        mHead.addExecutable(executable);
+        return this;
+    }
+
+    /**
+     * Add Multiple Executable objects to the DAX
+     *
+     * @param executables List of Executable objects to be added
+     * @return StreamingADAG
+     */
+    public StreamingADAG addExecutables(List<Executable> executables) {
+        this.checkHeadOpen("executable");
+        mHead.addExecutables(executables);
+        return this;
+    }
+
+    /**
+     * Add Transformation to the DAX
+     *
+     * @param transformation Transformation object to be added
+     * @return StreamingADAG
+     */
+    public StreamingADAG addTransformation(Transformation transformation) {
+        this.checkHeadOpen("transformation");
+        mHead.addTransformation(transformation);
+        return this;
+    }
+
+    /**
+     * Add Job to the DAX, and writes it out.
+     *
+     * @param job the job
+     * @return StreamingADAG
+     */
+    public StreamingADAG addJob(Job job) {
+        return this.addAbstractJob(job);
+    }
+
+    /**
+     * Add multiple Jobs to the DAX, and writes them out.
+     *
+     * @param jobs List of jobs to add
+     * @return StreamingADAG
+     */
+    public StreamingADAG addJobs(List<Job> jobs) {
+        for (Job job : jobs) {
+            this.addJob(job);
+        }
+        return this;
+    }
+
+    /**
+     * Add a DAG job to the DAX, and writes it out.
+     *
+     * @param dag the DAG to be added
+     * @return StreamingADAG
+     */
+    public StreamingADAG addDAG(DAG dag) {
+        return this.addAbstractJob(dag);
+    }
+
+    /**
+     * Add a DAX job to the DAX, and writes it out.
+     *
+     * @param dax DAX to be added
+     * @return StreamingADAG
+     */
+    public StreamingADAG addDAX(DAX dax) {
+        return this.addAbstractJob(dax);
+    }
+
+    /**
+     * Check if a jobid has been added to the DAX
+     *
+     * @param jobid the job id
+     * @return boolean
+     */
+    public boolean containsJobId(String jobid) {
+        return mJobIds.contains(jobid);
+    }
+
+    /**
+     * Add a parent child dependency between two jobs,dax,dag
+     *
+     * @param parent String job,dax,dag id
+     * @param child String job,dax,dag,id
+     * @return StreamingADAG
+     */
+    public StreamingADAG addDependency(String parent, String child) {
+        return this.addDependency(parent, child, null);
+    }
+
+    /**
+     * Add a parent child dependency between two jobs,dax,dag
+     *
+     * @param parent Job|DAX|DAG object
+     * @param child Job|DAX|DAG object
+     * @return StreamingADAG
+     */
+    public StreamingADAG addDependency(AbstractJob parent, AbstractJob child) {
+        return this.addDependency(parent.getId(), child.getId(), null);
+    }
+
+    /**
+     * Add a parent child dependency with a dependency label
+     *
+     * @param parent Job|DAX|DAG object
+     * @param child Job|DAX|DAG object
+     * @param label String label for annotation
+     * @return StreamingADAG
+     */
+    public StreamingADAG addDependency(AbstractJob parent, AbstractJob child, String label) {
+        return this.addDependency(parent.getId(), child.getId(), label);
+    }
+
+    /**
+     * Add a parent child dependency with a dependency label. The jobs need not have been added yet,
+     * but have to be added before the workflow is closed. The dependency is dropped if it repeats
+     * the one added just before it.
+     *
+     * @param parent String job,dax,dag id
+     * @param child String job,dax,dag id
+     * @param label String dependency label. It is not written out in the YAML format.
+     * @return StreamingADAG
+     */
+    public StreamingADAG addDependency(String parent, String child, String label) {
+        this.checkOpen();
+        if (parent == null || child == null) {
+            throw new RuntimeException(
+                    "Invalid dependency between jobs " + parent + " and " + child);
+        }
+        String[] edge = new String[] {parent, child, label};
+        if (Arrays.equals(edge, mLastEdge)) {
+            return this;
+        }
+        try {
+            mEdges.writeUTF(parent);
+            mEdges.writeUTF(child);
+            mEdges.writeBoolean(label != null);
+            if (label != null) {
+                mEdges.writeUTF(label);
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException(
+                    "Unable to spool the dependency between jobs " + parent + " and " + child, ioe);
+        }
+        mEdgeCount++;
+        mLastEdge = edge;
+        return this;
+    }
+
+    /**
+     * Writes out the dependencies and the end of the workflow, after validating that the jobs
+     * referred to by the dependencies have been added, and closes the writer.
+     *
+     * @throws IOException if the workflow cannot be written out
+     */
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        try {
+            this.writeHead();
+            mEdges.close();
+            DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(mEdgeFile)));
+            try {
+                if (mFormat == ADAG.FORMAT.yaml) {
+                    this.writeYAMLDependencies(in);
+                } else {
+                    this.writeXMLDependencies(in);
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            mClosed = true;
+            mEdgeFile.delete();
+            if (mGenerator != null) {
+                mGenerator.close();
+            }
+            if (mXMLWriter != null) {
+                mXMLWriter.close();
+            }
+            mOut.close();
+        }
+    }
+
+    /**
+     * Writes out a job, dax or dag, after the sections preceding the jobs if it is the first.
+     *
+     * @param ajob the job
+     * @return StreamingADAG
+     */
+    private StreamingADAG addAbstractJob(AbstractJob ajob) {
+        this.checkOpen();
+        if (!mJobIds.add(ajob.getId())) {
+            throw new RuntimeException(
+                    "Job of type"
+                            + ajob.getClass().getSimpleName()
+                            + " with jobid "
+                            + ajob.getId()
+                            + " already exists in the DAX");
+        }
+        try {
+            this.writeHead();
+            if (mFormat == ADAG.FORMAT.yaml) {
+                mGenerator.writeObject(ajob);
+            } else {
+                ajob.toXML(mXMLWriter, 1);
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException(
+                    "Error encountered while writing out job " + ajob.getId(), ioe);
+        }
+        return this;
+    }
+
+    /** Writes out the sections preceding the jobs, if they have not been written yet. */
+    private void writeHead() throws IOException {
+        if (mHeadWritten) {
+            return;
+        }
+        mHeadWritten = true;
+        if (mFormat == ADAG.FORMAT.yaml) {
+            ObjectMapper mapper =
+                    new ObjectMapper(new YAMLFactory().enable(YAMLGenerator.Feature.INDENT_ARRAYS));
+            mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
+            mGenerator = mapper.getFactory().createGenerator(mOut);
+            ADAG.JsonSerializer.serializeHead(mHead, mGenerator);
+            mGenerator.writeArrayFieldStart("jobs");
+        } else {
+            mXMLWriter = new XMLWriter(mOut);
+            mHead.toXMLHead(mXMLWriter, 0);
+        }
+    }
+
+    /**
+     * Writes out the jobDependencies section from the spooled dependencies, grouping those with the
+     * same parent added one after the other, and the end of the workflow.
+     *
+     * @param in the spooled dependencies
+     */
+    private void writeYAMLDependencies(DataInputStream in) throws IOException {
+        mGenerator.writeEndArray();
+        if (mEdgeCount > 0) {
+            mGenerator.writeArrayFieldStart("jobDependencies");
+            String current = null;
+            for (Edge e = this.readEdge(in); e != null; e = this.readEdge(in)) {
+                if (!e.getParent().equals(current)) {
+                    if (current != null) {
+                        mGenerator.writeEndArray();
+                        mGenerator.writeEndObject();
+                    }
+                    current = e.getParent();
+                    mGenerator.writeStartObject();
+                    mGenerator.writeStringField("id", current);
+                    mGenerator.writeArrayFieldStart("children");
+                }
+                mGenerator.writeString(e.getChild());
+            }
+            mGenerator.writeEndArray();
+            mGenerator.writeEndObject();
+            mGenerator.writeEndArray();
+        }
+        mGenerator.writeEndObject();
+    }
+
+    /**
+     * Writes out the dependencies section from the spooled dependencies, grouping those with the
+     * same child added one after the other, and the end of the workflow.
+     *
+     * @param in the spooled dependencies
+     */
+    private void writeXMLDependencies(DataInputStream in) throws IOException {
+        mXMLWriter.writeXMLComment(
+                "Section 7: Dependencies - Parent Child relationships (can be empty)", true);
+        String current = null;
+        for (Edge e = this.readEdge(in); e != null; e = this.readEdge(in)) {
+            if (!e.getChild().equals(current)) {
+                if (current != null) {
+                    mXMLWriter.endElement(1);
+                }
+                current = e.getChild();
+                mXMLWriter.startElement("child", 1).writeAttribute("ref", current);
+            }
+            e.toXMLParent(mXMLWriter, 2);
+        }
+        if (current != null) {
+            mXMLWriter.endElement(1);
+        }
+        mXMLWriter.endElement();
+    }
+
+    /**
+     * Reads the next spooled dependency, and validates that its jobs have been added.
+     *
+     * @param in the spooled dependencies
+     * @return the dependency, or null if there are no more
+     */
+    private Edge readEdge(DataInputStream in) throws IOException {
+        String parent;
+        try {
+            parent = in.readUTF();
+        } catch (EOFException eof) {
+            return null;
+        }
+        String child = in.readUTF();
+        String label = in.readBoolean() ? in.readUTF() : null;
+        if (!mJobIds.contains(parent) || !mJobIds.contains(child)) {
+            throw new RuntimeException(
+                    "Either Job with id "
+                            + parent
+                            + " or "
+                            + child
+                            + " is not added to the DAX.\n"
+                            + "Please add all the jobs referred to by dependencies before closing the dax\n");
+        }
+        return new Edge(parent, child, label);
+    }
+
+    /**
+     * Checks that the sections preceding the jobs have not been written out.
+     *
+     * @param what what is being added
+     */
+    private void checkHeadOpen(String what) {
+        this.checkOpen();
+        if (mHeadWritten) {
+            throw new RuntimeException(
+                    "Unable to add "
+                            + what
+                            + " to the DAX "
+                            + this.getName()
+                            + " after jobs have been added");
+        }
+    }
+
+    /** Checks that the workflow has not been closed. */
+    private void checkOpen() {
+        if (mClosed) {
+            throw new RuntimeException("The DAX " + this.getName() + " has been closed");
+        }
+    }
+}
@@ -14,6 +14,7 @@
 package edu.isi.pegasus.planner.estimate;
 
 import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.Boolean;
 import edu.isi.pegasus.common.util.DefaultStreamGobblerCallback;
 import edu.isi.pegasus.common.util.FindExecutable;
 import edu.isi.pegasus.common.util.StreamGobbler;
@@ -23,16 +24,32 @@ import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Metadata;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Interface with Aspen to estimate job runtimes.
  *
+ * <p>The estimates are cached by the metadata the estimate client is invoked with, so that the
+ * client is called only once for jobs with identical metadata. When the estimates for all the jobs
+ * in the workflow are requested together, the estimate client is launched once in batch mode with
+ * the --batch option. In batch mode the client reads the metadata for a job as a line of whitespace
+ * separated key=value pairs on its stdin, and writes the estimates to its stdout as key=value
+ * pairs, one per line, followed by an empty line. If the client does not support batch mode, the
+ * client is invoked separately for each job.
+ *
  * @author Karan Vahi
  */
 public class Aspen implements Estimator {
@@ -45,6 +62,15 @@ public class Aspen implements Estimator {
      */
     public static final String ASPEN_MODELS_PROPERTY_KEY = "pegasus.estimator.aspen.models";
 
+    /**
+     * The property key to turn off the invocation of the estimate client in batch mode. Defaults to
+     * true.
+     */
+    public static final String ASPEN_BATCH_PROPERTY_KEY = "pegasus.estimator.aspen.batch";
+
+    /** The option with which the estimate client is launched in batch mode. */
+    public static final String BATCH_OPTION = "--batch";
+
     /** name of the pegasus aspen client */
     public static final String PEGASUS_ASPEN_CLIENT_NAME = "estimate";
 
@@ -62,6 +88,12 @@ public class Aspen implements Estimator {
 
     private String[] mEnvVariables;
 
+    /** Whether to invoke the estimate client in batch mode. */
+    private boolean mBatch;
+
+    /** The estimates indexed by the arguments the estimate client was invoked with. */
+    private Map<String, Map<String, String>> mCache;
+
     /**
      * Initialization method
      *
@@ -71,6 +103,8 @@ public class Aspen implements Estimator {
     public void initialize(ADag dag, PegasusBag bag) {
         mProps = bag.getPegasusProperties();
         mLogger = bag.getLogger();
+        mCache = new HashMap<String, Map<String, String>>();
+        mBatch = Boolean.parse(mProps.getProperty(ASPEN_BATCH_PROPERTY_KEY), true);
 
         String binDir = mProps.getProperty(ASPEN_BIN_PROPERTY_KEY);
         mAspenEstimateClient = FindExecutable.findExec(binDir, PEGASUS_ASPEN_CLIENT_NAME);
@@ -135,6 +169,36 @@ public class Aspen implements Estimator {
         return estimates.get("memory");
     }
 
+    /**
+     * Computes the estimates for a collection of jobs, by launching the estimate client once in
+     * batch mode. The estimates for jobs with identical metadata are computed only once.
+     *
+     * @param jobs the jobs for which estimation is required
+     */
+    public void estimate(Collection<Job> jobs) {
+        if (!mBatch) {
+            return;
+        }
+        Set<String> pending = new LinkedHashSet<String>();
+        for (Job job : jobs) {
+            String args = assembleArgsFromMetadata(job);
+            if (!mCache.containsKey(args)) {
+                pending.add(args);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        mLogger.log(
+                "Estimating "
+                        + pending.size()
+                        + " distinct sets of metadata for "
+                        + jobs.size()
+                        + " jobs in batch mode",
+                LogManager.DEBUG_MESSAGE_LEVEL);
+        this.executeAspenBatchCommand(pending);
+    }
+
     /**
      * Returns all estimates for a job
      *
@@ -142,7 +206,13 @@ public class Aspen implements Estimator {
      * @return
      */
     public Map<String, String> getAllEstimates(Job job) {
-        return this.executeAspenCommand(assembleArgsFromMetadata(job));
+        String args = assembleArgsFromMetadata(job);
+        Map<String, String> estimates = mCache.get(args);
+        if (estimates == null) {
+            estimates = this.executeAspenCommand(args);
+            mCache.put(args, estimates);
+        }
+        return new HashMap<String, String>(estimates);
     }
 
     /**
@@ -154,8 +224,13 @@ public class Aspen implements Estimator {
     private String assembleArgsFromMetadata(Job job) {
         StringBuilder args = new StringBuilder();
         Metadata m = (Metadata) job.getMetadata();
+        // the keys are sorted, so that jobs with the same metadata
+        // result in the same arguments
+        Set<String> keys = new TreeSet<String>();
         for (Iterator it = m.getProfileKeyIterator(); it.hasNext(); ) {
-            String key = (String) it.next();
+            keys.add((String) it.next());
+        }
+        for (String key : keys) {
             String value = (String) m.get(key);
             // build key=value pairs separated by whitespace
             args.append(key).append("=").append(value).append(" ");
@@ -222,6 +297,78 @@ public class Aspen implements Estimator {
         return result;
     }
 
+    /**
+     * Launches the estimate client in batch mode, and sends it the arguments to estimate for one
+     * per line. The estimates are put in the cache. If the client fails, or does not support batch
+     * mode, batch mode is turned off, and the remaining estimates are computed by invoking the
+     * client for each job.
+     *
+     * @param pending the arguments to estimate for
+     */
+    private void executeAspenBatchCommand(Set<String> pending) {
+        String command = this.mAspenEstimateClient.getAbsolutePath() + " " + BATCH_OPTION;
+        mLogger.log("Executing  " + command, LogManager.DEBUG_MESSAGE_LEVEL);
+
+        Process p = null;
+        StreamGobbler eps = null;
+        int estimated = 0;
+        try {
+            p = Runtime.getRuntime().exec(command, mEnvVariables);
+            eps =
+                    new StreamGobbler(
+                            p.getErrorStream(),
+                            new DefaultStreamGobblerCallback(LogManager.ERROR_MESSAGE_LEVEL));
+            eps.start();
+
+            PrintWriter in = new PrintWriter(new OutputStreamWriter(p.getOutputStream()));
+            BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream()));
+            for (String args : pending) {
+                in.println(args.trim());
+                in.flush();
+
+                AspenStreamGobblerCallback callback =
+                        new AspenStreamGobblerCallback(mLogger, LogManager.DEBUG_MESSAGE_LEVEL);
+                String line;
+                while ((line = out.readLine()) != null && line.trim().length() > 0) {
+                    callback.work(line);
+                }
+                if (line == null) {
+                    // the client exited before completing the estimates
+                    break;
+                }
+                mCache.put(args, callback.getEstimates());
+                estimated++;
+            }
+            in.close();
+            int status = p.waitFor();
+            eps.join();
+            mLogger.log(
+                    mAspenEstimateClient + " exited with status " + status,
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+        } catch (IOException ioe) {
+            mLogger.log(
+                    "IOException while executing " + command, ioe, LogManager.DEBUG_MESSAGE_LEVEL);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (p != null) {
+                p.destroy();
+            }
+        }
+
+        if (estimated < pending.size()) {
+            mLogger.log(
+                    mAspenEstimateClient
+                            + " does not support batch mode. Estimated "
+                            + estimated
+                            + " of "
+                            + pending.size()
+                            + " in batch mode. Invoking the client for each job instead",
+                    LogManager.WARNING_MESSAGE_LEVEL);
+            mBatch = false;
+        }
+    }
+
     private static class AspenStreamGobblerCallback implements StreamGobblerCallback {
 
         /** The instance to the logger to log messages. */
@@ -253,6 +400,7 @@ public class Aspen implements Estimator {
             String[] kvs = line.split("=");
             if (kvs.length != 2) {
                 mLogger.log("Unable to parse aspen output " + line, LogManager.ERROR_MESSAGE_LEVEL);
+                return;
             }
             mEstimates.put(kvs[0], kvs[1]);
         }
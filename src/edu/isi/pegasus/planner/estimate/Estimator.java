@@ -16,6 +16,7 @@ package edu.isi.pegasus.planner.estimate;
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -33,6 +34,16 @@ public interface Estimator {
      */
     public void initialize(ADag dag, PegasusBag bag);
 
+    /**
+     * Computes the estimates for a collection of jobs in one go, before the estimates are retrieved
+     * for the jobs individually. Implementations that call out to external tools can use this to
+     * reduce the number of call outs. The default implementation does nothing, and the estimates
+     * are computed when they are retrieved.
+     *
+     * @param jobs the jobs for which estimation is required
+     */
+    public default void estimate(Collection<Job> jobs) {}
+
     /**
      * Returns all estimates for a job
      *
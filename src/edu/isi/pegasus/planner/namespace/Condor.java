@@ -794,7 +794,7 @@ public class Condor extends Namespace {
             key = key.toLowerCase();
         }
 
-        mProfileMap.put(key, value);
+        writableProfileMap().put(key, value);
     }
 
     /**
@@ -846,6 +846,6 @@ public class Condor extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return new Condor(this.mProfileMap);
+        return shareProfilesWith(new Condor());
     }
 }
@@ -228,7 +228,7 @@ public class Dagman extends Namespace {
      */
     public void construct(String key, String value) {
         // convert to uppercase the key
-        mProfileMap.put(key.toUpperCase(), value);
+        writableProfileMap().put(key.toUpperCase(), value);
     }
 
     /**
@@ -647,7 +647,7 @@ public class Dagman extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        Dagman ns = (mProfileMap == null) ? new Dagman() : new Dagman(this.mProfileMap);
+        Dagman ns = (Dagman) shareProfilesWith(new Dagman());
         ns.mJobName = (mJobName == null) ? null : new String(this.mJobName);
         return ns;
     }
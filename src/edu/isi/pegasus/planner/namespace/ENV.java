@@ -127,7 +127,7 @@ public class ENV extends Namespace {
      */
     public void construct(String key, String value) {
         if (mProfileMap == null) mProfileMap = new LinkedHashMap();
-        mProfileMap.put(key, value);
+        writableProfileMap().put(key, value);
     }
 
     /**
@@ -252,6 +252,6 @@ public class ENV extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null ? new ENV() : new ENV(this.mProfileMap));
+        return shareProfilesWith(new ENV());
     }
 }
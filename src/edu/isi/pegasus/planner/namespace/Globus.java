@@ -167,7 +167,7 @@ public class Globus extends Namespace {
      * @param value is the right hand side
      */
     public void construct(String key, String value) {
-        mProfileMap.put(key.toLowerCase(), value);
+        writableProfileMap().put(key.toLowerCase(), value);
     }
 
     /**
@@ -411,7 +411,7 @@ public class Globus extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return new Globus(this.mProfileMap);
+        return shareProfilesWith(new Globus());
     }
 
     /**
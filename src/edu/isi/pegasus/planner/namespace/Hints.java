@@ -107,7 +107,7 @@ public class Hints extends Namespace {
      */
     public void construct(String key, String value) {
         if (mProfileMap == null) mProfileMap = new TreeMap();
-        mProfileMap.put(key, value);
+        writableProfileMap().put(key, value);
     }
 
     /**
@@ -257,6 +257,6 @@ public class Hints extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null) ? new Hints() : new Hints(this.mProfileMap);
+        return shareProfilesWith(new Hints());
     }
 }
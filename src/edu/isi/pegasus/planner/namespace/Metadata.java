@@ -101,7 +101,7 @@ public class Metadata extends Namespace {
      */
     public void construct(String key, String value) {
         if (mProfileMap == null) mProfileMap = new HashMap();
-        mProfileMap.put(key, value);
+        writableProfileMap().put(key, value);
     }
 
     /**
@@ -195,7 +195,7 @@ public class Metadata extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null) ? new Metadata() : new Metadata(this.mProfileMap);
+        return shareProfilesWith(new Metadata());
     }
 
     /**
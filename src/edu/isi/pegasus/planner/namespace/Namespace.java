@@ -21,10 +21,16 @@ import edu.isi.pegasus.planner.catalog.classes.Profiles;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
 import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.common.PegasusProperties;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
 
 /**
  * The base namespace class that all the othernamepsace handling classes extend. Some constants are
@@ -74,6 +80,19 @@ public abstract class Namespace /*extends Data*/ {
     @SerializedName("profiles")
     protected Map mProfileMap;
 
+    /**
+     * Interned profile maps for each namespace implementation. An interned map is shared between
+     * namespace objects, and is never modified.
+     */
+    private static final Map<Class, Map<Map, WeakReference<Map>>> mInternedProfileMaps =
+            new HashMap<Class, Map<Map, WeakReference<Map>>>();
+
+    /**
+     * Boolean indicating whether the profile map is shared with other namespace objects, in which
+     * case it is copied before it is modified.
+     */
+    private transient boolean mSharedProfileMap = false;
+
     /**
      * Checks if the namespace specified is valid or not.
      *
@@ -314,7 +333,7 @@ public abstract class Namespace /*extends Data*/ {
      * @param value is the right hand side
      */
     public void construct(String key, String value) {
-        mProfileMap.put(key, value);
+        writableProfileMap().put(key, value);
     }
 
     /**
@@ -324,7 +343,7 @@ public abstract class Namespace /*extends Data*/ {
      * @return the value object if it exists. null if the key does not exist in the namespace.
      */
     public Object removeKey(Object key) {
-        return mProfileMap.remove(key);
+        return writableProfileMap().remove(key);
     }
 
     /**
@@ -517,8 +536,104 @@ public abstract class Namespace /*extends Data*/ {
     /** Resets the namespace, removing all profiles associated */
     public void reset() {
         if (this.mProfileMap != null) {
-            this.mProfileMap.clear();
+            this.writableProfileMap().clear();
+        }
+    }
+
+    /**
+     * Returns the profile map for modification. If the profile map is shared with other namespace
+     * objects, a copy of the map is made first.
+     *
+     * @return the profile map, that may be null if the implementation creates the map lazily.
+     */
+    protected Map writableProfileMap() {
+        if (mSharedProfileMap) {
+            mProfileMap = copyOf(mProfileMap);
+            mSharedProfileMap = false;
+        }
+        return mProfileMap;
+    }
+
+    /**
+     * Returns a copy of a profile map, of the same type as the map.
+     *
+     * @param map the profile map
+     * @return the copy
+     */
+    private static Map copyOf(Map map) {
+        if (map instanceof SortedMap) {
+            return new TreeMap((SortedMap) map);
+        } else if (map instanceof LinkedHashMap) {
+            return new LinkedHashMap(map);
+        }
+        return new HashMap(map);
+    }
+
+    /**
+     * Shares the profiles of this namespace with another namespace object of the same type, usually
+     * a clone. The profile map is interned, so that identical profile maps are shared across jobs,
+     * and is copied only when either of the namespace objects is modified.
+     *
+     * @param ns the namespace object to share the profiles with.
+     * @return the namespace object passed
+     */
+    protected Namespace shareProfilesWith(Namespace ns) {
+        if (mProfileMap == null || mProfileMap.isEmpty()) {
+            // nothing to share
+            ns.mProfileMap = (mProfileMap == null) ? null : copyOf(mProfileMap);
+            ns.mSharedProfileMap = false;
+            return ns;
+        }
+        if (!mSharedProfileMap) {
+            mProfileMap = intern(mProfileMap);
+            mSharedProfileMap = true;
+        }
+        ns.mProfileMap = mProfileMap;
+        ns.mSharedProfileMap = true;
+        return ns;
+    }
+
+    /**
+     * Returns the interned instance of a profile map. Maps are interned per namespace
+     * implementation, and only if they iterate over the profiles in the same order, as order is
+     * significant for some namespaces.
+     *
+     * @param map the profile map
+     * @return the interned map that is equal to the map passed, else the map itself.
+     */
+    private Map intern(Map map) {
+        synchronized (mInternedProfileMaps) {
+            Map<Map, WeakReference<Map>> pool = mInternedProfileMaps.get(this.getClass());
+            if (pool == null) {
+                pool = new WeakHashMap<Map, WeakReference<Map>>();
+                mInternedProfileMaps.put(this.getClass(), pool);
+            }
+            WeakReference<Map> ref = pool.get(map);
+            Map interned = (ref == null) ? null : ref.get();
+            if (interned == null) {
+                pool.put(map, new WeakReference<Map>(map));
+                return map;
+            }
+            return sameOrder(interned, map) ? interned : map;
+        }
+    }
+
+    /**
+     * Returns whether two equal maps iterate over their entries in the same order.
+     *
+     * @param a the first map
+     * @param b the second map
+     * @return boolean
+     */
+    private static boolean sameOrder(Map a, Map b) {
+        Iterator ita = a.keySet().iterator();
+        Iterator itb = b.keySet().iterator();
+        while (ita.hasNext() && itb.hasNext()) {
+            if (!ita.next().equals(itb.next())) {
+                return false;
+            }
         }
+        return !ita.hasNext() && !itb.hasNext();
     }
 
     /**
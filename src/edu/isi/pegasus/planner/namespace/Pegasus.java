@@ -484,7 +484,7 @@ public class Pegasus extends Namespace {
      */
     public void construct(String key, String value) {
         if (mProfileMap == null) mProfileMap = new TreeMap();
-        mProfileMap.put(key.toLowerCase(), value);
+        writableProfileMap().put(key.toLowerCase(), value);
     }
 
     /**
@@ -912,6 +912,6 @@ public class Pegasus extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null) ? new Pegasus() : new Pegasus(this.mProfileMap);
+        return shareProfilesWith(new Pegasus());
     }
 }
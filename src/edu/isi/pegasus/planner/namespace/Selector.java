@@ -97,7 +97,7 @@ public class Selector extends Namespace {
      */
     public void construct(String key, String value) {
         if (mProfileMap == null) mProfileMap = new TreeMap();
-        mProfileMap.put(key, value);
+        writableProfileMap().put(key, value);
     }
 
     /**
@@ -196,6 +196,6 @@ public class Selector extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
-        return (mProfileMap == null ? new Selector() : new Selector(this.mProfileMap));
+        return shareProfilesWith(new Selector());
     }
 }
@@ -17,7 +17,7 @@ import static edu.isi.pegasus.planner.parser.SiteCatalogYAMLParser.SCHEMA_URI;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.InjectableValues;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -45,7 +45,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -147,6 +146,12 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
      * Deserializer class that preserves the callback interface used for parsing the XML parsers.
      * Invokes callback functions during deserialization of the document.
      *
+     * <p>The document is deserialized by walking the tokens of the top level workflow object. The
+     * jobs and the job dependencies are deserialized one element at a time, and the callbacks are
+     * invoked as soon as an element has been parsed. This ensures that the whole document is never
+     * loaded in memory as a tree. The catalogs and other top level sections are small, and are
+     * deserialized as a whole.
+     *
      * @author Karan Vahi
      */
     static class YAMLStreamingDeserializer extends PegasusJsonDeserializer<DAXParser5> {
@@ -158,14 +163,18 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
             if (c == null) {
                 throw new RuntimeException("Callback not initialized when parsing inititated");
             }
-            ObjectCodec oc = parser.getCodec();
-            JsonNode node = oc.readTree(parser);
+            if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException(
+                        WorkflowKeywords.WORKFLOW.getReservedName()
+                                + ": value should be of type object ");
+            }
 
             Map attrs = new HashMap();
             attrs.put("index", "0");
-            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
-                Map.Entry<String, JsonNode> e = it.next();
-                String key = e.getKey();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                // move to the value for the key
+                parser.nextToken();
 
                 WorkflowKeywords reservedKey = WorkflowKeywords.getReservedKey(key);
 
@@ -174,18 +183,19 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
                         // ignore any user defined extensions
                         // example x-: {apiLang: python, createdBy: bamboo, createdOn: '07-10-20
                         // 11:09:29'}
+                        parser.skipChildren();
                         continue;
                     }
                     this.complainForIllegalKey(
-                            WorkflowKeywords.WORKFLOW.getReservedName(), key, node);
+                            WorkflowKeywords.WORKFLOW.getReservedName(), key, readTree(parser));
                 }
                 switch (reservedKey) {
                     case PEGASUS:
-                        attrs.put("version", node.get(key).asText());
+                        attrs.put("version", readTree(parser).asText());
                         break;
 
                     case X_PEGASUS:
-                        JsonNode pegasusExtensionsNode = node.get(key);
+                        JsonNode pegasusExtensionsNode = readTree(parser);
                         ObjectMapper mapper = new ObjectMapper();
                         Map<String, String> m =
                                 mapper.convertValue(pegasusExtensionsNode, Map.class);
@@ -202,49 +212,35 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
                         break;
 
                     case METADATA:
-                        for (Profile p : this.createMetadata(node.get(key))) {
+                        for (Profile p : this.createMetadata(readTree(parser))) {
                             c.cbMetadata(p);
                         }
                         break;
 
                     case NAME:
-                        attrs.put("name", node.get(key).asText());
+                        attrs.put("name", readTree(parser).asText());
                         c.cbDocument(attrs);
                         break;
 
                     case REPLICA_CATALOG:
-                        JsonNode rcNode = node.get(key);
-                        if (rcNode != null) {
-                            parser = rcNode.traverse(oc);
-                            ReplicaStore store = parser.readValueAs(ReplicaStore.class);
-                            c.cbReplicaStore(store);
-                        }
+                        ReplicaStore replicaStore = parser.readValueAs(ReplicaStore.class);
+                        c.cbReplicaStore(replicaStore);
                         break;
 
                     case SITE_CATALOG:
-                        JsonNode scNode = node.get(key);
-                        if (scNode != null) {
-                            parser = scNode.traverse(oc);
-                            SiteStore store = parser.readValueAs(SiteStore.class);
-                            c.cbSiteStore(store);
-                        }
+                        SiteStore siteStore = parser.readValueAs(SiteStore.class);
+                        c.cbSiteStore(siteStore);
                         break;
 
                     case TRANSFORMATION_CATALOG:
-                        JsonNode tcNode = node.get(key);
-                        if (tcNode != null) {
-                            parser = tcNode.traverse(oc);
-                            TransformationStore store =
-                                    parser.readValueAs(TransformationStore.class);
-                            c.cbTransformationStore(store);
-                        }
+                        TransformationStore transformationStore =
+                                parser.readValueAs(TransformationStore.class);
+                        c.cbTransformationStore(transformationStore);
                         break;
 
                     case HOOKS:
-                        JsonNode hooksNode = node.get(key);
-                        if (hooksNode != null) {
-                            parser = hooksNode.traverse(oc);
-                            Notifications notifications = parser.readValueAs(Notifications.class);
+                        Notifications notifications = parser.readValueAs(Notifications.class);
+                        if (notifications != null) {
                             for (Invoke.WHEN when : Invoke.WHEN.values()) {
                                 for (Invoke i : notifications.getNotifications(when)) {
                                     c.cbWfInvoke(i);
@@ -254,49 +250,56 @@ public class DAXParser5 extends YAMLParser implements DAXParser {
                         break;
 
                     case JOBS:
-                        JsonNode jobsNode = node.get(key);
-                        if (jobsNode.isArray()) {
-                            for (JsonNode jobNode : jobsNode) {
-                                parser = jobNode.traverse(oc);
-                                Job job = parser.readValueAs(Job.class);
-                                c.cbJob(job);
-                            }
-                        } else {
+                        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
                             throw new RuntimeException("jobs: value should be of type array ");
                         }
+                        // each job is handed to the callback as soon as it is parsed
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            Job job = parser.readValueAs(Job.class);
+                            c.cbJob(job);
+                        }
                         break;
 
                     case JOB_DEPENDENCIES:
-                        JsonNode dependenciesNode = node.get(key);
-                        if (dependenciesNode.isArray()) {
-                            for (JsonNode dependencyNode : dependenciesNode) {
-                                String jobID =
-                                        dependencyNode
-                                                .get(WorkflowKeywords.JOB_ID.getReservedName())
-                                                .asText();
-                                List<String> children =
-                                        this.createChildren(
-                                                dependencyNode.get(
-                                                        WorkflowKeywords.CHILDREN
-                                                                .getReservedName()));
-                                c.cbChildren(jobID, children);
-                            }
-                        } else {
+                        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
                             throw new RuntimeException(
                                     WorkflowKeywords.JOB_DEPENDENCIES
                                             + ": value should be of type array ");
                         }
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            JsonNode dependencyNode = readTree(parser);
+                            String jobID =
+                                    dependencyNode
+                                            .get(WorkflowKeywords.JOB_ID.getReservedName())
+                                            .asText();
+                            List<String> children =
+                                    this.createChildren(
+                                            dependencyNode.get(
+                                                    WorkflowKeywords.CHILDREN.getReservedName()));
+                            c.cbChildren(jobID, children);
+                        }
                         break;
 
                     default:
                         this.complainForUnsupportedKey(
-                                WorkflowKeywords.WORKFLOW.getReservedName(), key, node);
+                                WorkflowKeywords.WORKFLOW.getReservedName(), key, readTree(parser));
                 }
             }
             c.cbDone();
             return null;
         }
 
+        /**
+         * Reads the value the parser is positioned at as a tree.
+         *
+         * @param parser the parser
+         * @return the JsonNode for the value
+         * @throws IOException
+         */
+        private JsonNode readTree(JsonParser parser) throws IOException {
+            return parser.getCodec().readTree(parser);
+        }
+
         @Override
         public RuntimeException getException(String message) {
             return new RuntimeException(message);
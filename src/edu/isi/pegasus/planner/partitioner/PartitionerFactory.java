@@ -36,6 +36,12 @@ public class PartitionerFactory {
     /** The name of the class that does label based partitioning. */
     public static final String LABEL_BASED_PARTITIONING_CLASS = "Label";
 
+    /**
+     * The name of the class that does label based partitioning, passing each partition on as soon
+     * as it is complete.
+     */
+    public static final String STREAMING_LABEL_BASED_PARTITIONING_CLASS = "StreamingLabel";
+
     /** The name of the class that does horizontal based partitioning. */
     public static final String HORIZONTAL_PARTITIONING_CLASS = "Horizontal";
 
@@ -46,6 +52,7 @@ public class PartitionerFactory {
     private static final String[] PARTITIONING_CLASSES = {
         LEVEL_BASED_PARTITIONING_CLASS,
         LABEL_BASED_PARTITIONING_CLASS,
+        STREAMING_LABEL_BASED_PARTITIONING_CLASS,
         HORIZONTAL_PARTITIONING_CLASS
     };
 
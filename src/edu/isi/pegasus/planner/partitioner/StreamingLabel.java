@@ -0,0 +1,325 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.LabelBag;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A label based partitioner, that partitions the graph in the same way as the {@link Label}
+ * partitioner, but hands each partition to the callback as soon as it is complete instead of after
+ * the whole graph has been traversed.
+ *
+ * <p>The graph is traversed breadth first, and the jobs with the same label are required to be in
+ * consecutive levels. Hence, a partition to which no node was added in the previous level cannot
+ * grow any further, and is passed to the callback when the traversal moves to the next level. The
+ * relations of a partition to its parent partitions are passed to the callback as soon as both the
+ * partition and the parent partition have been passed, after which the partition is no longer
+ * referred to by the partitioner. This bounds the number of partitions held in memory to the ones
+ * spanning the last two levels traversed.
+ */
+public class StreamingLabel extends Partitioner {
+
+    /** A short description about the partitioner. */
+    public static final String DESCRIPTION = "Streaming Label Based Partitioning";
+
+    /** The partitions that can still grow, indexed by their label. */
+    private Map<String, Partition> mOpenPartitions;
+
+    /** The IDs of the partitions that have not been passed to the callback yet. */
+    private Set<String> mOpenIDs;
+
+    /** The labels of the partitions that have been passed to the callback. */
+    private Set<String> mClosedLabels;
+
+    /**
+     * The partitions to which nodes were last added in a level, indexed by the depth of the level.
+     * A partition may appear in more than one level, and is only closed from the last of them.
+     */
+    private List<List<Partition>> mLevels;
+
+    /**
+     * The IDs of the child partitions, whose relations to a parent partition can only be passed
+     * once the parent partition has been passed to the callback. Indexed by the ID of the parent
+     * partition.
+     */
+    private Map<String, List<String>> mPendingChildren;
+
+    /** The number of partitions passed to the callback. */
+    private int mClosed;
+
+    /** The largest number of partitions held at any point during the traversal. */
+    private int mMaxOpen;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param root the dummy root node of the graph.
+     * @param graph the map containing all the nodes of the graph keyed by the logical id of the
+     *     nodes.
+     * @param properties the properties passed to the planner.
+     */
+    public StreamingLabel(GraphNode root, Map graph, PegasusProperties properties) {
+        super(root, graph, properties);
+        mOpenPartitions = new HashMap<String, Partition>();
+        mOpenIDs = new HashSet<String>();
+        mClosedLabels = new HashSet<String>();
+        mLevels = new ArrayList<List<Partition>>();
+        mPendingChildren = new HashMap<String, List<String>>();
+    }
+
+    /**
+     * Partitions the graph passed in the constructor, on the basis of the labels associated with
+     * the nodes in the graph. All the nodes, with the same label are deemed to be in the same
+     * partition.
+     *
+     * @param c the callback for the partitioner.
+     */
+    public void determinePartitions(Callback c) {
+        int currentDepth = 0;
+        int partitionNum = 0;
+        ArrayDeque<GraphNode> queue = new ArrayDeque<GraphNode>();
+
+        mLogger.log("Starting Graph Traversal", LogManager.INFO_MESSAGE_LEVEL);
+        mRoot.setDepth(currentDepth);
+        mRoot.setColor(GraphNode.GRAY_COLOR);
+        queue.addLast(mRoot);
+
+        while (!queue.isEmpty()) {
+            GraphNode node = queue.removeFirst();
+            int depth = node.getDepth();
+            if (currentDepth < depth) {
+                // a new level starts. partitions last added to two levels
+                // up cannot grow any further
+                currentDepth++;
+                this.closeLevel(currentDepth - 2, c);
+            }
+
+            if (currentDepth > 0) {
+                String label = getLabel(node);
+                Partition p = mOpenPartitions.get(label);
+                if (p == null) {
+                    if (mClosedLabels.contains(label)) {
+                        throw new RuntimeException("Invalid labelled graph");
+                    }
+                    partitionNum++;
+                    p = new Partition();
+                    p.setIndex(partitionNum);
+                    p.setID(getPartitionID(partitionNum));
+                    mOpenPartitions.put(label, p);
+                    mOpenIDs.add(p.getID());
+                    mMaxOpen = Math.max(mMaxOpen, mOpenPartitions.size());
+                } else if (depth > p.lastAddedNode().getDepth() + 1) {
+                    throw new RuntimeException("Invalid labelled graph");
+                }
+
+                if (p.lastAddedNode() == null || p.lastAddedNode().getDepth() != depth) {
+                    this.level(depth).add(p);
+                }
+                p.addNode(node);
+                node.getBag().add(LabelBag.PARTITION_KEY, p.getID());
+            }
+
+            node.setColor(GraphNode.BLACK_COLOR);
+            for (GraphNode child : node.getChildren()) {
+                if (!child.isColor(GraphNode.GRAY_COLOR)
+                        && child.parentsColored(GraphNode.BLACK_COLOR)) {
+                    child.setDepth(depth + 1);
+                    child.setColor(GraphNode.GRAY_COLOR);
+                    queue.addLast(child);
+                }
+            }
+        }
+        mLogger.log("Starting Graph Traversal - DONE", LogManager.INFO_MESSAGE_LEVEL);
+
+        // close the partitions that spanned the last two levels
+        for (int depth = Math.max(currentDepth - 1, 0); depth <= currentDepth; depth++) {
+            this.closeLevel(depth, c);
+        }
+        if (!mOpenPartitions.isEmpty() || !mPendingChildren.isEmpty()) {
+            throw new RuntimeException(
+                    "Partitions left unresolved after traversal "
+                            + mOpenIDs
+                            + " "
+                            + mPendingChildren);
+        }
+        mLogger.log(
+                LogManager.INFO_MESSAGE_LEVEL,
+                "Streamed {} partitions with at most {} partitions held at a time",
+                mClosed,
+                mMaxOpen);
+
+        // done with the partitioning
+        c.cbDone();
+    }
+
+    /**
+     * Returns a textual description of the partitioner implementation.
+     *
+     * @return a short textual description
+     */
+    public String description() {
+        return StreamingLabel.DESCRIPTION;
+    }
+
+    /**
+     * Returns the largest number of partitions held at any point during the last traversal.
+     *
+     * @return the number of partitions
+     */
+    public int getMaxOpenPartitions() {
+        return mMaxOpen;
+    }
+
+    /**
+     * Returns the partitions to which nodes were added in a level.
+     *
+     * @param depth the depth of the level
+     * @return the partitions
+     */
+    private List<Partition> level(int depth) {
+        while (mLevels.size() <= depth) {
+            mLevels.add(null);
+        }
+        List<Partition> level = mLevels.get(depth);
+        if (level == null) {
+            level = new ArrayList<Partition>();
+            mLevels.set(depth, level);
+        }
+        return level;
+    }
+
+    /**
+     * Closes the partitions whose last node was added in a level, and releases the level.
+     *
+     * @param depth the depth of the level
+     * @param c the callback for the partitioner
+     */
+    private void closeLevel(int depth, Callback c) {
+        if (depth < 0 || depth >= mLevels.size() || mLevels.get(depth) == null) {
+            return;
+        }
+        for (Partition p : mLevels.get(depth)) {
+            // a partition that grew in a later level is closed from that level
+            if (p.lastAddedNode().getDepth() == depth) {
+                this.close(p, c);
+            }
+        }
+        mLevels.set(depth, null);
+    }
+
+    /**
+     * Passes a complete partition to the callback, followed by its relations to the parent
+     * partitions that have already been passed. Relations to parent partitions that are still open
+     * are passed when the parent partition is closed.
+     *
+     * @param p the partition
+     * @param c the callback for the partitioner
+     */
+    private void close(Partition p, Callback c) {
+        GraphNode last = p.lastAddedNode();
+        String label = getLabel(last);
+        p.constructPartition();
+        mLogger.log(
+                LogManager.DEBUG_MESSAGE_LEVEL,
+                "Partition is {} corresponding to label {}",
+                p.getNodeIDs(),
+                label);
+
+        // PM-745 any partition of size > 1 has to have a label associated.
+        // for single sized partitions the label defaults to the node id
+        boolean hasAssociatedLabel = p.getSize() > 1 || !label.equals(last.getID());
+        p.doesHaveAssociatedLabel(hasAssociatedLabel);
+        if (hasAssociatedLabel) {
+            mClosedLabels.add(label);
+        }
+
+        // determine the parent partitions before the partition is released
+        Set<String> parentPartitions = new LinkedHashSet<String>();
+        for (Iterator it = p.getRootNodes().iterator(); it.hasNext(); ) {
+            GraphNode root = (GraphNode) it.next();
+            for (GraphNode parent : root.getParents()) {
+                parentPartitions.add((String) parent.getBag().get(LabelBag.PARTITION_KEY));
+            }
+        }
+
+        String id = p.getID();
+        c.cbPartition(p);
+        mOpenPartitions.remove(label);
+        mOpenIDs.remove(id);
+        mClosed++;
+
+        List<String> ready = new ArrayList<String>(parentPartitions.size());
+        for (String parent : parentPartitions) {
+            if (mOpenIDs.contains(parent)) {
+                List<String> children = mPendingChildren.get(parent);
+                if (children == null) {
+                    children = new ArrayList<String>(2);
+                    mPendingChildren.put(parent, children);
+                }
+                children.add(id);
+            } else {
+                ready.add(parent);
+            }
+        }
+        if (!ready.isEmpty()) {
+            c.cbParents(id, ready);
+        }
+
+        // the children that were waiting on this partition
+        List<String> children = mPendingChildren.remove(id);
+        if (children != null) {
+            List<String> parents = Collections.singletonList(id);
+            for (String child : children) {
+                c.cbParents(child, parents);
+            }
+        }
+    }
+
+    /**
+     * Returns the label for the node. If no label is associated with the node, then the ID of the
+     * node is assumed as the label.
+     *
+     * @param node the node for which the label is required.
+     * @return the label associated with the job, else the id of the node.
+     */
+    private String getLabel(GraphNode node) {
+        Object obj = node.getBag().get(LabelBag.LABEL_KEY);
+        return (obj == null) ? node.getID() : (String) obj;
+    }
+
+    /**
+     * Constructs the id for the partition.
+     *
+     * @param id the integer id.
+     * @return the ID of the partition.
+     */
+    private String getPartitionID(int id) {
+        return "ID" + id;
+    }
+}
@@ -0,0 +1,758 @@
+/**
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact implementation of the Graph, meant for large workflows. Each node is assigned a dense
+ * integer id ( slot ) in the order it is added to the graph. The parents and children of all the
+ * nodes are stored as sorted primitive int arrays in compressed sparse row (CSR) form, instead of
+ * per node hash sets of <code>GraphNode</code> objects.
+ *
+ * <p>Modifications to the edges of a node are applied to a per node overlay, that is folded back
+ * into the CSR arrays once enough nodes have been modified. The <code>GraphNode</code> objects
+ * handed out by the graph are views that delegate the edge operations to the graph, and hence
+ * existing code can traverse and modify the graph through the <code>GraphNode</code> API.
+ *
+ * <p>The nodes passed to {@link #addNode(GraphNode)} are not stored themselves. Their id, name,
+ * content and bag are adopted by a node created by the graph, and any edges associated with the
+ * passed node are ignored. Callers should retrieve the node from the graph using {@link
+ * #getNode(String)} to traverse or modify the edges.
+ *
+ * <p>The nodes iterator traverses the nodes in the order they were added to the graph, as do the
+ * parents and children of a node.
+ */
+public class CompactGraph extends MapGraph {
+
+    /**
+     * The minimum number of nodes with modified edges, before the overlays are folded back into the
+     * CSR arrays.
+     */
+    private static final int MIN_OVERLAYS_BEFORE_COMPACTION = 1024;
+
+    /** The initial capacity for the number of nodes. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Maps the id of a node to its slot. */
+    private final Map<String, Integer> mIndex;
+
+    /** The nodes indexed by slot. Removed nodes leave a null slot. */
+    private CompactNode[] mNodes;
+
+    /** The number of slots handed out so far. */
+    private int mSlots;
+
+    /** The number of nodes in the graph. */
+    private int mSize;
+
+    /** The children of each node. */
+    private final Adjacency mChildren;
+
+    /** The parents of each node. */
+    private final Adjacency mParents;
+
+    /** The default constructor. */
+    public CompactGraph() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param capacity the expected number of nodes in the graph.
+     */
+    public CompactGraph(int capacity) {
+        super(false);
+        capacity = Math.max(capacity, DEFAULT_CAPACITY);
+        mIndex = new HashMap<String, Integer>(capacity * 4 / 3 + 1);
+        mNodes = new CompactNode[capacity];
+        mSlots = 0;
+        mSize = 0;
+        mChildren = new Adjacency(capacity);
+        mParents = new Adjacency(capacity);
+    }
+
+    /**
+     * Adds a node to the Graph. If a node with the same ID already exists, the name, content and
+     * bag of the existing node are overwritten, while retaining its edges.
+     *
+     * @param node the node to be added to the Graph.
+     */
+    public void addNode(GraphNode node) {
+        Integer slot = mIndex.get(node.getID());
+        CompactNode compact =
+                new CompactNode(
+                        (slot == null) ? mSlots : slot,
+                        node.getID(),
+                        node.getName(),
+                        node.getContent());
+        compact.setBag(node.getBag());
+        compact.setDepth(node.getDepth());
+        compact.setColor(node.getColor());
+        if (slot != null) {
+            mNodes[slot] = compact;
+            return;
+        }
+
+        if (mSlots == mNodes.length) {
+            mNodes = Arrays.copyOf(mNodes, mSlots * 2);
+        }
+        mNodes[mSlots] = compact;
+        mIndex.put(node.getID(), mSlots);
+        mSlots++;
+        mSize++;
+        mChildren.ensureCapacity(mSlots);
+        mParents.ensureCapacity(mSlots);
+    }
+
+    /**
+     * Returns the node matching the id passed.
+     *
+     * @param identifier the id of the node.
+     * @return the node matching the ID else null.
+     */
+    public GraphNode getNode(String identifier) {
+        Integer slot = mIndex.get(identifier);
+        return (slot == null) ? null : mNodes[slot];
+    }
+
+    /**
+     * Adds a single root node to the Graph. All the exisitng roots of the Graph become children of
+     * the root.
+     *
+     * @param root the <code>GraphNode</code> to be added as a root.
+     * @throws RuntimeException if a node with the same id already exists.
+     */
+    public void addRoot(GraphNode root) {
+        // sanity check
+        if (mIndex.containsKey(root.getID())) {
+            throw new RuntimeException("Node with ID already exists:" + root.getID());
+        }
+
+        List<GraphNode> existingRoots = getRoots();
+        addNode(root);
+        GraphNode node = getNode(root.getID());
+        for (GraphNode existing : existingRoots) {
+            this.addEdge(node, existing);
+        }
+    }
+
+    /**
+     * Resets all the dependencies in the Graph, while preserving the nodes. The resulting Graph is
+     * a graph of independent nodes.
+     */
+    public void resetEdges() {
+        mChildren.reset(mNodes.length);
+        mParents.reset(mNodes.length);
+    }
+
+    /**
+     * Removes a node from the Graph. The parents of the node become the parents of the children of
+     * the node.
+     *
+     * @param identifier the id of the node to be removed.
+     * @return boolean indicating whether the node was removed or not.
+     */
+    public boolean remove(String identifier) {
+        Integer value = mIndex.get(identifier);
+        if (value == null) {
+            // node does not exist only.
+            return false;
+        }
+        int slot = value;
+        int[] parents = mParents.get(slot);
+        int[] children = mChildren.get(slot);
+
+        for (int child : children) {
+            mParents.remove(child, slot);
+        }
+        for (int parent : parents) {
+            // for the parent the removal node is no longer a parent
+            mChildren.remove(parent, slot);
+
+            // for each parent make the parent it's parent instead of removed node
+            for (int child : children) {
+                mParents.add(child, parent);
+                mChildren.add(parent, child);
+            }
+        }
+        mParents.clear(slot);
+        mChildren.clear(slot);
+
+        mIndex.remove(identifier);
+        mNodes[slot] = null;
+        mSize--;
+        return true;
+    }
+
+    /**
+     * Returns the root nodes of the Graph.
+     *
+     * @return a list containing <code>GraphNode</code> corressponding to the root nodes.
+     */
+    public List<GraphNode> getRoots() {
+        List<GraphNode> roots = new LinkedList();
+        for (int slot = 0; slot < mSlots; slot++) {
+            if (mNodes[slot] != null && mParents.degree(slot) == 0) {
+                roots.add(mNodes[slot]);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Returns the leaf nodes of the Graph.
+     *
+     * @return a list containing <code>GraphNode</code> corressponding to the leaf nodes.
+     */
+    public List<GraphNode> getLeaves() {
+        List<GraphNode> leaves = new LinkedList();
+        for (int slot = 0; slot < mSlots; slot++) {
+            if (mNodes[slot] != null && mChildren.degree(slot) == 0) {
+                leaves.add(mNodes[slot]);
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Adds an edge between two already existing nodes in the graph.
+     *
+     * @param parent the parent node .
+     * @param child the child node .
+     */
+    public void addEdge(GraphNode parent, GraphNode child) {
+        int p = this.slot(parent);
+        int c = this.slot(child);
+        mParents.add(c, p);
+        mChildren.add(p, c);
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of edges in the graph.
+     *
+     * @return the number of edges
+     */
+    public long edges() {
+        long edges = 0;
+        for (int slot = 0; slot < mSlots; slot++) {
+            edges += mChildren.degree(slot);
+        }
+        return edges;
+    }
+
+    /**
+     * Returns an iterator for the nodes in the Graph, in the order they were added.
+     *
+     * @return Iterator
+     */
+    public Iterator nodeIterator() {
+        return new Iterator<GraphNode>() {
+            private int mNext = advance(0);
+
+            private int advance(int slot) {
+                while (slot < mSlots && mNodes[slot] == null) {
+                    slot++;
+                }
+                return slot;
+            }
+
+            public boolean hasNext() {
+                return mNext < mSlots;
+            }
+
+            public GraphNode next() {
+                if (mNext >= mSlots) {
+                    throw new NoSuchElementException();
+                }
+                GraphNode node = mNodes[mNext];
+                mNext = advance(mNext + 1);
+                return node;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Method remove() not supported");
+            }
+        };
+    }
+
+    /**
+     * Returns a boolean if there are no nodes in the graph.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Folds the modified edges back into the CSR arrays. This is done automatically as the graph is
+     * modified, but can be called once the graph is constructed to release the overlays.
+     */
+    public void compact() {
+        mChildren.compact(mSlots);
+        mParents.compact(mSlots);
+    }
+
+    /**
+     * It returns the node associated with the id.
+     *
+     * @param key the id of the node.
+     */
+    public Object get(Object key) {
+        return (key instanceof String) ? getNode((String) key) : null;
+    }
+
+    /**
+     * Returns the slot for a node in the graph.
+     *
+     * @param node the node
+     * @return the slot
+     * @throws RuntimeException if the node does not exist in the graph
+     */
+    private int slot(GraphNode node) {
+        if (node instanceof CompactNode && ((CompactNode) node).graph() == this) {
+            return ((CompactNode) node).mSlot;
+        }
+        Integer slot = mIndex.get(node.getID());
+        if (slot == null) {
+            /* should be replaced by Graph Exception */
+            throw new RuntimeException("The node with identifier doesnt exist " + node.getID());
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot for a node in the graph, or -1 if the object is not a node in the graph.
+     *
+     * @param o the object
+     * @return the slot
+     */
+    private int slotIfExists(Object o) {
+        if (o instanceof CompactNode && ((CompactNode) o).graph() == this) {
+            return ((CompactNode) o).mSlot;
+        }
+        if (!(o instanceof GraphNode)) {
+            return -1;
+        }
+        Integer slot = mIndex.get(((GraphNode) o).getID());
+        return (slot == null) ? -1 : slot;
+    }
+
+    /**
+     * The node that is handed out by the graph. It does not store the edges itself, but delegates
+     * to the adjacency of the graph.
+     */
+    private final class CompactNode extends GraphNode {
+
+        /** The slot of the node in the graph. */
+        private final int mSlot;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param slot the slot of the node in the graph.
+         * @param id the logical id of the node.
+         * @param name the name of the node.
+         * @param content the content of the node, can be null.
+         */
+        CompactNode(int slot, String id, String name, GraphNodeContent content) {
+            super(id, name, content);
+            mSlot = slot;
+        }
+
+        /** Returns the graph the node belongs to. */
+        CompactGraph graph() {
+            return CompactGraph.this;
+        }
+
+        public Collection<GraphNode> getParents() {
+            return new EdgeView(mParents, mSlot);
+        }
+
+        public Collection<GraphNode> getChildren() {
+            return new EdgeView(mChildren, mSlot);
+        }
+
+        public void setParents(Collection<GraphNode> parents) {
+            mParents.clear(mSlot);
+            for (GraphNode parent : parents) {
+                mParents.add(mSlot, slot(parent));
+            }
+        }
+
+        public void setChildren(Collection<GraphNode> children) {
+            mChildren.clear(mSlot);
+            for (GraphNode child : children) {
+                mChildren.add(mSlot, slot(child));
+            }
+        }
+
+        public void addChild(GraphNode child) {
+            mChildren.add(mSlot, slot(child));
+        }
+
+        public void addParent(GraphNode parent) {
+            mParents.add(mSlot, slot(parent));
+        }
+
+        public void removeChild(GraphNode child) {
+            int slot = slotIfExists(child);
+            if (slot >= 0) {
+                mChildren.remove(mSlot, slot);
+            }
+        }
+
+        public void removeParent(GraphNode parent) {
+            int slot = slotIfExists(parent);
+            if (slot >= 0) {
+                mParents.remove(mSlot, slot);
+            }
+        }
+
+        public void resetEdges() {
+            mParents.clear(mSlot);
+            mChildren.clear(mSlot);
+        }
+    }
+
+    /**
+     * A live view of the parents or children of a node. Iterators traverse a snapshot of the edges
+     * at the time the iterator was created, and hence the edges can be modified while iterating.
+     */
+    private final class EdgeView extends AbstractCollection<GraphNode> {
+
+        /** The adjacency the view is backed by. */
+        private final Adjacency mAdjacency;
+
+        /** The slot of the node. */
+        private final int mSlot;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param adjacency the adjacency the view is backed by.
+         * @param slot the slot of the node.
+         */
+        EdgeView(Adjacency adjacency, int slot) {
+            mAdjacency = adjacency;
+            mSlot = slot;
+        }
+
+        public int size() {
+            return mAdjacency.degree(mSlot);
+        }
+
+        public boolean contains(Object o) {
+            int slot = slotIfExists(o);
+            return slot >= 0 && mAdjacency.contains(mSlot, slot);
+        }
+
+        public boolean add(GraphNode node) {
+            return mAdjacency.add(mSlot, slot(node));
+        }
+
+        public boolean remove(Object o) {
+            int slot = slotIfExists(o);
+            return slot >= 0 && mAdjacency.remove(mSlot, slot);
+        }
+
+        public void clear() {
+            mAdjacency.clear(mSlot);
+        }
+
+        public Iterator<GraphNode> iterator() {
+            final int[] slots = mAdjacency.get(mSlot);
+            return new Iterator<GraphNode>() {
+                private int mNext = 0;
+
+                public boolean hasNext() {
+                    return mNext < slots.length;
+                }
+
+                public GraphNode next() {
+                    if (mNext >= slots.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return mNodes[slots[mNext++]];
+                }
+
+                public void remove() {
+                    if (mNext == 0) {
+                        throw new IllegalStateException();
+                    }
+                    mAdjacency.remove(mSlot, slots[mNext - 1]);
+                }
+            };
+        }
+    }
+
+    /**
+     * The adjacency lists for one direction of the edges. The sorted neighbours of slot i are
+     * stored in mTargets from mOffsets[i] to mOffsets[i + 1]. A slot that has been modified since
+     * the last compaction has its sorted neighbours in an overlay array instead, with the number of
+     * neighbours tracked separately.
+     */
+    private static final class Adjacency {
+
+        /** The empty array. */
+        private static final int[] EMPTY = new int[0];
+
+        /** The offsets into the targets for each compacted slot. */
+        private int[] mOffsets;
+
+        /** The neighbours of all compacted slots. */
+        private int[] mTargets;
+
+        /** The number of slots that were compacted. */
+        private int mCompacted;
+
+        /** The overlays for the modified slots. */
+        private int[][] mOverlay;
+
+        /** The number of neighbours in each overlay. */
+        private int[] mOverlaySize;
+
+        /** The number of slots that have an overlay. */
+        private int mOverlays;
+
+        /** The highest slot that has had an overlay since the last compaction. */
+        private int mHighest;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param capacity the initial number of slots.
+         */
+        Adjacency(int capacity) {
+            reset(capacity);
+        }
+
+        /**
+         * Resets the adjacency, removing all edges.
+         *
+         * @param capacity the initial number of slots.
+         */
+        void reset(int capacity) {
+            mOffsets = new int[1];
+            mTargets = EMPTY;
+            mCompacted = 0;
+            mOverlay = new int[capacity][];
+            mOverlaySize = new int[capacity];
+            mOverlays = 0;
+            mHighest = -1;
+        }
+
+        /**
+         * Ensures that the adjacency can hold the number of slots.
+         *
+         * @param slots the number of slots.
+         */
+        void ensureCapacity(int slots) {
+            if (slots > mOverlay.length) {
+                int capacity = Math.max(slots, mOverlay.length * 2);
+                mOverlay = Arrays.copyOf(mOverlay, capacity);
+                mOverlaySize = Arrays.copyOf(mOverlaySize, capacity);
+            }
+        }
+
+        /**
+         * Returns the number of neighbours of a slot.
+         *
+         * @param slot the slot
+         * @return the degree
+         */
+        int degree(int slot) {
+            if (mOverlay[slot] != null) {
+                return mOverlaySize[slot];
+            }
+            return (slot < mCompacted) ? mOffsets[slot + 1] - mOffsets[slot] : 0;
+        }
+
+        /**
+         * Returns a copy of the sorted neighbours of a slot.
+         *
+         * @param slot the slot
+         * @return the neighbours
+         */
+        int[] get(int slot) {
+            if (mOverlay[slot] != null) {
+                return Arrays.copyOf(mOverlay[slot], mOverlaySize[slot]);
+            }
+            if (slot >= mCompacted) {
+                return EMPTY;
+            }
+            return Arrays.copyOfRange(mTargets, mOffsets[slot], mOffsets[slot + 1]);
+        }
+
+        /**
+         * Returns whether a slot has a neighbour.
+         *
+         * @param slot the slot
+         * @param neighbour the neighbour
+         * @return boolean
+         */
+        boolean contains(int slot, int neighbour) {
+            if (mOverlay[slot] != null) {
+                return Arrays.binarySearch(mOverlay[slot], 0, mOverlaySize[slot], neighbour) >= 0;
+            }
+            if (slot >= mCompacted) {
+                return false;
+            }
+            return Arrays.binarySearch(mTargets, mOffsets[slot], mOffsets[slot + 1], neighbour)
+                    >= 0;
+        }
+
+        /**
+         * Adds a neighbour to a slot.
+         *
+         * @param slot the slot
+         * @param neighbour the neighbour
+         * @return true if the neighbour was added, false if it already existed.
+         */
+        boolean add(int slot, int neighbour) {
+            int[] overlay = this.overlay(slot);
+            int size = mOverlaySize[slot];
+            // neighbours are usually added in increasing order
+            int position =
+                    (size == 0 || overlay[size - 1] < neighbour)
+                            ? -size - 1
+                            : Arrays.binarySearch(overlay, 0, size, neighbour);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (size == overlay.length) {
+                overlay = Arrays.copyOf(overlay, Math.max(4, size * 2));
+                mOverlay[slot] = overlay;
+            }
+            System.arraycopy(overlay, position, overlay, position + 1, size - position);
+            overlay[position] = neighbour;
+            mOverlaySize[slot] = size + 1;
+            return true;
+        }
+
+        /**
+         * Removes a neighbour from a slot.
+         *
+         * @param slot the slot
+         * @param neighbour the neighbour
+         * @return true if the neighbour was removed.
+         */
+        boolean remove(int slot, int neighbour) {
+            if (!this.contains(slot, neighbour)) {
+                return false;
+            }
+            int[] overlay = this.overlay(slot);
+            int size = mOverlaySize[slot];
+            int position = Arrays.binarySearch(overlay, 0, size, neighbour);
+            System.arraycopy(overlay, position + 1, overlay, position, size - position - 1);
+            mOverlaySize[slot] = size - 1;
+            return true;
+        }
+
+        /**
+         * Removes all the neighbours of a slot.
+         *
+         * @param slot the slot
+         */
+        void clear(int slot) {
+            if (this.degree(slot) > 0) {
+                this.overlay(slot);
+                mOverlaySize[slot] = 0;
+            }
+        }
+
+        /**
+         * Returns the overlay for a slot, creating it from the compacted neighbours if required.
+         * Creating an overlay might trigger a compaction of all the other overlays.
+         *
+         * @param slot the slot
+         * @return the overlay
+         */
+        private int[] overlay(int slot) {
+            int[] overlay = mOverlay[slot];
+            if (overlay != null) {
+                return overlay;
+            }
+            if (mOverlays >= Math.max(MIN_OVERLAYS_BEFORE_COMPACTION, (mHighest + 1) / 4)) {
+                this.compact(slot + 1);
+            }
+            int start = (slot < mCompacted) ? mOffsets[slot] : 0;
+            int end = (slot < mCompacted) ? mOffsets[slot + 1] : 0;
+            overlay = new int[Math.max(4, (end - start) + 1)];
+            System.arraycopy(mTargets, start, overlay, 0, end - start);
+            mOverlay[slot] = overlay;
+            mOverlaySize[slot] = end - start;
+            mOverlays++;
+            mHighest = Math.max(mHighest, slot);
+            return overlay;
+        }
+
+        /**
+         * Folds the overlays back into the CSR arrays.
+         *
+         * @param slots the number of slots in use.
+         */
+        void compact(int slots) {
+            slots = Math.max(slots, Math.max(mCompacted, mHighest + 1));
+            int[] offsets = new int[slots + 1];
+            int total = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                offsets[slot] = total;
+                total += this.degree(slot);
+            }
+            offsets[slots] = total;
+
+            int[] targets = new int[total];
+            for (int slot = 0; slot < slots; slot++) {
+                if (mOverlay[slot] != null) {
+                    System.arraycopy(mOverlay[slot], 0, targets, offsets[slot], mOverlaySize[slot]);
+                    mOverlay[slot] = null;
+                    mOverlaySize[slot] = 0;
+                } else if (slot < mCompacted) {
+                    System.arraycopy(
+                            mTargets,
+                            mOffsets[slot],
+                            targets,
+                            offsets[slot],
+                            mOffsets[slot + 1] - mOffsets[slot]);
+                }
+            }
+            mOffsets = offsets;
+            mTargets = targets;
+            mCompacted = slots;
+            mOverlays = 0;
+            mHighest = -1;
+        }
+    }
+}
@@ -75,7 +75,8 @@ public class GraphNode extends Data {
     /** The default constructor. */
     public GraphNode() {
         mLogicalID = "";
-        this.resetEdges();
+        mParents = new HashSet();
+        mChildren = new HashSet();
         mDepth = -1;
         mLogicalName = "";
         mColor = this.WHITE_COLOR;
@@ -120,6 +121,26 @@ public class GraphNode extends Data {
         mColor = this.WHITE_COLOR;
     }
 
+    /**
+     * The constructor for subclasses that maintain the parents and children of the node themselves,
+     * and override the methods that access and modify them. No edge sets are allocated.
+     *
+     * @param id the logical id of the node.
+     * @param name the name of the node.
+     * @param content the content to be associated with the node, can be null.
+     */
+    protected GraphNode(String id, String name, GraphNodeContent content) {
+        mLogicalID = id;
+        mDepth = -1;
+        mLogicalName = name;
+        mColor = this.WHITE_COLOR;
+        mBag = null;
+        if (content != null) {
+            mContent = content;
+            mContent.setGraphNodeReference(this);
+        }
+    }
+
     /**
      * Sets the bag of objects associated with the node. Overwrite the previous bag if existing.
      *
@@ -241,7 +262,7 @@ public class GraphNode extends Data {
     }
 
     /** Reset all the edges associated with this node. */
-    public final void resetEdges() {
+    public void resetEdges() {
         mParents = new HashSet();
         mChildren = new HashSet();
     }
@@ -298,11 +319,12 @@ public class GraphNode extends Data {
     public boolean parentsColored(int color) {
         boolean colored = true;
         GraphNode par;
-        if (mParents == null) {
+        Collection<GraphNode> parents = this.getParents();
+        if (parents == null) {
             return colored;
         }
 
-        Iterator it = mParents.iterator();
+        Iterator it = parents.iterator();
         while (it.hasNext() && colored) {
             par = (GraphNode) it.next();
             colored = par.isColor(color);
@@ -321,11 +343,12 @@ public class GraphNode extends Data {
     public boolean childrenColored(int color) {
         boolean colored = true;
         GraphNode child;
-        if (mChildren == null) {
+        Collection<GraphNode> children = this.getChildren();
+        if (children == null) {
             return colored;
         }
 
-        Iterator<GraphNode> it = mChildren.iterator();
+        Iterator<GraphNode> it = children.iterator();
         while (it.hasNext() && colored) {
             child = (GraphNode) it.next();
             colored = child.isColor(color);
@@ -23,10 +23,22 @@ import edu.isi.pegasus.planner.namespace.Pegasus;
 import edu.isi.pegasus.planner.partitioner.graph.Bag;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The data reuse engine reduces the workflow on the basis of existing output files of the workflow
@@ -54,6 +66,13 @@ import java.util.Set;
  *  )
  * </pre>
  *
+ * <p>Both passes can be performed by multiple threads, as determined by the property
+ * pegasus.data.reuse.threads. In the first pass the jobs are evaluated concurrently, against an
+ * index of the logical filenames to the jobs that consume them. In the second pass the nodes are
+ * evaluated one level at a time, with the nodes in a level evaluated concurrently, as the children
+ * of a node are always in a lower level. The jobs deleted are the same, and in the same order, as
+ * when a single thread is used.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
@@ -84,6 +103,20 @@ public class DataReuseEngine extends Engine implements Refiner {
     /** All files discovered in the replica catalog */
     private Set<String> mWorkflowFilesInRC;
 
+    /** The number of threads to reduce the workflow with. */
+    private final int mThreads;
+
+    /** The pool of threads used while reducing the workflow. Null if a single thread is used. */
+    private ExecutorService mPool;
+
+    /** Enumeration of the outcome of evaluating a job in the first pass. */
+    private static enum ELIGIBILITY {
+        no_outputs,
+        not_enabled,
+        not_in_rc,
+        in_rc
+    };
+
     /**
      * The constructor
      *
@@ -98,6 +131,7 @@ public class DataReuseEngine extends Engine implements Refiner {
         mWorkflow = orgDag;
         mDataReuseScope = getDataReuseScope(mProps.getDataReuseScope());
         mPartialDataReuse = mDataReuseScope.equals(SCOPE.partial);
+        mThreads = mProps.getDataReuseThreads();
     }
 
     /**
@@ -163,11 +197,25 @@ public class DataReuseEngine extends Engine implements Refiner {
                 LoggingKeys.DAX_ID,
                 mWorkflow.getAbstractWorkflowName());
 
-        // figure out jobs whose output files already exist in the Replica Catalog
-        List<GraphNode> originalJobsInRC = getJobsInRC(workflow, mWorkflowFilesInRC);
-        // mAllDeletedJobs = (Vector)mOrgJobsInRC.clone();
-        // firstPass( originalJobsInRC );
-        Graph reducedWorkflow = cascadeDeletionUpwards(workflow, originalJobsInRC);
+        Graph reducedWorkflow;
+        if (mThreads > 1) {
+            mLogger.log(
+                    "Reducing the workflow with " + mThreads + " threads",
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            mPool = createPool(mThreads);
+        }
+        try {
+            // figure out jobs whose output files already exist in the Replica Catalog
+            List<GraphNode> originalJobsInRC = getJobsInRC(workflow, mWorkflowFilesInRC);
+            // mAllDeletedJobs = (Vector)mOrgJobsInRC.clone();
+            // firstPass( originalJobsInRC );
+            reducedWorkflow = cascadeDeletionUpwards(workflow, originalJobsInRC);
+        } finally {
+            if (mPool != null) {
+                mPool.shutdownNow();
+                mPool = null;
+            }
+        }
 
         mLogMsg = "Nodes/Jobs Deleted from the Workflow during reduction ";
         mLogger.log(mLogMsg, LogManager.INFO_MESSAGE_LEVEL);
@@ -218,10 +266,8 @@ public class DataReuseEngine extends Engine implements Refiner {
      * @return a List of GraphNodes with their Boolean bag value set to true.
      * @see edu.isi.pegasus.planner.classes.Job
      */
-    private List<GraphNode> getJobsInRC(Graph workflow, Set filesInRC) {
+    private List<GraphNode> getJobsInRC(Graph workflow, final Set filesInRC) {
         List<GraphNode> jobsInReplica = new LinkedList();
-        int noOfOutputFilesInJob = 0;
-        int noOfSuccessfulMatches = 0;
 
         if (workflow.isEmpty()) {
             String msg = "ReductionEngine: The set of jobs in the workflow " + "\n is empty.";
@@ -230,84 +276,136 @@ public class DataReuseEngine extends Engine implements Refiner {
         }
 
         mLogger.log("Jobs whose o/p files already exist", LogManager.DEBUG_MESSAGE_LEVEL);
-        // iterate through all the nodes in the graph
+        final List<GraphNode> nodes = new ArrayList<GraphNode>(workflow.size());
         for (Iterator it = workflow.nodeIterator(); it.hasNext(); ) {
-            GraphNode node = (GraphNode) it.next();
+            nodes.add((GraphNode) it.next());
+        }
+        final Map<String, Set<GraphNode>> consumers = getConsumers(nodes);
+
+        // evaluate all the nodes in the graph
+        final ELIGIBILITY[] result = new ELIGIBILITY[nodes.size()];
+        execute(
+                nodes.size(),
+                new NodeTask() {
+                    public void execute(int index) {
+                        result[index] = evaluate(nodes.get(index), filesInRC, consumers);
+                    }
+                });
+
+        for (int i = 0; i < result.length; i++) {
+            GraphNode node = nodes.get(i);
             Job job = (Job) node.getContent();
-            Set<PegasusFile> outputFiles = job.getOutputFiles();
+            switch (result[i]) {
+                case no_outputs:
+                    mLogger.log(
+                            LogManager.DEBUG_MESSAGE_LEVEL,
+                            "Job {} has no o/p files",
+                            job.getName());
+                    break;
 
-            String jobName = job.jobName;
+                case not_enabled:
+                    mLogger.log(
+                            LogManager.DEBUG_MESSAGE_LEVEL,
+                            "Partial Data Reuse Enabled. Not looking for output files in RC for job {}",
+                            job.getID());
+                    break;
 
-            if (job.getOutputFiles().isEmpty()) {
-                // a job with no output file should not be
-                // marked as a job in the RC
-                // Otherwise it can result in whole workflow being reduced
-                // if such a node is the leaf of the workflow.
-                mLogger.log(
-                        "Job " + job.getName() + " has no o/p files",
-                        LogManager.DEBUG_MESSAGE_LEVEL);
-                continue;
+                case in_rc:
+                    mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "\t{}", job.jobName);
+                    jobsInReplica.add(node);
+                    break;
+
+                default:
+                    break;
             }
+        }
+        mLogger.log("Jobs whose o/p files already exist - DONE", LogManager.DEBUG_MESSAGE_LEVEL);
+        return jobsInReplica;
+    }
 
-            if (mDataReuseScope.equals(SCOPE.partial)) {
-                // PM-774 in case of partial data reuse, we look
-                // for a marker to figure out whether job;s output files
-                // should be looked for
-                if (!(job.vdsNS.containsKey(Pegasus.ENABLE_FOR_DATA_REUSE_KEY)
-                        || job.vdsNS.getBooleanValue(Pegasus.ENABLE_FOR_DATA_REUSE_KEY))) {
+    /**
+     * Determines whether all the output files of a job exist in the Replica Catalog. An output file
+     * with the transfer flag set to false is treated equivalent to the file being in the Replica
+     * Catalog , if the output file is not an input to any of the children of the job.
+     *
+     * @param node the node for the job
+     * @param filesInRC Set of logical filenames of files that are found to be in the Replica
+     *     Catalog.
+     * @param consumers index of the logical filenames to the nodes that have them as input files
+     * @return the eligibility of the job for deletion
+     */
+    private ELIGIBILITY evaluate(
+            GraphNode node, Set filesInRC, Map<String, Set<GraphNode>> consumers) {
+        Job job = (Job) node.getContent();
+        Set<PegasusFile> outputFiles = job.getOutputFiles();
+
+        if (outputFiles.isEmpty()) {
+            // a job with no output file should not be
+            // marked as a job in the RC
+            // Otherwise it can result in whole workflow being reduced
+            // if such a node is the leaf of the workflow.
+            return ELIGIBILITY.no_outputs;
+        }
 
-                    mLogger.log(
-                            "Partial Data Reuse Enabled. Not looking for output files in RC for job "
-                                    + job.getID(),
-                            LogManager.DEBUG_MESSAGE_LEVEL);
-                    continue;
-                }
+        if (mDataReuseScope.equals(SCOPE.partial)) {
+            // PM-774 in case of partial data reuse, we look
+            // for a marker to figure out whether job;s output files
+            // should be looked for
+            if (!(job.vdsNS.containsKey(Pegasus.ENABLE_FOR_DATA_REUSE_KEY)
+                    || job.vdsNS.getBooleanValue(Pegasus.ENABLE_FOR_DATA_REUSE_KEY))) {
+                return ELIGIBILITY.not_enabled;
             }
+        }
 
-            /* Commented on Oct10. This ended up making the
-            Planner doing duplicate transfers
-            if(subInfo.stdOut.length()>0)
-                vJobOutputFiles.addElement(subInfo.stdOut);
-            */
-
-            noOfOutputFilesInJob = outputFiles.size();
-
-            // traversing through the output files of that particular job
-            for (PegasusFile pf : outputFiles) {
-
-                if (filesInRC.contains(pf.getLFN())) {
-                    noOfSuccessfulMatches++;
-                } else if (pf.getTransientTransferFlag()) {
-                    // successful match only if the output file is not an input
-                    // to any of the children of the job X
-                    boolean input = true;
-                    for (Iterator cit = node.getChildren().iterator(); cit.hasNext(); ) {
-                        GraphNode child = (GraphNode) cit.next();
-                        Job childJob = (Job) child.getContent();
-                        if (childJob.getInputFiles().contains(pf)) {
-                            input = false;
-                            break;
-                        }
-                    }
-                    if (input) {
-                        noOfSuccessfulMatches++;
+        /* Commented on Oct10. This ended up making the
+        Planner doing duplicate transfers
+        if(subInfo.stdOut.length()>0)
+            vJobOutputFiles.addElement(subInfo.stdOut);
+        */
+
+        // traversing through the output files of that particular job
+        // a job is in the RC only if all the output files match
+        for (PegasusFile pf : outputFiles) {
+            if (filesInRC.contains(pf.getLFN())) {
+                continue;
+            }
+            if (!pf.getTransientTransferFlag()) {
+                return ELIGIBILITY.not_in_rc;
+            }
+            // successful match only if the output file is not an input
+            // to any of the children of the job X
+            Set<GraphNode> readers = consumers.get(pf.getLFN());
+            if (readers != null) {
+                for (GraphNode child : node.getChildren()) {
+                    if (readers.contains(child)) {
+                        return ELIGIBILITY.not_in_rc;
                     }
                 }
             }
+        }
+        return ELIGIBILITY.in_rc;
+    }
 
-            // we add a job to list of jobs whose output files already exist
-            // only if noOfSuccessFulMatches is equal to the number of output
-            // files in job
-            if (noOfOutputFilesInJob == noOfSuccessfulMatches) {
-                mLogger.log("\t" + jobName, LogManager.DEBUG_MESSAGE_LEVEL);
-                jobsInReplica.add(node);
+    /**
+     * Returns an index of the logical filenames of the input files to the nodes that consume them.
+     *
+     * @param nodes the nodes in the workflow
+     * @return Map indexed by logical filename
+     */
+    private Map<String, Set<GraphNode>> getConsumers(List<GraphNode> nodes) {
+        Map<String, Set<GraphNode>> consumers = new HashMap<String, Set<GraphNode>>();
+        for (GraphNode node : nodes) {
+            Job job = (Job) node.getContent();
+            for (PegasusFile pf : job.getInputFiles()) {
+                Set<GraphNode> readers = consumers.get(pf.getLFN());
+                if (readers == null) {
+                    readers = new HashSet<GraphNode>();
+                    consumers.put(pf.getLFN(), readers);
+                }
+                readers.add(node);
             }
-            // reinitialise the variables
-            noOfSuccessfulMatches = 0;
-            noOfOutputFilesInJob = 0;
         }
-        mLogger.log("Jobs whose o/p files already exist - DONE", LogManager.DEBUG_MESSAGE_LEVEL);
-        return jobsInReplica;
+        return consumers;
     }
 
     /**
@@ -345,53 +443,38 @@ public class DataReuseEngine extends Engine implements Refiner {
             ((BooleanBag) job.getBag()).add(true);
         }
 
-        // start the bottom up traversal
+        // start the bottom up traversal. the nodes are grouped
+        // in levels by their height, so that all the children
+        // of a node are in the levels before it
+        List<GraphNode> traversal = new ArrayList<GraphNode>(workflow.size());
+        List<List<GraphNode>> levels = new ArrayList<List<GraphNode>>();
+        Map<String, Integer> heights = new HashMap<String, Integer>();
         for (Iterator it = workflow.bottomUpIterator(); it.hasNext(); ) {
             GraphNode node = (GraphNode) it.next();
-
-            // System.out.println( "Traversing " + node.getID() );
-            boolean markedForDeletion = ((BooleanBag) node.getBag()).getBooleanValue();
-            if (!markedForDeletion) {
-                // If a node is not already marked for deletion , it  can be marked
-                // for deletion if
-                //    a) all it's children have been marked for deletion AND
-                //    b) node's output files have transfer flags set to false
-                boolean delete = true;
-                for (Iterator cit = node.getChildren().iterator(); cit.hasNext(); ) {
-                    GraphNode child = (GraphNode) cit.next();
-                    // System.out.println( "Child is " + child.getID() );
-                    // check whether a child node is marked for deletion or not
-                    if (!((BooleanBag) child.getBag()).getBooleanValue()) {
-                        mLogger.log(
-                                node.getID()
-                                        + "  will not be deleted as not as child "
-                                        + child.getID()
-                                        + " is not marked for deletion ",
-                                LogManager.DEBUG_MESSAGE_LEVEL);
-                        delete = false;
-                        break;
-                    }
-                }
-                if (delete) {
-                    // all the children are deleted. However delete only if
-                    // all the output files have transfer flags set to false
-                    // OR output fies with transfer=true exist in RC
-                    if (!transferOutput(node)) {
-                        mLogger.log(
-                                "Cascaded Deletion: Node can be deleted " + node.getID(),
-                                LogManager.DEBUG_MESSAGE_LEVEL);
-                        ((BooleanBag) node.getBag()).add(true);
-                        markedForDeletion = true;
-                    }
-                }
+            int height = 0;
+            for (GraphNode child : node.getChildren()) {
+                height = Math.max(height, heights.get(child.getID()) + 1);
+            }
+            heights.put(node.getID(), height);
+            if (height == levels.size()) {
+                levels.add(new ArrayList<GraphNode>());
             }
+            levels.get(height).add(node);
+            traversal.add(node);
+        }
 
-            // if the node is marked for deletion at this point
-            // add the node for deletion
-            if (markedForDeletion) {
+        for (List<GraphNode> level : levels) {
+            cascadeDeletionUpwards(level);
+        }
+
+        // if the node is marked for deletion at this point
+        // add the node for deletion
+        for (GraphNode node : traversal) {
+            if (((BooleanBag) node.getBag()).getBooleanValue()) {
                 mLogger.log(
-                        "Marking node for removal from the workflow " + node.getID(),
-                        LogManager.DEBUG_MESSAGE_LEVEL);
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "Marking node for removal from the workflow {}",
+                        node.getID());
                 this.mAllDeletedJobs.add((Job) node.getContent());
                 this.mAllDeletedNodes.add(node);
             }
@@ -401,14 +484,72 @@ public class DataReuseEngine extends Engine implements Refiner {
         // after the bottom up iteration is done
         for (GraphNode node : mAllDeletedNodes) {
             mLogger.log(
-                    "Removing node from the workflow " + node.getID(),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
+                    LogManager.DEBUG_MESSAGE_LEVEL,
+                    "Removing node from the workflow {}",
+                    node.getID());
             workflow.remove(node.getID());
         }
 
         return workflow;
     }
 
+    /**
+     * Cascades the deletion to the nodes in a level of the bottom up traversal. All the children of
+     * the nodes are in the levels already traversed.
+     *
+     * @param level the nodes in the level
+     */
+    private void cascadeDeletionUpwards(final List<GraphNode> level) {
+        // the child because of which a node cannot be deleted
+        final GraphNode[] retained = new GraphNode[level.size()];
+        final boolean[] cascaded = new boolean[level.size()];
+        execute(
+                level.size(),
+                new NodeTask() {
+                    public void execute(int index) {
+                        GraphNode node = level.get(index);
+                        BooleanBag bag = (BooleanBag) node.getBag();
+                        if (bag.getBooleanValue()) {
+                            return;
+                        }
+                        // If a node is not already marked for deletion , it  can be marked
+                        // for deletion if
+                        //    a) all it's children have been marked for deletion AND
+                        //    b) node's output files have transfer flags set to false
+                        for (GraphNode child : node.getChildren()) {
+                            // check whether a child node is marked for deletion or not
+                            if (!((BooleanBag) child.getBag()).getBooleanValue()) {
+                                retained[index] = child;
+                                return;
+                            }
+                        }
+                        // all the children are deleted. However delete only if
+                        // all the output files have transfer flags set to false
+                        // OR output fies with transfer=true exist in RC
+                        if (!transferOutput(node)) {
+                            bag.add(true);
+                            cascaded[index] = true;
+                        }
+                    }
+                });
+
+        for (int i = 0; i < retained.length; i++) {
+            GraphNode node = level.get(i);
+            if (retained[i] != null) {
+                mLogger.log(
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "{}  will not be deleted as not as child {} is not marked for deletion ",
+                        node.getID(),
+                        retained[i].getID());
+            } else if (cascaded[i]) {
+                mLogger.log(
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "Cascaded Deletion: Node can be deleted {}",
+                        node.getID());
+            }
+        }
+    }
+
     /**
      * Returns whether a user wants output transferred for a node or not. If no output files are
      * associated , true will be returned
@@ -444,6 +585,80 @@ public class DataReuseEngine extends Engine implements Refiner {
         return result;
     }
 
+    /**
+     * Executes a task for the indices 0 to size - 1. If a pool of threads is associated, the
+     * indices are split into contiguous chunks that are executed concurrently. The method returns
+     * once the task has been executed for all the indices.
+     *
+     * @param size the number of indices
+     * @param task the task to execute
+     */
+    private void execute(int size, final NodeTask task) {
+        if (mPool == null || size < 2) {
+            for (int i = 0; i < size; i++) {
+                task.execute(i);
+            }
+            return;
+        }
+
+        int chunks = Math.min(size, mThreads * 4);
+        List<Future<?>> futures = new ArrayList<Future<?>>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            final int start = (int) ((long) size * c / chunks);
+            final int end = (int) ((long) size * (c + 1) / chunks);
+            futures.add(
+                    mPool.submit(
+                            new Runnable() {
+                                public void run() {
+                                    for (int i = start; i < end; i++) {
+                                        task.execute(i);
+                                    }
+                                }
+                            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reducing the workflow", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Error while reducing the workflow", cause);
+        }
+    }
+
+    /**
+     * Creates the pool of threads used to reduce the workflow.
+     *
+     * @param threads the number of threads
+     * @return the pool
+     */
+    private ExecutorService createPool(int threads) {
+        return new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(0);
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "pegasus-data-reuse-" + mCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
     /**
      * Returns a scope value from String if a valid string is passed
      *
@@ -466,6 +681,17 @@ public class DataReuseEngine extends Engine implements Refiner {
         return scope;
     }
 
+    /** A task that is executed for a node, identified by its index. */
+    private interface NodeTask {
+
+        /**
+         * Executes the task.
+         *
+         * @param index the index of the node
+         */
+        public void execute(int index);
+    }
+
     /**
      * A bag implementation that cam be used to hold a boolean value associated with the graph node
      */
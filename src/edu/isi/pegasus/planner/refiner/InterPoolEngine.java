@@ -200,6 +200,7 @@ public class InterPoolEngine extends Engine implements Refiner {
         mSiteSelector.mapWorkflow(dag, sites);
 
         int i = 0;
+        List<Job> mapped = new ArrayList<Job>();
 
         // Iterate through the jobs and hand them to
         // the site selector if required
@@ -221,11 +222,22 @@ public class InterPoolEngine extends Engine implements Refiner {
                     GraphNode n = (GraphNode) consIT.next();
                     Job j = (Job) n.getContent();
                     incorporateSiteMapping(j, sites);
+                    mapped.add(j);
                 }
             }
             incorporateSiteMapping(job, sites);
+            mapped.add(job);
         } // end of mapping all jobs
 
+        // PM-882 incorporate estimates on runtimes of the jobs
+        // after the site selection has been done. the estimator
+        // is handed all the jobs at once, so that it can batch
+        // the call outs
+        mEstimator.estimate(mapped);
+        for (Job job : mapped) {
+            incorporateEstimates(job);
+        }
+
         // PM-916 write out all the metadata related events for the
         // mapped workflow
         generateStampedeMetadataEvents(dag);
@@ -282,10 +294,6 @@ public class InterPoolEngine extends Engine implements Refiner {
         }
         job.setStagingSiteHandle(determineStagingSite(job));
         handleExecutableFileTransfers(job, entry);
-
-        // PM-882 incorporate estimates on runtimes of the jobs
-        // after the site selection has been done
-        incorporateEstimates(job);
     }
 
     /**
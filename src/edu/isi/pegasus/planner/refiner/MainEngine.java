@@ -25,6 +25,7 @@ import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PlannerCache;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.common.PlannerProfiler;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
@@ -166,8 +167,16 @@ public class MainEngine extends Engine {
         }
         mLogger.logEventCompletion();
 
-        mRedEng = new DataReuseEngine(mOriginalDag, mBag);
-        mReducedDag = mRedEng.reduceWorkflow(mOriginalDag, mRCBridge);
+        // profile the time and memory taken by each phase if required
+        PlannerProfiler profiler = new PlannerProfiler(mBag);
+
+        profiler.start("data_reuse");
+        try {
+            mRedEng = new DataReuseEngine(mOriginalDag, mBag);
+            mReducedDag = mRedEng.reduceWorkflow(mOriginalDag, mRCBridge);
+        } finally {
+            profiler.stop();
+        }
 
         // unmark arg strings
         // unmarkArgs();
@@ -175,10 +184,15 @@ public class MainEngine extends Engine {
 
         mLogger.logEventStart(
                 LoggingKeys.EVENT_PEGASUS_SITESELECTION, LoggingKeys.DAX_ID, abstractWFName);
-        mIPEng = new InterPoolEngine(mReducedDag, mBag);
-        mIPEng.determineSites();
-        mBag = mIPEng.getPegasusBag();
-        mIPEng = null;
+        profiler.start("site_selection");
+        try {
+            mIPEng = new InterPoolEngine(mReducedDag, mBag);
+            mIPEng.determineSites();
+            mBag = mIPEng.getPegasusBag();
+            mIPEng = null;
+        } finally {
+            profiler.stop();
+        }
         mLogger.logEventCompletion();
 
         // intialize the deployment engine
@@ -191,12 +205,15 @@ public class MainEngine extends Engine {
         if (mPOptions.getClusteringTechnique() != null) {
             mLogger.logEventStart(
                     LoggingKeys.EVENT_PEGASUS_CLUSTER, LoggingKeys.DAX_ID, abstractWFName);
+            profiler.start("clustering");
             mNodeCollapser = new NodeCollapser(mBag);
 
             try {
                 mReducedDag = mNodeCollapser.cluster(mReducedDag);
             } catch (Exception e) {
                 throw new RuntimeException(message, e);
+            } finally {
+                profiler.stop();
             }
 
             mNodeCollapser = null;
@@ -210,12 +227,20 @@ public class MainEngine extends Engine {
         mLogger.log(message, LogManager.INFO_MESSAGE_LEVEL);
         mLogger.logEventStart(
                 LoggingKeys.EVENT_PEGASUS_ADD_TRANSFER_NODES, LoggingKeys.DAX_ID, abstractWFName);
-        mTransEng =
-                new TransferEngine(
-                        mReducedDag, mBag, mRedEng.getDeletedJobs(), mRedEng.getDeletedLeafJobs());
-        mTransEng.addTransferNodes(mRCBridge, plannerCache);
-        mTransEng = null;
-        mRedEng = null;
+        profiler.start("transfer");
+        try {
+            mTransEng =
+                    new TransferEngine(
+                            mReducedDag,
+                            mBag,
+                            mRedEng.getDeletedJobs(),
+                            mRedEng.getDeletedLeafJobs());
+            mTransEng.addTransferNodes(mRCBridge, plannerCache);
+            mTransEng = null;
+            mRedEng = null;
+        } finally {
+            profiler.stop();
+        }
         mLogger.logEventCompletion();
 
         // populate the transient RC into PegasusBag
@@ -235,9 +260,14 @@ public class MainEngine extends Engine {
             // mLogger.log(message,LogManager.INFO_MESSAGE_LEVEL);
             mLogger.logEventStart(
                     LoggingKeys.EVENT_PEGASUS_GENERATE_WORKDIR, LoggingKeys.DAX_ID, abstractWFName);
-            mCreateEng = new CreateDirectory(mBag);
-            mCreateEng.addCreateDirectoryNodes(mReducedDag);
-            mCreateEng = null;
+            profiler.start("create_dir");
+            try {
+                mCreateEng = new CreateDirectory(mBag);
+                mCreateEng.addCreateDirectoryNodes(mReducedDag);
+                mCreateEng = null;
+            } finally {
+                profiler.stop();
+            }
             mLogger.logEventCompletion();
         }
 
@@ -248,8 +278,13 @@ public class MainEngine extends Engine {
             message = "Adding cleanup jobs in the workflow";
             mLogger.logEventStart(
                     LoggingKeys.EVENT_PEGASUS_GENERATE_CLEANUP, LoggingKeys.DAX_ID, abstractWFName);
-            CleanupEngine cEngine = new CleanupEngine(mBag);
-            mReducedDag = cEngine.addCleanupJobs(mReducedDag);
+            profiler.start("cleanup");
+            try {
+                CleanupEngine cEngine = new CleanupEngine(mBag);
+                mReducedDag = cEngine.addCleanupJobs(mReducedDag);
+            } finally {
+                profiler.stop();
+            }
             mLogger.logEventCompletion();
         }
 
@@ -269,20 +304,42 @@ public class MainEngine extends Engine {
 
             // PM-150
             mLogger.logEventStart("Adding Leaf Cleanup Jobs", LoggingKeys.DAX_ID, abstractWFName);
-            mRemoveEng =
-                    new RemoveDirectory(mReducedDag, mBag, this.mPOptions.getSubmitDirectory());
-            mReducedDag = mRemoveEng.addRemoveDirectoryNodes(mReducedDag);
+            profiler.start("leaf_cleanup");
+            try {
+                mRemoveEng =
+                        new RemoveDirectory(mReducedDag, mBag, this.mPOptions.getSubmitDirectory());
+                mReducedDag = mRemoveEng.addRemoveDirectoryNodes(mReducedDag);
+            } finally {
+                profiler.stop();
+            }
             mLogger.logEventCompletion();
             mRemoveEng = null;
         }
 
-        try {
-            /* PM-714. The approach does not scale for the planner performace test case.
-            mLogger.logEventStart( "workflow.prune", LoggingKeys.DAX_ID, abstractWFName );
-            ReduceEdges p = new ReduceEdges();
-            p.reduce(mReducedDag);
+        // PM-714 the dfs based approach does not scale for the planner
+        // performance test case. hence edge reduction is only done if
+        // explicitly turned on
+        String reduceEdges = mProps.getReduceEdgesAlgorithm();
+        if (reduceEdges != null) {
+            mLogger.logEventStart("workflow.prune", LoggingKeys.DAX_ID, abstractWFName);
+            ReduceEdges p = null;
+            try {
+                p = new ReduceEdges(reduceEdges);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException(
+                        "Invalid value for property pegasus.workflow.reduce.edges " + reduceEdges,
+                        e);
+            }
+            profiler.start("reduce_edges");
+            try {
+                p.reduce(mReducedDag);
+            } finally {
+                profiler.stop();
+            }
             mLogger.logEventCompletion();
-            */
+        }
+
+        try {
             // PM-1535 write out the properties file in the submit directory
             propsBeforePlanning.writeOutProperties();
         } catch (IOException ex) {
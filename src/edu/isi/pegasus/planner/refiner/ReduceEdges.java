@@ -7,6 +7,8 @@ package edu.isi.pegasus.planner.refiner;
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,15 +21,53 @@ import java.util.Set;
 import java.util.Stack;
 
 /**
- * An algorithm to reduce remove edges in the workflow, based on a DFS of a graph and doing least
- * common ancestor tranversals to detect duplicate edges.
+ * An algorithm to reduce remove edges in the workflow. Two implementations are provided
+ *
+ * <ul>
+ *   <li>dfs - based on a DFS of a graph and doing least common ancestor tranversals to detect
+ *       duplicate edges.
+ *   <li>bitset - assigns dense integer ids to the nodes in topological order, and computes the
+ *       reachability of each node as a compressed bitset walking the graph bottom up. An edge is
+ *       redundant if the child is reachable from another child of the parent.
+ * </ul>
  *
  * @author Rajiv Mayani
  * @author Karan Vahi
  */
 public class ReduceEdges {
 
-    public ReduceEdges() {}
+    /** The algorithms available for reducing the edges */
+    public enum ALGORITHM {
+        dfs,
+        bitset
+    };
+
+    /** The algorithm to use */
+    private final ALGORITHM mAlgorithm;
+
+    /** The default constructor that uses the DFS based algorithm. */
+    public ReduceEdges() {
+        this(ALGORITHM.dfs);
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param algorithm the algorithm to use for reducing the edges.
+     */
+    public ReduceEdges(ALGORITHM algorithm) {
+        mAlgorithm = (algorithm == null) ? ALGORITHM.dfs : algorithm;
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param algorithm the name of the algorithm to use for reducing the edges.
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public ReduceEdges(String algorithm) {
+        this(ALGORITHM.valueOf(algorithm.trim().toLowerCase()));
+    }
 
     /**
      * Prunes redundant edges from the workflow. For example if A->B->C and A->D exists, we can
@@ -50,6 +90,108 @@ public class ReduceEdges {
      * @return the workflow with non essential edges removed
      */
     public Graph reduce(Graph workflow) {
+        return (mAlgorithm == ALGORITHM.bitset)
+                ? this.reduceUsingBitSets(workflow)
+                : this.reduceUsingLCA(workflow);
+    }
+
+    /**
+     * Prunes redundant edges from the workflow, computing the reachability of each node as a
+     * compressed bitset. Nodes are assigned ids in topological order, and traversed bottom up. For
+     * each node, the children are traversed in increasing order of their ids. A child that is
+     * already reachable via an earlier child is reachable via a longer path, and the edge to it is
+     * removed. The reachability bitset of a node is released as soon as all its parents have been
+     * traversed.
+     *
+     * @param workflow
+     * @return the workflow with non essential edges removed
+     */
+    public Graph reduceUsingBitSets(Graph workflow) {
+        int size = workflow.size();
+        GraphNode[] nodes = new GraphNode[size];
+        Map<GraphNode, Integer> ids = new HashMap(size * 2);
+        int[] pending = new int[size];
+
+        // kahn's algorithm to assign the ids in topological order
+        int next = 0;
+        for (Iterator<GraphNode> it = workflow.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            if (node.getParents().isEmpty()) {
+                ids.put(node, next);
+                nodes[next++] = node;
+            }
+        }
+        Map<GraphNode, Integer> inDegree = new HashMap(size * 2);
+        for (int i = 0; i < next; i++) {
+            for (GraphNode child : nodes[i].getChildren()) {
+                Integer remaining = inDegree.get(child);
+                remaining = (remaining == null) ? child.getParents().size() - 1 : remaining - 1;
+                inDegree.put(child, remaining);
+                if (remaining == 0) {
+                    ids.put(child, next);
+                    nodes[next++] = child;
+                }
+            }
+        }
+        if (next != size) {
+            throw new RuntimeException(
+                    "Unable to reduce edges as the workflow has cycles. Sorted only "
+                            + next
+                            + " of "
+                            + size
+                            + " nodes");
+        }
+
+        CompressedBitSet[] reachable = new CompressedBitSet[size];
+        for (int i = 0; i < size; i++) {
+            pending[i] = nodes[i].getParents().size();
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            GraphNode node = nodes[i];
+            int[] children = new int[node.getChildren().size()];
+            int j = 0;
+            for (GraphNode child : node.getChildren()) {
+                children[j++] = ids.get(child);
+            }
+            Arrays.sort(children);
+
+            CompressedBitSet reach = new CompressedBitSet();
+            List<GraphNode> redundant = null;
+            for (int child : children) {
+                if (reach.get(child)) {
+                    if (redundant == null) {
+                        redundant = new ArrayList();
+                    }
+                    redundant.add(nodes[child]);
+                } else {
+                    reach.set(child);
+                    reach.or(reachable[child]);
+                }
+                if (--pending[child] == 0) {
+                    // all parents of the child have been traversed
+                    reachable[child] = null;
+                }
+            }
+            if (redundant != null) {
+                for (GraphNode child : redundant) {
+                    node.removeChild(child);
+                    child.removeParent(node);
+                }
+            }
+            reachable[i] = (pending[i] == 0) ? null : reach;
+        }
+
+        return workflow;
+    }
+
+    /**
+     * Prunes redundant edges from the workflow, doing a DFS of the graph and least common ancestor
+     * traversals to detect duplicate edges.
+     *
+     * @param workflow
+     * @return the workflow with non essential edges removed
+     */
+    public Graph reduceUsingLCA(Graph workflow) {
         // start a DFS for the graph at root.
 
         // get all the roots of the workflow
@@ -308,4 +450,110 @@ public class ReduceEdges {
             node.setColor(GraphNode.WHITE_COLOR);
         }
     }
+
+    /**
+     * A bitset that only stores the non zero 64 bit words, along with the index of each word. The
+     * words are kept sorted by index, so that lookups are a binary search and unions are a linear
+     * merge. The reachability sets of nodes close together in topological order are clustered, and
+     * take up a few words irrespective of the size of the workflow.
+     */
+    static final class CompressedBitSet {
+
+        /** The sorted indexes of the non zero words */
+        private int[] mIndexes;
+
+        /** The non zero words */
+        private long[] mWords;
+
+        /** The number of non zero words */
+        private int mSize;
+
+        /** The default constructor. */
+        CompressedBitSet() {
+            mIndexes = new int[2];
+            mWords = new long[2];
+            mSize = 0;
+        }
+
+        /**
+         * Returns whether a bit is set.
+         *
+         * @param bit the bit
+         * @return boolean
+         */
+        boolean get(int bit) {
+            int position = Arrays.binarySearch(mIndexes, 0, mSize, bit >>> 6);
+            return position >= 0 && (mWords[position] & (1L << bit)) != 0;
+        }
+
+        /**
+         * Sets a bit.
+         *
+         * @param bit the bit
+         */
+        void set(int bit) {
+            int index = bit >>> 6;
+            int position = Arrays.binarySearch(mIndexes, 0, mSize, index);
+            if (position >= 0) {
+                mWords[position] |= 1L << bit;
+                return;
+            }
+            position = -position - 1;
+            if (mSize == mIndexes.length) {
+                mIndexes = Arrays.copyOf(mIndexes, mSize * 2);
+                mWords = Arrays.copyOf(mWords, mSize * 2);
+            }
+            System.arraycopy(mIndexes, position, mIndexes, position + 1, mSize - position);
+            System.arraycopy(mWords, position, mWords, position + 1, mSize - position);
+            mIndexes[position] = index;
+            mWords[position] = 1L << bit;
+            mSize++;
+        }
+
+        /**
+         * Sets the bits that are set in the other bitset.
+         *
+         * @param other the other bitset, can be null
+         */
+        void or(CompressedBitSet other) {
+            if (other == null || other.mSize == 0) {
+                return;
+            }
+            int[] indexes = new int[mSize + other.mSize];
+            long[] words = new long[mSize + other.mSize];
+            int i = 0, j = 0, k = 0;
+            while (i < mSize && j < other.mSize) {
+                if (mIndexes[i] < other.mIndexes[j]) {
+                    indexes[k] = mIndexes[i];
+                    words[k++] = mWords[i++];
+                } else if (mIndexes[i] > other.mIndexes[j]) {
+                    indexes[k] = other.mIndexes[j];
+                    words[k++] = other.mWords[j++];
+                } else {
+                    indexes[k] = mIndexes[i];
+                    words[k++] = mWords[i++] | other.mWords[j++];
+                }
+            }
+            while (i < mSize) {
+                indexes[k] = mIndexes[i];
+                words[k++] = mWords[i++];
+            }
+            while (j < other.mSize) {
+                indexes[k] = other.mIndexes[j];
+                words[k++] = other.mWords[j++];
+            }
+            mIndexes = indexes;
+            mWords = words;
+            mSize = k;
+        }
+
+        /**
+         * Returns the number of non zero words stored.
+         *
+         * @return int
+         */
+        int words() {
+            return mSize;
+        }
+    }
 }
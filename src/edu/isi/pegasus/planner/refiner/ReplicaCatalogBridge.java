@@ -20,6 +20,7 @@ import edu.isi.pegasus.common.logging.LoggingKeys;
 import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
+import edu.isi.pegasus.planner.catalog.replica.classes.ReplicaLookupCache;
 import edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStore;
 import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
@@ -29,6 +30,7 @@ import edu.isi.pegasus.planner.classes.FileTransfer;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.NameValue;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerMetrics;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.classes.ReplicaLocation;
@@ -111,6 +113,18 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
     /** The handle to the main Replica Catalog. */
     private ReplicaCatalog mReplicaCatalog;
 
+    /**
+     * The persistent lookup cache for the file based replica catalogs, that is shared across
+     * planner invocations. Null if the cache is disabled.
+     */
+    private ReplicaLookupCache mLookupCache;
+
+    /**
+     * A boolean indicating whether all the lookups against the main replica catalog were resolved
+     * from the lookup cache, without the catalog being loaded.
+     */
+    private boolean mRCLookupCached;
+
     /**
      * The Vector of <code>String</code> objects containing the logical filenames of the files whose
      * locations are to be searched in the Replica Catalog.
@@ -224,6 +238,7 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
         mProps = properties;
         mPOptions = options;
         mRCDown = false;
+        mRCLookupCached = false;
         mCacheStore = new ReplicaStore();
         mInheritedReplicaStore = new ReplicaStore();
         mDirectoryReplicaStore = new ReplicaStore();
@@ -231,6 +246,11 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
         mTreatCacheAsRC = mProps.treatCacheAsRC();
         mDAXLocationsAsRC = mProps.treatDAXLocationsAsRC();
         mDefaultTCRCCreated = false;
+        String cacheDirectory = mProps.getReplicaLookupCacheDirectory();
+        mLookupCache =
+                (cacheDirectory == null)
+                        ? null
+                        : new ReplicaLookupCache(new File(cacheDirectory), mLogger);
 
         // converting the Vector into vector of
         // strings just containing the logical
@@ -268,13 +288,31 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
                 bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
                 bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
                 bag.add(PegasusBag.PLANNER_DIRECTORY, mBag.getPlannerDirectory());
-                mReplicaCatalog = ReplicaFactory.loadInstance(bag);
+                File catalogFile =
+                        (mLookupCache == null) ? null : ReplicaFactory.getFileSource(bag);
+                if (catalogFile != null && catalogFile.exists()) {
+                    // the catalog is only loaded if the lookup cache cannot
+                    // resolve all the files
+                    ReplicaLookupCache.Lookup lookup =
+                            mLookupCache.lookup(
+                                    String.valueOf(props.getProperty(ReplicaCatalog.c_prefix)),
+                                    catalogFile,
+                                    (Set<String>) mSearchFiles);
+                    if (!lookup.getMisses().isEmpty()) {
+                        mReplicaCatalog = ReplicaFactory.loadInstance(bag);
+                        lookup.resolve(mReplicaCatalog);
+                    }
+                    mReplicaStore = new ReplicaStore(lookup.getEntries());
+                    mRCLookupCached = true;
+                } else {
+                    mReplicaCatalog = ReplicaFactory.loadInstance(bag);
 
-                // load all the mappings.
-                mReplicaStore = new ReplicaStore(mReplicaCatalog.lookup(mSearchFiles));
+                    // load all the mappings.
+                    mReplicaStore = new ReplicaStore(mReplicaCatalog.lookup(mSearchFiles));
 
-                // PM-1535 if connect props has a file property add it back to the
-                File catalogFile = mReplicaCatalog.getFileSource();
+                    // PM-1535 if connect props has a file property add it back to the
+                    catalogFile = mReplicaCatalog.getFileSource();
+                }
                 if (catalogFile != null && catalogFile.exists()) {
                     this.mBag.add(PegasusBag.REPLICA_CATALOG_FILE_SOURCE, catalogFile);
                     mReplicaFileSources.add(catalogFile);
@@ -353,6 +391,20 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
                 mReplicaFileSources.add(new File(source));
             }
         }
+
+        if (mLookupCache != null) {
+            mLogger.log(
+                    "Replica lookup cache hits "
+                            + mLookupCache.getHits()
+                            + " misses "
+                            + mLookupCache.getMisses(),
+                    LogManager.CONFIG_MESSAGE_LEVEL);
+            PlannerMetrics metrics = (mBag == null) ? null : mBag.getPlannerMetrics();
+            if (metrics != null) {
+                metrics.addReplicaLookupCacheCounts(
+                        mLookupCache.getHits(), mLookupCache.getMisses());
+            }
+        }
     }
 
     /**
@@ -406,7 +458,7 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
 
         // check in the main replica catalog
         if ((this.mDAXReplicaStore.isEmpty() && mDirectoryReplicaStore.isEmpty())
-                && (mRCDown || mReplicaCatalog == null)) {
+                && (mRCDown || (mReplicaCatalog == null && !mRCLookupCached))) {
             mLogger.log(
                     "Replica Catalog is either down or connection to it was never opened ",
                     LogManager.WARNING_MESSAGE_LEVEL);
@@ -997,6 +1049,16 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
         // set the appropriate property to designate path to file
         cacheProps.setProperty(ReplicaCatalogBridge.CACHE_REPLICA_CATALOG_KEY, file);
 
+        ReplicaLookupCache.Lookup lookup = null;
+        if (mLookupCache != null && new File(file).exists()) {
+            lookup =
+                    mLookupCache.lookup(
+                            CACHE_REPLICA_CATALOG_IMPLEMENTER, new File(file), searchFiles);
+            if (lookup.getMisses().isEmpty()) {
+                return lookup.getEntries();
+            }
+        }
+
         mLogger.log("Loading  file: " + file, LogManager.DEBUG_MESSAGE_LEVEL);
         try {
             simpleFile =
@@ -1006,6 +1068,11 @@ public class ReplicaCatalogBridge extends Engine // for the time being.
             mLogger.log("Unable to load cache file " + file, e, LogManager.ERROR_MESSAGE_LEVEL);
             return found;
         }
+        if (lookup != null) {
+            lookup.resolve(simpleFile);
+            simpleFile.close();
+            return lookup.getEntries();
+        }
         // suck in all the entries into the cache replica store.
         // returns an unmodifiable collection. so merging an issue..
         Map<String, Collection<ReplicaCatalogEntry>> m = simpleFile.lookup(searchFiles);
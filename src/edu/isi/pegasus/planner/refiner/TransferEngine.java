@@ -62,6 +62,15 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The transfer engine, which on the basis of the pools on which the jobs are to run, adds nodes to
@@ -183,6 +192,22 @@ public class TransferEngine extends Engine {
     /** Whether to do any integrity checking or not. */
     protected boolean mDoIntegrityChecking;
 
+    /** The number of threads used to resolve the stage-in transfers for the jobs. */
+    private final int mResolverThreads;
+
+    /**
+     * The pool of threads resolving the stage-in transfers. Only set while the workflow is being
+     * traversed with more than one resolver thread.
+     */
+    private ExecutorService mResolverPool;
+
+    /**
+     * The updates to the refiner and the caches recorded while the workflow is being traversed,
+     * that are applied in order once traversal is complete. Null if the updates are applied right
+     * away.
+     */
+    private List<Runnable> mPendingUpdates;
+
     /**
      * Overloaded constructor.
      *
@@ -213,6 +238,7 @@ public class TransferEngine extends Engine {
         mDeletedJobs = deletedJobs;
 
         mBypassStagingForInputs = mProps.bypassFirstLevelStagingForInputs();
+        mResolverThreads = mProps.getStageInResolverThreads();
 
         mPegasusConfiguration = new PegasusConfiguration(bag.getLogger());
 
@@ -327,13 +353,11 @@ public class TransferEngine extends Engine {
                         // source site associated with file URL does
                         // not match the site attribute. remove the source url
                         mLogger.log(
-                                "Removing source url "
-                                        + sourceURL
-                                        + " associated with site "
-                                        + sourceSite
-                                        + " for job "
-                                        + job.getID(),
-                                LogManager.TRACE_MESSAGE_LEVEL);
+                                LogManager.TRACE_MESSAGE_LEVEL,
+                                "Removing source url {} associated with site {} for job {}",
+                                sourceURL,
+                                sourceSite,
+                                job.getID());
                         it.remove();
                         remove = true;
                     }
@@ -392,14 +416,97 @@ public class TransferEngine extends Engine {
      * @param plannerCache an instance of the replica catalog that will store the locations of the
      *     files on the remote sites.
      */
-    public void addTransferNodes(ReplicaCatalogBridge rcb, PlannerCache plannerCache) {
+    public void addTransferNodes(final ReplicaCatalogBridge rcb, PlannerCache plannerCache) {
         mRCBridge = rcb;
         mRCBridge.mSubmitDirMapper = this.mSubmitDirMapper;
         mPlannerCache = plannerCache;
 
+        if (mResolverThreads > 1) {
+            mLogger.log(
+                    "Resolving stage-in transfers with " + mResolverThreads + " threads",
+                    LogManager.DEBUG_MESSAGE_LEVEL);
+            mResolverPool = createResolverPool(mResolverThreads);
+            mPendingUpdates = new LinkedList<Runnable>();
+        }
+        try {
+            traverse(rcb);
+
+            // apply the updates to the refiner and the caches in the
+            // order in which the jobs were traversed
+            if (mPendingUpdates != null) {
+                List<Runnable> updates = mPendingUpdates;
+                mPendingUpdates = null;
+                for (Runnable update : updates) {
+                    update.run();
+                }
+            }
+        } finally {
+            mPendingUpdates = null;
+            if (mResolverPool != null) {
+                mResolverPool.shutdownNow();
+                mResolverPool = null;
+            }
+        }
+
+        boolean stageOut = ((this.mOutputSites != null) && (!this.mOutputSites.isEmpty()));
+        Job currentJob;
+
+        // we are done with the traversal.
+        // mTXRefiner.done();
+
+        // get the deleted leaf jobs o/p files to output sites
+        if (stageOut && !mDeletedJobs.isEmpty()) {
+
+            mLogger.log(
+                    "Adding stage out jobs for jobs deleted from the workflow",
+                    LogManager.INFO_MESSAGE_LEVEL);
+
+            for (Iterator it = this.mDeletedJobs.iterator(); it.hasNext(); ) {
+                currentJob = (Job) it.next();
+                currentJob.setLevel(TransferEngine.DELETED_JOBS_LEVEL);
+
+                // for a deleted node, to transfer it's output
+                // the execution pool should be set to local i.e submit host
+                currentJob.setSiteHandle("local");
+                // PM-936 set the staging site for the deleted job
+                // to local site
+                currentJob.setStagingSiteHandle("local");
+
+                // for jobs deleted during data reuse we dont
+                // go through the staging site. they are transferred
+                // directly to the output sites
+                Collection<FileTransfer> deletedFileTransfers = new LinkedList();
+                for (String outputSite : this.mOutputSites) {
+                    deletedFileTransfers.addAll(getDeletedFileTX(outputSite, currentJob));
+                }
+                if (!deletedFileTransfers.isEmpty()) {
+                    // the job is deleted anyways. The files exist somewhere
+                    // as mentioned in the Replica Catalog. We assume it is
+                    // URL remotely accessible
+                    boolean localTransfer = true;
+                    mTXRefiner.addStageOutXFERNodes(
+                            currentJob, deletedFileTransfers, rcb, localTransfer, true);
+                }
+            }
+        }
+
+        // we are done with the traversal.
+        mTXRefiner.done();
+
+        // close the handle to the workflow cache file if it is written
+        // not the planner cache file
+        this.mWorkflowCache.close();
+    }
+
+    /**
+     * Walks the workflow in a top down manner, and adds the inter site, stage-in and stage-out
+     * transfer nodes for each job.
+     *
+     * @param rcb the bridge to the ReplicaCatalog.
+     */
+    private void traverse(final ReplicaCatalogBridge rcb) {
         Job currentJob;
         String currentJobName;
-        String msg;
 
         // convert the dax to a graph representation and walk it
         // in a top down manner
@@ -410,24 +517,36 @@ public class TransferEngine extends Engine {
         for (Iterator it = workflow.iterator(); it.hasNext(); ) {
             GraphNode node = (GraphNode) it.next();
             currentJob = (Job) node.getContent();
+            final Job job = currentJob;
 
             // PM-833 associate a directory with the job
-            // that is used to determine relative submit directory
-            currentJob.setRelativeSubmitDirectory(getRelativeSubmitDirectory(currentJob));
+            // that is used to determine relative submit directory.
+            // the submit mapper hands out directories in the order
+            // jobs are mapped, and hence is interleaved with the
+            // creation of the transfer jobs
+            perform(
+                    new Runnable() {
+                        public void run() {
+                            job.setRelativeSubmitDirectory(getRelativeSubmitDirectory(job));
+                        }
+                    });
 
             // set the node depth as the level
             currentJob.setLevel(node.getDepth());
             currentJobName = currentJob.getName();
 
             mLogger.log("", LogManager.DEBUG_MESSAGE_LEVEL);
-            msg = "Job being traversed is " + currentJobName;
-            mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
-            msg = "To be run at " + currentJob.executionPool;
-            mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
+            mLogger.log(
+                    LogManager.DEBUG_MESSAGE_LEVEL, "Job being traversed is {}", currentJobName);
+            mLogger.log(
+                    LogManager.DEBUG_MESSAGE_LEVEL, "To be run at {}", currentJob.executionPool);
 
             // getting the parents of that node
             Collection<GraphNode> parents = node.getParents();
-            mLogger.log("Parents of job:" + node.parentsToString(), LogManager.DEBUG_MESSAGE_LEVEL);
+            if (mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL)) {
+                mLogger.log(
+                        "Parents of job:" + node.parentsToString(), LogManager.DEBUG_MESSAGE_LEVEL);
+            }
             processParents(currentJob, parents);
 
             // transfer the nodes output files
@@ -451,10 +570,10 @@ public class TransferEngine extends Engine {
                             FileServer.OPERATION.put,
                             currentJob);
                 }
-                boolean localTransfer =
+                final boolean localTransfer =
                         runTransferOnLocalSite(
                                 stagingSite, stagingSiteURLPrefix, Job.STAGE_OUT_JOB);
-                Collection<FileTransfer> transfersToOutputSites = new LinkedList();
+                final Collection<FileTransfer> transfersToOutputSites = new LinkedList();
                 Set<String> outputSites = new HashSet();
                 outputSites.addAll(this.mOutputSites);
                 if (this.mParentScratchOutputMapper != null) {
@@ -465,60 +584,45 @@ public class TransferEngine extends Engine {
                 for (String outputSite : outputSites) {
                     transfersToOutputSites.addAll(getFileTX(outputSite, currentJob, localTransfer));
                 }
-                mTXRefiner.addStageOutXFERNodes(
-                        currentJob, transfersToOutputSites, rcb, localTransfer);
+                perform(
+                        new Runnable() {
+                            public void run() {
+                                mTXRefiner.addStageOutXFERNodes(
+                                        job, transfersToOutputSites, rcb, localTransfer);
+                            }
+                        });
             } else {
                 // create the cache file always
                 // Pegasus Bug PM-32 and PM-356
                 trackInCaches(currentJob);
             }
         }
+    }
 
-        // we are done with the traversal.
-        // mTXRefiner.done();
-
-        // get the deleted leaf jobs o/p files to output sites
-        if (stageOut && !mDeletedJobs.isEmpty()) {
-
-            mLogger.log(
-                    "Adding stage out jobs for jobs deleted from the workflow",
-                    LogManager.INFO_MESSAGE_LEVEL);
-
-            for (Iterator it = this.mDeletedJobs.iterator(); it.hasNext(); ) {
-                currentJob = (Job) it.next();
-                currentJob.setLevel(TransferEngine.DELETED_JOBS_LEVEL);
-
-                // for a deleted node, to transfer it's output
-                // the execution pool should be set to local i.e submit host
-                currentJob.setSiteHandle("local");
-                // PM-936 set the staging site for the deleted job
-                // to local site
-                currentJob.setStagingSiteHandle("local");
-
-                // for jobs deleted during data reuse we dont
-                // go through the staging site. they are transferred
-                // directly to the output sites
-                Collection<FileTransfer> deletedFileTransfers = new LinkedList();
-                for (String outputSite : this.mOutputSites) {
-                    deletedFileTransfers.addAll(getDeletedFileTX(outputSite, currentJob));
-                }
-                if (!deletedFileTransfers.isEmpty()) {
-                    // the job is deleted anyways. The files exist somewhere
-                    // as mentioned in the Replica Catalog. We assume it is
-                    // URL remotely accessible
-                    boolean localTransfer = true;
-                    mTXRefiner.addStageOutXFERNodes(
-                            currentJob, deletedFileTransfers, rcb, localTransfer, true);
-                }
-            }
-        }
-
-        // we are done with the traversal.
-        mTXRefiner.done();
-
-        // close the handle to the workflow cache file if it is written
-        // not the planner cache file
-        this.mWorkflowCache.close();
+    /**
+     * Creates the pool of daemon threads that resolve the stage-in transfers.
+     *
+     * @param threads the number of threads
+     * @return the pool
+     */
+    private ExecutorService createResolverPool(int threads) {
+        return new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(0);
+
+                    public Thread newThread(Runnable r) {
+                        Thread t =
+                                new Thread(
+                                        r, "pegasus-stagein-resolver-" + mCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
     }
 
     /**
@@ -628,7 +732,7 @@ public class TransferEngine extends Engine {
      * @param parents list <code>GraphNode</code> ojbects corresponding to the parent jobs of the
      *     job.
      */
-    private void processParents(Job job, Collection<GraphNode> parents) {
+    private void processParents(final Job job, Collection<GraphNode> parents) {
 
         Set nodeIpFiles = job.getInputFiles();
         Vector vRCSearchFiles = new Vector(); // vector of PegasusFile
@@ -639,15 +743,22 @@ public class TransferEngine extends Engine {
         // interpool transfer of the nodes parents
         // output files
         Collection[] interSiteFileTX = this.getInterpoolFileTX(job, parents);
-        Collection localInterSiteTX = interSiteFileTX[0];
-        Collection remoteInterSiteTX = interSiteFileTX[1];
+        final Collection localInterSiteTX = interSiteFileTX[0];
+        final Collection remoteInterSiteTX = interSiteFileTX[1];
 
         // only add if there are files to transfer
-        if (!localInterSiteTX.isEmpty()) {
-            mTXRefiner.addInterSiteTXNodes(job, localInterSiteTX, true);
-        }
-        if (!remoteInterSiteTX.isEmpty()) {
-            mTXRefiner.addInterSiteTXNodes(job, remoteInterSiteTX, false);
+        if (!localInterSiteTX.isEmpty() || !remoteInterSiteTX.isEmpty()) {
+            perform(
+                    new Runnable() {
+                        public void run() {
+                            if (!localInterSiteTX.isEmpty()) {
+                                mTXRefiner.addInterSiteTXNodes(job, localInterSiteTX, true);
+                            }
+                            if (!remoteInterSiteTX.isEmpty()) {
+                                mTXRefiner.addInterSiteTXNodes(job, remoteInterSiteTX, false);
+                            }
+                        }
+                    });
         }
 
         // check if node ip files are in the parents out files
@@ -1147,12 +1258,10 @@ public class TransferEngine extends Engine {
             if (integrityDisabledFiles.contains(ip)) {
                 ip.setForIntegrityChecking(false);
                 mLogger.log(
-                        "Disabled file "
-                                + ip.getLFN()
-                                + " for job "
-                                + job.getID()
-                                + " for integrity checking",
-                        LogManager.TRACE_MESSAGE_LEVEL);
+                        LogManager.TRACE_MESSAGE_LEVEL,
+                        "Disabled file {} for job {} for integrity checking",
+                        ip.getLFN(),
+                        job.getID());
             }
         }
 
@@ -1285,22 +1394,89 @@ public class TransferEngine extends Engine {
      * transfer them. If a file is not found to be in the Replica Catalog the Transfer Engine flags
      * an error and exits
      *
+     * <p>The URL's on the staging site are determined by the staging mapper in the order in which
+     * the jobs are traversed. The resolution of the replicas into the stage-in transfers is then
+     * done either right away, or handed to the resolver pool if one is configured. The refiner and
+     * the caches are updated in the traversal order in either case.
+     *
      * @param job the <code>Job</code>object for whose ipfile have to search the Replica Mechanism
      *     for.
      * @param searchFiles Vector containing the PegasusFile objects corresponding to the files that
      *     need to have their mapping looked up from the Replica Mechanism.
      */
     private void getFilesFromRC(Job job, Collection searchFiles) {
-        // Vector fileTransfers = new Vector();
-        // Collection<FileTransfer> symLinkFileTransfers = new LinkedList();
-        Collection<FileTransfer> localFileTransfers = new LinkedList();
-        Collection<FileTransfer> remoteFileTransfers = new LinkedList();
+        final StageIn stageIn = new StageIn(job);
+        String stagingSiteHandle = job.getStagingSiteHandle();
+        // contains the remote_initialdir if specified for the job
+        String eRemoteDir = job.vdsNS.getStringValue(Pegasus.REMOTE_INITIALDIR_KEY);
+        SiteCatalogEntry stagingSite = mSiteStore.lookup(stagingSiteHandle);
+
+        for (Iterator it = searchFiles.iterator(); it.hasNext(); ) {
+            PegasusFile pf = (PegasusFile) it.next();
+            String lfn = pf.getLFN();
+            StageInFile file = new StageInFile(pf);
+
+            // PM-833 figure out the addOn component just once per lfn
+            File addOn = mStagingMapper.mapToRelativeDirectory(job, stagingSite, lfn);
+
+            file.mDestPutURL =
+                    this.getURLOnSharedScratch(stagingSite, job, OPERATION.put, addOn, lfn);
+            file.mDestGetURL =
+                    this.getURLOnSharedScratch(stagingSite, job, OPERATION.get, addOn, lfn);
+            file.mDestAbsPath =
+                    mSiteStore.getInternalWorkDirectory(stagingSiteHandle, eRemoteDir)
+                            + File.separator
+                            + addOn;
+
+            if (!(pf instanceof FileTransfer)) {
+                // query the replica services and get hold of pfn
+                ReplicaLocation rl = mRCBridge.getFileLocs(lfn);
+                file.mLocations = rl;
+                // the replica selector updates the entries it orders.
+                // concurrent resolutions work on their own copies
+                file.mCandidates = (rl == null || mResolverPool == null) ? rl : copyOf(rl);
+            }
+            stageIn.mFiles.add(file);
+        }
+
+        if (mResolverPool == null) {
+            resolveStageIn(stageIn);
+            applyStageIn(stageIn);
+        } else {
+            final Future<StageIn> resolution =
+                    mResolverPool.submit(
+                            new Callable<StageIn>() {
+                                public StageIn call() {
+                                    resolveStageIn(stageIn);
+                                    return stageIn;
+                                }
+                            });
+            perform(
+                    new Runnable() {
+                        public void run() {
+                            applyStageIn(waitFor(resolution));
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Resolves the files to be staged in for a job into the stage-in transfers, from the locations
+     * returned from the Replica Mechanism. The updates to the planner and workflow caches are
+     * recorded with the stage-in, and not applied. It does not touch the staging mapper, and can be
+     * called concurrently for different jobs.
+     *
+     * @param stageIn the stage-in for the job, with the URL's on the staging site determined.
+     */
+    private void resolveStageIn(StageIn stageIn) {
+        Job job = stageIn.mJob;
+        Collection<FileTransfer> localFileTransfers = stageIn.mLocalFileTransfers;
+        Collection<FileTransfer> remoteFileTransfers = stageIn.mRemoteFileTransfers;
+        List<Runnable> updates = stageIn.mUpdates;
 
         String jobName = job.logicalName;
         String stagingSiteHandle = job.getStagingSiteHandle();
         String executionSiteHandle = job.getSiteHandle();
-        // contains the remote_initialdir if specified for the job
-        String eRemoteDir = job.vdsNS.getStringValue(Pegasus.REMOTE_INITIALDIR_KEY);
 
         SiteCatalogEntry stagingSite = mSiteStore.lookup(stagingSiteHandle);
         // we are using the pull mode for data transfer
@@ -1317,27 +1493,20 @@ public class TransferEngine extends Engine {
         // dDirPutURL would be the url to the destination directoy
         // and is always a networked url.
 
-        for (Iterator it = searchFiles.iterator(); it.hasNext(); ) {
-            String sourceURL = null, destPutURL = null, destGetURL = null;
-            PegasusFile pf = (PegasusFile) it.next();
+        for (StageInFile file : stageIn.mFiles) {
+            String sourceURL = null;
+            PegasusFile pf = file.mFile;
             List pfns = null;
             ReplicaLocation rl = null;
 
             String lfn = pf.getLFN();
             NameValue<String, String> nv = null;
 
-            // PM-833 figure out the addOn component just once per lfn
-            File addOn = mStagingMapper.mapToRelativeDirectory(job, stagingSite, lfn);
-
-            destPutURL = this.getURLOnSharedScratch(stagingSite, job, OPERATION.put, addOn, lfn);
-            destGetURL = this.getURLOnSharedScratch(stagingSite, job, OPERATION.get, addOn, lfn);
+            String destPutURL = file.mDestPutURL;
+            String destGetURL = file.mDestGetURL;
             String sDirURL = null;
             String sAbsPath = null;
-            String dAbsPath =
-                    mSiteStore.getInternalWorkDirectory(stagingSiteHandle, eRemoteDir)
-                            + File.separator
-                            + addOn;
-
+            String dAbsPath = file.mDestAbsPath;
             // file dest dir is destination dir accessed as a file URL
             String fileDestDir = scheme + "://" + dAbsPath;
 
@@ -1381,8 +1550,7 @@ public class TransferEngine extends Engine {
                 // for time being for this case the get url is same as put url
                 destGetURL = destPutURL;
             } else {
-                // query the replica services and get hold of pfn
-                rl = mRCBridge.getFileLocs(lfn);
+                rl = file.mLocations;
                 pfns = (rl == null) ? null : rl.getPFNList();
             }
 
@@ -1449,7 +1617,9 @@ public class TransferEngine extends Engine {
             // select from the various replicas
             candidateLocations =
                     mReplicaSelector.selectAndOrderReplicas(
-                            rl, executionSiteHandle, runTransferOnLocalSite);
+                            (nv == null) ? file.mCandidates : rl,
+                            executionSiteHandle,
+                            runTransferOnLocalSite);
             if (candidateLocations.getPFNCount() == 0) {
                 complainForNoCandidateInput(rl, executionSiteHandle, runTransferOnLocalSite);
             }
@@ -1546,19 +1716,17 @@ public class TransferEngine extends Engine {
                                             .getCanonicalPath()
                                             .equals(new File(dAbsPath).getCanonicalPath()))) {
                         // do not need to add any transfer node
-                        StringBuffer message = new StringBuffer();
-
-                        message.append(sAbsPath).append(" same as ").append(dAbsPath);
-                        mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
-                        message = new StringBuffer();
-                        message.append(" Not transferring ip file as ")
-                                .append(lfn)
-                                .append(" for job ")
-                                .append(job.jobName)
-                                .append(" to site ")
-                                .append(stagingSiteHandle);
-
-                        mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
+                        mLogger.log(
+                                LogManager.DEBUG_MESSAGE_LEVEL,
+                                "{} same as {}",
+                                sAbsPath,
+                                dAbsPath);
+                        mLogger.log(
+                                LogManager.DEBUG_MESSAGE_LEVEL,
+                                " Not transferring ip file as {} for job {} to site {}",
+                                lfn,
+                                job.jobName,
+                                stagingSiteHandle);
                         continue;
                     }
                 } catch (IOException ioe) {
@@ -1584,12 +1752,13 @@ public class TransferEngine extends Engine {
                     // PM-698 . we have to clone since original site attribute will be different
                     ReplicaCatalogEntry rce = (ReplicaCatalogEntry) selLoc.clone();
                     rce.setResourceHandle(executionSiteHandle);
-                    trackInPlannerCache(lfn, rce, OPERATION.get);
+                    updates.add(plannerCacheInsert(lfn, rce, OPERATION.get));
 
                     if (candidateNum == 1) {
                         // PM-1014 we only track the first candidate in the workflow cache
                         // i.e the cache file written out in the submit directory
-                        trackInWorkflowCache(lfn, sourceURL, selLoc.getResourceHandle());
+                        updates.add(
+                                workflowCacheInsert(lfn, sourceURL, selLoc.getResourceHandle()));
                     }
                     // ensure the input file does not get cleaned up by the
                     // InPlace cleanup algorithm
@@ -1601,13 +1770,16 @@ public class TransferEngine extends Engine {
                     // part of the first level staging
                     // we always store the thirdparty url
                     // trackInCaches( lfn, destPutURL, job.getSiteHandle() );
-                    trackInPlannerCache(lfn, destPutURL, job.getStagingSiteHandle());
+                    updates.add(
+                            plannerCacheInsert(
+                                    lfn, destPutURL, job.getStagingSiteHandle(), OPERATION.put));
 
                     if (candidateNum == 1) {
                         // PM-1014 we only track the first candidate in the workflow cache
                         // i.e the cache file written out in the submit directory
 
-                        trackInWorkflowCache(lfn, destGetURL, job.getStagingSiteHandle());
+                        updates.add(
+                                workflowCacheInsert(lfn, destGetURL, job.getStagingSiteHandle()));
                     }
                 }
 
@@ -1663,14 +1835,76 @@ public class TransferEngine extends Engine {
                     localFileTransfers.add(ft);
                 }
             }
+        }
+    }
 
-            // we need to set destPutURL to null
-            destPutURL = null;
+    /**
+     * Applies the cache updates recorded while resolving a stage-in, and adds the stage-in transfer
+     * nodes for the job.
+     *
+     * @param stageIn the resolved stage-in for the job
+     */
+    private void applyStageIn(StageIn stageIn) {
+        for (Runnable update : stageIn.mUpdates) {
+            update.run();
         }
 
         // call addTransferNode
-        if (!localFileTransfers.isEmpty() || !remoteFileTransfers.isEmpty()) {
-            mTXRefiner.addStageInXFERNodes(job, localFileTransfers, remoteFileTransfers);
+        if (!stageIn.mLocalFileTransfers.isEmpty() || !stageIn.mRemoteFileTransfers.isEmpty()) {
+            mTXRefiner.addStageInXFERNodes(
+                    stageIn.mJob, stageIn.mLocalFileTransfers, stageIn.mRemoteFileTransfers);
+        }
+    }
+
+    /**
+     * Returns a copy of a replica location, with copies of the replica catalog entries.
+     *
+     * @param rl the replica location
+     * @return the copy
+     */
+    private ReplicaLocation copyOf(ReplicaLocation rl) {
+        List<ReplicaCatalogEntry> rces = new LinkedList();
+        for (ReplicaCatalogEntry rce : rl.getPFNList()) {
+            rces.add((ReplicaCatalogEntry) rce.clone());
+        }
+        return new ReplicaLocation(rl.getLFN(), rces, false);
+    }
+
+    /**
+     * Waits for the resolution of a stage-in by the resolver pool.
+     *
+     * @param resolution the future for the resolution
+     * @return the resolved stage-in
+     */
+    private StageIn waitFor(Future<StageIn> resolution) {
+        try {
+            return resolution.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Unable to resolve the stage-in transfers", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resolving the stage-in transfers", e);
+        }
+    }
+
+    /**
+     * Performs an update to the refiner or the caches. The update is recorded to be applied later
+     * in order if the stage-in transfers are being resolved concurrently, else applied right away.
+     *
+     * @param update the update
+     */
+    private void perform(Runnable update) {
+        if (mPendingUpdates == null) {
+            update.run();
+        } else {
+            mPendingUpdates.add(update);
         }
     }
 
@@ -1901,7 +2135,7 @@ public class TransferEngine extends Engine {
      */
     private void trackInPlannerCache(String lfn, ReplicaCatalogEntry rce, OPERATION type) {
 
-        mPlannerCache.insert(lfn, rce, type);
+        perform(plannerCacheInsert(lfn, rce, type));
     }
 
     /**
@@ -1914,7 +2148,7 @@ public class TransferEngine extends Engine {
      */
     private void trackInPlannerCache(String lfn, String pfn, String site, OPERATION type) {
 
-        mPlannerCache.insert(lfn, pfn, site, type);
+        perform(plannerCacheInsert(lfn, pfn, site, type));
     }
 
     /**
@@ -1926,7 +2160,58 @@ public class TransferEngine extends Engine {
      */
     private void trackInWorkflowCache(String lfn, String pfn, String site) {
 
-        mWorkflowCache.insert(lfn, pfn, site);
+        perform(workflowCacheInsert(lfn, pfn, site));
+    }
+
+    /**
+     * Returns an update that inserts an entry into the planner cache.
+     *
+     * @param lfn the logical name of the file.
+     * @param rce replica catalog entry
+     * @param type the type of url
+     * @return the update
+     */
+    private Runnable plannerCacheInsert(
+            final String lfn, final ReplicaCatalogEntry rce, final OPERATION type) {
+        return new Runnable() {
+            public void run() {
+                mPlannerCache.insert(lfn, rce, type);
+            }
+        };
+    }
+
+    /**
+     * Returns an update that inserts an entry into the planner cache.
+     *
+     * @param lfn the logical name of the file.
+     * @param pfn the pfn
+     * @param site the site handle
+     * @param type the type of url
+     * @return the update
+     */
+    private Runnable plannerCacheInsert(
+            final String lfn, final String pfn, final String site, final OPERATION type) {
+        return new Runnable() {
+            public void run() {
+                mPlannerCache.insert(lfn, pfn, site, type);
+            }
+        };
+    }
+
+    /**
+     * Returns an update that inserts an entry into the workflow cache.
+     *
+     * @param lfn the logical name of the file.
+     * @param pfn the pfn
+     * @param site the site handle
+     * @return the update
+     */
+    private Runnable workflowCacheInsert(final String lfn, final String pfn, final String site) {
+        return new Runnable() {
+            public void run() {
+                mWorkflowCache.insert(lfn, pfn, site);
+            }
+        };
     }
 
     /**
@@ -2239,4 +2524,57 @@ public class TransferEngine extends Engine {
 
         return OutputMapperFactory.loadInstance(dag, b);
     }
+
+    /** The stage-in for a job, that is resolved into the stage-in transfers. */
+    private static class StageIn {
+
+        /** The job. */
+        private final Job mJob;
+
+        /** The files to be staged in. */
+        private final List<StageInFile> mFiles;
+
+        /** The transfers that run on the local site. */
+        private final Collection<FileTransfer> mLocalFileTransfers;
+
+        /** The transfers that run on the remote site. */
+        private final Collection<FileTransfer> mRemoteFileTransfers;
+
+        /** The updates to the planner and workflow caches. */
+        private final List<Runnable> mUpdates;
+
+        public StageIn(Job job) {
+            mJob = job;
+            mFiles = new LinkedList<StageInFile>();
+            mLocalFileTransfers = new LinkedList<FileTransfer>();
+            mRemoteFileTransfers = new LinkedList<FileTransfer>();
+            mUpdates = new LinkedList<Runnable>();
+        }
+    }
+
+    /** A file to be staged in, with the URL's on the staging site as determined by the mapper. */
+    private static class StageInFile {
+
+        /** The file. */
+        private final PegasusFile mFile;
+
+        /** The put URL on the staging site. */
+        private String mDestPutURL;
+
+        /** The get URL on the staging site. */
+        private String mDestGetURL;
+
+        /** The absolute path to the directory on the staging site. */
+        private String mDestAbsPath;
+
+        /** The locations of the file returned by the Replica Mechanism. */
+        private ReplicaLocation mLocations;
+
+        /** The locations to select the replicas from. */
+        private ReplicaLocation mCandidates;
+
+        public StageInFile(PegasusFile file) {
+            mFile = file;
+        }
+    }
 }
@@ -22,10 +22,10 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Dagman;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -267,54 +267,55 @@ public abstract class AbstractCleanupStrategy implements CleanupStrategy {
     }
 
     /**
-     * A BFS implementation to set depth value (roots have depth 1) and also to populate mResMap
-     * ,mResMapLeaves,mResMapRoots which contains all the jobs that are assigned to a particular
-     * resource
+     * Sets the depth of each job to the length of the longest path to it from a root (roots have
+     * depth 1), and populates mResMap which contains all the jobs that are assigned to a particular
+     * resource. The jobs are visited in topological order, with a job being visited once all its
+     * parents have been visited, so that each job and edge is looked at only once.
      *
      * @param roots List of GraphNode objects that are roots
      */
     private void setDepth_ResMap(List roots) {
-        LinkedList que = new LinkedList();
-        que.addAll(roots);
-
-        for (int i = 0; i < que.size(); i++) {
-            ((GraphNode) que.get(i)).setDepth(1);
+        // the number of parents of a job that are yet to be visited
+        Map<GraphNode, Integer> unvisitedParents = new HashMap<GraphNode, Integer>();
+        ArrayDeque<GraphNode> queue = new ArrayDeque<GraphNode>();
+        for (Iterator it = roots.iterator(); it.hasNext(); ) {
+            GraphNode root = (GraphNode) it.next();
+            root.setDepth(1);
+            queue.addLast(root);
         }
+        mMaxDepth = roots.isEmpty() ? 0 : 1;
 
-        while (que.size() >= 1) {
-            GraphNode curGN = (GraphNode) que.removeFirst();
-
-            // debug
-            /*
-            System.out.print(curGN.getDepth() +" "+((Job)curGN.getContent()).getSiteHandle()+" ");
-            if( curGN.getChildren() == null )
-                System.out.print("0");
-            else
-                System.out.print( curGN.getChildren().size() );
-             */
-            // populate mResMap ,mResMapLeaves,mResMapRoots
-            Job si = (Job) curGN.getContent();
+        while (!queue.isEmpty()) {
+            GraphNode curGN = queue.removeFirst();
 
+            // populate mResMap
+            Job si = (Job) curGN.getContent();
             String site = getSiteForCleanup(si);
-            if (!mResMap.containsKey(site)) {
-                mResMap.put(site, new HashSet());
+            Set jobs = (Set) mResMap.get(site);
+            if (jobs == null) {
+                jobs = new HashSet();
+                mResMap.put(site, jobs);
             }
-            ((Set) mResMap.get(site)).add(curGN);
+            jobs.add(curGN);
 
-            // System.out.println( "  site count="+((Set)mResMap.get( si.getSiteHandle() )).size()
-            // );
             // now set the depth
-            for (Iterator it = curGN.getChildren().iterator(); it.hasNext(); ) {
-                GraphNode child = (GraphNode) it.next();
-                if (!(child.getDepth() == -1 || child.getDepth() < curGN.getDepth() + 1)) {
-                    continue;
+            int depth = curGN.getDepth() + 1;
+            for (GraphNode child : curGN.getChildren()) {
+                Integer count = unvisitedParents.get(child);
+                if (count == null) {
+                    // first parent of the child to be visited
+                    count = child.getParents().size();
+                    child.setDepth(depth);
+                } else if (child.getDepth() < depth) {
+                    child.setDepth(depth);
                 }
-
-                child.setDepth(curGN.getDepth() + 1);
-                if (child.getDepth() > mMaxDepth) {
-                    mMaxDepth = child.getDepth();
+                if (count == 1) {
+                    unvisitedParents.remove(child);
+                    mMaxDepth = Math.max(mMaxDepth, child.getDepth());
+                    queue.addLast(child);
+                } else {
+                    unvisitedParents.put(child, count - 1);
                 }
-                que.addLast(child);
             }
         }
     }
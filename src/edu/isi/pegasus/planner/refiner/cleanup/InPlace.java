@@ -21,6 +21,7 @@ import edu.isi.pegasus.planner.namespace.Condor;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNodeContent;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -75,19 +76,22 @@ public class InPlace extends AbstractCleanupStrategy {
      */
     private void addCleanUpJobs(String site, Set leaves, Graph workflow) {
 
-        mLogger.log(site + " " + leaves.size(), LogManager.DEBUG_MESSAGE_LEVEL);
+        mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "{} {}", site, leaves.size());
         HashMap cleanedBy = new HashMap();
 
         // the below in case we get rid of the primitive java 1.4
         // PriorityQueue<GraphNode> pQ=new
         // PriorityQueue<GraphNode>(resMap.get(site).size(),GraphNode_ORDER);
-        StringBuffer message = new StringBuffer();
-        message.append("Leaf  jobs scheduled at site ").append(site).append(" are ");
-        for (Iterator it = leaves.iterator(); it.hasNext(); ) {
-            message.append(((GraphNode) it.next()).getID());
-            message.append(",");
+        StringBuffer message;
+        if (mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL)) {
+            message = new StringBuffer();
+            message.append("Leaf  jobs scheduled at site ").append(site).append(" are ");
+            for (Iterator it = leaves.iterator(); it.hasNext(); ) {
+                message.append(((GraphNode) it.next()).getID());
+                message.append(",");
+            }
+            mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
         }
-        mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
 
         // its a Set of GraphNode's
         Set[] pQA = new Set[mMaxDepth + 1];
@@ -107,10 +111,11 @@ public class InPlace extends AbstractCleanupStrategy {
         for (int curP = mMaxDepth; curP >= 0; curP--) {
             List<GraphNode> cleanupNodesPerLevel = new LinkedList();
 
-            // process all elements in the current priority
-            while (pQA[curP].size() >= 1) {
-                GraphNode curGN = (GraphNode) pQA[curP].iterator().next();
-                pQA[curP].remove(curGN);
+            // process all elements in the current priority. iterate through
+            // the level once, as repeatedly removing the first element of
+            // a hash set is quadratic in the size of the level
+            for (Iterator levelIt = pQA[curP].iterator(); levelIt.hasNext(); ) {
+                GraphNode curGN = (GraphNode) levelIt.next();
                 Job curGN_SI = (Job) curGN.getContent();
 
                 if (!typeNeedsCleanUp(curGN)) {
@@ -122,7 +127,8 @@ public class InPlace extends AbstractCleanupStrategy {
                 Set<PegasusFile> fileSet = new HashSet(curGN_SI.getInputFiles());
 
                 // PM-698 traverse through the input files and unset those
-                // that have cleanup flag set to false
+                // that have cleanup flag set to false. files in mDoNotClean
+                // are removed also
                 for (Iterator<PegasusFile> it = fileSet.iterator(); it.hasNext(); ) {
                     PegasusFile pf = it.next();
                     if (!pf.canBeCleanedup()) {
@@ -130,11 +136,12 @@ public class InPlace extends AbstractCleanupStrategy {
                         // itself
                         it.remove();
                         mLogger.log(
-                                "File "
-                                        + pf.getLFN()
-                                        + " will not be cleaned up for job "
-                                        + curGN_SI.getID(),
-                                LogManager.DEBUG_MESSAGE_LEVEL);
+                                LogManager.DEBUG_MESSAGE_LEVEL,
+                                "File {} will not be cleaned up for job {}",
+                                pf.getLFN(),
+                                curGN_SI.getID());
+                    } else if (this.mDoNotClean.contains(pf)) {
+                        it.remove();
                     }
                 }
 
@@ -142,23 +149,15 @@ public class InPlace extends AbstractCleanupStrategy {
                     PegasusFile pf = (PegasusFile) obj;
                     if (pf.canBeCleanedup()) {
                         // PM-739 only add if the cleanup flag is set to true
-                        fileSet.add(pf);
+                        if (!this.mDoNotClean.contains(pf)) {
+                            fileSet.add(pf);
+                        }
                     } else {
                         mLogger.log(
-                                "File "
-                                        + pf.getLFN()
-                                        + " will not be cleaned up for job "
-                                        + curGN_SI.getID(),
-                                LogManager.DEBUG_MESSAGE_LEVEL);
-                    }
-                }
-
-                // remove the files in fileSet that are in this.mDoNotClean
-                Set fileSet2 = new HashSet(fileSet);
-                for (Iterator itfs2 = fileSet2.iterator(); itfs2.hasNext(); ) {
-                    Object _dum_pf = itfs2.next();
-                    if (this.mDoNotClean.contains(_dum_pf)) {
-                        fileSet.remove(_dum_pf);
+                                LogManager.DEBUG_MESSAGE_LEVEL,
+                                "File {} will not be cleaned up for job {}",
+                                pf.getLFN(),
+                                curGN_SI.getID());
                     }
                 }
 
@@ -191,11 +190,10 @@ public class InPlace extends AbstractCleanupStrategy {
                 //                if( nuGN.getParents().size() >= 1 ){
                 if (!cleanupFiles.isEmpty()) {
                     mLogger.log(
-                            "Adding stub cleanup node with ID "
-                                    + nuGN.getID()
-                                    + " to the level list for level "
-                                    + curP,
-                            LogManager.DEBUG_MESSAGE_LEVEL);
+                            LogManager.DEBUG_MESSAGE_LEVEL,
+                            "Adding stub cleanup node with ID {} to the level list for level {}",
+                            nuGN.getID(),
+                            curP);
 
                     // PM-663, we need to store the compute job
                     // with the cleanupNode but do with a copy
@@ -203,7 +201,8 @@ public class InPlace extends AbstractCleanupStrategy {
                     nuGN.setContent(cleanupContent);
                     cleanupNodesPerLevel.add(nuGN);
                 }
-            } // end of while loop .  //process all elements in the current priority
+            } // end of for loop .  //process all elements in the current priority
+            pQA[curP] = null;
 
             // we now have a list of cleanup jobs for this level
             List<GraphNode> clusteredCleanupGraphNodes =
@@ -234,13 +233,11 @@ public class InPlace extends AbstractCleanupStrategy {
                                         + cleanupNode.getID());
                     }
                     computeJob = (Job) node.getContent();
-                    message = new StringBuffer();
-                    message.append("For cleanup job ")
-                            .append(cleanupNode.getID())
-                            .append(" the associated compute job is ")
-                            .append(computeJob.getID());
-
-                    mLogger.log(message.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log(
+                            LogManager.DEBUG_MESSAGE_LEVEL,
+                            "For cleanup job {} the associated compute job is {}",
+                            cleanupNode.getID(),
+                            computeJob.getID());
 
                 } else {
                     computeJob = curGN_SI;
@@ -266,16 +263,19 @@ public class InPlace extends AbstractCleanupStrategy {
         mLogger.log(
                 "For site: " + site + " number of files cleaned up - " + cleanedBy.keySet().size(),
                 LogManager.INFO_MESSAGE_LEVEL);
-        mLogger.log("CLEANUP LIST", LogManager.DEBUG_MESSAGE_LEVEL);
-        for (Iterator it = cleanedBy.keySet().iterator(); it.hasNext(); ) {
-            String lfn = (String) it.next();
-            GraphNode cl_GN = (GraphNode) cleanedBy.get(lfn);
-            Job cl_si = (Job) cl_GN.getContent();
-            // Arun please use a StringBuffer first
-            // Karan March 13, 2007
-            mLogger.log(
-                    "file:" + lfn + "  site:" + cl_si.getSiteHandle() + " " + cl_GN.getID(),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
+        if (mLogger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL)) {
+            mLogger.log("CLEANUP LIST", LogManager.DEBUG_MESSAGE_LEVEL);
+            for (Iterator it = cleanedBy.keySet().iterator(); it.hasNext(); ) {
+                String lfn = (String) it.next();
+                GraphNode cl_GN = (GraphNode) cleanedBy.get(lfn);
+                Job cl_si = (Job) cl_GN.getContent();
+                mLogger.log(
+                        LogManager.DEBUG_MESSAGE_LEVEL,
+                        "file:{}  site:{} {}",
+                        lfn,
+                        cl_si.getSiteHandle(),
+                        cl_GN.getID());
+            }
         }
 
         // reduce dependencies. for each cleanup job X, look at the parents of
@@ -284,8 +284,9 @@ public class InPlace extends AbstractCleanupStrategy {
         // be removed.
         for (GraphNode cleanupNode : wfCleanupNodes) {
             mLogger.log(
-                    "Reducing edges for the cleanup node " + cleanupNode.getID(),
-                    mLogger.DEBUG_MESSAGE_LEVEL);
+                    LogManager.DEBUG_MESSAGE_LEVEL,
+                    "Reducing edges for the cleanup node {}",
+                    cleanupNode.getID());
             reduceDependency(cleanupNode);
         }
     }
@@ -299,6 +300,10 @@ public class InPlace extends AbstractCleanupStrategy {
      * If a path exists, then the edge from Z to node can be removed.
      * </pre>
      *
+     * The search for the paths is bounded by the depth of the shallowest parent, as a parent cannot
+     * be reached from a job at a lesser depth. This keeps the search local to the levels spanned by
+     * the parents, instead of traversing all the ancestors of each node.
+     *
      * @param node the nodes whose parent edges need to be reduced.
      */
     protected void reduceDependency(GraphNode node) {
@@ -311,30 +316,34 @@ public class InPlace extends AbstractCleanupStrategy {
         // If a path exists, then the edge from Z to cleanup job can
         // be removed.
         Collection<GraphNode> parents = node.getParents();
+        int minDepth = Integer.MAX_VALUE;
+        for (GraphNode parent : parents) {
+            minDepth = Math.min(minDepth, parent.getDepth());
+        }
         List redundant = new LinkedList();
         HashSet visit = new HashSet();
-        for (Iterator itp = node.getParents().iterator(); itp.hasNext(); ) {
-            LinkedList mque = new LinkedList();
-            mque.add(itp.next());
+        ArrayDeque<GraphNode> mque = new ArrayDeque<GraphNode>();
+        for (Iterator itp = parents.iterator(); itp.hasNext(); ) {
+            mque.add((GraphNode) itp.next());
 
-            while (mque.size() > 0) {
-                GraphNode popGN = (GraphNode) mque.removeFirst();
+            while (!mque.isEmpty()) {
+                GraphNode popGN = mque.removeFirst();
 
-                if (visit.contains(popGN)) {
+                if (!visit.add(popGN)) {
                     continue;
                 }
 
-                visit.add(popGN);
-
-                for (Iterator itp_pop = popGN.getParents().iterator(); itp_pop.hasNext(); ) {
-                    GraphNode pop_pGN = (GraphNode) itp_pop.next();
+                for (GraphNode pop_pGN : popGN.getParents()) {
+                    if (pop_pGN.getDepth() < minDepth) {
+                        // neither the job nor its ancestors can be a parent
+                        continue;
+                    }
                     // check if its redundant ..if so add it to redundant list
                     if (parents.contains(pop_pGN)) {
                         redundant.add(pop_pGN);
                     } else {
                         // mque.addAll( pop_pGN.getParents() );
-                        for (Iterator itgp = pop_pGN.getParents().iterator(); itgp.hasNext(); ) {
-                            GraphNode gpGN = (GraphNode) itgp.next();
+                        for (GraphNode gpGN : pop_pGN.getParents()) {
                             if (!visit.contains(gpGN)) {
                                 mque.add(gpGN);
                             }
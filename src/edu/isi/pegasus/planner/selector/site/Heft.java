@@ -17,6 +17,7 @@ import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerMetrics;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.selector.site.heft.Algorithm;
 import edu.isi.pegasus.planner.selector.site.heft.HeftBag;
@@ -89,9 +90,15 @@ public class Heft extends Abstract {
         mHeftImpl.schedule(workflow, sites, label);
 
         // get the makespan of the workflow
+        long makespan = mHeftImpl.getMakespan();
+        long time = mHeftImpl.getSchedulingTime();
         mLogger.log(
-                "Makespan of scheduled workflow is " + mHeftImpl.getMakespan(),
+                "Makespan of scheduled workflow is " + makespan + " . Scheduled in " + time + " ms",
                 LogManager.DEBUG_MESSAGE_LEVEL);
+        PlannerMetrics metrics = (mBag == null) ? null : mBag.getPlannerMetrics();
+        if (metrics != null) {
+            metrics.addHEFTSchedule(makespan, time / 1000.0);
+        }
 
         // iterate through the jobs and just set the site handle
         // accordingly
@@ -15,6 +15,8 @@ package edu.isi.pegasus.planner.selector.site;
 
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.DefaultStreamGobblerCallback;
+import edu.isi.pegasus.common.util.StreamGobbler;
 import edu.isi.pegasus.planner.catalog.site.classes.Directory;
 import edu.isi.pegasus.planner.catalog.site.classes.FileServer;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
@@ -23,17 +25,23 @@ import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PegasusFile;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is the class that implements a call-out to a site selector which is an application or
@@ -146,9 +154,30 @@ import java.util.StringTokenizer;
  *  <td>unused at present, usage not clear .</td></tr>
  * </table>
  *
+ * <p>If the property <code>pegasus.selector.site.batch</code> is set to true, the external
+ * application is instead invoked once for the whole workflow, with the single commandline argument
+ * <code>--batch</code>. The jobs are written to its stdin using the same key-value pairs, grouped
+ * in records that are each terminated by a line <code>end</code>. The first record describes the
+ * workflow and the candidate sites, and is made up of the keys <code>version</code>, <code>mode
+ * </code> (set to <code>batch</code>), <code>resource.id</code>, <code>wf.*</code> and <code>vo.*
+ * </code>. It is followed by one record per job, made up of the key <code>job</code>, a number
+ * identifying the job in the session, and the keys <code>transformation</code>, <code>derivation
+ * </code>, <code>job.level</code>, <code>job.id</code> and <code>input.lfn</code>. After every
+ * <code>pegasus.selector.site.batch.size</code> jobs (all the jobs, if set to 0), a line <code>
+ * flush</code> is written, and the site selector is expected to write one line to stdout for each
+ * job received since the last flush, in any order, of the form
+ *
+ * <pre>
+ *   SOLUTION:42:mysite:my.job.mgr/jobmanager-batch
+ *   SOLUTION:43:siteY
+ * </pre>
+ *
+ * where the first field is the number identifying the job. The stdin of the site selector is closed
+ * once all the jobs have been mapped, after which it is expected to exit.
+ *
  * <p>In order to detect malfunctioning site selectors, a timeout is attached with each site
  * selector, see property <code>pegasus.selector.site.timeout</code>. By default, a site selector is
- * given up upon after 60 s.
+ * given up upon after 60 s. In the batch mode, the timeout applies to each solution awaited.
  *
  * <p>
  *
@@ -185,6 +214,18 @@ public class NonJavaCallout extends AbstractPerJob {
     /** The version number associated with this API of non java callout site selection. */
     public static final String VERSION = "2.0";
 
+    /** The commandline argument with which the site selector is invoked in the batch mode. */
+    public static final String BATCH_ARGUMENT = "--batch";
+
+    /** The line that terminates a record written to the site selector in the batch mode. */
+    public static final String END_OF_RECORD = "end";
+
+    /**
+     * The line written to the site selector in the batch mode, after which it is expected to return
+     * the solutions for the jobs written since the last such line.
+     */
+    public static final String END_OF_BATCH = "flush";
+
     // tristate variables for keeping the temporary files generated
 
     /** The state denoting never to keep the temporary files. */
@@ -221,6 +262,27 @@ public class NonJavaCallout extends AbstractPerJob {
     /** The abstract DAG. */
     private ADag mAbstractDag;
 
+    /** A boolean indicating whether the site selector is invoked once for the whole workflow. */
+    private boolean mBatch;
+
+    /** The number of jobs passed to the site selector before waiting for their solutions. */
+    private int mBatchSize;
+
+    /** The site selector process in the batch mode. */
+    private Process mProcess;
+
+    /** The writer to the stdin of the site selector in the batch mode. */
+    private PrintWriter mSelectorInput;
+
+    /** The lines read from the stdout of the site selector in the batch mode. */
+    private BlockingQueue<String> mSelectorOutput;
+
+    /** The jobs written to the site selector that are awaiting a solution, indexed by number. */
+    private Map<Integer, Job> mPending;
+
+    /** The number of jobs written to the site selector in the batch mode. */
+    private int mJobCount;
+
     /** The default constructor. */
     public NonJavaCallout() {
         super();
@@ -245,6 +307,9 @@ public class NonJavaCallout extends AbstractPerJob {
         this.loadEnvironmentVariables();
         // get the value from the properties file.
         mKeepTMP = getKeepTMPValue(mProps.getSiteSelectorKeep());
+
+        mBatch = mProps.batchSiteSelectorCallouts();
+        mBatchSize = mProps.getSiteSelectorBatchSize();
     }
 
     /**
@@ -257,8 +322,20 @@ public class NonJavaCallout extends AbstractPerJob {
      */
     public void mapWorkflow(ADag workflow, List sites) {
         mAbstractDag = workflow;
-        // PM-747 no need for conversion as ADag now implements Graph interface
-        super.mapWorkflow(workflow, sites);
+        if (!mBatch) {
+            // PM-747 no need for conversion as ADag now implements Graph interface
+            super.mapWorkflow(workflow, sites);
+            return;
+        }
+
+        // the jobs are passed by mapJob to a single site selector process
+        this.startBatchCallout(sites);
+        try {
+            super.mapWorkflow(workflow, sites);
+            this.flushBatch();
+        } finally {
+            this.stopBatchCallout();
+        }
     }
 
     /**
@@ -285,6 +362,11 @@ public class NonJavaCallout extends AbstractPerJob {
      * @see edu.isi.pegasus.planner.classes.Job
      */
     public void mapJob(Job job, List sites) {
+        if (mBatch) {
+            this.addToBatch(job);
+            return;
+        }
+
         Runtime rt = Runtime.getRuntime();
 
         // prepare the temporary file that needs to be sent to the
@@ -446,72 +528,10 @@ public class NonJavaCallout extends AbstractPerJob {
             // write out the version of the api
             pw.println("version=" + this.VERSION);
 
-            // fw.write("\nvds_job_name=" + job.jobName);
-            pw.println("transformation=" + job.getCompleteTCName());
-            pw.println("derivation=" + job.getCompleteDVName());
-
-            // write out the job id and level as gotten from dax
-            pw.println("job.level=" + job.level);
-            pw.println("job.id=" + job.logicalId);
-
-            // at present Pegasus always asks to schedule compute jobs
-            // User should be able to specify through vdl or the pool config file.
-            // Karan Feb 10 3:00 PM PDT
-            // pw.println("vds_scheduler_preference=regular");
-
-            // write down the list of exec Pools and their corresponding grid
-            // ftp servers
-            if (pools.isEmpty()) {
-                // just write out saying illustrating no exec pool or grid ftp
-                // server passed to site selector. Upto the selector to do what
-                // it wants.
-
-                // FIXME: We need to define this part of the interface. If there
-                // are not site candidates, should it ever reach this part of
-                // the code? If now, insert assertion and abort here. If yes, we
-                // need to define this case! But just silently write the below
-                // will not site will with our set of site selectors.
-                pw.println("resource.id=NONE NONE");
-            } else {
-                String st, pool;
-                for (Iterator i = pools.iterator(); i.hasNext(); ) {
-                    pool = (String) i.next();
-                    st = "resource.id=" + pool + " ";
-
-                    SiteCatalogEntry site = mSiteStore.lookup(pool);
-                    /*
-                    for( Iterator it = site.getHeadNodeFS().getScratch().getSharedDirectory().getFileServersIterator(); it.hasNext();){
-                        pw.println(st + ( (FileServer) it.next()).getURLPrefix() );
-                    }*/
-                    Directory d = site.getDirectory(Directory.TYPE.shared_scratch);
-                    if (d != null) {
-                        for (FileServer.OPERATION op : FileServer.OPERATION.values()) {
-                            for (Iterator it = d.getFileServersIterator(op); it.hasNext(); ) {
-                                pw.println(st + ((FileServer) it.next()).getURLPrefix());
-                            }
-                        }
-                    }
-                } // for
-            }
-
-            // write the input files
-            for (Iterator i = job.inputFiles.iterator(); i.hasNext(); )
-                pw.println("input.lfn=" + ((PegasusFile) i.next()).getLFN());
-
-            // write workflow related metadata
-            if (this.mAbstractDag != null) {
-                pw.println("wf.name=" + mAbstractDag.getLabel());
-                pw.println("wf.index=" + mAbstractDag.getIndex());
-                // pw.println("workflow.time=" + mAbstractDag.dagInfo.time??);
-                // FIXME: Try File.lastModified() on the DAX file
-
-                // should actually be picked up from the properties file
-                pw.println("wf.manager=" + "dagman");
-            }
-
-            // uninitialized values
-            pw.println("vo.name=" + "NONE");
-            pw.println("vo.group=" + "NONE");
+            this.writeJob(pw, job);
+            this.writeResources(pw, pools);
+            this.writeInputFiles(pw, job);
+            this.writeWorkflow(pw);
 
             // done
             pw.flush();
@@ -534,6 +554,298 @@ public class NonJavaCallout extends AbstractPerJob {
         return f;
     }
 
+    /**
+     * Writes the keys describing a job, except for its input files.
+     *
+     * @param pw the writer to write to.
+     * @param job the job whose site of execution needs to be determined.
+     */
+    private void writeJob(PrintWriter pw, Job job) {
+        // fw.write("\nvds_job_name=" + job.jobName);
+        pw.println("transformation=" + job.getCompleteTCName());
+        pw.println("derivation=" + job.getCompleteDVName());
+
+        // write out the job id and level as gotten from dax
+        pw.println("job.level=" + job.level);
+        pw.println("job.id=" + job.logicalId);
+
+        // at present Pegasus always asks to schedule compute jobs
+        // User should be able to specify through vdl or the pool config file.
+        // Karan Feb 10 3:00 PM PDT
+        // pw.println("vds_scheduler_preference=regular");
+    }
+
+    /**
+     * Writes the site candidates and their corresponding grid ftp servers.
+     *
+     * @param pw the writer to write to.
+     * @param pools is a list of site candidates. The items of the list are <code>String</code>
+     *     objects.
+     */
+    private void writeResources(PrintWriter pw, List pools) {
+        // write down the list of exec Pools and their corresponding grid
+        // ftp servers
+        if (pools.isEmpty()) {
+            // just write out saying illustrating no exec pool or grid ftp
+            // server passed to site selector. Upto the selector to do what
+            // it wants.
+
+            // FIXME: We need to define this part of the interface. If there
+            // are not site candidates, should it ever reach this part of
+            // the code? If now, insert assertion and abort here. If yes, we
+            // need to define this case! But just silently write the below
+            // will not site will with our set of site selectors.
+            pw.println("resource.id=NONE NONE");
+        } else {
+            String st, pool;
+            for (Iterator i = pools.iterator(); i.hasNext(); ) {
+                pool = (String) i.next();
+                st = "resource.id=" + pool + " ";
+
+                SiteCatalogEntry site = mSiteStore.lookup(pool);
+                /*
+                for( Iterator it = site.getHeadNodeFS().getScratch().getSharedDirectory().getFileServersIterator(); it.hasNext();){
+                    pw.println(st + ( (FileServer) it.next()).getURLPrefix() );
+                }*/
+                Directory d = site.getDirectory(Directory.TYPE.shared_scratch);
+                if (d != null) {
+                    for (FileServer.OPERATION op : FileServer.OPERATION.values()) {
+                        for (Iterator it = d.getFileServersIterator(op); it.hasNext(); ) {
+                            pw.println(st + ((FileServer) it.next()).getURLPrefix());
+                        }
+                    }
+                }
+            } // for
+        }
+    }
+
+    /**
+     * Writes the input files of a job.
+     *
+     * @param pw the writer to write to.
+     * @param job the job whose site of execution needs to be determined.
+     */
+    private void writeInputFiles(PrintWriter pw, Job job) {
+        // write the input files
+        for (Iterator i = job.inputFiles.iterator(); i.hasNext(); )
+            pw.println("input.lfn=" + ((PegasusFile) i.next()).getLFN());
+    }
+
+    /**
+     * Writes the workflow related metadata.
+     *
+     * @param pw the writer to write to.
+     */
+    private void writeWorkflow(PrintWriter pw) {
+        // write workflow related metadata
+        if (this.mAbstractDag != null) {
+            pw.println("wf.name=" + mAbstractDag.getLabel());
+            pw.println("wf.index=" + mAbstractDag.getIndex());
+            // pw.println("workflow.time=" + mAbstractDag.dagInfo.time??);
+            // FIXME: Try File.lastModified() on the DAX file
+
+            // should actually be picked up from the properties file
+            pw.println("wf.manager=" + "dagman");
+        }
+
+        // uninitialized values
+        pw.println("vo.name=" + "NONE");
+        pw.println("vo.group=" + "NONE");
+    }
+
+    /**
+     * Starts the site selector in the batch mode, and writes the record describing the workflow and
+     * the candidate sites to it. If the site selector cannot be started, the jobs are left
+     * unmapped.
+     *
+     * @param sites the list of <code>String</code> objects representing the execution sites that
+     *     can be used.
+     */
+    private void startBatchCallout(List sites) {
+        String command = this.mSiteSelectorPath;
+        if (command == null) {
+            throw new RuntimeException(
+                    "Site Selector: Please set the path to the external site "
+                            + "selector in the properties! ");
+        }
+        command += " " + BATCH_ARGUMENT;
+
+        mPending = new LinkedHashMap<Integer, Job>();
+        mSelectorOutput = new LinkedBlockingQueue<String>();
+        mJobCount = 0;
+        try {
+            mLogger.log("Calling out to site selector " + command, LogManager.DEBUG_MESSAGE_LEVEL);
+            mProcess = Runtime.getRuntime().exec(command, this.getEnvArrFromMap());
+        } catch (IOException e) {
+            mLogger.log("[Site selector] " + e.getMessage(), LogManager.ERROR_MESSAGE_LEVEL);
+            return;
+        }
+
+        // the stdout and stderr are read in their own threads, so that
+        // the site selector never blocks on writing its solutions while
+        // we are writing jobs to it
+        new SolutionReader(mProcess.getInputStream(), mSelectorOutput).start();
+        StreamGobbler ebr =
+                new StreamGobbler(
+                        mProcess.getErrorStream(),
+                        new DefaultStreamGobblerCallback(LogManager.ERROR_MESSAGE_LEVEL));
+        ebr.setDaemon(true);
+        ebr.start();
+
+        mSelectorInput =
+                new PrintWriter(
+                        new BufferedWriter(new OutputStreamWriter(mProcess.getOutputStream())));
+        mSelectorInput.println("version=" + NonJavaCallout.VERSION);
+        mSelectorInput.println("mode=batch");
+        this.writeResources(mSelectorInput, sites);
+        this.writeWorkflow(mSelectorInput);
+        mSelectorInput.println(END_OF_RECORD);
+    }
+
+    /**
+     * Writes a job to the site selector in the batch mode, and waits for the solutions once a batch
+     * of jobs has been written.
+     *
+     * @param job the job to be mapped.
+     */
+    private void addToBatch(Job job) {
+        if (mSelectorInput == null) {
+            // the site selector is not running
+            job.setSiteHandle(null);
+            return;
+        }
+
+        int id = ++mJobCount;
+        mSelectorInput.println("job=" + id);
+        this.writeJob(mSelectorInput, job);
+        this.writeInputFiles(mSelectorInput, job);
+        mSelectorInput.println(END_OF_RECORD);
+        mPending.put(id, job);
+
+        if (mBatchSize > 0 && mPending.size() >= mBatchSize) {
+            this.flushBatch();
+        }
+    }
+
+    /**
+     * Asks the site selector for the solutions for the jobs written since the last batch, and waits
+     * for them. If the site selector times out or exits before returning all the solutions, it is
+     * stopped and the remaining jobs are left unmapped.
+     */
+    private void flushBatch() {
+        if (mSelectorInput == null || mPending.isEmpty()) {
+            return;
+        }
+        mSelectorInput.println(END_OF_BATCH);
+        mSelectorInput.flush();
+        if (mSelectorInput.checkError()) {
+            this.failBatch("Unable to write to the site selector");
+            return;
+        }
+
+        mLogger.log(
+                LogManager.DEBUG_MESSAGE_LEVEL,
+                "Waiting for site selector to map {} jobs",
+                mPending.size());
+        try {
+            while (!mPending.isEmpty()) {
+                String s =
+                        (mTimeout <= 0)
+                                ? mSelectorOutput.take()
+                                : mSelectorOutput.poll(mTimeout, TimeUnit.SECONDS);
+                if (s == null) {
+                    this.failBatch("External Site Selector timeout after " + mTimeout + " seconds");
+                    return;
+                }
+                if (s == SolutionReader.EOF) {
+                    this.failBatch("Site Selector exited before mapping all the jobs");
+                    return;
+                }
+                mLogger.log(LogManager.DEBUG_MESSAGE_LEVEL, "[Site Selector stdout] {}", s);
+                this.parseBatchStdOut(s);
+            }
+        } catch (InterruptedException e) {
+            this.failBatch("Waiting for site selector to map jobs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Extracts the chosen site for a job from a line written by the site selector in the batch
+     * mode. Lines that are not solutions are ignored.
+     *
+     * @param s is the stdout received from the site selector.
+     */
+    private void parseBatchStdOut(String s) {
+        s = s.trim();
+        if (!s.startsWith(SOLUTION_PREFIX)) {
+            return;
+        }
+        int start = SOLUTION_PREFIX.length();
+        int end = s.indexOf(':', start);
+        Job job = null;
+        try {
+            job = mPending.remove(Integer.parseInt(s.substring(start, end < 0 ? s.length() : end)));
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        if (job == null || end < 0) {
+            mLogger.log(
+                    "Site Selector returned a solution for an unknown job " + s,
+                    LogManager.WARNING_MESSAGE_LEVEL);
+            return;
+        }
+        if (!parseStdOut(job, SOLUTION_PREFIX + s.substring(end + 1))) {
+            job.setSiteHandle(null);
+        }
+    }
+
+    /**
+     * Stops the site selector in the batch mode, leaving the jobs awaiting a solution unmapped.
+     *
+     * @param message the error message to log.
+     */
+    private void failBatch(String message) {
+        mLogger.log(
+                message + ". Unable to map " + mPending.size() + " jobs",
+                LogManager.ERROR_MESSAGE_LEVEL);
+        for (Job job : mPending.values()) {
+            job.setSiteHandle(null);
+        }
+        mPending.clear();
+        mSelectorInput.close();
+        mSelectorInput = null;
+        mProcess.destroy();
+    }
+
+    /** Closes the stdin of the site selector in the batch mode, and waits for it to exit. */
+    private void stopBatchCallout() {
+        if (mSelectorInput == null) {
+            return;
+        }
+        mSelectorInput.close();
+        mSelectorInput = null;
+        try {
+            if (mTimeout > 0 && !mProcess.waitFor(mTimeout, TimeUnit.SECONDS)) {
+                mLogger.log(
+                        "Site Selector did not exit after " + mTimeout + " seconds",
+                        LogManager.WARNING_MESSAGE_LEVEL);
+                mProcess.destroy();
+                return;
+            }
+            int status = mProcess.waitFor();
+            if (status != 0) {
+                // let the user know site selector exited with non zero
+                mLogger.log(
+                        "Site Selector exited with non zero exit " + "status " + status,
+                        LogManager.DEBUG_MESSAGE_LEVEL);
+            }
+        } catch (InterruptedException e) {
+            mLogger.log(
+                    "Waiting for site selector to exit: " + e.getMessage(),
+                    LogManager.ERROR_MESSAGE_LEVEL);
+        }
+    }
+
     /**
      * Extracts the chosen site from the site selector's answer. Parses the <i>stdout</i> sent by
      * the selector, to see, if the execution pool and the jobmanager were sent or not.
@@ -695,4 +1007,48 @@ public class NonJavaCallout extends AbstractPerJob {
         nj.mapJob(s, pools);
         System.out.println("Exec Pool return by site selector is " + s.getSiteHandle());
     }
+
+    /**
+     * Reads the lines written by the site selector to its stdout in the batch mode, and queues them
+     * for the planner. Unlike the StreamGobbler, it does not pause between lines, as the site
+     * selector writes one line per job.
+     */
+    private static class SolutionReader extends Thread {
+
+        /** The marker queued once the stdout of the site selector is closed. */
+        private static final String EOF = new String("EOF");
+
+        /** The stdout of the site selector. */
+        private final InputStream mStream;
+
+        /** The queue to which the lines read are added. */
+        private final BlockingQueue<String> mQueue;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param is the stdout of the site selector.
+         * @param queue the queue to which the lines read are added.
+         */
+        public SolutionReader(InputStream is, BlockingQueue<String> queue) {
+            mStream = is;
+            mQueue = queue;
+            this.setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                BufferedReader br = new BufferedReader(new InputStreamReader(mStream));
+                String line;
+                while ((line = br.readLine()) != null) {
+                    mQueue.add(line);
+                }
+                br.close();
+            } catch (IOException e) {
+                // the site selector was stopped
+            } finally {
+                mQueue.add(EOF);
+            }
+        }
+    }
 }
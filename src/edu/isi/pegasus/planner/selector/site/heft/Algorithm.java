@@ -29,13 +29,13 @@ import edu.isi.pegasus.planner.namespace.Pegasus;
 import edu.isi.pegasus.planner.partitioner.graph.Bag;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * The HEFT based site selector. The runtime for the job in seconds is picked from the pegasus
@@ -127,6 +127,21 @@ public class Algorithm {
     /** The handle to the transformation catalog. */
     private TransformationCatalog mTCHandle;
 
+    /** The makespan of the workflow last scheduled. */
+    private long mMakespan;
+
+    /** The time in milliseconds taken to schedule the workflow last scheduled. */
+    private long mSchedulingTime;
+
+    /** The runnable sites for each transformation, for the workflow being scheduled. */
+    private Map<String, List> mSiteListCache;
+
+    /** The transformation catalog entry to use for a transformation on a site. */
+    private Map<String, TransformationCatalogEntry> mTCEntryCache;
+
+    /** The runtime specified in the profiles for a transformation catalog entry. */
+    private Map<TransformationCatalogEntry, Integer> mRuntimeCache;
+
     /**
      * The default constructor.
      *
@@ -161,13 +176,24 @@ public class Algorithm {
     /**
      * Schedules the workflow according to the HEFT algorithm.
      *
+     * <p>The jobs are scheduled in the ascending order of their downward ranks. Since the downward
+     * rank of a job is always greater than that of its parents, the job with the lowest rank
+     * amongst the jobs whose parents have been scheduled is the next job in the sorted order. The
+     * ready jobs are kept in a priority queue, and the downward rank of a job is computed when it
+     * becomes ready.
+     *
      * @param workflow the workflow that has to be scheduled.
      * @param sites the list of candidate sites where the workflow can potentially execute.
      * @param label the label of the workflow
      */
     public void schedule(ADag workflow, List sites, String label) {
+        long start = System.currentTimeMillis();
         mLabel = label;
         mWorkflow = workflow;
+        mMakespan = 0;
+        mSiteListCache = new HashMap<String, List>();
+        mTCEntryCache = new HashMap<String, TransformationCatalogEntry>();
+        mRuntimeCache = new IdentityHashMap<TransformationCatalogEntry, Integer>();
         populateSiteMap(sites);
 
         // compute weighted execution times for each job
@@ -193,114 +219,142 @@ public class Algorithm {
         bag = new HeftBag();
         // downward rank for the root is set to 0
         bag.add(HeftBag.DOWNWARD_RANK, new Float(0));
+        // the start time and end time for the dummy root is 0
+        bag.add(HeftBag.ACTUAL_START_TIME, new Long(0));
+        bag.add(HeftBag.ACTUAL_FINISH_TIME, new Long(0));
         dummyRoot.setBag(bag);
 
-        // do a breadth first traversal and compute the downward ranks
-        Iterator it = workflow.iterator();
-        dummyRoot = (GraphNode) it.next(); // we have the dummy root
-        Float drank;
-        // the dummy root has a downward rank of 0
-        dummyRoot.getBag().add(HeftBag.DOWNWARD_RANK, new Float(0));
-        // stores the nodes in sorted ascending order
-        List sortedNodes = new LinkedList();
-        while (it.hasNext()) {
-            GraphNode node = (GraphNode) it.next();
-            drank = new Float(computeDownwardRank(node));
-            bag = node.getBag();
-            bag.add(HeftBag.DOWNWARD_RANK, drank);
-            sortedNodes.add(node);
-            mLogger.log(
-                    "Downward rank for node " + node.getID() + " is " + drank,
-                    LogManager.DEBUG_MESSAGE_LEVEL);
+        // the number of unscheduled parents for each job
+        Map<GraphNode, Integer> unscheduledParents = new HashMap<GraphNode, Integer>();
+        PriorityQueue<GraphNode> ready =
+                new PriorityQueue<GraphNode>(
+                        Math.max(1, dummyRoot.getChildren().size()), new HeftGraphNodeComparator());
+        for (GraphNode root : dummyRoot.getChildren()) {
+            addReadyNode(ready, root);
         }
 
-        // sort the node
-        Collections.sort(sortedNodes, new HeftGraphNodeComparator());
-
-        // the start time and end time for the dummy root is 0
-        dummyRoot.getBag().add(HeftBag.ACTUAL_START_TIME, new Long(0));
-        dummyRoot.getBag().add(HeftBag.ACTUAL_FINISH_TIME, new Long(0));
-
-        // schedule out the sorted order of the nodes
-        for (it = sortedNodes.iterator(); it.hasNext(); ) {
-            GraphNode current = (GraphNode) it.next();
-            bag = current.getBag();
-            mLogger.log("Scheduling node " + current.getID(), LogManager.DEBUG_MESSAGE_LEVEL);
-
-            // figure out the sites where a job can run
-            Job job = (Job) current.getContent();
-            List runnableSites =
-                    mTCMapper.getSiteList(
-                            job.getTXNamespace(), job.getTXName(), job.getTXVersion(), mSites);
-
-            // for each runnable site get the estimated finish time
-            // and schedule job on site that minimizes the finish time
-            String site;
-            long est_result[];
-            long result[] = new long[2];
-            result[1] = this.MAXIMUM_FINISH_TIME;
-            for (Iterator rit = runnableSites.iterator(); rit.hasNext(); ) {
-                site = (String) rit.next();
-                est_result = calculateEstimatedStartAndFinishTime(current, site);
-
-                // if existing EFT is greater than the returned EFT
-                // set existing EFT to the returned EFT
-                if (result[1] > est_result[1]) {
-                    result[0] = est_result[0];
-                    result[1] = est_result[1];
-                    // tentatively schedule the job for that site
-                    bag.add(HeftBag.SCHEDULED_SITE, site);
+        // schedule the ready nodes in the order of their downward ranks
+        while (!ready.isEmpty()) {
+            GraphNode current = ready.poll();
+            scheduleNode(current);
+
+            for (GraphNode child : current.getChildren()) {
+                Integer count = unscheduledParents.get(child);
+                int remaining = ((count == null) ? child.getParents().size() : count) - 1;
+                if (remaining == 0) {
+                    unscheduledParents.remove(child);
+                    addReadyNode(ready, child);
+                } else {
+                    unscheduledParents.put(child, remaining);
                 }
             }
-
-            // update the site selected with the job
-            bag.add(HeftBag.ACTUAL_START_TIME, new Long(result[0]));
-            bag.add(HeftBag.ACTUAL_FINISH_TIME, new Long(result[1]));
-            site = (String) bag.get(HeftBag.SCHEDULED_SITE);
-            scheduleJob(site, result[0], result[1]);
-
-            // log the information
-            StringBuffer sb = new StringBuffer();
-            sb.append("Scheduled job ")
-                    .append(current.getID())
-                    .append(" to site ")
-                    .append(site)
-                    .append(" with from  ")
-                    .append(result[0])
-                    .append(" till ")
-                    .append(result[1]);
-
-            mLogger.log(sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
-        } // end of going through all the sorted nodes
+        } // end of going through all the ready nodes
 
         // remove the dummy root
         mWorkflow.remove(dummyRoot.getID());
+
+        mSchedulingTime = System.currentTimeMillis() - start;
+        mLogger.log(
+                "Scheduled workflow "
+                        + label
+                        + " with makespan "
+                        + mMakespan
+                        + " in "
+                        + mSchedulingTime
+                        + " ms",
+                LogManager.DEBUG_MESSAGE_LEVEL);
+    }
+
+    /**
+     * Computes the downward rank of a node whose parents have all been scheduled, and adds it to
+     * the queue of nodes ready to be scheduled.
+     *
+     * @param ready the queue of nodes ready to be scheduled
+     * @param node the node
+     */
+    private void addReadyNode(PriorityQueue<GraphNode> ready, GraphNode node) {
+        Float drank = new Float(computeDownwardRank(node));
+        node.getBag().add(HeftBag.DOWNWARD_RANK, drank);
+        mLogger.log(
+                "Downward rank for node " + node.getID() + " is " + drank,
+                LogManager.DEBUG_MESSAGE_LEVEL);
+        ready.add(node);
+    }
+
+    /**
+     * Schedules a node on the site that minimizes its estimated finish time.
+     *
+     * @param current the node whose parents have all been scheduled
+     */
+    private void scheduleNode(GraphNode current) {
+        Bag bag = current.getBag();
+        mLogger.log("Scheduling node " + current.getID(), LogManager.DEBUG_MESSAGE_LEVEL);
+
+        // figure out the sites where a job can run
+        Job job = (Job) current.getContent();
+        List runnableSites = getRunnableSites(job);
+
+        // for each runnable site get the estimated finish time
+        // and schedule job on site that minimizes the finish time
+        String site;
+        long est_result[];
+        long result[] = new long[2];
+        result[1] = this.MAXIMUM_FINISH_TIME;
+        for (Iterator rit = runnableSites.iterator(); rit.hasNext(); ) {
+            site = (String) rit.next();
+            est_result = calculateEstimatedStartAndFinishTime(current, site);
+
+            // if existing EFT is greater than the returned EFT
+            // set existing EFT to the returned EFT
+            if (result[1] > est_result[1]) {
+                result[0] = est_result[0];
+                result[1] = est_result[1];
+                // tentatively schedule the job for that site
+                bag.add(HeftBag.SCHEDULED_SITE, site);
+            }
+        }
+
+        // update the site selected with the job
+        bag.add(HeftBag.ACTUAL_START_TIME, new Long(result[0]));
+        bag.add(HeftBag.ACTUAL_FINISH_TIME, new Long(result[1]));
+        site = (String) bag.get(HeftBag.SCHEDULED_SITE);
+        scheduleJob(site, result[0], result[1]);
+        mMakespan = Math.max(mMakespan, result[1]);
+
+        // log the information
+        StringBuffer sb = new StringBuffer();
+        sb.append("Scheduled job ")
+                .append(current.getID())
+                .append(" to site ")
+                .append(site)
+                .append(" with from  ")
+                .append(result[0])
+                .append(" till ")
+                .append(result[1]);
+
+        mLogger.log(sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL);
     }
 
     /**
      * Returns the makespan of the scheduled workflow. It is maximum of the actual finish times for
-     * the leaves of the scheduled workflow.
+     * the jobs of the scheduled workflow, and is tracked while scheduling.
      *
      * @return long the makespan of the workflow.
      */
     public long getMakespan() {
-        long result = -1;
-
-        // compute the maximum of the actual end times of leaves
-        for (Iterator it = mWorkflow.getLeaves().iterator(); it.hasNext(); ) {
-            GraphNode node = (GraphNode) it.next();
-            Long endTime = (Long) node.getBag().get(HeftBag.ACTUAL_FINISH_TIME);
-            // sanity check
-            if (endTime == null) {
-                throw new RuntimeException(
-                        "Looks like the leave node is unscheduled " + node.getID());
-            }
-            if (endTime > result) {
-                result = endTime;
-            }
+        if (mWorkflow == null) {
+            throw new RuntimeException("Looks like the workflow is unscheduled");
         }
+        return mMakespan;
+    }
 
-        return result;
+    /**
+     * Returns the time taken to schedule the workflow last scheduled.
+     *
+     * @return the scheduling time in milliseconds.
+     */
+    public long getSchedulingTime() {
+        return mSchedulingTime;
     }
 
     /**
@@ -348,12 +402,7 @@ public class Algorithm {
         //       }
 
         // the estimated finish time is est + compute time on site
-        List entries =
-                mTCMapper.getTCList(
-                        job.getTXNamespace(), job.getTXName(), job.getTXVersion(), site);
-        // pick the first one for time being
-        TransformationCatalogEntry entry = (TransformationCatalogEntry) entries.get(0);
-        result[1] = result[0] + getExpectedRuntime(job, entry);
+        result[1] = result[0] + getExpectedRuntime(job, getTCEntry(job, site));
 
         // est now stores the estimated finish time
         return result;
@@ -397,9 +446,7 @@ public class Algorithm {
      */
     protected float calculateAverageComputeTime(Job job) {
         // get all the TC entries for the sites where a job can run
-        List runnableSites =
-                mTCMapper.getSiteList(
-                        job.getTXNamespace(), job.getTXName(), job.getTXVersion(), mSites);
+        List runnableSites = getRunnableSites(job);
 
         // sanity check
         if (runnableSites == null || runnableSites.isEmpty()) {
@@ -417,13 +464,7 @@ public class Algorithm {
         for (Iterator it = runnableSites.iterator(); it.hasNext(); ) {
             site = (String) it.next();
             int nodes = getFreeNodesForSite(site);
-            List entries =
-                    mTCMapper.getTCList(
-                            job.getTXNamespace(), job.getTXName(), job.getTXVersion(), site);
-
-            // pick the first one for time being
-            TransformationCatalogEntry entry = (TransformationCatalogEntry) entries.get(0);
-            int jobRuntime = getExpectedRuntime(job, entry);
+            int jobRuntime = getExpectedRuntime(job, getTCEntry(job, site));
             total_nodes += nodes;
             total += jobRuntime * nodes;
         }
@@ -468,9 +509,46 @@ public class Algorithm {
         }
 
         // else try and get the runtime from the profiles
+        // the value is memoized per entry as it is looked up for each
+        // job mapping to the entry, for each candidate site
+        Integer tcRuntime = (mRuntimeCache == null) ? null : mRuntimeCache.get(entry);
+        if (tcRuntime == null) {
+            tcRuntime = getExpectedRuntimeFromProfiles(entry);
+            if (mRuntimeCache != null) {
+                mRuntimeCache.put(entry, tcRuntime);
+            }
+        }
+        result = tcRuntime;
+
+        // if no information . try from profiles in dax
+        if (result < 1) {
+            String value = job.vdsNS.getStringValue(this.RUNTIME_PROFILE_KEY);
+            if (value != null) {
+                result = Integer.parseInt(value);
+            }
+        }
+
+        // sanity check for time being
+        if (result < 1) {
+            throw new RuntimeException("Invalid or no runtime specified for job " + job.getID());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the expected runtime specified by the runtime profile associated with a
+     * transformation catalog entry.
+     *
+     * @param entry the <code>TransformationCatalogEntry</code> object.
+     * @return the runtime in seconds, else -1 if not specified.
+     */
+    private int getExpectedRuntimeFromProfiles(TransformationCatalogEntry entry) {
+        int result = -1;
         List profiles = entry.getProfiles(Profile.VDS);
         mLogger.log(
-                "Fetching runtime information from profiles for job " + job.getName(),
+                "Fetching runtime information from profiles for transformation "
+                        + entry.getLogicalTransformation(),
                 LogManager.DEBUG_MESSAGE_LEVEL);
         mLogger.log("Profiles are " + profiles, LogManager.DEBUG_MESSAGE_LEVEL);
         if (profiles != null) {
@@ -483,27 +561,51 @@ public class Algorithm {
                 }
             }
         }
-        // if no information . try from profiles in dax
-        if (result < 1) {
-            mLogger.log(
-                    "Fetching runtime information from profiles for job " + job.getName(),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
-
-            for (Iterator it = job.vdsNS.getProfileKeyIterator(); it.hasNext(); ) {
-                String key = (String) it.next();
+        return result;
+    }
 
-                if (key.equals(this.RUNTIME_PROFILE_KEY)) {
-                    result = Integer.parseInt(job.vdsNS.getStringValue(key));
-                    break;
-                }
+    /**
+     * Returns the sites amongst the candidate sites where a job can run. The list is memoized per
+     * transformation.
+     *
+     * @param job the job in the workflow.
+     * @return the list of sites.
+     */
+    protected List getRunnableSites(Job job) {
+        String key = job.getCompleteTCName();
+        List result = (mSiteListCache == null) ? null : mSiteListCache.get(key);
+        if (result == null) {
+            result =
+                    mTCMapper.getSiteList(
+                            job.getTXNamespace(), job.getTXName(), job.getTXVersion(), mSites);
+            if (mSiteListCache != null && result != null) {
+                mSiteListCache.put(key, result);
             }
         }
+        return result;
+    }
 
-        // sanity check for time being
-        if (result < 1) {
-            throw new RuntimeException("Invalid or no runtime specified for job " + job.getID());
+    /**
+     * Returns the transformation catalog entry to use for a job on a site. The entry is memoized
+     * per transformation and site.
+     *
+     * @param job the job in the workflow.
+     * @param site the site
+     * @return the first entry for the job's transformation on the site
+     */
+    protected TransformationCatalogEntry getTCEntry(Job job, String site) {
+        String key = job.getCompleteTCName() + "@" + site;
+        TransformationCatalogEntry result = (mTCEntryCache == null) ? null : mTCEntryCache.get(key);
+        if (result == null) {
+            List entries =
+                    mTCMapper.getTCList(
+                            job.getTXNamespace(), job.getTXName(), job.getTXVersion(), site);
+            // pick the first one for time being
+            result = (TransformationCatalogEntry) entries.get(0);
+            if (mTCEntryCache != null) {
+                mTCEntryCache.put(key, result);
+            }
         }
-
         return result;
     }
 
@@ -687,7 +789,9 @@ class HeftGraphNodeComparator implements Comparator {
             float drank1 = ((Float) g1.getBag().get(HeftBag.DOWNWARD_RANK)); // .floatValue();
             float drank2 = ((Float) g2.getBag().get(HeftBag.DOWNWARD_RANK)); // .floatValue();
 
-            return (int) (drank1 - drank2);
+            int result = Float.compare(drank1, drank2);
+            // ties are broken on the id, to make the schedule deterministic
+            return (result == 0) ? g1.getID().compareTo(g2.getID()) : result;
         } else {
             throw new ClassCastException("object is not a GraphNode");
         }
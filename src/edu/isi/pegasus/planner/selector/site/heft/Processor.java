@@ -44,6 +44,15 @@ public class Processor {
         return (mEndTime > start) ? mEndTime : start;
     }
 
+    /**
+     * Returns the end time of the job last scheduled on the processor.
+     *
+     * @return long
+     */
+    public long getEndTime() {
+        return mEndTime;
+    }
+
     /**
      * Schedules a job on to a processor.
      *
@@ -13,14 +13,17 @@
  */
 package edu.isi.pegasus.planner.selector.site.heft;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 
 /**
  * A data class that models a site as a collection of processors. The number of processors can only
  * be specified in the constructor.
  *
+ * <p>The processors in use are kept in a heap ordered by the time at which they become available,
+ * so that the earliest available processor is found in constant time and updated in logarithmic
+ * time, irrespective of the number of processors on the site.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
@@ -29,11 +32,14 @@ public class Site {
     /** The number of processors making up a site. */
     private int mNumProcessors;
 
-    /** A list of processors making up the site. */
-    private List mProcessors;
+    /** The processors in use, ordered by the time at which they become available. */
+    private PriorityQueue<Processor> mProcessors;
 
-    /** The index to the processor that is to be used for scheduling a job. */
-    private int mCurrentProcessorIndex;
+    /**
+     * The processor that is to be used for scheduling a job. It is either the head of the heap, or
+     * a processor that is as yet unused.
+     */
+    private Processor mCurrentProcessor;
 
     /** The logical name assigned to the site. */
     private String mName;
@@ -44,10 +50,7 @@ public class Site {
      * @param name the name to be assigned to the site.
      */
     public Site(String name) {
-        mName = name;
-        mNumProcessors = 0;
-        mProcessors = new LinkedList();
-        mCurrentProcessorIndex = 0;
+        this(name, 0);
     }
 
     /**
@@ -59,8 +62,15 @@ public class Site {
     public Site(String name, int num) {
         mName = name;
         mNumProcessors = num;
-        mCurrentProcessorIndex = -1;
-        mProcessors = new LinkedList();
+        mCurrentProcessor = null;
+        mProcessors =
+                new PriorityQueue<Processor>(
+                        Math.max(1, Math.min(num, 1024)),
+                        new Comparator<Processor>() {
+                            public int compare(Processor p1, Processor p2) {
+                                return Long.compare(p1.getEndTime(), p2.getEndTime());
+                            }
+                        });
     }
 
     /**
@@ -71,37 +81,26 @@ public class Site {
      * @return long
      */
     public long getAvailableTime(long start) {
-        int num = 0;
-
-        // each processor is checked for start of list
-        long result = Long.MAX_VALUE;
-        long current;
-        ListIterator it;
-        for (it = mProcessors.listIterator(); it.hasNext(); num++) {
-            Processor p = (Processor) it.next();
-            current = p.getAvailableTime(start);
-            if (current < result) {
-                // tentatively schedule a job on the processor
-                result = current;
-                mCurrentProcessorIndex = num;
-            }
+        Processor earliest = mProcessors.peek();
+        if (earliest != null && earliest.getAvailableTime(start) == start) {
+            // a processor in use is already free by start
+            mCurrentProcessor = earliest;
+            return start;
         }
 
-        if (result > start && num < mNumProcessors) {
+        if (mProcessors.size() < mNumProcessors) {
             // tentatively schedule a job to an unused processor as yet.
-            result = start;
-            mCurrentProcessorIndex = num++;
-            // if using a normal iterator
-            // could use addLast() method
-            it.add(new Processor());
+            mCurrentProcessor = new Processor();
+            return start;
         }
 
         // sanity check
-        if (result == Long.MAX_VALUE) {
+        if (earliest == null) {
             throw new RuntimeException("Unable to scheduled to site");
         }
 
-        return result;
+        mCurrentProcessor = earliest;
+        return earliest.getAvailableTime(start);
     }
 
     /**
@@ -112,16 +111,19 @@ public class Site {
      */
     public void scheduleJob(long start, long end) {
         // sanity check
-        if (mCurrentProcessorIndex == -1) {
+        if (mCurrentProcessor == null) {
             throw new RuntimeException(
                     "Invalid State. The job needs to be tentatively scheduled first!");
         }
 
-        Processor p = (Processor) mProcessors.get(mCurrentProcessorIndex);
-        p.scheduleJob(start, end);
+        if (mProcessors.peek() == mCurrentProcessor) {
+            mProcessors.poll();
+        }
+        mCurrentProcessor.scheduleJob(start, end);
+        mProcessors.offer(mCurrentProcessor);
 
-        // reset the index
-        mCurrentProcessorIndex = -1;
+        // reset the processor
+        mCurrentProcessor = null;
     }
 
     /**
@@ -63,8 +63,15 @@ public class SQLite extends DatabaseDriver {
      */
     public boolean connect(String url, Properties info, Set tables)
             throws SQLException, ClassNotFoundException {
-        // load JDBC driver class into memory
-        return this.connect("SQLite.JDBCDriver", url, info, tables);
+        // load JDBC driver class into memory, preferring the one that
+        // ships with Pegasus over the older SQLite Java wrapper
+        String driver = "org.sqlite.JDBC";
+        try {
+            Class.forName(driver);
+        } catch (ClassNotFoundException e) {
+            driver = "SQLite.JDBCDriver";
+        }
+        return this.connect(driver, url, info, tables);
     }
 
     /**
@@ -53,6 +53,9 @@ public class AnnotationSchema extends DatabaseSchema implements Advanced, Annota
     /** Name of the four parameter tables in human readable format. */
     protected static final String[] c_lfn_names = {"ANNO_LFN_I", "ANNO_LFN_O", "ANNO_LFN_B"};
 
+    /** Number of LFNs bound to each bulk select of LFNs. */
+    protected static final int c_bulk_size = 64;
+
     /** Communication between saveDefinition and deleteDefinition in update mode. */
     protected boolean m_deferDeleteCommit;
 
@@ -158,6 +161,18 @@ public class AnnotationSchema extends DatabaseSchema implements Advanced, Annota
                 "SELECT distinct did FROM anno_lfn_i WHERE name=? UNION "
                         + "SELECT distinct did FROM anno_lfn_o WHERE name=? UNION "
                         + "SELECT distinct did FROM anno_lfn_b WHERE name=?");
+
+        // bulk selects bind a fixed number of LFNs, padded with the last one
+        StringBuffer marks = new StringBuffer(2 * c_bulk_size);
+        for (int ii = 0; ii < c_bulk_size; ++ii) marks.append(ii == 0 ? "?" : ",?");
+        for (int ii = 0; ii < c_lfn_names.length; ++ii)
+            this.m_dbdriver.insertPreparedStatement(
+                    "stmt.select.bulk." + ii,
+                    "SELECT distinct did,name FROM "
+                            + c_lfn_names[ii].toLowerCase()
+                            + " WHERE name IN ("
+                            + marks
+                            + ")");
         this.m_dbdriver.insertPreparedStatement(
                 "stmt.select.lfn_*.name",
                 "SELECT distinct name FROM anno_lfn_i WHERE did=? UNION "
@@ -1142,6 +1157,68 @@ public class AnnotationSchema extends DatabaseSchema implements Advanced, Annota
         return result;
     }
 
+    /**
+     * Searches the database for all derivations that contain any of a number of LFNs. The LFNs are
+     * selected in chunks of a fixed size, each with a single query. The linkage is an additional
+     * constraint. This method does not allow jokers.
+     *
+     * @param lfns the collection of LFN names
+     * @param link the linkage type of the LFNs
+     * @return a map from each LFN name to the list of Definition items that match the criterion.
+     * @see #searchFilename( String, int )
+     */
+    public java.util.Map searchFilenames(java.util.Collection lfns, int link) throws SQLException {
+        if (lfns == null) throw new NullPointerException("You must query for filenames");
+
+        java.util.Map result = new HashMap();
+        if (link == -1) {
+            // wildcard match, one LFN at a time
+            for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+                String lfn = (String) i.next();
+                result.put(lfn, searchFilename(lfn, link));
+            }
+            return result;
+        }
+        // ordering MUST MATCH classes.LFN constants!
+        if (!LFN.isInRange(link) || link == LFN.NONE)
+            throw new RuntimeException("The linkage " + link + " is not permitted");
+
+        for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+            String lfn = (String) i.next();
+            if (lfn == null) throw new NullPointerException("You must query for a filename");
+            result.put(lfn, new ArrayList());
+        }
+        if (result.isEmpty()) return result;
+
+        Logging.instance().log("xaction", 1, "START bulk select " + result.size() + " LFNs");
+        String[] names = (String[]) result.keySet().toArray(new String[0]);
+        for (int ii = 0; ii < names.length; ii += c_bulk_size) {
+            PreparedStatement ps =
+                    this.m_dbdriver.getPreparedStatement("stmt.select.bulk." + (link - 1));
+            for (int jj = 0; jj < c_bulk_size; ++jj)
+                ps.setString(jj + 1, names[Math.min(ii + jj, names.length - 1)]);
+            Logging.instance()
+                    .log(
+                            "chunk",
+                            2,
+                            "SELECT distinct did,name FROM "
+                                    + c_lfn_names[link - 1]
+                                    + " WHERE name IN ("
+                                    + names[ii]
+                                    + ",...)");
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                Definition d = loadDefinition(rs.getLong(1));
+                if (d != null) ((java.util.List) result.get(rs.getString(2))).add(d);
+            }
+            rs.close();
+        }
+
+        Logging.instance().log("xaction", 1, "FINAL bulk select LFNs");
+        return result;
+    }
+
     //
     //
     // annotations
@@ -36,6 +36,9 @@ public class ChunkSchema extends DatabaseSchema implements VDC {
     /** Name of the four parameter tables in human readable format. */
     protected static final String[] c_lfn_names = {"VDC_NLFN", "VDC_ILFN", "VDC_OLFN", "VDC_BLFN"};
 
+    /** Number of LFNs bound to each bulk select of LFNs. */
+    protected static final int c_bulk_size = 64;
+
     /** Communication between saveDefinition and deleteDefinition in update mode. */
     protected boolean m_deferDeleteCommit;
 
@@ -123,6 +126,18 @@ public class ChunkSchema extends DatabaseSchema implements VDC {
                         + "SELECT distinct did FROM vdc_olfn WHERE name=? UNION "
                         + "SELECT distinct did FROM vdc_blfn WHERE name=?");
 
+        // bulk selects bind a fixed number of LFNs, padded with the last one
+        StringBuffer marks = new StringBuffer(2 * c_bulk_size);
+        for (int ii = 0; ii < c_bulk_size; ++ii) marks.append(ii == 0 ? "?" : ",?");
+        for (int ii = 0; ii < c_lfn_names.length; ++ii)
+            this.m_dbdriver.insertPreparedStatement(
+                    "stmt.select.bulk." + ii,
+                    "SELECT distinct id,name FROM "
+                            + c_lfn_names[ii].toLowerCase()
+                            + " WHERE name IN ("
+                            + marks
+                            + ")");
+
         this.m_dbdriver.insertPreparedStatement(
                 "stmt.select.xml.id", "SELECT xml FROM vdc_definition WHERE id=?");
         this.m_dbdriver.insertPreparedStatement(
@@ -816,4 +831,63 @@ public class ChunkSchema extends DatabaseSchema implements VDC {
         Logging.instance().log("xaction", 1, "FINAL select LFNs");
         return result;
     }
+
+    /**
+     * Searches the database for all derivations that contain any of a number of LFNs. The LFNs are
+     * selected in chunks of a fixed size, each with a single query. The linkage is an additional
+     * constraint. This method does not allow jokers.
+     *
+     * @param lfns the collection of LFN names
+     * @param link the linkage type of the LFNs
+     * @return a map from each LFN name to the list of Definition items that match the criterion.
+     * @see #searchFilename( String, int )
+     */
+    public java.util.Map searchFilenames(java.util.Collection lfns, int link) throws SQLException {
+        if (lfns == null) throw new NullPointerException("You must query for filenames");
+
+        java.util.Map result = new HashMap();
+        if (link == -1) {
+            // wildcard match, one LFN at a time
+            for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+                String lfn = (String) i.next();
+                result.put(lfn, searchFilename(lfn, link));
+            }
+            return result;
+        }
+        if (!LFN.isInRange(link)) throw new RuntimeException("Unknown linkage value " + link);
+
+        for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+            String lfn = (String) i.next();
+            if (lfn == null) throw new NullPointerException("You must query for a filename");
+            result.put(lfn, new ArrayList());
+        }
+        if (result.isEmpty()) return result;
+
+        Logging.instance().log("xaction", 1, "START bulk select " + result.size() + " LFNs");
+        String[] names = (String[]) result.keySet().toArray(new String[0]);
+        for (int ii = 0; ii < names.length; ii += c_bulk_size) {
+            PreparedStatement ps = this.m_dbdriver.getPreparedStatement("stmt.select.bulk." + link);
+            for (int jj = 0; jj < c_bulk_size; ++jj)
+                ps.setString(jj + 1, names[Math.min(ii + jj, names.length - 1)]);
+            Logging.instance()
+                    .log(
+                            "chunk",
+                            2,
+                            "SELECT distinct id,name FROM "
+                                    + c_lfn_names[link]
+                                    + " WHERE name IN ("
+                                    + names[ii]
+                                    + ",...)");
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                Definition d = loadDefinition(rs.getLong(1));
+                if (d != null) ((java.util.List) result.get(rs.getString(2))).add(d);
+            }
+            rs.close();
+        }
+
+        Logging.instance().log("xaction", 1, "FINAL bulk select LFNs");
+        return result;
+    }
 }
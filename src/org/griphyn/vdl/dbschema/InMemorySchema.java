@@ -349,6 +349,87 @@ public class InMemorySchema extends DatabaseSchema implements VDC {
         return result;
     }
 
+    /**
+     * Searches the database for all derivations that contain any of a number of LFNs. Unlike
+     * repeated calls to {@link #searchFilename( String, int )}, the derivations are traversed only
+     * once for all LFNs. The linkage is an additional constraint. This method does not allow
+     * jokers.
+     *
+     * @param lfns the collection of LFN names
+     * @param link the linkage type of the LFNs
+     * @return a map from each LFN name to the list of Definition items that match the criterion.
+     * @see #searchFilename( String, int )
+     */
+    public java.util.Map searchFilenames(java.util.Collection lfns, int link) throws SQLException {
+        java.util.Map result = new HashMap();
+        for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+            result.put(i.next(), new ArrayList());
+        }
+        if (result.isEmpty()) return result;
+
+        // check all Derivations once (this may be time consuming!)
+        Set found = new HashSet();
+        for (Iterator i = this.m_memory.iterateDefinition(); i.hasNext(); ) {
+            Definition d = (Definition) i.next();
+            if (d instanceof Derivation) {
+                Derivation dv = (Derivation) d;
+                found.clear();
+                for (Iterator j = dv.iteratePass(); j.hasNext(); ) {
+                    Value actual = ((Pass) j.next()).getValue();
+                    switch (actual.getContainerType()) {
+                        case Value.SCALAR:
+                            scalarCollectLfns((Scalar) actual, link, result, found);
+                            break;
+                        case Value.LIST:
+                            // a LIST is a list of SCALARs
+                            org.griphyn.vdl.classes.List list =
+                                    (org.griphyn.vdl.classes.List) actual;
+                            for (Iterator f = list.iterateScalar(); f.hasNext(); ) {
+                                scalarCollectLfns((Scalar) f.next(), link, result, found);
+                            }
+                            break;
+                        default:
+                            // this should not happen
+                            Logging.instance()
+                                    .log(
+                                            "default",
+                                            0,
+                                            "WARNING: An actual argument \""
+                                                    + actual.toString()
+                                                    + "\" is neither SCALAR nor LIST");
+                            break;
+                    }
+                }
+
+                for (Iterator j = found.iterator(); j.hasNext(); ) {
+                    ((java.util.List) result.get(j.next())).add(dv);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * This helper function collects the logical filenames from a given Scalar instance that are
+     * keys of the result map of a bulk search.
+     *
+     * @param scalar is a Scalar instance to check
+     * @param link is the linkage type of the lfn. if -1, do not check the linkage type.
+     * @param lfns is the map whose keys are the logical filenames to check for
+     * @param found is the set to which the filenames found are added
+     */
+    protected void scalarCollectLfns(Scalar scalar, int link, java.util.Map lfns, Set found) {
+        for (Iterator e = scalar.iterateLeaf(); e.hasNext(); ) {
+            org.griphyn.vdl.classes.Leaf leaf = (org.griphyn.vdl.classes.Leaf) e.next();
+            if (leaf instanceof LFN) {
+                LFN local = (LFN) leaf;
+                if ((link == -1 || local.getLink() == link)
+                        && lfns.containsKey(local.getFilename())) found.add(local.getFilename());
+            }
+        }
+    }
+
     /**
      * This helper function checks, if a given Scalar instance contains the specified logical
      * filename as LFN instance anywhere in its sub-structures.
@@ -43,6 +43,23 @@ import org.griphyn.vdl.util.Logging;
  * @version $Revision$
  */
 public class InvocationSchema extends DatabaseSchema implements PTC {
+    /** Maps the sequences to the tables whose ids they generate. */
+    private static final String[][] c_sequences = {
+        {"invocation_id_seq", "ptc_invocation"},
+        {"rusage_id_seq", "ptc_rusage"},
+        {"stat_id_seq", "ptc_stat"},
+        {"uname_id_seq", "ptc_uname"}
+    };
+
+    /**
+     * The next ids to use during a bulk insert for backends without sequences, indexed by the
+     * sequence name.
+     */
+    private Map m_nextId;
+
+    /** The ids of the architectures known during bulk inserts, indexed by their descriptions. */
+    private Map m_unames;
+
     /**
      * Default constructor for the provenance tracking.
      *
@@ -97,6 +114,13 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
                 "stmt.select.uname.sk",
                 "SELECT id FROM ptc_uname WHERE archmode=? AND sysname=? "
                         + "AND os_release=? AND machine=?");
+        for (int i = 0; i < c_sequences.length; ++i)
+            this.m_dbdriver.insertPreparedStatement(
+                    "stmt.select.max." + c_sequences[i][0],
+                    "SELECT MAX(id) FROM " + c_sequences[i][1]);
+
+        this.m_nextId = new HashMap();
+        this.m_unames = new HashMap();
     }
 
     /**
@@ -246,56 +270,10 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
 
             // add ID explicitely from sequence to insertion
             Logging.instance().log("xaction", 1, "START save invocation");
+            long uname = saveArchitecture(ivr.getArchitecture());
+            long usage = saveUsage(ivr.getUsage());
             PreparedStatement ps = m_dbdriver.getPreparedStatement("stmt.save.ivr");
-            int i = 1;
-            longOrNull(ps, i++, id);
-
-            // current_user()
-            stringOrNull(ps, i++, System.getProperty("user.name"));
-
-            // now()
-            ps.setTimestamp(i++, toStamp(new java.util.Date()));
-
-            // wf_label, wf_time: not available at the moment...
-            if (ivr.getWorkflowLabel() == null) ps.setNull(i++, Types.VARCHAR);
-            else ps.setString(i++, ivr.getWorkflowLabel());
-
-            if (ivr.getWorkflowTimestamp() == null) ps.setNull(i++, Types.TIMESTAMP);
-            else ps.setTimestamp(i++, toStamp(ivr.getWorkflowTimestamp()));
-
-            // version
-            ps.setString(i++, ivr.getVersion());
-
-            // start, duration
-            ps.setTimestamp(i++, toStamp(ivr.getStart()));
-            ps.setDouble(i++, ivr.getDuration());
-
-            // TR
-            i = splitDefinition(ps, ivr.getTransformation(), i);
-
-            // DV: not available at the moment
-            i = splitDefinition(ps, ivr.getDerivation(), i);
-
-            // resource (site handle)
-            if (ivr.getResource() == null) ps.setNull(i++, Types.VARCHAR);
-            else ps.setString(i++, ivr.getResource());
-
-            // host
-            ps.setString(i++, ivr.getHostAddress().getHostAddress());
-
-            // [pug]id
-            ps.setInt(i++, ivr.getPID());
-            ps.setInt(i++, ivr.getUID());
-            ps.setInt(i++, ivr.getGID());
-
-            // cwd
-            stringOrNull(ps, i++, ivr.getWorkingDirectory().getValue());
-
-            // uname
-            ps.setLong(i++, saveArchitecture(ivr.getArchitecture()));
-
-            // save usage and remember id
-            ps.setLong(i++, saveUsage(ivr.getUsage()));
+            bindInvocation(ps, id, ivr, uname, usage);
 
             // save prepared values
             Logging.instance().log("chunk", 2, "INSERT INTO invocation");
@@ -322,32 +300,255 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
             m_dbdriver.commit();
             return true;
         } catch (SQLException e) {
-            // show complete exception chain
-            for (SQLException walk = e; walk != null; walk = walk.getNextException()) {
-                Logging.instance()
-                        .log(
-                                "app",
-                                0,
-                                walk.getSQLState()
-                                        + ": "
-                                        + walk.getErrorCode()
-                                        + ": "
-                                        + walk.getMessage().trim());
-
-                StackTraceElement[] ste = walk.getStackTrace();
-                for (int n = 0; n < 5 && n < ste.length; ++n) {
-                    Logging.instance().log("app", 0, ste[n].toString());
+            logExceptionChain(e);
+
+            Logging.instance().log("xaction", 1, "START rollback");
+            m_dbdriver.cancelPreparedStatement("stmt.save.ivr");
+            m_dbdriver.rollback();
+            Logging.instance().log("xaction", 1, "FINAL rollback");
+            throw e; // re-throw
+        }
+    }
+
+    /**
+     * Inserts a number of invocation records into the database in a single transaction. Unlike
+     * repeated calls to {@link #saveInvocation( InvocationRecord )}, the rows for all records are
+     * collected into JDBC batches, one per table, which are executed at the end. Records that
+     * already exist in the database, or that appear more than once in the list, are skipped.
+     *
+     * <p>For backends without sequences, the ids are assigned from the largest ids in the tables at
+     * the start of the call. Thus, the bulk insertion expects to be the only writer into the PTC
+     * for such backends while it runs.
+     *
+     * @param ivrs is the list of invocation records to store.
+     * @return the number of records that were inserted.
+     * @throws java.sql.SQLException if the insertion failed, after rolling back all records.
+     */
+    public int saveInvocations(java.util.List ivrs) throws SQLException {
+        int result = 0;
+        String[] stmts = {
+            "stmt.save.rusage", "stmt.save.stat", "stmt.save.ivr", "stmt.save.job", "stmt.save.lfn"
+        };
+        PreparedStatement[] ps = new PreparedStatement[stmts.length];
+
+        try {
+            Logging.instance().log("xaction", 1, "START bulk save " + ivrs.size() + " invocations");
+            for (int i = 0; i < stmts.length; ++i)
+                ps[i] = m_dbdriver.getPreparedStatement(stmts[i]);
+            this.m_nextId.clear();
+
+            Set seen = new HashSet();
+            for (Iterator r = ivrs.iterator(); r.hasNext(); ) {
+                InvocationRecord ivr = (InvocationRecord) r.next();
+                String key =
+                        ivr.getStart().getTime()
+                                + Separator.NAME
+                                + ivr.getHostAddress().getHostAddress()
+                                + Separator.NAME
+                                + ivr.getPID();
+                if (!seen.add(key)
+                        || getInvocationID(ivr.getStart(), ivr.getHostAddress(), ivr.getPID())
+                                != -1) {
+                    Logging.instance().log("app", 1, "invocation " + key + " exists, skipping");
+                    continue;
                 }
+
+                long uname = bulkArchitecture(ivr.getArchitecture());
+                long usage = nextId("rusage_id_seq");
+                bindUsage(ps[0], usage, ivr.getUsage());
+                ps[0].addBatch();
+
+                long id = nextId("invocation_id_seq");
+                bindInvocation(ps[2], id, ivr, uname, usage);
+                ps[2].addBatch();
+
+                // jobs belonging to invocation
+                for (Iterator j = ivr.iterateJob(); j.hasNext(); ) {
+                    Job job = (Job) j.next();
+                    usage = nextId("rusage_id_seq");
+                    bindUsage(ps[0], usage, job.getUsage());
+                    ps[0].addBatch();
+                    long stat = nextId("stat_id_seq");
+                    bindStat(ps[1], stat, job.getExecutable());
+                    ps[1].addBatch();
+                    bindJob(ps[3], id, job, usage, stat);
+                    ps[3].addBatch();
+                }
+
+                // initial and final stat info
+                for (Iterator j = ivr.iterateStatCall(); j.hasNext(); ) {
+                    StatCall s = (StatCall) j.next();
+                    String sch = s.getHandle().toLowerCase();
+                    if (sch.equals("initial") || sch.equals("final")) {
+                        long stat = nextId("stat_id_seq");
+                        bindStat(ps[1], stat, s);
+                        ps[1].addBatch();
+                        bindLFN(ps[4], id, stat, s);
+                        ps[4].addBatch();
+                    }
+                }
+                ++result;
             }
 
+            // referenced rows go first
+            for (int i = 0; i < ps.length; ++i) {
+                Logging.instance().log("chunk", 2, "BATCH " + stmts[i]);
+                ps[i].executeBatch();
+            }
+            m_dbdriver.commit();
+            Logging.instance().log("xaction", 1, "FINAL bulk save invocations: " + result);
+            return result;
+        } catch (SQLException e) {
+            logExceptionChain(e);
+
             Logging.instance().log("xaction", 1, "START rollback");
-            m_dbdriver.cancelPreparedStatement("stmt.save.ivr");
+            for (int i = 0; i < ps.length; ++i) {
+                if (ps[i] != null) ps[i].clearBatch();
+            }
             m_dbdriver.rollback();
+            this.m_unames.clear();
             Logging.instance().log("xaction", 1, "FINAL rollback");
             throw e; // re-throw
         }
     }
 
+    /**
+     * Determines the id of an architecture during bulk inserts. The ids are remembered, so that the
+     * database is only consulted once per distinct architecture.
+     *
+     * @param arch is the architecture description
+     * @return the id of the architecture, either new or existing.
+     * @throws java.sql.SQLException Exception
+     */
+    private long bulkArchitecture(Architecture arch) throws SQLException {
+        String key =
+                arch.getArchMode()
+                        + Separator.NAME
+                        + arch.getSystemName()
+                        + Separator.NAME
+                        + arch.getRelease()
+                        + Separator.NAME
+                        + arch.getMachine();
+        Long result = (Long) this.m_unames.get(key);
+        if (result == null) {
+            result = new Long(saveArchitecture(arch));
+            this.m_unames.put(key, result);
+        }
+        return result.longValue();
+    }
+
+    /**
+     * Obtains the next id from a sequence during bulk inserts. For backends without sequences, the
+     * id is one more than the largest id assigned so far, starting from the largest id in the table
+     * of the sequence.
+     *
+     * @param sequence is the name of the sequence
+     * @return the next id.
+     * @throws java.sql.SQLException Exception
+     */
+    private long nextId(String sequence) throws SQLException {
+        long result = m_dbdriver.sequence1(sequence);
+        if (result != -1) return result;
+
+        Long next = (Long) this.m_nextId.get(sequence);
+        if (next == null) {
+            PreparedStatement ps = m_dbdriver.getPreparedStatement("stmt.select.max." + sequence);
+            ResultSet rs = ps.executeQuery();
+            next = new Long(rs.next() ? rs.getLong(1) + 1 : 1);
+            rs.close();
+        }
+        this.m_nextId.put(sequence, new Long(next.longValue() + 1));
+        return next.longValue();
+    }
+
+    /**
+     * Logs the complete chain of an SQL exception.
+     *
+     * @param e is the exception to log.
+     */
+    private void logExceptionChain(SQLException e) {
+        for (SQLException walk = e; walk != null; walk = walk.getNextException()) {
+            Logging.instance()
+                    .log(
+                            "app",
+                            0,
+                            walk.getSQLState()
+                                    + ": "
+                                    + walk.getErrorCode()
+                                    + ": "
+                                    + walk.getMessage().trim());
+
+            StackTraceElement[] ste = walk.getStackTrace();
+            for (int n = 0; n < 5 && n < ste.length; ++n) {
+                Logging.instance().log("app", 0, ste[n].toString());
+            }
+        }
+    }
+
+    /**
+     * Binds the values of an invocation record to the prepared insert statement.
+     *
+     * @param ps is the prepared statement to insert into the invocation table.
+     * @param id is the id of the invocation record, or -1 to let the backend choose.
+     * @param ivr is the invocation record to store.
+     * @param uname is the id of the architecture of the record.
+     * @param usage is the id of the total usage of the record.
+     * @exception SQLException if the values cannot be bound.
+     */
+    protected void bindInvocation(
+            PreparedStatement ps, long id, InvocationRecord ivr, long uname, long usage)
+            throws SQLException {
+        int i = 1;
+        longOrNull(ps, i++, id);
+
+        // current_user()
+        stringOrNull(ps, i++, System.getProperty("user.name"));
+
+        // now()
+        ps.setTimestamp(i++, toStamp(new java.util.Date()));
+
+        // wf_label, wf_time: not available at the moment...
+        if (ivr.getWorkflowLabel() == null) ps.setNull(i++, Types.VARCHAR);
+        else ps.setString(i++, ivr.getWorkflowLabel());
+
+        if (ivr.getWorkflowTimestamp() == null) ps.setNull(i++, Types.TIMESTAMP);
+        else ps.setTimestamp(i++, toStamp(ivr.getWorkflowTimestamp()));
+
+        // version
+        ps.setString(i++, ivr.getVersion());
+
+        // start, duration
+        ps.setTimestamp(i++, toStamp(ivr.getStart()));
+        ps.setDouble(i++, ivr.getDuration());
+
+        // TR
+        i = splitDefinition(ps, ivr.getTransformation(), i);
+
+        // DV: not available at the moment
+        i = splitDefinition(ps, ivr.getDerivation(), i);
+
+        // resource (site handle)
+        if (ivr.getResource() == null) ps.setNull(i++, Types.VARCHAR);
+        else ps.setString(i++, ivr.getResource());
+
+        // host
+        ps.setString(i++, ivr.getHostAddress().getHostAddress());
+
+        // [pug]id
+        ps.setInt(i++, ivr.getPID());
+        ps.setInt(i++, ivr.getUID());
+        ps.setInt(i++, ivr.getGID());
+
+        // cwd
+        stringOrNull(ps, i++, ivr.getWorkingDirectory().getValue());
+
+        // uname
+        ps.setLong(i++, uname);
+
+        // usage
+        ps.setLong(i++, usage);
+    }
+
     /**
      * Splits the canonical FQDN of a definition into its components, and save each component into
      * the database.
@@ -399,6 +600,29 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         return i;
     }
 
+    /**
+     * Binds the values of a rusage record to the prepared insert statement.
+     *
+     * @param ps is the prepared statement to insert into the rusage table.
+     * @param id is the id of the rusage record, or -1 to let the backend choose.
+     * @param u is the usage record to insert into the database
+     * @exception SQLException if the values cannot be bound.
+     */
+    protected void bindUsage(PreparedStatement ps, long id, Usage u) throws SQLException {
+        int i = 1;
+        longOrNull(ps, i++, id);
+
+        // add rest of rusage record
+        ps.setDouble(i++, u.getUserTime());
+        ps.setDouble(i++, u.getSystemTime());
+        ps.setInt(i++, u.getMinorFaults());
+        ps.setInt(i++, u.getMajorFaults());
+        ps.setInt(i++, u.getSwaps());
+        ps.setInt(i++, u.getSignals());
+        ps.setInt(i++, u.getVoluntarySwitches());
+        ps.setInt(i++, u.getInvoluntarySwitches());
+    }
+
     /**
      * Helper function to insert a chunk of the invocation record. This piece deals with the rusage
      * information.
@@ -425,18 +649,7 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         // add ID explicitely from sequence to insertion
         Logging.instance().log("xaction", 1, "START save rusage");
         PreparedStatement ps = m_dbdriver.getPreparedStatement("stmt.save.rusage");
-        int i = 1;
-        longOrNull(ps, i++, id);
-
-        // add rest of rusage record
-        ps.setDouble(i++, u.getUserTime());
-        ps.setDouble(i++, u.getSystemTime());
-        ps.setInt(i++, u.getMinorFaults());
-        ps.setInt(i++, u.getMajorFaults());
-        ps.setInt(i++, u.getSwaps());
-        ps.setInt(i++, u.getSignals());
-        ps.setInt(i++, u.getVoluntarySwitches());
-        ps.setInt(i++, u.getInvoluntarySwitches());
+        bindUsage(ps, id, u);
 
         // save prepared values
         Logging.instance().log("chunk", 2, "INSERT INTO rusage");
@@ -456,29 +669,14 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
     }
 
     /**
-     * Helper function to insert a chunk of the invocation record. This piece deals with the stat
-     * and fstat information.
+     * Binds the values of a stat record to the prepared insert statement.
      *
+     * @param ps is the prepared statement to insert into the stat table.
+     * @param id is the id of the stat record, or -1 to let the backend choose.
      * @param s is the stat record to insert into the database
-     * @return the sequence number under which it was inserted.
-     * @exception SQLException if something goes awry during insertion.
+     * @exception SQLException if the values cannot be bound.
      */
-    protected long saveStat(StatCall s) throws SQLException {
-
-        long id = -1;
-        try {
-            id = m_dbdriver.sequence1("stat_id_seq");
-        } catch (SQLException e) {
-            Logging.instance().log("app", 0, "During stat sequence number: " + e.toString().trim());
-            Logging.instance().log("xaction", 1, "START rollback");
-            m_dbdriver.rollback();
-            Logging.instance().log("xaction", 1, "FINAL rollback");
-            throw e; // re-throw
-        }
-
-        // add ID explicitely from sequence to insertion
-        Logging.instance().log("xaction", 1, "START save stat");
-        PreparedStatement ps = this.m_dbdriver.getPreparedStatement("stmt.save.stat");
+    protected void bindStat(PreparedStatement ps, long id, StatCall s) throws SQLException {
         int i = 1;
         longOrNull(ps, i++, id);
 
@@ -495,7 +693,8 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
                 ps.setInt(i++, ((HasDescriptor) f).getDescriptor());
             else ps.setNull(i++, Types.INTEGER);
         } else {
-            i += 2;
+            ps.setNull(i++, Types.VARCHAR);
+            ps.setNull(i++, Types.INTEGER);
         }
 
         StatInfo si = s.getStatInfo();
@@ -525,6 +724,33 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
             ps.setNull(i++, Types.INTEGER);
             ps.setNull(i++, Types.INTEGER);
         }
+    }
+
+    /**
+     * Helper function to insert a chunk of the invocation record. This piece deals with the stat
+     * and fstat information.
+     *
+     * @param s is the stat record to insert into the database
+     * @return the sequence number under which it was inserted.
+     * @exception SQLException if something goes awry during insertion.
+     */
+    protected long saveStat(StatCall s) throws SQLException {
+
+        long id = -1;
+        try {
+            id = m_dbdriver.sequence1("stat_id_seq");
+        } catch (SQLException e) {
+            Logging.instance().log("app", 0, "During stat sequence number: " + e.toString().trim());
+            Logging.instance().log("xaction", 1, "START rollback");
+            m_dbdriver.rollback();
+            Logging.instance().log("xaction", 1, "FINAL rollback");
+            throw e; // re-throw
+        }
+
+        // add ID explicitely from sequence to insertion
+        Logging.instance().log("xaction", 1, "START save stat");
+        PreparedStatement ps = this.m_dbdriver.getPreparedStatement("stmt.save.stat");
+        bindStat(ps, id, s);
 
         // save prepared values
         Logging.instance().log("chunk", 2, "INSERT INTO stat");
@@ -544,23 +770,23 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
     }
 
     /**
-     * Helper function to insert a LFN PFN mapping stat call into the stat information records.
+     * Binds the values of a LFN PFN mapping to the prepared insert statement.
      *
+     * @param ps is the prepared statement to insert into the lfn table.
      * @param iid is the invocation record id to which this job belongs.
+     * @param stat is the id of the stat record of the stat call.
      * @param s is an instance of a stat call from the initial or final list
-     * @exception SQLException if something goes awry during insertion.
+     * @exception SQLException if the values cannot be bound.
      */
-    protected void saveLFN(long iid, StatCall s) throws SQLException {
-        Logging.instance().log("xaction", 1, "START save lfn");
-
-        PreparedStatement ps = m_dbdriver.getPreparedStatement("stmt.save.lfn");
+    protected void bindLFN(PreparedStatement ps, long iid, long stat, StatCall s)
+            throws SQLException {
         int i = 1;
 
         // add foreign ID explicitely
         ps.setLong(i++, iid);
 
         // stat (foreign key)
-        ps.setLong(i++, saveStat(s));
+        ps.setLong(i++, stat);
 
         // set the modifier before or after
         String id = s.getHandle().toLowerCase();
@@ -572,6 +798,21 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
 
         // set the LFN
         stringOrNull(ps, i++, s.getLFN());
+    }
+
+    /**
+     * Helper function to insert a LFN PFN mapping stat call into the stat information records.
+     *
+     * @param iid is the invocation record id to which this job belongs.
+     * @param s is an instance of a stat call from the initial or final list
+     * @exception SQLException if something goes awry during insertion.
+     */
+    protected void saveLFN(long iid, StatCall s) throws SQLException {
+        Logging.instance().log("xaction", 1, "START save lfn");
+
+        long stat = saveStat(s);
+        PreparedStatement ps = m_dbdriver.getPreparedStatement("stmt.save.lfn");
+        bindLFN(ps, iid, stat, s);
 
         // save prepared values
         Logging.instance().log("chunk", 2, "INSERT INTO lfn");
@@ -599,7 +840,38 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
     protected void saveJob(long iid, Job job) throws SQLException {
         Logging.instance().log("xaction", 1, "START save job");
 
+        long usage = saveUsage(job.getUsage());
+        long stat = saveStat(job.getExecutable());
         PreparedStatement ps = m_dbdriver.getPreparedStatement("stmt.save.job");
+        bindJob(ps, iid, job, usage, stat);
+
+        // save prepared values
+        Logging.instance().log("chunk", 2, "INSERT INTO job");
+        try {
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            Logging.instance().log("app", 0, "While inserting into job: " + e.toString().trim());
+            // rollback in safeInvocation()
+            m_dbdriver.cancelPreparedStatement("stmt.save.job");
+            throw e; // re-throw
+        }
+
+        // done
+        Logging.instance().log("xaction", 1, "FINAL save job");
+    }
+
+    /**
+     * Binds the values of a job to the prepared insert statement.
+     *
+     * @param ps is the prepared statement to insert into the job table.
+     * @param iid is the invocation record id to which this job belongs.
+     * @param job is the job to insert.
+     * @param usage is the id of the rusage record of the job.
+     * @param stat is the id of the stat record of the executable of the job.
+     * @exception SQLException if the values cannot be bound, e.g. for an illegal job type.
+     */
+    protected void bindJob(PreparedStatement ps, long iid, Job job, long usage, long stat)
+            throws SQLException {
         int i = 1;
 
         // add foreign ID explicitely
@@ -629,10 +901,10 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         ps.setInt(i++, job.getPID());
 
         // usage (foreign key)
-        ps.setLong(i++, saveUsage(job.getUsage()));
+        ps.setLong(i++, usage);
 
         // stat (foreign key)
-        ps.setLong(i++, saveStat(job.getExecutable()));
+        ps.setLong(i++, stat);
 
         // exitcode, exit_msg
         Status status = job.getStatus();
@@ -645,19 +917,5 @@ public class InvocationSchema extends DatabaseSchema implements PTC {
         // args
         Arguments args = job.getArguments();
         stringOrNull(ps, i++, args.getValue());
-
-        // save prepared values
-        Logging.instance().log("chunk", 2, "INSERT INTO job");
-        try {
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            Logging.instance().log("app", 0, "While inserting into job: " + e.toString().trim());
-            // rollback in safeInvocation()
-            m_dbdriver.cancelPreparedStatement("stmt.save.job");
-            throw e; // re-throw
-        }
-
-        // done
-        Logging.instance().log("xaction", 1, "FINAL save job");
     }
 }
@@ -181,4 +181,21 @@ public class NXDInvSchema extends DatabaseSchema implements PTC {
             throw new SQLException(e.getMessage());
         }
     }
+
+    /**
+     * Inserts a number of invocation records into the database, one document at a time. Records
+     * that already exist in the database are skipped.
+     *
+     * @param ivrs is the list of invocation records to store.
+     * @return the number of records that were inserted.
+     */
+    public int saveInvocations(java.util.List ivrs) throws SQLException {
+        int result = 0;
+        for (java.util.Iterator i = ivrs.iterator(); i.hasNext(); ) {
+            InvocationRecord ivr = (InvocationRecord) i.next();
+            if (getInvocationID(ivr.getStart(), ivr.getHostAddress(), ivr.getPID()) == -1
+                    && saveInvocation(ivr)) ++result;
+        }
+        return result;
+    }
 }
@@ -19,6 +19,8 @@ import java.io.*;
 import java.lang.reflect.*;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Properties;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -523,6 +525,17 @@ public class NXDSchema extends DatabaseSchema implements XDC {
         return result;
     }
 
+    @Override
+    public java.util.Map searchFilenames(java.util.Collection lfns, int link) throws SQLException {
+        // one query per LFN, the XQuery service does not gain from batching
+        java.util.Map result = new HashMap();
+        for (Iterator i = lfns.iterator(); i.hasNext(); ) {
+            String lfn = (String) i.next();
+            result.put(lfn, searchFilename(lfn, link));
+        }
+        return result;
+    }
+
     /**
      * Delete one or more definitions from the backend database. The key triple parameters may be
      * wildcards. Wildcards are expressed as <code>null</code> value, or have regular expression.
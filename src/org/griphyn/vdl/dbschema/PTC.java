@@ -18,6 +18,7 @@ import edu.isi.pegasus.planner.invocation.InvocationRecord;
 import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 
 /**
  * This interface defines a common base for all database schemas that supports the handling of the
@@ -55,4 +56,14 @@ public interface PTC extends Catalog {
      * @throws java.sql.SQLException Exception
      */
     public boolean saveInvocation(InvocationRecord ivr) throws SQLException;
+
+    /**
+     * Inserts a number of invocation records into the database in a single transaction. Records
+     * that already exist in the database are skipped.
+     *
+     * @param ivrs is the list of invocation records to store.
+     * @return the number of records that were inserted.
+     * @throws java.sql.SQLException if the insertion failed. None of the records are inserted.
+     */
+    public int saveInvocations(List ivrs) throws SQLException;
 }
@@ -147,4 +147,19 @@ public interface VDC extends Catalog {
      * @see org.griphyn.vdl.classes.LFN#INOUT
      */
     public abstract java.util.List searchFilename(String lfn, int link) throws SQLException;
+
+    /**
+     * Searches the database for all derivations that contain any of a number of LFNs. This is the
+     * bulk version of {@link #searchFilename( String, int )}, which permits a backend to answer the
+     * search for many LFNs with few queries. This method does not allow jokers.
+     *
+     * @param lfns the collection of LFN names
+     * @param link the linkage type of the LFNs
+     * @return a map from each LFN name to the list of Definition items that match the criterion.
+     *     LFNs without matching definitions map to an empty list.
+     * @throws java.sql.SQLException SQLException
+     * @see #searchFilename( String, int )
+     */
+    public abstract java.util.Map searchFilenames(java.util.Collection lfns, int link)
+            throws SQLException;
 }
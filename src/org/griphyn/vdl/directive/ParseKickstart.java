@@ -30,8 +30,14 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.griphyn.vdl.dbschema.*;
 import org.griphyn.vdl.toolkit.FriendlyNudge;
 import org.griphyn.vdl.util.ChimeraProperties;
@@ -107,6 +113,12 @@ public class ParseKickstart extends Directive {
     /** Attaches a workflow mtime to all workflows passing thru. */
     private Date m_wf_mtime = null;
 
+    /** The number of worker threads that parse files in {@link #parseFiles( List )}. */
+    private int m_threads = 1;
+
+    /** The number of records inserted per transaction in {@link #parseFiles( List )}. */
+    private int m_commitSize = 100;
+
     /**
      * Default c'tor.
      *
@@ -261,6 +273,47 @@ public class ParseKickstart extends Directive {
         this.m_wf_mtime = mtime;
     }
 
+    /**
+     * Obtains the number of worker threads used to parse multiple files.
+     *
+     * @return the number of threads.
+     * @see #setThreads(int)
+     */
+    public int getThreads() {
+        return this.m_threads;
+    }
+
+    /**
+     * Sets the number of worker threads used to parse multiple files.
+     *
+     * @param threads is the number of threads, at least one.
+     * @see #getThreads()
+     */
+    public void setThreads(int threads) {
+        this.m_threads = Math.max(1, threads);
+    }
+
+    /**
+     * Obtains the number of records inserted into the PTC per transaction when parsing multiple
+     * files.
+     *
+     * @return the number of records per transaction.
+     * @see #setCommitSize(int)
+     */
+    public int getCommitSize() {
+        return this.m_commitSize;
+    }
+
+    /**
+     * Sets the number of records inserted into the PTC per transaction when parsing multiple files.
+     *
+     * @param size is the number of records per transaction, at least one.
+     * @see #getCommitSize()
+     */
+    public void setCommitSize(int size) {
+        this.m_commitSize = Math.max(1, size);
+    }
+
     /**
      * Determines the exit code of an invocation record. Currently, we will determine the exit code
      * from all jobs until failure or no more jobs. However, set-up and clean-up jobs are ignored.
@@ -413,16 +466,255 @@ public class ParseKickstart extends Directive {
     public List parseFile(String arg0) throws FriendlyNudge, IOException, SQLException {
         List result = new ArrayList();
         Logging me = getLogger();
-        me.log("kickstart", 2, "working with file " + arg0);
 
         // get access to the invocation parser
-        if (m_ip == null) {
-            ChimeraProperties props = ChimeraProperties.instance();
-            String psl = props.getPTCSchemaLocation();
-            me.log("kickstart", 2, "using XML schema location " + psl);
-            m_ip = new InvocationParser(psl);
+        if (m_ip == null) m_ip = createParser();
+
+        // the records parsed ahead of an invalid record are still inserted
+        List records = new ArrayList();
+        FriendlyNudge failure = null;
+        try {
+            parseRecords(arg0, m_ip, records);
+        } catch (FriendlyNudge fn) {
+            failure = fn;
+        }
+        if (failure == null && records.isEmpty()) {
+            // zero size file that is not a failure
+            result.add(new Integer(0));
+            return result;
         }
 
+        for (int j = 1; j - 1 < records.size(); ++j) {
+            InvocationRecord invocation = (InvocationRecord) records.get(j - 1);
+
+            // insert into database -- iff it is available
+            if (!m_noDBase && m_dbschema != null && m_dbschema instanceof PTC) {
+                PTC ptc = (PTC) m_dbschema;
+
+                try {
+                    // FIXME: (start,host,pid) may not be a sufficient secondary key
+                    me.log("kickstart", 2, "about to obtain secondary key triple");
+                    if (ptc.getInvocationID(
+                                    invocation.getStart(),
+                                    invocation.getHostAddress(),
+                                    invocation.getPID())
+                            == -1) {
+                        me.log("kickstart", 2, "new invocation, adding");
+                        me.log("app", 1, "adding invocation to database");
+                        // may throw SQLException
+                        ptc.saveInvocation(invocation);
+                    } else {
+                        me.log("kickstart", 2, "existing invocation, skipping");
+                        me.log("app", 1, "invocation already exists, skipping!");
+                    }
+                } catch (SQLException sql) {
+                    if (m_ignoreDBFail) {
+                        // if dbase errors are non-fatal, just protocol what is going on.
+                        for (int n = 0; sql != null; ++n) {
+                            me.log(
+                                    "default",
+                                    0,
+                                    "While inserting PTR ["
+                                            + j
+                                            + "]:"
+                                            + n
+                                            + ": "
+                                            + sql.getMessage()
+                                            + ", ignoring");
+                            sql = sql.getNextException();
+                        }
+                    } else {
+                        // rethrow, if dbase errors are fatal (default)
+                        throw sql;
+                    }
+                } // catch
+            } // if use dbase
+
+            // determine result code
+            int status = 0;
+            me.log("kickstart", 2, "about to determine exit status");
+            status = determineExitStatus(invocation);
+            me.log("kickstart", 2, "exit status is " + status);
+            result.add(new Integer(status));
+        } // for
+        if (failure != null) throw failure;
+
+        // done
+        return result;
+    }
+
+    /**
+     * Parses the contents of many kickstart output files, and returns the exit codes obtained from
+     * the records of each. The files are parsed in parallel by a pool of worker threads, each with
+     * its own XML parser. The parsed records are handed through a bounded queue to the calling
+     * thread, which inserts them into the PTC with one transaction per commit size records.
+     *
+     * <p>Unlike {@link #parseFile( String )}, a file that cannot be parsed does not stop the
+     * parsing of the other files. As with {@link #parseFile( String )}, the records of a file
+     * parsed ahead of an invalid record are still inserted.
+     *
+     * @param files is a list with the names of the files to read
+     * @return a map from each file name, in the order of the list, to the list of exit codes of its
+     *     records. A file that could not be parsed maps to the single exit code of the failure.
+     * @throws IOException if something happens while reading properties to instantiate the XML
+     *     parser.
+     * @throws SQLException if accessing the database fails.
+     * @see #setThreads(int)
+     * @see #setCommitSize(int)
+     */
+    public Map parseFiles(List files) throws IOException, SQLException {
+        Map result = new LinkedHashMap();
+        Logging me = getLogger();
+        if (files.isEmpty()) return result;
+
+        final String psl = ChimeraProperties.instance().getPTCSchemaLocation();
+        me.log("kickstart", 2, "using XML schema location " + psl);
+        final ThreadLocal parsers =
+                new ThreadLocal() {
+                    protected Object initialValue() {
+                        return new InvocationParser(psl);
+                    }
+                };
+
+        // the queue bounds the parsed records waiting to be inserted
+        final BlockingQueue queue = new ArrayBlockingQueue(Math.max(m_commitSize, m_threads));
+        ExecutorService pool = Executors.newFixedThreadPool(m_threads);
+        for (Iterator i = files.iterator(); i.hasNext(); ) {
+            final String file = (String) i.next();
+            result.put(file, null);
+            pool.execute(
+                    new Runnable() {
+                        public void run() {
+                            ParsedFile parsed = new ParsedFile(file);
+                            try {
+                                parseRecords(
+                                        file, (InvocationParser) parsers.get(), parsed.m_records);
+                            } catch (FriendlyNudge fn) {
+                                parsed.m_failure = fn;
+                            } catch (Throwable t) {
+                                parsed.m_error = t;
+                            } finally {
+                                // the caller waits for every file
+                                try {
+                                    queue.put(parsed);
+                                } catch (InterruptedException ie) {
+                                    // the pool was shut down
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                        }
+                    });
+        }
+
+        try {
+            List pending = new ArrayList(m_commitSize);
+            for (int n = 0; n < files.size(); ++n) {
+                ParsedFile parsed = (ParsedFile) queue.take();
+                List status = new ArrayList();
+                if (parsed.m_error instanceof Error) {
+                    throw (Error) parsed.m_error;
+                } else if (parsed.m_error instanceof RuntimeException) {
+                    throw (RuntimeException) parsed.m_error;
+                } else if (parsed.m_error != null) {
+                    throw new RuntimeException(parsed.m_error);
+                }
+                for (Iterator j = parsed.m_records.iterator(); j.hasNext(); ) {
+                    InvocationRecord invocation = (InvocationRecord) j.next();
+                    status.add(new Integer(determineExitStatus(invocation)));
+                    pending.add(invocation);
+                    if (pending.size() >= m_commitSize) saveRecords(pending);
+                }
+                if (parsed.m_failure != null) {
+                    me.log("default", 0, parsed.m_failure.getMessage());
+                    status.clear();
+                    status.add(new Integer(parsed.m_failure.getResult()));
+                } else if (status.isEmpty()) {
+                    // zero size file that is not a failure
+                    status.add(new Integer(0));
+                }
+                result.put(parsed.m_filename, status);
+            }
+            saveRecords(pending);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while parsing kickstart files");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return result;
+    }
+
+    /**
+     * Inserts the records collected by {@link #parseFiles( List )} into the PTC, if available, and
+     * clears the list.
+     *
+     * @param pending is the list of records to insert.
+     * @throws SQLException if accessing the database fails, and database failures are fatal.
+     */
+    private void saveRecords(List pending) throws SQLException {
+        if (pending.isEmpty()) return;
+        Logging me = getLogger();
+        if (!m_noDBase && m_dbschema != null && m_dbschema instanceof PTC) {
+            try {
+                me.log("kickstart", 2, "adding " + pending.size() + " invocations");
+                int count = ((PTC) m_dbschema).saveInvocations(pending);
+                me.log("app", 1, "added " + count + " invocations to database");
+            } catch (SQLException sql) {
+                if (m_ignoreDBFail) {
+                    // if dbase errors are non-fatal, just protocol what is going on.
+                    for (int n = 0; sql != null; ++n) {
+                        me.log(
+                                "default",
+                                0,
+                                "While inserting "
+                                        + pending.size()
+                                        + " PTRs:"
+                                        + n
+                                        + ": "
+                                        + sql.getMessage()
+                                        + ", ignoring");
+                        sql = sql.getNextException();
+                    }
+                } else {
+                    // rethrow, if dbase errors are fatal (default)
+                    throw sql;
+                }
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Creates an invocation parser for the XML schema location from the properties.
+     *
+     * @return a new invocation parser.
+     * @throws IOException if something happens while reading properties.
+     */
+    private InvocationParser createParser() throws IOException {
+        ChimeraProperties props = ChimeraProperties.instance();
+        String psl = props.getPTCSchemaLocation();
+        getLogger().log("kickstart", 2, "using XML schema location " + psl);
+        return new InvocationParser(psl);
+    }
+
+    /**
+     * Parses the invocation records from a kickstart output file. The workflow label and mtime are
+     * attached to each record, and records without machine information inherit it from the previous
+     * record of the file. The records are added to the list as they are parsed, so that the records
+     * ahead of an invalid record are in the list when the failure is thrown.
+     *
+     * @param arg0 is the name of the file to read
+     * @param ip is the invocation parser to use
+     * @param result is the list to add the records to. Nothing is added for an empty file that is
+     *     not a failure.
+     * @throws FriendlyNudge if parsing of the file goes hay-wire.
+     */
+    protected void parseRecords(String arg0, InvocationParser ip, List result)
+            throws FriendlyNudge {
+        Logging me = getLogger();
+        me.log("kickstart", 2, "working with file " + arg0);
+
         // check input file
         java.io.File check = new java.io.File(arg0);
 
@@ -449,8 +741,7 @@ public class ParseKickstart extends Directive {
             } else {
                 me.log("kickstart", 2, "zero size file, succeed with 0");
                 me.log("app", 1, "file has zero length " + arg0 + ", assuming success");
-                result.add(new Integer(0));
-                return result;
+                return;
             }
         }
 
@@ -468,7 +759,7 @@ public class ParseKickstart extends Directive {
             // test 5: try to parse XML
             me.log("app", 2, "starting to parse invocation");
             me.log("kickstart", 2, "about to parse invocation record");
-            InvocationRecord invocation = m_ip.parse(new StringReader(temp));
+            InvocationRecord invocation = ip.parse(new StringReader(temp));
             me.log("kickstart", 2, "done parsing invocation");
 
             if (invocation == null) {
@@ -495,59 +786,31 @@ public class ParseKickstart extends Directive {
             } else {
                 cachedUname = uname;
             }
+            result.add(invocation);
+        }
+    }
 
-            // insert into database -- iff it is available
-            if (!m_noDBase && m_dbschema != null && m_dbschema instanceof PTC) {
-                PTC ptc = (PTC) m_dbschema;
+    /** The outcome of parsing a file on a worker thread of {@link #parseFiles( List )}. */
+    private static class ParsedFile {
+        /** The name of the file. */
+        private String m_filename;
 
-                try {
-                    // FIXME: (start,host,pid) may not be a sufficient secondary key
-                    me.log("kickstart", 2, "about to obtain secondary key triple");
-                    if (ptc.getInvocationID(
-                                    invocation.getStart(),
-                                    invocation.getHostAddress(),
-                                    invocation.getPID())
-                            == -1) {
-                        me.log("kickstart", 2, "new invocation, adding");
-                        me.log("app", 1, "adding invocation to database");
-                        // may throw SQLException
-                        ptc.saveInvocation(invocation);
-                    } else {
-                        me.log("kickstart", 2, "existing invocation, skipping");
-                        me.log("app", 1, "invocation already exists, skipping!");
-                    }
-                } catch (SQLException sql) {
-                    if (m_ignoreDBFail) {
-                        // if dbase errors are non-fatal, just protocol what is going on.
-                        for (int n = 0; sql != null; ++n) {
-                            me.log(
-                                    "default",
-                                    0,
-                                    "While inserting PTR ["
-                                            + j
-                                            + "]:"
-                                            + n
-                                            + ": "
-                                            + sql.getMessage()
-                                            + ", ignoring");
-                            sql = sql.getNextException();
-                        }
-                    } else {
-                        // rethrow, if dbase errors are fatal (default)
-                        throw sql;
-                    }
-                } // catch
-            } // if use dbase
+        /** The records parsed from the file, up to the failure if there was one. */
+        private List m_records = new ArrayList();
 
-            // determine result code
-            int status = 0;
-            me.log("kickstart", 2, "about to determine exit status");
-            status = determineExitStatus(invocation);
-            me.log("kickstart", 2, "exit status is " + status);
-            result.add(new Integer(status));
-        } // for
+        /** The failure to parse the file. */
+        private FriendlyNudge m_failure;
 
-        // done
-        return result;
+        /** An unexpected error or exception while parsing the file. */
+        private Throwable m_error;
+
+        /**
+         * C'tor.
+         *
+         * @param filename is the name of the file.
+         */
+        ParsedFile(String filename) {
+            this.m_filename = filename;
+        }
     }
 }
@@ -15,17 +15,48 @@
 package org.griphyn.vdl.router;
 
 import java.util.*;
-import org.griphyn.vdl.util.Logging;
 
 /**
+ * A size-bounded cache with a time to live for its entries. Once the cache is full, the least
+ * recently used entry is evicted to make room for a new one. Empty collections are remembered as
+ * negative entries, so that repeated searches for unknown keys do not reach the backend. All
+ * methods are synchronized, so that the cache may be shared between threads.
+ *
  * @author Jens-S. Vöckler
  * @author Yong Zhao
  * @version $Revision$
  */
 public class Cache {
+    /** The default maximum number of entries in a cache. */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    /** Index of the insert counter in the statistics. */
+    public static final int INSERT = 0;
+
+    /** Index of the update counter in the statistics. */
+    public static final int UPDATE = 1;
+
+    /** Index of the miss counter in the statistics. */
+    public static final int MISS = 2;
+
+    /** Index of the expired counter in the statistics. */
+    public static final int EXPIRED = 3;
+
+    /** Index of the hit counter in the statistics, including negative hits. */
+    public static final int HIT = 4;
+
+    /** Index of the eviction counter in the statistics. */
+    public static final int EVICTED = 5;
+
+    /** Index of the negative hit counter in the statistics. */
+    public static final int NEGATIVE = 6;
+
     /** remember how long to save a cache entry. */
     long m_ttl = 0;
 
+    /** remember the maximum number of entries. */
+    int m_capacity = 0;
+
     /** Interior class to encapsulate cached objects and their additional management keys. */
     public class CacheEntry {
         /** This is the cached object. */
@@ -34,6 +65,9 @@ public class Cache {
         /** This is expiration date of the object. */
         long m_expire;
 
+        /** This is true for a negative entry, that is an empty collection. */
+        boolean m_negative;
+
         /**
          * Constructs a cache item with its management data. The time to live is determined from the
          * member variable.
@@ -43,61 +77,63 @@ public class Cache {
         CacheEntry(Object value) {
             this.m_value = value;
             this.m_expire = System.currentTimeMillis() + m_ttl;
+            this.m_negative = (value instanceof Collection) && ((Collection) value).isEmpty();
         }
     }
 
     /**
      * remember the objects to cache for. The cache consists of a concise key to locate any object,
-     * a value for the located large object, and a lifetime for the object.
+     * a value for the located large object, and a lifetime for the object. The map is kept in
+     * access order, so that the eldest entry is the least recently used one.
      */
-    java.util.Map m_cache = null;
+    java.util.LinkedHashMap m_cache = null;
 
-    /** Maintains statistics. */
-    static long[] m_stats = null;
+    /** Maintains statistics for this cache. */
+    long[] m_stats = null;
 
     /**
-     * ctor: Initialize the base functionalities of the cache.
+     * ctor: Initialize the base functionalities of the cache, bounded to the default capacity.
      *
      * @param ttl is the lifetime of a positive entry in seconds.
      */
     public Cache(int ttl) {
+        this(ttl, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * ctor: Initialize the base functionalities of the cache.
+     *
+     * @param ttl is the lifetime of an entry in seconds.
+     * @param capacity is the maximum number of entries to keep.
+     */
+    public Cache(int ttl, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("illegal cache capacity " + capacity);
         this.m_ttl = 1000 * ttl;
-        this.m_cache = new java.util.HashMap();
-        if (m_stats == null) {
-            // Singleton:
-            Cache.m_stats = new long[5]; // insert, update, miss, expired, hit
-
-            Runtime.getRuntime()
-                    .addShutdownHook(
-                            new Thread() {
-                                public void run() {
-                                    Logging.instance()
-                                            .log(
-                                                    "cache",
-                                                    0,
-                                                    "ins="
-                                                            + Cache.m_stats[0]
-                                                            + ",updt="
-                                                            + Cache.m_stats[1]
-                                                            + ",miss="
-                                                            + Cache.m_stats[2]
-                                                            + ",hit="
-                                                            + Cache.m_stats[4]);
-                                }
-                            });
-        }
+        this.m_capacity = capacity;
+        this.m_stats = new long[7]; // insert, update, miss, expired, hit, evicted, negative
+        this.m_cache =
+                new java.util.LinkedHashMap(Math.min(capacity, 1024), 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry eldest) {
+                        if (size() > Cache.this.m_capacity) {
+                            Cache.this.m_stats[EVICTED]++;
+                            return true;
+                        }
+                        return false;
+                    }
+                };
     }
 
     /**
-     * Enters a value into the cache.
+     * Enters a value into the cache. If the cache is full, the least recently used entry is
+     * evicted. An empty collection is entered as a negative entry.
      *
      * @param key is a concise, unique description of the object.
      * @param value is the object to be cached.
      * @return <code>null</code> for a fresh object, or the old CacheEntry.
      */
-    public Object set(Object key, Object value) {
+    public synchronized Object set(Object key, Object value) {
         CacheEntry ce = (CacheEntry) this.m_cache.put(key, new CacheEntry(value));
-        this.m_stats[ce == null ? 0 : 1]++; // count insert or update
+        this.m_stats[ce == null ? INSERT : UPDATE]++;
         return (ce == null ? null : ce.m_value);
     }
 
@@ -105,36 +141,100 @@ public class Cache {
      * Requests an item from the cache.
      *
      * @param key is the descriptor of the object.
+     * @return the cached object, or <code>null</code> for an unknown or expired object.
      */
-    public Object get(Object key) {
+    public synchronized Object get(Object key) {
         CacheEntry ce = (CacheEntry) this.m_cache.get(key);
 
         // new object?
         if (ce == null) {
-            this.m_stats[2]++; // count MISS
+            this.m_stats[MISS]++;
             return null;
         }
 
         // expired object?
         if (ce.m_expire < System.currentTimeMillis()) {
-            this.m_stats[3]++; // count EXPIRED
+            this.m_stats[EXPIRED]++;
             this.m_cache.remove(key);
             return null;
         }
 
         // known object!
-        this.m_stats[4]++;
+        this.m_stats[HIT]++;
+        if (ce.m_negative) this.m_stats[NEGATIVE]++;
         return ce.m_value;
     }
 
+    /**
+     * Requests an item from the cache without counting towards the statistics. Unlike {@link
+     * #get(Object)}, an expired entry is left for the next request to remove.
+     *
+     * @param key is the descriptor of the object.
+     * @return the cached object, or <code>null</code> for an unknown or expired object.
+     */
+    public synchronized Object peek(Object key) {
+        CacheEntry ce = (CacheEntry) this.m_cache.get(key);
+        return (ce == null || ce.m_expire < System.currentTimeMillis()) ? null : ce.m_value;
+    }
+
+    /**
+     * Obtains the number of entries in the cache, including expired ones that were not yet
+     * requested.
+     *
+     * @return the number of entries.
+     */
+    public synchronized int size() {
+        return this.m_cache.size();
+    }
+
+    /**
+     * Obtains the maximum number of entries in the cache.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return this.m_capacity;
+    }
+
     /**
      * Requests a copy of the statistics counters.
      *
-     * @return the counter values.
+     * @return the counter values, indexed by the counter constants.
+     * @see #INSERT
+     * @see #UPDATE
+     * @see #MISS
+     * @see #EXPIRED
+     * @see #HIT
+     * @see #EVICTED
+     * @see #NEGATIVE
      */
-    public long[] getStatistics() {
-        long[] result = new long[5];
-        System.arraycopy(this.m_stats, 0, result, 0, 5);
+    public synchronized long[] getStatistics() {
+        long[] result = new long[this.m_stats.length];
+        System.arraycopy(this.m_stats, 0, result, 0, result.length);
         return result;
     }
+
+    /**
+     * Formats the statistics counters for logging.
+     *
+     * @return the counters as comma-separated key value pairs.
+     */
+    public synchronized String toString() {
+        return "size="
+                + this.m_cache.size()
+                + ",ins="
+                + this.m_stats[INSERT]
+                + ",updt="
+                + this.m_stats[UPDATE]
+                + ",miss="
+                + this.m_stats[MISS]
+                + ",exp="
+                + this.m_stats[EXPIRED]
+                + ",hit="
+                + this.m_stats[HIT]
+                + ",neg="
+                + this.m_stats[NEGATIVE]
+                + ",evict="
+                + this.m_stats[EVICTED];
+    }
 }
@@ -37,6 +37,9 @@ public class Route {
     /** Default max depths of recursion into the graph before the circuit breaker hits. */
     public static final int MAXIMUM_DEPTH = 256;
 
+    /** Number of requested LFNs whose producing derivations are prefetched with one search. */
+    public static final int PREFETCH_SIZE = 1024;
+
     /**
      * This is a nested class to obscure it from the outside world. It will maintain a stack of
      * database manager backends that are used to resolve compound transformations. For this
@@ -90,6 +93,7 @@ public class Route {
             Logging.instance().log("stack", 2, "popping dbmstack[" + (size - 1) + ']');
 
             StackElement item = (StackElement) this.m_stack.remove(size - 1);
+            logStatistics(item, size - 1);
             return item.getDatabaseSchema();
         }
 
@@ -142,9 +146,17 @@ public class Route {
                         java.util.List list = vdc.searchFilename(filename, LFN.OUTPUT);
                         if (list != null && !list.isEmpty()) {
                             result.addAll(list);
-                            if (cache != null) cache.set(filename, result);
+                            if (cache != null)
+                                cache.set(filename, Collections.unmodifiableList(list));
                             flag = false;
+                        } else if (cache != null) {
+                            // negative caching, no derivation at this level produces it
+                            cache.set(filename, Collections.EMPTY_LIST);
                         }
+                    } else if (((java.util.List) item).isEmpty()) {
+                        // negative hit, continue with the next level
+                        Logging.instance()
+                                .log("cache", 1, "[" + level + "] LFN cache NEG  for " + filename);
                     } else {
                         // cache hit
                         Logging.instance()
@@ -155,21 +167,91 @@ public class Route {
                     level--;
                 }
 
-                if (flag && result.isEmpty()) {
-                    // negative caching on the way out
-                    if (i.hasNext()) {
-                        StackElement element = (StackElement) i.next();
-                        Cache cache = element.getLFNCache();
-                        if (cache != null) cache.set(filename, result);
+            } catch (Exception e) {
+                Logging.instance().log("default", 0, "caught " + e + ", aborting");
+                throw new RuntimeException(e.getMessage());
+            }
+
+            return result;
+        }
+
+        /**
+         * Warms the LFN caches for a number of logical filenames, so that subsequent calls to
+         * {@link #derivationsWithOutput( String )} for them are answered from the caches. Descends
+         * down the stack, and for each element searches with a single bulk search for the filenames
+         * that are neither cached at that element nor were found further up the stack. Filenames
+         * not produced at an element are negatively cached there, so later calls skip its database.
+         *
+         * @param filenames is a collection of logical filenames to search for as output files.
+         * @return the number of filenames that were searched for in at least one database.
+         */
+        public int prefetchOutputs(Collection filenames) {
+            Set pending = new LinkedHashSet(filenames);
+            pending.remove(null);
+            Set searched = new HashSet();
+            try {
+                int level = m_stack.size();
+                for (ListIterator i = m_stack.listIterator(level);
+                        i.hasPrevious() && !pending.isEmpty(); ) {
+                    StackElement element = (StackElement) i.previous();
+                    Cache cache = element.getLFNCache();
+                    if (cache == null) {
+                        // nowhere to remember the results, leave it to the regular search
+                        break;
                     }
-                }
 
+                    // found filenames are done, negative ones continue with the next level
+                    Set search = new LinkedHashSet();
+                    for (Iterator j = pending.iterator(); j.hasNext(); ) {
+                        Object key = j.next();
+                        java.util.List item = (java.util.List) cache.peek(key);
+                        if (item == null) search.add(key);
+                        else if (!item.isEmpty()) j.remove();
+                    }
+
+                    if (!search.isEmpty()) {
+                        Logging.instance()
+                                .log(
+                                        "cache",
+                                        1,
+                                        "[" + level + "] LFN cache PREFETCH for " + search.size());
+                        searched.addAll(search);
+                        VDC vdc = (VDC) element.getDatabaseSchema();
+                        java.util.Map found = vdc.searchFilenames(search, LFN.OUTPUT);
+                        for (Iterator j = search.iterator(); j.hasNext(); ) {
+                            Object key = j.next();
+                            java.util.List list = (java.util.List) found.get(key);
+                            if (list != null && !list.isEmpty()) {
+                                cache.set(key, Collections.unmodifiableList(list));
+                                pending.remove(key);
+                            } else {
+                                cache.set(key, Collections.EMPTY_LIST);
+                            }
+                        }
+                    }
+                    level--;
+                }
             } catch (Exception e) {
                 Logging.instance().log("default", 0, "caught " + e + ", aborting");
                 throw new RuntimeException(e.getMessage());
             }
 
-            return result;
+            return searched.size();
+        }
+
+        /**
+         * Logs the statistics of the caches of a stack element.
+         *
+         * @param element is the stack element
+         * @param level is the position of the element in the stack
+         */
+        public void logStatistics(StackElement element, int level) {
+            if (element.getLFNCache() != null)
+                Logging.instance()
+                        .log("cache", 1, "[" + level + "] LFN cache " + element.getLFNCache());
+            if (element.getTRCache() != null)
+                Logging.instance()
+                        .log("cache", 1, "[" + level + "] TR cache " + element.getTRCache());
         }
 
         private String genKey(String usesspace, String uses, String min, String max) {
@@ -247,7 +329,8 @@ public class Route {
                                     && Derivation.match(min, max, d.getVersion())) result.add(d);
                         }
                         if (!result.isEmpty()) {
-                            if (cache != null) cache.set(key, result);
+                            if (cache != null)
+                                cache.set(key, Collections.unmodifiableList(new ArrayList(result)));
                             flag = false;
                         }
                     } else {
@@ -265,7 +348,7 @@ public class Route {
                     if (i.hasNext()) {
                         StackElement element = (StackElement) i.next();
                         Cache cache = element.getTRCache();
-                        if (cache != null) cache.set(key, result);
+                        if (cache != null) cache.set(key, Collections.EMPTY_LIST);
                     }
                 }
 
@@ -1464,10 +1547,20 @@ public class Route {
      */
     public void requestLfn(Collection list, BookKeeper state) {
         if (m_stack.isEmpty() || list == null || state == null) return;
+        java.util.List batch = new ArrayList(PREFETCH_SIZE);
         for (Iterator i = list.iterator(); i.hasNext(); ) {
-            String lfn = (String) i.next();
-            Logging.instance().log("route", 0, "requesting LFN " + lfn);
-            requestLfn(lfn, state, 0, null);
+            batch.add(i.next());
+            if (batch.size() == PREFETCH_SIZE || !i.hasNext()) {
+                // warm the caches with one search per batch
+                m_stack.prefetchOutputs(batch);
+                for (Iterator j = batch.iterator(); j.hasNext(); ) {
+                    String lfn = (String) j.next();
+                    Logging.instance().log("route", 0, "requesting LFN " + lfn);
+                    requestLfn(lfn, state, 0, null);
+                }
+                batch.clear();
+            }
         }
+        m_stack.logStatistics((StackElement) m_stack.m_stack.get(0), 0);
     }
 }
@@ -264,7 +264,7 @@ public class Logging {
      * @param msg is the message to put onto the stream.
      * @param newline is a boolean, which will call invoke the println method.
      */
-    public void log(String handle, int level, String msg, boolean newline) {
+    public synchronized void log(String handle, int level, String msg, boolean newline) {
         Integer maximum = (Integer) this.m_levels.get(handle);
 
         // do something, if verbosity if active
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.common.logging;
+
+import edu.isi.pegasus.common.logging.logger.Default;
+import edu.isi.pegasus.planner.benchmark.PlannerFixture;
+import edu.isi.pegasus.planner.benchmark.WorkflowGenerator;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken by the planner to plan a generated workflow, when logging at the INFO and
+ * DEBUG levels, with the messages written out either synchronously or by the asynchronous writer of
+ * the Default logger. Each measurement runs the workflow through all the refinement phases and the
+ * code generation, against a workflow that is parsed afresh before the iteration. The messages are
+ * written to a temporary file. As for the planner, generating the submit files requires
+ * condor_submit_dag and pegasus-dagman in the PATH.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="LogManagerBenchmark -p size=10000"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(
+        value = 1,
+        jvmArgsAppend = {"-Xmx4g"})
+public class LogManagerBenchmark {
+
+    @Param({"INFO", "DEBUG"})
+    public String level;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    @Param({"montage"})
+    public String shape;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    /** The directory the workflow and catalogs are generated in. */
+    private File mDirectory;
+
+    /** The file the messages are written to. */
+    private File mLog;
+
+    /** The logger used by the planner. */
+    private Default mLogger;
+
+    /** The fixture driving the planner. */
+    private PlannerFixture mFixture;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        mDirectory = File.createTempFile("logging-" + shape + "-" + size + "-", "");
+        mDirectory.delete();
+        new WorkflowGenerator(WorkflowGenerator.SHAPE.valueOf(shape), size).write(mDirectory);
+
+        // the planner picks up the singleton loaded here
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(LogManager.PROPERTIES_PREFIX, "Default");
+        props.setProperty(
+                LogManager.PROPERTIES_PREFIX + "." + LogManager.ASYNC_PROPERTY_KEY,
+                Boolean.toString(async));
+        mLogger = (Default) LogManagerFactory.loadSingletonInstance(props);
+        mLog = File.createTempFile("pegasus-log-", ".txt");
+        PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(mLog)));
+        mLogger.setWriter(LogManager.STREAM_TYPE.stdout, ps);
+        mLogger.setWriter(LogManager.STREAM_TYPE.stderr, ps);
+
+        mFixture = new PlannerFixture(mDirectory);
+        mFixture.setLogLevel(
+                level.equals("DEBUG")
+                        ? LogManager.DEBUG_MESSAGE_LEVEL
+                        : LogManager.INFO_MESSAGE_LEVEL);
+    }
+
+    @Setup(Level.Iteration)
+    public void prepare() throws IOException {
+        mFixture.prepare(PlannerFixture.PHASE.data_reuse);
+        mLogger.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        mLogger.close();
+        mLogger.getWriter(LogManager.STREAM_TYPE.stdout).close();
+        mLog.delete();
+        delete(mDirectory);
+    }
+
+    @Benchmark
+    public ADag plan() {
+        ADag dag = null;
+        for (int i = 0; i < PlannerFixture.PHASE.values().length; i++) {
+            dag = mFixture.run();
+        }
+        mLogger.flush();
+        return dag;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+}
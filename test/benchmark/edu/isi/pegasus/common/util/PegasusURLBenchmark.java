@@ -0,0 +1,104 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.common.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the time taken to parse a URL with the PegasusURL parser, against parsing with the
+ * regular expression it used before. The URL's are generated as files in the scratch directories of
+ * a few file servers, and each operation parses the next one and asks for the path and the prefix,
+ * as done by the planner. The bytes allocated per URL are reported by the gc profiler.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="PegasusURLBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PegasusURLBenchmark {
+
+    /** The file servers the URL's refer to. */
+    private static final String[] SERVERS = {
+        "gsiftp://gridftp.isi.edu:2811", "file://", "s3://user@amazon", "scp://login.hpc.edu"
+    };
+
+    /** The regular expression PegasusURL used to parse with. */
+    private static final Pattern PATTERN =
+            Pattern.compile("([\\w]+)://([\\w\\.\\-:@#]*)(/?[\\S]*)");
+
+    /** The number of distinct URL's parsed in turn. */
+    @Param({"1000", "1000000"})
+    public int urls;
+
+    private String[] mURLs;
+
+    private int mNext;
+
+    @Setup
+    public void generate() {
+        mURLs = new String[urls];
+        for (int i = 0; i < urls; i++) {
+            mURLs[i] =
+                    SERVERS[i % SERVERS.length]
+                            + "/scratch/pegasus/run0001/00/"
+                            + (i % 100)
+                            + "/f.b"
+                            + i;
+        }
+    }
+
+    @Benchmark
+    public int regex() {
+        String url = this.next();
+        Matcher m = PATTERN.matcher(url);
+        if (!m.matches()) {
+            throw new RuntimeException("Unable to parse URL " + url);
+        }
+        String prefix = m.group(1) + "://" + m.group(2);
+        return m.group(3).length() + prefix.length();
+    }
+
+    @Benchmark
+    public int scanner() {
+        PegasusURL u = new PegasusURL(this.next());
+        return u.getPath().length() + u.getURLPrefix().length();
+    }
+
+    private String next() {
+        if (mNext == mURLs.length) {
+            mNext = 0;
+        }
+        return mURLs[mNext++];
+    }
+}
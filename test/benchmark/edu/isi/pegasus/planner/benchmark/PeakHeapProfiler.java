@@ -0,0 +1,138 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * A profiler that reports the peak heap usage of each benchmark iteration. Unlike the allocation
+ * reported by the gc profiler, the peaks show how much of the heap the measured code holds on to.
+ * The peaks are reset before the iteration, and again by benchmarks that call {@link #reset()} at
+ * the end of their iteration setup, so that the input they set up is collected into the baseline.
+ * The profiler is enabled by its class name, and works with the single shot benchmarks, for which
+ * JMH does not report auxiliary counters.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="... -prof edu.isi.pegasus.planner.benchmark.PeakHeapProfiler"
+ * </pre>
+ *
+ * <p>The heap result is the sum of the peaks of the heap memory pools, which is an upper bound of
+ * the peak heap usage as the pools need not peak at the same time. The tenured result is the peak
+ * of the pool holding the long lived objects. Benchmarks that measure the footprint of what they
+ * build pass it to {@link #retain(Object)}, and the profiler then also reports the heap that is
+ * freed when it is released at the end of the iteration.
+ */
+public class PeakHeapProfiler implements InternalProfiler {
+
+    /** The object whose footprint is reported at the end of the iteration. */
+    private static volatile Object sRetained;
+
+    /** Collects the garbage, and resets the peaks of the heap memory pools. */
+    public static void reset() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Holds on to an object until the end of the iteration, when its footprint is reported.
+     *
+     * @param o the object
+     */
+    public static void retain(Object o) {
+        sRetained = o;
+    }
+
+    public String getDescription() {
+        return "Peak heap usage of each iteration";
+    }
+
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        reset();
+    }
+
+    public Collection<? extends Result> afterIteration(
+            BenchmarkParams benchmarkParams,
+            IterationParams iterationParams,
+            IterationResult result) {
+        long heap = 0;
+        long tenured = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            long peak = pool.getPeakUsage().getUsed();
+            heap += peak;
+            if (pool.getName().contains("Old") || pool.getName().contains("Tenured")) {
+                tenured += peak;
+            }
+        }
+        List<Result> results = new ArrayList<Result>();
+        results.add(
+                new ScalarResult(
+                        "·peak.heap", heap / (1024.0 * 1024.0), "MB", AggregationPolicy.AVG));
+        results.add(
+                new ScalarResult(
+                        "·peak.tenured", tenured / (1024.0 * 1024.0), "MB", AggregationPolicy.AVG));
+        if (sRetained != null) {
+            long before = usedHeap();
+            sRetained = null;
+            long retained = before - usedHeap();
+            results.add(
+                    new ScalarResult(
+                            "·retained.heap",
+                            retained / (1024.0 * 1024.0),
+                            "MB",
+                            AggregationPolicy.AVG));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the used heap after garbage collection.
+     *
+     * @return bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.catalog.SiteCatalog;
+import edu.isi.pegasus.planner.catalog.site.SiteFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerCache;
+import edu.isi.pegasus.planner.classes.PlannerMetrics;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.client.CPlanner;
+import edu.isi.pegasus.planner.code.CodeGeneratorFactory;
+import edu.isi.pegasus.planner.common.PegasusConfiguration;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.dax.Callback;
+import edu.isi.pegasus.planner.parser.dax.DAXParser;
+import edu.isi.pegasus.planner.refiner.CleanupEngine;
+import edu.isi.pegasus.planner.refiner.DataReuseEngine;
+import edu.isi.pegasus.planner.refiner.DeployWorkerPackage;
+import edu.isi.pegasus.planner.refiner.InterPoolEngine;
+import edu.isi.pegasus.planner.refiner.NodeCollapser;
+import edu.isi.pegasus.planner.refiner.ReduceEdges;
+import edu.isi.pegasus.planner.refiner.RemoveDirectory;
+import edu.isi.pegasus.planner.refiner.ReplicaCatalogBridge;
+import edu.isi.pegasus.planner.refiner.TransferEngine;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Drives a workflow through the refinement phases of the planner one phase at a time, in the same
+ * order and with the same glue as <code>MainEngine.runPlanner</code> and the code generation in
+ * <code>CPlanner</code>. This allows each phase to be timed on its own, against a workflow that has
+ * been through all the phases before it.
+ *
+ * <p>The workflow and catalogs are read from a directory populated by {@link WorkflowGenerator}.
+ * The jobs are planned for the condorpool site with the sharedfs data configuration, clustered
+ * horizontally, with inplace cleanup, and with the submit files written to a directory underneath.
+ * Random execution directories are not used, so no create directory jobs are added.
+ */
+public class PlannerFixture {
+
+    /** The refinement phases, in the order in which the planner runs them. */
+    public enum PHASE {
+        data_reuse,
+        site_selection,
+        clustering,
+        transfer,
+        cleanup,
+        reduce_edges,
+        code_generation
+    };
+
+    /** The directory containing the workflow and the catalogs. */
+    private final File mDirectory;
+
+    /** The bag of planner objects. */
+    private PegasusBag mBag;
+
+    /** The workflow being refined. */
+    private ADag mDAG;
+
+    /** The bridge to the replica catalog. */
+    private ReplicaCatalogBridge mRCBridge;
+
+    /** The data reuse engine, holding the jobs deleted from the workflow. */
+    private DataReuseEngine mDataReuseEngine;
+
+    /** The deployment engine for the worker package. */
+    private DeployWorkerPackage mDeploy;
+
+    /** The planner cache populated by the transfer engine. */
+    private PlannerCache mPlannerCache;
+
+    /** The next phase to be run. */
+    private PHASE mNext;
+
+    /** The level the planner logs at. */
+    private int mLogLevel = LogManager.WARNING_MESSAGE_LEVEL;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param directory the directory containing the workflow and the catalogs
+     */
+    public PlannerFixture(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Sets the level the planner logs at, when the workflow is next parsed. Defaults to WARNING.
+     *
+     * @param level the level
+     */
+    public void setLogLevel(int level) {
+        mLogLevel = level;
+    }
+
+    /**
+     * Parses the workflow afresh, and runs all the phases before the phase passed, so that the
+     * phase can be run next.
+     *
+     * @param phase the phase to be run next
+     * @throws IOException
+     */
+    public void prepare(PHASE phase) throws IOException {
+        this.parse();
+        while (mNext != phase) {
+            this.run();
+        }
+        this.before(mNext);
+    }
+
+    /**
+     * Runs the next phase.
+     *
+     * @return the workflow after the phase
+     */
+    public ADag run() {
+        PHASE phase = mNext;
+        switch (phase) {
+            case data_reuse:
+                mDataReuseEngine = new DataReuseEngine(mDAG, mBag);
+                mDAG = mDataReuseEngine.reduceWorkflow(mDAG, mRCBridge);
+                break;
+
+            case site_selection:
+                InterPoolEngine ip = new InterPoolEngine(mDAG, mBag);
+                ip.determineSites();
+                mBag = ip.getPegasusBag();
+                break;
+
+            case clustering:
+                try {
+                    mDAG = new NodeCollapser(mBag).cluster(mDAG);
+                } catch (Exception e) {
+                    throw new RuntimeException("Unable to cluster the workflow", e);
+                }
+                break;
+
+            case transfer:
+                new TransferEngine(
+                                mDAG,
+                                mBag,
+                                mDataReuseEngine.getDeletedJobs(),
+                                mDataReuseEngine.getDeletedLeafJobs())
+                        .addTransferNodes(mRCBridge, mPlannerCache);
+                break;
+
+            case cleanup:
+                mDAG = new CleanupEngine(mBag).addCleanupJobs(mDAG);
+                break;
+
+            case reduce_edges:
+                mDAG = new ReduceEdges(ReduceEdges.ALGORITHM.bitset).reduce(mDAG);
+                break;
+
+            case code_generation:
+                try {
+                    CodeGeneratorFactory.loadInstance(mBag).generateCode(mDAG);
+                } catch (Exception e) {
+                    throw new RuntimeException("Unable to generate the submit files", e);
+                }
+                break;
+        }
+        int next = phase.ordinal() + 1;
+        mNext = (next < PHASE.values().length) ? PHASE.values()[next] : null;
+        if (mNext != null) {
+            this.before(mNext);
+        }
+        return mDAG;
+    }
+
+    /**
+     * Returns the workflow being refined.
+     *
+     * @return the workflow
+     */
+    public ADag getWorkflow() {
+        return mDAG;
+    }
+
+    /**
+     * Runs the glue in the planner that precedes a phase, that is not part of the phase itself.
+     *
+     * @param phase the phase about to be run
+     */
+    private void before(PHASE phase) {
+        switch (phase) {
+            case clustering:
+                mDeploy = DeployWorkerPackage.loadDeployWorkerPackage(mBag);
+                mDeploy.initialize(mDAG);
+                break;
+
+            case transfer:
+                mPlannerCache = new PlannerCache();
+                mPlannerCache.initialize(mBag, mDAG);
+                break;
+
+            case cleanup:
+                mBag.add(PegasusBag.PLANNER_CACHE, mPlannerCache);
+                mRCBridge.closeConnection();
+                mDAG = mDeploy.addSetupNodes(mDAG);
+                break;
+
+            case reduce_edges:
+                mDAG =
+                        new RemoveDirectory(
+                                        mDAG, mBag, mBag.getPlannerOptions().getSubmitDirectory())
+                                .addRemoveDirectoryNodes(mDAG);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Sets up the properties, options and catalogs, and parses the workflow the way the planner
+     * does before starting the refinement.
+     *
+     * @throws IOException
+     */
+    private void parse() throws IOException {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(
+                "pegasus.catalog.site.file",
+                new File(mDirectory, WorkflowGenerator.SITE_CATALOG_FILE).getAbsolutePath());
+        props.setProperty("pegasus.catalog.replica", "YAML");
+        props.setProperty(
+                "pegasus.catalog.replica.file",
+                new File(mDirectory, WorkflowGenerator.REPLICA_CATALOG_FILE).getAbsolutePath());
+        props.setProperty("pegasus.catalog.transformation", "YAML");
+        props.setProperty(
+                "pegasus.catalog.transformation.file",
+                new File(mDirectory, WorkflowGenerator.TRANSFORMATION_CATALOG_FILE)
+                        .getAbsolutePath());
+        props.setProperty("pegasus.data.configuration", "sharedfs");
+        props.setProperty("pegasus.metrics.app", "none");
+
+        LogManager logger = LogManagerFactory.loadSingletonInstance(props);
+        logger.setLevel(mLogLevel);
+        logger.logEventStart("benchmark.planner", "workflow", mDirectory.getName());
+
+        File submit = new File(mDirectory, "submit");
+        CPlanner planner = new CPlanner(logger);
+        planner.initialize(props);
+        PlannerOptions options =
+                planner.parseCommandLineArguments(
+                        new String[] {
+                            "--sites",
+                            WorkflowGenerator.EXECUTION_SITE,
+                            "--output-sites",
+                            "local",
+                            "--cluster",
+                            "horizontal",
+                            "--cleanup",
+                            "inplace",
+                            "--dir",
+                            submit.getAbsolutePath(),
+                            "--relative-dir",
+                            "run",
+                            "--force",
+                            new File(mDirectory, WorkflowGenerator.WORKFLOW_FILE).getAbsolutePath()
+                        });
+
+        mBag = new PegasusBag();
+        mBag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        mBag.add(PegasusBag.PLANNER_OPTIONS, options);
+        mBag.add(PegasusBag.PEGASUS_LOGMANAGER, logger);
+        mBag.add(PegasusBag.PLANNER_METRICS, new PlannerMetrics());
+        mBag.add(PegasusBag.PLANNER_DIRECTORY, mDirectory);
+
+        PegasusConfiguration configurator = new PegasusConfiguration(logger);
+        configurator.loadConfigurationPropertiesAndOptions(props, options);
+
+        String dax = options.getDAX();
+        DAXParser p =
+                DAXParserFactory.loadDAXParser(mBag, DAXParserFactory.DEFAULT_CALLBACK_CLASS, dax);
+        Callback cb = p.getDAXCallback();
+        p.parse(dax);
+        mDAG = (ADag) cb.getConstructedObject();
+        mDAG.generateFlowName();
+        mDAG.setFlowTimestamp(options.getDateTime(props.useExtendedTimeStamp()));
+        mDAG.setDAXMTime(new File(dax));
+        mDAG.generateFlowID();
+        mDAG.setReleaseVersion();
+        mDAG.setRootWorkflowUUID(mDAG.getWorkflowUUID());
+
+        SiteStore store = new SiteStore();
+        SiteCatalog catalog = SiteFactory.loadInstance(mBag);
+        List<String> sites = new LinkedList<String>(Arrays.asList("*", "local"));
+        catalog.load(sites);
+        for (String site : catalog.list()) {
+            store.addEntry(catalog.lookup(site));
+        }
+        catalog.close();
+        store.setForPlannerUse(props, options);
+        configurator.updateSiteStoreAndOptions(store, options);
+        mBag.add(PegasusBag.SITE_STORE, store);
+        mBag.add(PegasusBag.TRANSFORMATION_CATALOG, TransformationFactory.loadInstance(mBag));
+
+        options.setSubmitDirectory(submit.getAbsolutePath(), "run");
+        new File(options.getSubmitDirectory()).mkdirs();
+        props.setPropertiesFileBackend(options.getSubmitDirectory());
+        options.setRandomDir("run");
+
+        // the refinement starts with the replica catalog bridge and the cycle check
+        mDAG.setWorkflowRefinementStarted(true);
+        mDAG.getWorkflowMetrics().lockTaskMetrics(true);
+        mRCBridge = new ReplicaCatalogBridge(mDAG, mBag);
+        if (mDAG.hasCycles()) {
+            throw new RuntimeException("Generated workflow has cycles " + mDAG.getCyclicEdge());
+        }
+        mNext = PHASE.data_reuse;
+        mDataReuseEngine = null;
+        mDeploy = null;
+        mPlannerCache = null;
+    }
+
+    /**
+     * Plans a generated workflow phase by phase, printing the time taken by each phase and the
+     * number of jobs after it.
+     *
+     * <p>Usage: PlannerFixture [shape] [number of jobs]. Defaults to montage 10000.
+     *
+     * @param args the arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        WorkflowGenerator.SHAPE shape =
+                WorkflowGenerator.SHAPE.valueOf(args.length > 0 ? args[0] : "montage");
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+        File directory = File.createTempFile("planner-fixture-", "");
+        directory.delete();
+        WorkflowGenerator generator = new WorkflowGenerator(shape, size);
+        generator.write(directory);
+
+        PlannerFixture fixture = new PlannerFixture(directory);
+        fixture.prepare(PHASE.data_reuse);
+        System.out.printf("%-16s %10s %8s%n", "phase", "time (ms)", "jobs");
+        for (PHASE phase : PHASE.values()) {
+            long start = System.currentTimeMillis();
+            ADag dag = fixture.run();
+            System.out.printf(
+                    "%-16s %10d %8d%n",
+                    phase, System.currentTimeMillis() - start, dag.getNoOfJobs());
+        }
+        System.out.println("workflow and submit files in " + directory);
+    }
+}
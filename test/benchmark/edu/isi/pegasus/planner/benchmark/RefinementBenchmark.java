@@ -0,0 +1,113 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken by each refinement phase of the planner, against generated workflows of
+ * different shapes and sizes. As the phases modify the workflow, each measurement is a single
+ * invocation of the phase, against a workflow that is parsed afresh and run through all the earlier
+ * phases before the iteration. The allocation per phase is reported by running with the gc
+ * profiler. As for the planner, generating the submit files requires condor_submit_dag and
+ * pegasus-dagman in the PATH.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="RefinementBenchmark -p shape=montage -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(
+        value = 1,
+        jvmArgsAppend = {"-Xmx4g"})
+public class RefinementBenchmark {
+
+    @Param({"fan", "montage", "chain", "fanin"})
+    public String shape;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    @Param({
+        "data_reuse",
+        "site_selection",
+        "clustering",
+        "transfer",
+        "cleanup",
+        "reduce_edges",
+        "code_generation"
+    })
+    public String phase;
+
+    /** The directory the workflow and catalogs are generated in. */
+    private File mDirectory;
+
+    /** The fixture driving the planner. */
+    private PlannerFixture mFixture;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        mDirectory = File.createTempFile("refinement-" + shape + "-" + size + "-", "");
+        mDirectory.delete();
+        new WorkflowGenerator(WorkflowGenerator.SHAPE.valueOf(shape), size).write(mDirectory);
+        mFixture = new PlannerFixture(mDirectory);
+    }
+
+    @Setup(Level.Iteration)
+    public void prepare() throws IOException {
+        mFixture.prepare(PlannerFixture.PHASE.valueOf(phase));
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        delete(mDirectory);
+    }
+
+    @Benchmark
+    public ADag refine() {
+        return mFixture.run();
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+}
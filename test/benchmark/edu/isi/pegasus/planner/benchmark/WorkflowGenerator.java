@@ -0,0 +1,373 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates synthetic workflows in the 5.0 YAML format, together with the site, replica and
+ * transformation catalogs required to plan them. The workflows are made up of repeated groups of
+ * jobs of one of the following shapes
+ *
+ * <pre>
+ *   fan     a split job fanning out to a hundred process jobs, fanning back in to a merge job.
+ *   montage the levels of a montage mosaic of a hundred images, with projections, pairwise
+ *           difference fits, a background model and correction, and the final co-addition.
+ *   chain   chains of a thousand jobs, each job consuming the output of the previous one.
+ *   fanin   ten levels of a hundred jobs, each job reading a reference file shared by the whole
+ *           group and consuming the output of the job above it, fanning in to a reduce job that
+ *           consumes the outputs of all the levels.
+ * </pre>
+ *
+ * The raw inputs of each group are registered in the replica catalog on the local site, and the
+ * final outputs of each group are staged out to the local site.
+ */
+public class WorkflowGenerator {
+
+    /** The shapes of the workflows that can be generated. */
+    public enum SHAPE {
+        fan,
+        montage,
+        chain,
+        fanin
+    };
+
+    /** The basename of the generated workflow. */
+    public static final String WORKFLOW_FILE = "workflow.yml";
+
+    /** The basename of the generated site catalog. */
+    public static final String SITE_CATALOG_FILE = "sites.yml";
+
+    /** The basename of the generated replica catalog. */
+    public static final String REPLICA_CATALOG_FILE = "rc.yml";
+
+    /** The basename of the generated transformation catalog. */
+    public static final String TRANSFORMATION_CATALOG_FILE = "tc.yml";
+
+    /** The site on which the jobs are executed. */
+    public static final String EXECUTION_SITE = "condorpool";
+
+    /** The number of process jobs per group in the fan shape. */
+    private static final int FAN_WIDTH = 100;
+
+    /** The number of images per group in the montage shape. */
+    private static final int MONTAGE_WIDTH = 100;
+
+    /** The length of each chain in the chain shape. */
+    private static final int CHAIN_LENGTH = 1000;
+
+    /** The number of jobs per level in the fanin shape. */
+    private static final int FANIN_WIDTH = 100;
+
+    /** The number of levels in the fanin shape. */
+    private static final int FANIN_LEVELS = 10;
+
+    /** The shape of the workflow. */
+    private final SHAPE mShape;
+
+    /** The jobs generated. */
+    private final List<GeneratedJob> mJobs;
+
+    /** The raw inputs of the workflow, that are registered in the replica catalog. */
+    private final List<String> mRawInputs;
+
+    /** The transformations referred to by the jobs. */
+    private final Set<String> mTransformations;
+
+    /**
+     * Generates a workflow of roughly the size passed. The size is rounded up to a whole number of
+     * groups of the shape.
+     *
+     * @param shape the shape of the workflow
+     * @param size the number of jobs
+     */
+    public WorkflowGenerator(SHAPE shape, int size) {
+        mShape = shape;
+        mJobs = new ArrayList<GeneratedJob>();
+        mRawInputs = new ArrayList<String>();
+        mTransformations = new LinkedHashSet<String>();
+        int group = 0;
+        while (mJobs.size() < size) {
+            switch (shape) {
+                case fan:
+                    this.fan(group);
+                    break;
+
+                case montage:
+                    this.montage(group);
+                    break;
+
+                case chain:
+                    this.chain(group, Math.min(CHAIN_LENGTH, size - mJobs.size()));
+                    break;
+
+                case fanin:
+                    this.fanin(group);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unsupported shape " + shape);
+            }
+            group++;
+        }
+    }
+
+    /**
+     * Returns the number of jobs in the workflow.
+     *
+     * @return the number of jobs
+     */
+    public int getJobCount() {
+        return mJobs.size();
+    }
+
+    /**
+     * Writes out the workflow and the catalogs to a directory.
+     *
+     * @param directory the directory
+     * @throws IOException
+     */
+    public void write(File directory) throws IOException {
+        directory.mkdirs();
+        this.writeWorkflow(new File(directory, WORKFLOW_FILE));
+        this.writeSiteCatalog(new File(directory, SITE_CATALOG_FILE), directory);
+        this.writeReplicaCatalog(new File(directory, REPLICA_CATALOG_FILE), directory);
+        this.writeTransformationCatalog(new File(directory, TRANSFORMATION_CATALOG_FILE));
+    }
+
+    private void fan(int g) {
+        String raw = this.raw("raw." + g);
+        this.job("split", "split." + g, raw);
+        List<String> processed = new ArrayList<String>();
+        for (int i = 0; i < FAN_WIDTH; i++) {
+            String out = "p." + g + "." + i;
+            this.job("process", out, "split." + g);
+            processed.add(out);
+        }
+        this.job("merge", "merged." + g, processed.toArray(new String[0])).mStageOut = true;
+    }
+
+    private void montage(int g) {
+        List<String> projected = new ArrayList<String>();
+        for (int i = 0; i < MONTAGE_WIDTH; i++) {
+            String out = "p." + g + "." + i + ".fits";
+            this.job("mProject", out, this.raw("raw." + g + "." + i + ".fits"));
+            projected.add(out);
+        }
+        List<String> diffs = new ArrayList<String>();
+        for (int i = 0; i + 1 < MONTAGE_WIDTH; i++) {
+            String out = "d." + g + "." + i + ".fits";
+            this.job("mDiffFit", out, projected.get(i), projected.get(i + 1));
+            diffs.add(out);
+        }
+        this.job("mConcatFit", "fits." + g + ".tbl", diffs.toArray(new String[0]));
+        this.job("mBgModel", "corrections." + g + ".tbl", "fits." + g + ".tbl");
+        List<String> corrected = new ArrayList<String>();
+        for (int i = 0; i < MONTAGE_WIDTH; i++) {
+            String out = "c." + g + "." + i + ".fits";
+            this.job("mBackground", out, projected.get(i), "corrections." + g + ".tbl");
+            corrected.add(out);
+        }
+        this.job("mImgtbl", "images." + g + ".tbl", corrected.toArray(new String[0]));
+        corrected.add("images." + g + ".tbl");
+        this.job("mAdd", "mosaic." + g + ".fits", corrected.toArray(new String[0])).mStageOut =
+                true;
+        this.job("mJPEG", "mosaic." + g + ".jpg", "mosaic." + g + ".fits").mStageOut = true;
+    }
+
+    private void chain(int g, int length) {
+        String previous = this.raw("raw." + g);
+        GeneratedJob job = null;
+        for (int i = 0; i < length; i++) {
+            String out = "c." + g + "." + i;
+            job = this.job("step", out, previous);
+            previous = out;
+        }
+        job.mStageOut = true;
+    }
+
+    private void fanin(int g) {
+        String reference = this.raw("ref." + g);
+        String[] previous = new String[FANIN_WIDTH];
+        List<String> outputs = new ArrayList<String>();
+        for (int l = 0; l < FANIN_LEVELS; l++) {
+            for (int i = 0; i < FANIN_WIDTH; i++) {
+                String input = (l == 0) ? this.raw("raw." + g + "." + i) : previous[i];
+                String out = "f." + g + "." + l + "." + i;
+                this.job("process", out, reference, input);
+                previous[i] = out;
+                outputs.add(out);
+            }
+        }
+        this.job("reduce", "reduced." + g, outputs.toArray(new String[0])).mStageOut = true;
+    }
+
+    private String raw(String lfn) {
+        mRawInputs.add(lfn);
+        return lfn;
+    }
+
+    private GeneratedJob job(String transformation, String output, String... inputs) {
+        GeneratedJob job = new GeneratedJob("ID" + mJobs.size(), transformation, output, inputs);
+        mJobs.add(job);
+        mTransformations.add(transformation);
+        return job;
+    }
+
+    private void writeWorkflow(File f) throws IOException {
+        Map<String, String> producers = new LinkedHashMap<String, String>();
+        Map<String, List<String>> children = new LinkedHashMap<String, List<String>>();
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(f)))) {
+            pw.println("pegasus: \"5.0\"");
+            pw.println("name: " + mShape + "-" + mJobs.size());
+            pw.println("jobs:");
+            for (GeneratedJob job : mJobs) {
+                pw.println("  - type: job");
+                pw.println("    id: " + job.mID);
+                pw.println("    name: " + job.mTransformation);
+                pw.println("    namespace: benchmark");
+                pw.println("    arguments: [\"-o\", \"" + job.mOutput + "\"]");
+                pw.println("    uses:");
+                for (String input : job.mInputs) {
+                    pw.println("      - lfn: " + input);
+                    pw.println("        type: input");
+                    String parent = producers.get(input);
+                    if (parent != null) {
+                        List<String> c = children.get(parent);
+                        if (c == null) {
+                            c = new ArrayList<String>();
+                            children.put(parent, c);
+                        }
+                        c.add(job.mID);
+                    }
+                }
+                pw.println("      - lfn: " + job.mOutput);
+                pw.println("        type: output");
+                pw.println("        stageOut: " + job.mStageOut);
+                pw.println("        registerReplica: false");
+                producers.put(job.mOutput, job.mID);
+            }
+            pw.println("jobDependencies:");
+            for (Map.Entry<String, List<String>> entry : children.entrySet()) {
+                pw.println("  - id: " + entry.getKey());
+                pw.println("    children:");
+                for (String child : entry.getValue()) {
+                    pw.println("      - " + child);
+                }
+            }
+        }
+    }
+
+    private void writeSiteCatalog(File f, File directory) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(f)))) {
+            pw.println("pegasus: \"5.0\"");
+            pw.println("sites:");
+            pw.println("  - name: local");
+            pw.println("    directories:");
+            this.writeDirectory(pw, "sharedScratch", new File(directory, "scratch"));
+            this.writeDirectory(pw, "localStorage", new File(directory, "outputs"));
+            pw.println("    profiles:");
+            pw.println("      env:");
+            pw.println("        PEGASUS_HOME: /usr");
+            pw.println("  - name: " + EXECUTION_SITE);
+            pw.println("    directories:");
+            pw.println("      - type: sharedScratch");
+            pw.println("        path: /scratch");
+            pw.println("        fileServers:");
+            pw.println("          - operation: all");
+            pw.println("            url: gsiftp://condor.example.org/scratch");
+            pw.println("    profiles:");
+            pw.println("      pegasus:");
+            pw.println("        style: condor");
+            pw.println("      condor:");
+            pw.println("        universe: vanilla");
+            pw.println("      env:");
+            pw.println("        PEGASUS_HOME: /usr");
+        }
+    }
+
+    private void writeDirectory(PrintWriter pw, String type, File path) {
+        pw.println("      - type: " + type);
+        pw.println("        path: " + path.getAbsolutePath());
+        pw.println("        fileServers:");
+        pw.println("          - operation: all");
+        pw.println("            url: file://" + path.getAbsolutePath());
+    }
+
+    private void writeReplicaCatalog(File f, File directory) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(f)))) {
+            pw.println("pegasus: \"5.0\"");
+            pw.println("replicas:");
+            for (String lfn : mRawInputs) {
+                pw.println("  - lfn: " + lfn);
+                pw.println("    pfns:");
+                pw.println("      - site: local");
+                pw.println("        pfn: " + new File(directory, "inputs/" + lfn));
+            }
+        }
+    }
+
+    private void writeTransformationCatalog(File f) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(f)))) {
+            pw.println("pegasus: \"5.0\"");
+            pw.println("transformations:");
+            for (String transformation : mTransformations) {
+                pw.println("  - namespace: benchmark");
+                pw.println("    name: " + transformation);
+                pw.println("    sites:");
+                pw.println("      - name: " + EXECUTION_SITE);
+                pw.println("        pfn: /usr/bin/" + transformation);
+                pw.println("        type: installed");
+                // the jobs are clustered horizontally, ten to a cluster
+                pw.println("    profiles:");
+                pw.println("      pegasus:");
+                pw.println("        clusters.size: 10");
+            }
+        }
+    }
+
+    /** A generated job, with one output and any number of inputs. */
+    private static class GeneratedJob {
+
+        private final String mID;
+
+        private final String mTransformation;
+
+        private final String mOutput;
+
+        private final String[] mInputs;
+
+        private boolean mStageOut;
+
+        public GeneratedJob(String id, String transformation, String output, String[] inputs) {
+            mID = id;
+            mTransformation = transformation;
+            mOutput = output;
+            mInputs = inputs;
+            mStageOut = false;
+        }
+    }
+}
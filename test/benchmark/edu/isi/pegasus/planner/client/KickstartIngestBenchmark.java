@@ -0,0 +1,152 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.griphyn.vdl.dbschema.InvocationSchema;
+import org.griphyn.vdl.directive.ParseKickstart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken to ingest kickstart output files into a SQLite provenance tracking
+ * catalog, when the files are parsed and inserted one at a time, against when they are parsed by a
+ * pool of threads and inserted in batches. The files are generated from the one in the unit test
+ * input directory, and each measurement ingests them into a new database. The allocation reported
+ * by the gc profiler leaves out the threads of the pool. Needs to be run from the top of the source
+ * tree.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="KickstartIngestBenchmark -p files=10000 -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KickstartIngestBenchmark {
+
+    /** The directory with the kickstart output file and the database schema. */
+    private static final String INPUT_DIRECTORY = "test/junit/edu/isi/pegasus/planner/client/input";
+
+    @Param({"2000"})
+    public int files;
+
+    /** The number of threads parsing the files, or 0 to ingest one file at a time. */
+    @Param({"0", "1", "2", "4"})
+    public int threads;
+
+    /** The number of records per transaction, when ingesting in batches. */
+    @Param({"100"})
+    public int commit;
+
+    private File mDirectory;
+
+    private List<String> mFiles;
+
+    private String mDDL;
+
+    private int mDatabases;
+
+    private ParseKickstart mParser;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        mDirectory = Files.createTempDirectory("ptc").toFile();
+        String template =
+                new String(
+                        Files.readAllBytes(new File(INPUT_DIRECTORY, "kickstart.out").toPath()),
+                        StandardCharsets.UTF_8);
+        mFiles = new ArrayList<String>();
+        for (int i = 0; i < files; i++) {
+            File f = new File(mDirectory, "record." + i + ".out");
+            Files.write(
+                    f.toPath(),
+                    template.replace("pid=\"23370\"", "pid=\"" + (1000 + i) + "\"")
+                            .getBytes(StandardCharsets.UTF_8));
+            mFiles.add(f.getPath());
+        }
+        mDDL =
+                new String(
+                        Files.readAllBytes(new File(INPUT_DIRECTORY, "ptc-sqlite.sql").toPath()),
+                        StandardCharsets.UTF_8);
+    }
+
+    @Setup(Level.Iteration)
+    public void connect() throws Exception {
+        String url = "jdbc:sqlite:" + new File(mDirectory, "ptc." + mDatabases++ + ".db").getPath();
+        try (Connection c = DriverManager.getConnection(url);
+                Statement s = c.createStatement()) {
+            for (String statement : mDDL.replaceAll("--[^\n]*", "").split(";")) {
+                if (!statement.trim().isEmpty()) {
+                    s.executeUpdate(statement);
+                }
+            }
+        }
+        System.setProperty("pegasus.catalog.provenance.db.url", url);
+        mParser = new ParseKickstart(new InvocationSchema("SQLite"), false);
+        DriverManager.setLogWriter(null);
+        mParser.setThreads(Math.max(threads, 1));
+        mParser.setCommitSize(commit);
+    }
+
+    @TearDown(Level.Iteration)
+    public void disconnect() throws Exception {
+        mParser.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        for (File f : mDirectory.listFiles()) {
+            f.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public Object ingest() throws Exception {
+        if (threads > 0) {
+            return mParser.parseFiles(mFiles);
+        }
+        List result = null;
+        for (String file : mFiles) {
+            result = mParser.parseFile(file);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.dax;
+
+import edu.isi.pegasus.planner.benchmark.PeakHeapProfiler;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares generating a workflow with the ADAG, that holds the whole workflow in memory until it is
+ * written out, against the streaming workflow builder. The workflows are pipelines of jobs, each
+ * reading the output of the previous job in its pipeline and a shared reference file. Each
+ * measurement generates and writes out one workflow. The peak heap of each measurement is reported
+ * by running with the {@link PeakHeapProfiler}, and the allocation by running with the gc profiler.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="StreamingADAGBenchmark -p jobs=1000000
+ *       -prof edu.isi.pegasus.planner.benchmark.PeakHeapProfiler"
+ *   ant benchmark-java -Dbenchmark.args="StreamingADAGBenchmark -p format=xml -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(
+        value = 1,
+        jvmArgsAppend = {"-Xmx4g"})
+public class StreamingADAGBenchmark {
+
+    /** The number of jobs in each pipeline of the generated workflow. */
+    private static final int PIPELINE = 10;
+
+    @Param({"yaml", "xml"})
+    public String format;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobs;
+
+    /** The file the workflow is written to. */
+    private java.io.File mFile;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        mFile = java.io.File.createTempFile("benchmark", "." + format);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long adag() {
+        ADAG adag = new ADAG("benchmark");
+        generate(adag, null, jobs);
+        adag.writeToFile(mFile.getAbsolutePath(), ADAG.FORMAT.valueOf(format));
+        return mFile.length();
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        StreamingADAG streaming =
+                new StreamingADAG(
+                        "benchmark",
+                        new BufferedWriter(new FileWriter(mFile)),
+                        ADAG.FORMAT.valueOf(format));
+        generate(null, streaming, jobs);
+        streaming.close();
+        return mFile.length();
+    }
+
+    /**
+     * Generates a workflow of pipelines, into either of the builders.
+     *
+     * @param adag the ADAG, or null
+     * @param streaming the streaming builder, or null
+     * @param jobs the number of jobs
+     */
+    private static void generate(ADAG adag, StreamingADAG streaming, int jobs) {
+        Executable e = new Executable("pegasus", "process", "1.0");
+        e.setArchitecture(Executable.ARCH.X86).setOS(Executable.OS.LINUX);
+        e.addPhysicalFile(new PFN("/usr/bin/process", "local"));
+        File reference = new File("reference");
+        reference.addPhysicalFile("file:///scratch/reference", "local");
+        if (adag != null) {
+            adag.addExecutable(e).addFile(reference);
+        } else {
+            streaming.addExecutable(e).addFile(reference);
+        }
+
+        for (int i = 0; i < jobs; i++) {
+            Job job = new Job("ID" + i, "pegasus", "process", "1.0");
+            File in = new File("f." + i + ".in");
+            File out = new File("f." + i + ".out");
+            if (i % PIPELINE != 0) {
+                in = new File("f." + (i - 1) + ".out");
+            }
+            job.addArgument("-i ").addArgument(in).addArgument(" -o ").addArgument(out);
+            job.uses(in, File.LINK.INPUT);
+            job.uses(reference, File.LINK.INPUT);
+            job.uses(out, File.LINK.OUTPUT);
+            job.addProfile(Profile.NAMESPACE.dagman, "retry", "3");
+            if (adag != null) {
+                adag.addJob(job);
+                if (i % PIPELINE != 0) {
+                    adag.addDependency("ID" + (i - 1), "ID" + i);
+                }
+            } else {
+                streaming.addJob(job);
+                if (i % PIPELINE != 0) {
+                    streaming.addDependency("ID" + (i - 1), "ID" + i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import edu.isi.pegasus.planner.benchmark.PeakHeapProfiler;
+import edu.isi.pegasus.planner.classes.Job;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the heap footprint of the job profiles, when the jobs are cloned with the profiles
+ * shared copy on write, and when the profiles are deep copied. Each job in the synthetic workflow
+ * is constructed with its own profiles, that are identical for jobs of the same transformation, and
+ * then cloned the way the refinement steps clone jobs. Each measurement clones all the jobs. The
+ * footprint of the clones is reported by running with the {@link PeakHeapProfiler}.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="ProfileFootprintBenchmark
+ *       -prof edu.isi.pegasus.planner.benchmark.PeakHeapProfiler"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProfileFootprintBenchmark {
+
+    /** The number of distinct transformations in the synthetic workflow. */
+    private static final int TRANSFORMATIONS = 10;
+
+    /** The number of clones made of each job. */
+    private static final int CLONES = 2;
+
+    @Param({"100000"})
+    public int jobs;
+
+    /** The jobs to clone. */
+    private List<Job> mJobs;
+
+    @Setup(Level.Iteration)
+    public void create() {
+        mJobs = new ArrayList<Job>(jobs);
+        for (int i = 0; i < jobs; i++) {
+            mJobs.add(createJob(i));
+        }
+        PeakHeapProfiler.reset();
+    }
+
+    @Benchmark
+    public List<Job> copied() {
+        return clone(false);
+    }
+
+    @Benchmark
+    public List<Job> shared() {
+        return clone(true);
+    }
+
+    /**
+     * Clones all the jobs, and retains the clones for the profiler.
+     *
+     * @param share whether the profiles are shared or deep copied
+     * @return the clones
+     */
+    private List<Job> clone(boolean share) {
+        List<Job> clones = new ArrayList<Job>(jobs * CLONES);
+        for (Job job : mJobs) {
+            for (int c = 0; c < CLONES; c++) {
+                clones.add(share ? (Job) job.clone() : deepCopy(job));
+            }
+        }
+        PeakHeapProfiler.retain(clones);
+        return clones;
+    }
+
+    /**
+     * Creates a job with the profiles for its transformation.
+     *
+     * @param i the index of the job
+     * @return the job
+     */
+    private static Job createJob(int i) {
+        Job job = new Job();
+        job.setName("ID" + i);
+        int tx = i % TRANSFORMATIONS;
+        job.condorVariables.construct("universe", "vanilla");
+        job.condorVariables.construct("request_memory", Integer.toString(1024 * (1 + tx % 3)));
+        job.condorVariables.construct("request_cpus", "1");
+        job.condorVariables.construct("requirements", "(TARGET.Arch == \"X86_64\")");
+        job.condorVariables.construct("priority", Integer.toString(tx));
+        job.vdsNS.construct("style", "condor");
+        job.vdsNS.construct("runtime", Integer.toString(60 * (1 + tx)));
+        job.vdsNS.construct("clusters.size", "10");
+        job.dagmanVariables.construct("retry", "3");
+        job.envVariables.construct("PEGASUS_HOME", "/usr");
+        job.envVariables.construct("PATH", "/usr/bin:/bin");
+        job.envVariables.construct("TX_NAME", "tx" + tx);
+        return job;
+    }
+
+    /**
+     * Clones a job deep copying the profiles, as the namespaces did before they were shared.
+     *
+     * @param job the job
+     * @return the clone
+     */
+    private static Job deepCopy(Job job) {
+        Job clone = (Job) job.clone();
+        clone.condorVariables = new Condor(job.condorVariables.mProfileMap);
+        clone.vdsNS = new Pegasus(job.vdsNS.mProfileMap);
+        clone.dagmanVariables = new Dagman(job.dagmanVariables.mProfileMap);
+        clone.envVariables = new ENV(job.envVariables.mProfileMap);
+        clone.globusRSL = new Globus(job.globusRSL.mProfileMap);
+        return clone;
+    }
+}
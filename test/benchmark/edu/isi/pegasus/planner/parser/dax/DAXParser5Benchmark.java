@@ -0,0 +1,240 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.parser.dax;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.benchmark.PeakHeapProfiler;
+import edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStore;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.catalog.transformation.classes.TransformationStore;
+import edu.isi.pegasus.planner.classes.CompoundTransformation;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PCRelation;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.dax.Invoke;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the streaming YAML workflow parser against parsing the whole workflow into a tree first
+ * and then deserializing the jobs from the tree. The workflows are generated, with each job
+ * consuming the output of a job in the previous level. The jobs parsed are only counted and not
+ * retained, so that the measurements reflect the parser only. Each measurement parses the workflow
+ * once. The peak heap of each measurement is reported by running with the {@link PeakHeapProfiler}.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="DAXParser5Benchmark -p jobs=1000000
+ *       -prof edu.isi.pegasus.planner.benchmark.PeakHeapProfiler"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(
+        value = 1,
+        jvmArgsAppend = {"-Xmx4g"})
+public class DAXParser5Benchmark {
+
+    /** The width of each level in the generated workflow. */
+    private static final int LEVEL_WIDTH = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobs;
+
+    /** The generated workflow. */
+    private File mWorkflow;
+
+    private PegasusBag mBag;
+
+    private LogManager mLogger;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        mLogger = LogManagerFactory.loadSingletonInstance(props);
+        mBag = new PegasusBag();
+        mBag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        mBag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        mLogger.logEventStart("benchmark.dax.parser", "parser", "5.0");
+
+        mWorkflow = File.createTempFile("workflow-" + jobs + "-", ".yml");
+        generate(mWorkflow, jobs);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        mWorkflow.delete();
+        mLogger.logEventCompletion();
+    }
+
+    @Benchmark
+    public int tree() throws IOException {
+        CountingCallback c = new CountingCallback();
+        parseTree(mWorkflow, c);
+        return check(c);
+    }
+
+    @Benchmark
+    public int streaming() {
+        CountingCallback c = new CountingCallback();
+        DAXParser5 parser = new DAXParser5(mBag, "5.0");
+        parser.setDAXCallback(c);
+        parser.parse(mWorkflow.getAbsolutePath());
+        return check(c);
+    }
+
+    /**
+     * Checks that all the jobs in the workflow were parsed.
+     *
+     * @param c the callback
+     * @return the number of jobs parsed
+     */
+    private int check(CountingCallback c) {
+        if (c.mJobs != jobs) {
+            throw new RuntimeException("Parsed " + c.mJobs + " jobs instead of " + jobs);
+        }
+        return c.mJobs;
+    }
+
+    /**
+     * Parses the workflow the way the parser did before it streamed the jobs. The whole document is
+     * read as a tree, and the jobs are then deserialized from the tree.
+     *
+     * @param workflow the workflow file
+     * @param c the callback
+     * @throws IOException
+     */
+    private void parseTree(File workflow, Callback c) throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+        mapper.configure(MapperFeature.ALLOW_COERCION_OF_SCALARS, false);
+        try (FileReader reader = new FileReader(workflow)) {
+            JsonNode node = mapper.readTree(reader);
+            for (JsonNode jobNode : node.get("jobs")) {
+                c.cbJob(jobNode.traverse(mapper).readValueAs(Job.class));
+            }
+        }
+    }
+
+    /**
+     * Generates a workflow in the 5.0 YAML format.
+     *
+     * @param f the file to write to
+     * @param jobs the number of jobs
+     * @throws IOException
+     */
+    private static void generate(File f, int jobs) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(f)))) {
+            pw.println("pegasus: \"5.0\"");
+            pw.println("name: benchmark");
+            pw.println("jobs:");
+            for (int i = 0; i < jobs; i++) {
+                pw.println("  - id: ID" + i);
+                pw.println("    name: process");
+                pw.println("    namespace: benchmark");
+                pw.println("    version: \"1.0\"");
+                pw.println("    arguments: [\"-i\", \"f." + i + ".in\", \"-o\", \"f." + i + "\"]");
+                pw.println("    profiles:");
+                pw.println("      pegasus:");
+                pw.println("        runtime: \"60\"");
+                pw.println("    uses:");
+                String input = (i < LEVEL_WIDTH) ? "raw." + i : "f." + (i - LEVEL_WIDTH);
+                pw.println("      - lfn: " + input);
+                pw.println("        type: input");
+                pw.println("      - lfn: f." + i);
+                pw.println("        type: output");
+                pw.println("        stageOut: false");
+                pw.println("        registerReplica: false");
+            }
+            pw.println("jobDependencies:");
+            for (int i = 0; i + LEVEL_WIDTH < jobs; i++) {
+                pw.println("  - id: ID" + i);
+                pw.println("    children:");
+                pw.println("      - ID" + (i + LEVEL_WIDTH));
+            }
+        }
+    }
+
+    /** A callback that only counts the jobs parsed. */
+    private static class CountingCallback implements Callback {
+
+        private int mJobs;
+
+        public void initialize(PegasusBag bag, String dax) {}
+
+        public Object getConstructedObject() {
+            return null;
+        }
+
+        public void cbDocument(Map attributes) {}
+
+        public void cbWfInvoke(Invoke invoke) {}
+
+        public void cbFile(ReplicaLocation rl) {}
+
+        public void cbReplicaStore(ReplicaStore store) {}
+
+        public void cbExecutable(TransformationCatalogEntry tce) {}
+
+        public void cbCompoundTransformation(CompoundTransformation compoundTransformation) {}
+
+        public void cbTransformationStore(TransformationStore store) {}
+
+        public void cbSiteStore(SiteStore store) {}
+
+        public void cbMetadata(Profile p) {}
+
+        public void cbJob(Job job) {
+            mJobs++;
+        }
+
+        public void cbParents(String child, List<PCRelation> parents) {}
+
+        public void cbChildren(String parent, List<String> children) {}
+
+        public void cbDone() {}
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.benchmark.PeakHeapProfiler;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.LabelBag;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the label partitioner, that hands the partitions off after the whole graph is traversed,
+ * against the streaming label partitioner. The label graphs are generated as pipelines, with each
+ * job also depending on the previous level of the neighbouring pipeline, and each pipeline labelled
+ * in segments of a few levels. The partitions are only counted by the callback and not retained, so
+ * that the heap used is that of the partitioner. Each measurement is a single traversal of a graph
+ * generated afresh before the iteration. The peak heap of each traversal, on top of the graph, is
+ * reported by running with the {@link PeakHeapProfiler}, and the allocation by running with the gc
+ * profiler.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="StreamingLabelBenchmark -p jobs=1000000
+ *       -prof edu.isi.pegasus.planner.benchmark.PeakHeapProfiler"
+ *   ant benchmark-java -Dbenchmark.args="StreamingLabelBenchmark -p jobs=1000000 -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(
+        value = 1,
+        jvmArgsAppend = {"-Xmx4g"})
+public class StreamingLabelBenchmark {
+
+    /** The number of pipelines in the generated graph. */
+    private static final int PIPELINES = 1000;
+
+    /** The number of levels in each labelled segment of a pipeline. */
+    private static final int SEGMENT = 4;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobs;
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    private Map<String, GraphNode> mGraph;
+
+    private GraphNode mRoot;
+
+    @Setup(Level.Trial)
+    public void initialize() {
+        mProps = PegasusProperties.nonSingletonInstance();
+        mLogger = LogManagerFactory.loadSingletonInstance(mProps);
+        mLogger.logEventStart("benchmark.partitioner.label", "partitioner", "label");
+        LabelBag.setLabelKey("label");
+    }
+
+    @Setup(Level.Iteration)
+    public void generate() {
+        mGraph = new HashMap<String, GraphNode>();
+        mRoot = generate(mGraph, jobs);
+        PeakHeapProfiler.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void release() {
+        mGraph = null;
+        mRoot = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void complete() {
+        mLogger.logEventCompletion();
+    }
+
+    @Benchmark
+    public int label() {
+        return this.partition(new Label(mRoot, mGraph, mProps));
+    }
+
+    @Benchmark
+    public int streaming() {
+        return this.partition(new StreamingLabel(mRoot, mGraph, mProps));
+    }
+
+    private int partition(Partitioner p) {
+        CountingCallback c = new CountingCallback();
+        p.determinePartitions(c);
+        return c.mPartitions + c.mRelations;
+    }
+
+    /**
+     * Generates a label graph of pipelines.
+     *
+     * @param graph the map to which the nodes are added, indexed by their id
+     * @param jobs the number of jobs
+     * @return the dummy root node of the graph
+     */
+    private static GraphNode generate(Map<String, GraphNode> graph, int jobs) {
+        int width = Math.min(PIPELINES, jobs);
+        int depth = (jobs + width - 1) / width;
+        GraphNode[] previous = new GraphNode[width];
+        GraphNode root = new GraphNode("dummy", "dummy");
+        root.setBag(new LabelBag());
+        int count = 0;
+        for (int l = 0; l < depth; l++) {
+            GraphNode[] current = new GraphNode[width];
+            for (int i = 0; i < width && count < jobs; i++, count++) {
+                String id = "ID" + count;
+                GraphNode node = new GraphNode(id, id);
+                LabelBag bag = new LabelBag();
+                bag.add(LabelBag.LABEL_KEY, "p" + i + "_s" + (l / SEGMENT));
+                node.setBag(bag);
+                graph.put(id, node);
+                current[i] = node;
+                if (l == 0) {
+                    root.addChild(node);
+                    continue;
+                }
+                for (GraphNode parent : new GraphNode[] {previous[i], previous[(i + 1) % width]}) {
+                    if (parent != null) {
+                        parent.addChild(node);
+                        node.addParent(parent);
+                    }
+                }
+            }
+            previous = current;
+        }
+        return root;
+    }
+
+    /** A callback that only counts the partitions and relations passed. */
+    private static class CountingCallback implements Callback {
+
+        private int mPartitions;
+
+        private int mRelations;
+
+        public void cbPartition(Partition partition) {
+            mPartitions++;
+        }
+
+        public void cbParents(String child, List parents) {
+            mRelations += parents.size();
+        }
+
+        public void cbDone() {}
+    }
+}
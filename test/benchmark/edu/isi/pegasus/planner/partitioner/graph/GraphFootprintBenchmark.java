@@ -0,0 +1,115 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import edu.isi.pegasus.planner.benchmark.PeakHeapProfiler;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the heap footprint and construction time of the MapGraph and the CompactGraph, for
+ * synthetic workflows. The workflows are layered, with each job in a level depending on a few jobs
+ * in the previous level, along with a fan-in job every few levels. Each measurement builds one
+ * graph. The footprint of the graph is reported by running with the {@link PeakHeapProfiler}.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="GraphFootprintBenchmark -p jobs=1000000
+ *       -prof edu.isi.pegasus.planner.benchmark.PeakHeapProfiler"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(
+        value = 1,
+        jvmArgsAppend = {"-Xmx4g"})
+public class GraphFootprintBenchmark {
+
+    /** The width of each level in the synthetic workflow. */
+    private static final int LEVEL_WIDTH = 1000;
+
+    /** The number of parents for each job. */
+    private static final int PARENTS = 3;
+
+    @Param({"10000", "100000", "1000000"})
+    public int jobs;
+
+    @Benchmark
+    public Graph mapGraph() {
+        Graph g = new MapGraph();
+        populate(g, jobs);
+        PeakHeapProfiler.retain(g);
+        return g;
+    }
+
+    @Benchmark
+    public Graph compactGraph() {
+        CompactGraph g = new CompactGraph(jobs);
+        populate(g, jobs);
+        g.compact();
+        PeakHeapProfiler.retain(g);
+        return g;
+    }
+
+    /**
+     * Populates the graph with a synthetic layered workflow.
+     *
+     * @param g the graph
+     * @param jobs the number of jobs
+     * @return the number of edges added
+     */
+    private static long populate(Graph g, int jobs) {
+        Random r = new Random(42);
+        long edges = 0;
+        for (int i = 0; i < jobs; i++) {
+            String id = "ID" + i;
+            g.addNode(new GraphNode(id, id));
+            int level = i / LEVEL_WIDTH;
+            if (level == 0) {
+                continue;
+            }
+            int previous = (level - 1) * LEVEL_WIDTH;
+            if (i % LEVEL_WIDTH == 0 && level % 5 == 0) {
+                // a fan-in job that depends on the whole previous level
+                for (int p = previous + 1; p < previous + LEVEL_WIDTH; p++) {
+                    g.addEdge("ID" + p, id);
+                    edges++;
+                }
+                continue;
+            }
+            for (int k = 0; k < PARENTS; k++) {
+                String parent = "ID" + (previous + r.nextInt(LEVEL_WIDTH));
+                if (!g.getNode(parent).getChildren().contains(g.getNode(id))) {
+                    g.addEdge(parent, id);
+                    edges++;
+                }
+            }
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.site;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.Directory;
+import edu.isi.pegasus.planner.catalog.site.classes.FileServer;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken by the NonJavaCallout site selector to map a workflow, when the stand-in
+ * site selector in the unit test input directory is invoked once per job, against when it is
+ * invoked once for the workflow in the batch mode. The workflows are fan outs of independent jobs,
+ * each reading two input files. Each measurement maps a workflow created afresh before the
+ * iteration. As the selector polls each invocation in the per job mode for its solution every five
+ * seconds, the workflows mapped in that mode are kept small. Needs to be run from the top of the
+ * source tree.
+ *
+ * <pre>
+ *   ant benchmark-java -Dbenchmark.args="NonJavaCalloutBenchmark.batch -p jobs=100000"
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class NonJavaCalloutBenchmark {
+
+    /** The directory with the stand-in site selector. */
+    private static final String INPUT_DIRECTORY =
+            "test/junit/edu/isi/pegasus/planner/selector/site/input";
+
+    /** The candidate sites. */
+    private static final List<String> SITES = Arrays.asList("siteA", "siteB", "siteC", "siteD");
+
+    /** The workflows mapped by invoking the selector once per job. */
+    @State(Scope.Benchmark)
+    public static class PerJob extends Mapping {
+
+        @Param({"10"})
+        public int jobs;
+
+        @Setup(Level.Iteration)
+        public void prepare() {
+            this.prepare(false, jobs);
+        }
+    }
+
+    /** The workflows mapped by invoking the selector once in the batch mode. */
+    @State(Scope.Benchmark)
+    public static class Batch extends Mapping {
+
+        @Param({"10", "1000", "10000", "100000"})
+        public int jobs;
+
+        @Setup(Level.Iteration)
+        public void prepare() {
+            this.prepare(true, jobs);
+        }
+    }
+
+    @Benchmark
+    public ADag perJob(PerJob mapping) {
+        return mapping.map();
+    }
+
+    @Benchmark
+    public ADag batch(Batch mapping) {
+        return mapping.map();
+    }
+
+    /** A workflow, and the selector to map it with. */
+    abstract static class Mapping {
+
+        private ADag mWorkflow;
+
+        private NonJavaCallout mSelector;
+
+        /**
+         * Creates the workflow and initializes the selector.
+         *
+         * @param batch whether to invoke the selector in the batch mode
+         * @param jobs the number of jobs
+         */
+        protected void prepare(boolean batch, int jobs) {
+            PegasusProperties props = PegasusProperties.nonSingletonInstance();
+            props.setProperty(
+                    "pegasus.selector.site.path",
+                    new File(INPUT_DIRECTORY, "hash-selector.py").getAbsolutePath());
+            props.setProperty("pegasus.selector.site.env.PATH", System.getenv("PATH"));
+            props.setProperty("pegasus.selector.site.batch", Boolean.toString(batch));
+            LogManager logger = LogManagerFactory.loadSingletonInstance(props);
+            logger.setLevel(LogManager.WARNING_MESSAGE_LEVEL);
+
+            PegasusBag bag = new PegasusBag();
+            bag.add(PegasusBag.PEGASUS_LOGMANAGER, logger);
+            bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+            SiteStore store = new SiteStore();
+            for (String site : SITES) {
+                SiteCatalogEntry entry = new SiteCatalogEntry(site);
+                Directory d = new Directory();
+                d.setType(Directory.TYPE.shared_scratch);
+                d.addFileServer(new FileServer("gsiftp", "gsiftp://" + site, "/scratch"));
+                entry.addDirectory(d);
+                store.addEntry(entry);
+            }
+            bag.add(PegasusBag.SITE_STORE, store);
+
+            mWorkflow = createWorkflow(jobs);
+            mSelector = new NonJavaCallout();
+            mSelector.initialize(bag);
+        }
+
+        ADag map() {
+            mSelector.mapWorkflow(mWorkflow, SITES);
+            return mWorkflow;
+        }
+    }
+
+    /**
+     * Creates a workflow of independent jobs.
+     *
+     * @param jobs the number of jobs
+     * @return the workflow
+     */
+    private static ADag createWorkflow(int jobs) {
+        ADag dag = new ADag();
+        dag.setLabel("benchmark");
+        for (int i = 0; i < jobs; i++) {
+            Job job = new Job();
+            job.setTXName("process");
+            job.setJobType(Job.COMPUTE_JOB);
+            job.setName("process_ID" + i);
+            job.setLogicalID("ID" + i);
+            job.addInputFile(new PegasusFile("f.in." + i));
+            job.addInputFile(new PegasusFile("reference"));
+            job.addOutputFile(new PegasusFile("f.out." + i));
+            dag.add(job);
+        }
+        return dag;
+    }
+}
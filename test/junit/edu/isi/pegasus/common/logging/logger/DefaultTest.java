@@ -0,0 +1,136 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.common.logging.logger;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+/** Tests the level guarded, parameterized and asynchronous logging of the Default logger. */
+public class DefaultTest {
+
+    @Test
+    public void testFormat() {
+        assertEquals("job ID1 on local", LogManager.format("job {} on {}", "ID1", "local"));
+        assertEquals("job ID1 on {}", LogManager.format("job {} on {}", "ID1"));
+        assertEquals("job ID1", LogManager.format("job {}", "ID1", "local"));
+        assertEquals("count 3 null", LogManager.format("count {} {}", 3, null));
+        assertEquals("no arguments {}", LogManager.format("no arguments {}"));
+    }
+
+    @Test
+    public void testDisabledMessagesNotConstructed() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogManager logger = load(false, out);
+        logger.setLevel(LogManager.INFO_MESSAGE_LEVEL);
+        assertTrue(logger.isLoggable(LogManager.INFO_MESSAGE_LEVEL));
+        assertFalse(logger.isLoggable(LogManager.DEBUG_MESSAGE_LEVEL));
+
+        final int[] calls = new int[1];
+        Supplier<String> supplier =
+                new Supplier<String>() {
+                    public String get() {
+                        calls[0]++;
+                        return "supplied";
+                    }
+                };
+        logger.log(supplier, LogManager.DEBUG_MESSAGE_LEVEL);
+        assertEquals(0, calls[0]);
+        logger.log(supplier, LogManager.INFO_MESSAGE_LEVEL);
+        assertEquals(1, calls[0]);
+
+        logger.log(LogManager.DEBUG_MESSAGE_LEVEL, "debug {}", "ID1");
+        logger.log(LogManager.INFO_MESSAGE_LEVEL, "info {}", "ID2");
+        logger.logEventCompletion();
+
+        String result = out.toString();
+        assertTrue(result.contains("supplied"));
+        assertTrue(result.contains("info ID2"));
+        assertFalse(result.contains("debug ID1"));
+    }
+
+    @Test
+    public void testAsync() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Default logger = (Default) load(true, out);
+        logger.setLevel(LogManager.DEBUG_MESSAGE_LEVEL);
+        for (int i = 0; i < 1000; i++) {
+            logger.log(LogManager.DEBUG_MESSAGE_LEVEL, "message {}", i);
+        }
+        logger.logEventCompletion();
+        logger.flush();
+
+        String result = out.toString();
+        int previous = -1;
+        for (int i = 0; i < 1000; i++) {
+            int index = result.indexOf(" message " + i + " ");
+            assertTrue("message " + i + " not written in order", index > previous);
+            previous = index;
+        }
+        assertTrue(result.lastIndexOf("test.logging.async") > previous);
+    }
+
+    @Test
+    public void testCloseStopsWriter() throws InterruptedException {
+        int before = writerThreads();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogManager logger = load(true, out);
+        logger.setLevel(LogManager.DEBUG_MESSAGE_LEVEL);
+        assertEquals(before + 1, writerThreads());
+
+        logger.log(LogManager.DEBUG_MESSAGE_LEVEL, "before {}", "close");
+        logger.close();
+        assertTrue(out.toString().contains("before close"));
+        assertEquals(before, writerThreads());
+
+        // the logger writes synchronously once closed
+        logger.log(LogManager.DEBUG_MESSAGE_LEVEL, "after {}", "close");
+        assertTrue(out.toString().contains("after close"));
+        logger.logEventCompletion();
+        logger.close();
+    }
+
+    /** Returns the number of live threads writing out messages asynchronously. */
+    private int writerThreads() {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("pegasus-log-writer") && t.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private LogManager load(boolean async, ByteArrayOutputStream out) {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty("pegasus.log.manager", "Default");
+        props.setProperty(
+                LogManager.PROPERTIES_PREFIX + "." + LogManager.ASYNC_PROPERTY_KEY,
+                Boolean.toString(async));
+        LogManager logger = LogManagerFactory.loadNonSingletonInstance(props);
+        PrintStream ps = new PrintStream(out, true);
+        logger.setWriter(LogManager.STREAM_TYPE.stdout, ps);
+        logger.setWriter(LogManager.STREAM_TYPE.stderr, ps);
+        logger.logEventStart("test.logging." + (async ? "async" : "sync"), "test", "0");
+        return logger;
+    }
+}
@@ -18,7 +18,12 @@ import static org.junit.Assert.*;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.test.DefaultTestSetup;
 import edu.isi.pegasus.planner.test.TestSetup;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -127,6 +132,74 @@ public class PegasusURLTest {
         mLogger.logEventCompletion();
     }
 
+    @Test
+    public void testMatchesRegex() {
+        // the URL's are compared against the regular expression
+        // the PegasusURL was parsed with before
+        mLogger.logEventStart(
+                "test.common.util.PegasusURL", "set", Integer.toString(mTestNumber++));
+        Pattern pattern = Pattern.compile("([\\w]+)://([\\w\\.\\-:@#]*)(/?[\\S]*)");
+        List<String> urls = new LinkedList<String>();
+        urls.addAll(
+                Arrays.asList(
+                        "gsiftp://user@host.isi.edu:2811/tmp/f#1",
+                        "s3://user@amazon/bucket/key",
+                        "scp://host:22",
+                        "http://host/path?x=1&y=2",
+                        "http://host:/a:b",
+                        "file://relative/path",
+                        "relative/path",
+                        "relative",
+                        "",
+                        "/tmp/path with space",
+                        "C:/windows",
+                        "://host/path",
+                        "http:/host/path",
+                        "ht-tp://host",
+                        "http://host/\tpath"));
+        Random r = new Random(7);
+        String alphabet = "ab_1.-:@#/ ?%";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder(r.nextBoolean() ? "gsiftp://" : "");
+            for (int j = r.nextInt(12); j > 0; j--) {
+                sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+            }
+            urls.add(sb.toString());
+        }
+
+        PegasusURL pURL = new PegasusURL();
+        for (String url : urls) {
+            String full = (url.indexOf(':') == -1) ? "file://" + url : url;
+            Matcher m = pattern.matcher(full);
+            try {
+                pURL.parse(url);
+                assertTrue(url + " should not parse", m.matches());
+            } catch (RuntimeException e) {
+                assertFalse(url + " should parse", m.matches());
+                continue;
+            }
+            assertEquals(url, m.group(1), pURL.getProtocol());
+            assertEquals(url, m.group(2), pURL.getHost());
+            assertEquals(url, m.group(3), pURL.getPath());
+            assertEquals(url, full, pURL.getURL());
+            assertEquals(url, m.group(1) + "://" + m.group(2), pURL.getURLPrefix());
+        }
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testSharedPrefix() {
+        mLogger.logEventStart(
+                "test.common.util.PegasusURL", "set", Integer.toString(mTestNumber++));
+        PegasusURL a = new PegasusURL("gsiftp://sukhna.isi.edu/tmp/a");
+        PegasusURL b = new PegasusURL(new String("gsiftp://sukhna.isi.edu/tmp/b"));
+        PegasusURL c = new PegasusURL("http://sukhna.isi.edu/tmp/c");
+        assertSame(a.getURLPrefix(), b.getURLPrefix());
+        assertSame(a.getHost(), c.getHost());
+        assertEquals("/tmp/b", b.getPath());
+        mLogger.logEventCompletion();
+    }
+
     @After
     public void tearDown() {
         mLogger = null;
@@ -201,6 +201,7 @@ public class ReplicaFactoryTest {
             ReplicaCatalog c = ReplicaFactory.loadInstance(bag);
             assertThat(c, instanceOf(SimpleFile.class));
         } finally {
+            tempFile.delete();
             dir.delete();
         }
         mLogger.logEventCompletion();
@@ -236,6 +237,7 @@ public class ReplicaFactoryTest {
             ReplicaCatalog c = ReplicaFactory.loadInstance(bag);
             assertThat(c, instanceOf(YAML.class));
         } finally {
+            tempFile.delete();
             dir.delete();
         }
         mLogger.logEventCompletion();
@@ -276,6 +278,7 @@ public class ReplicaFactoryTest {
             ReplicaCatalog c = ReplicaFactory.loadInstance(bag);
             assertThat(c, instanceOf(YAML.class));
         } finally {
+            tempFile.delete();
             dir.delete();
         }
         mLogger.logEventCompletion();
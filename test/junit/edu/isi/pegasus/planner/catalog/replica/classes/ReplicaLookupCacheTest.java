@@ -0,0 +1,207 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.classes;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.impl.Regex;
+import edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test class for the persistent replica lookup cache. */
+public class ReplicaLookupCacheTest {
+
+    private File mDirectory;
+
+    private File mCatalogFile;
+
+    private LogManager mLogger;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("rc-lookup-cache").toFile();
+        mCatalogFile = new File(mDirectory, "rc.txt");
+        mLogger = LogManagerFactory.loadSingletonInstance();
+        mLogger.logEventStart("test.replica-lookup-cache", "setup", "0");
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testCompleteCache() throws IOException {
+        write("f.a file:///data/f.a site=\"local\"", "f.b gsiftp://remote/f.b site=\"remote\"");
+        Set<String> lfns = lfns("f.a", "f.b", "f.c");
+
+        ReplicaLookupCache cache = new ReplicaLookupCache(mDirectory, mLogger);
+        ReplicaLookupCache.Lookup lookup = cache.lookup("File", mCatalogFile, lfns);
+        assertEquals(lfns, lookup.getMisses());
+        lookup.resolve(loadSimpleFile());
+        assertTrue(lookup.getMisses().isEmpty());
+        assertEquals(2, lookup.getEntries().size());
+
+        // a new planner invocation resolves everything from the cache
+        // including the file that is not in the catalog
+        cache = new ReplicaLookupCache(mDirectory, mLogger);
+        lookup = cache.lookup("File", mCatalogFile, lfns("f.a", "f.b", "f.c", "f.d"));
+        assertTrue(lookup.getMisses().isEmpty());
+        assertEquals(4, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(2, lookup.getEntries().size());
+        ReplicaCatalogEntry rce = lookup.getEntries().get("f.b").iterator().next();
+        assertEquals("gsiftp://remote/f.b", rce.getPFN());
+        assertEquals("remote", rce.getResourceHandle());
+
+        // a different implementor for the same file has its own cache
+        lookup = cache.lookup("YAML", mCatalogFile, lfns("f.a"));
+        assertEquals(lfns("f.a"), lookup.getMisses());
+    }
+
+    @Test
+    public void testInvalidation() throws IOException {
+        write("f.a file:///data/f.a site=\"local\"");
+        ReplicaLookupCache cache = new ReplicaLookupCache(mDirectory, mLogger);
+        ReplicaLookupCache.Lookup lookup = cache.lookup("File", mCatalogFile, lfns("f.a", "f.b"));
+        lookup.resolve(loadSimpleFile());
+        assertEquals(1, lookup.getEntries().size());
+
+        // the catalog changes in size
+        write("f.a file:///data/f.a site=\"local\"", "f.b file:///data/f.b site=\"local\"");
+        lookup = cache.lookup("File", mCatalogFile, lfns("f.a", "f.b"));
+        assertEquals(lfns("f.a", "f.b"), lookup.getMisses());
+        lookup.resolve(loadSimpleFile());
+        assertEquals(2, lookup.getEntries().size());
+
+        lookup = cache.lookup("File", mCatalogFile, lfns("f.a", "f.b"));
+        assertTrue(lookup.getMisses().isEmpty());
+        assertEquals(2, lookup.getEntries().size());
+
+        // the catalog changes only in modification time
+        assertTrue(mCatalogFile.setLastModified(mCatalogFile.lastModified() - 10000));
+        lookup = cache.lookup("File", mCatalogFile, lfns("f.a"));
+        assertEquals(lfns("f.a"), lookup.getMisses());
+    }
+
+    @Test
+    public void testRegexCatalog() throws IOException {
+        write(
+                "f.a file:///data/f.a site=\"local\"",
+                "\"r\\.[0-9]+\" file:///data/[0] site=\"local\" regex=\"true\"");
+        ReplicaLookupCache cache = new ReplicaLookupCache(mDirectory, mLogger);
+        ReplicaLookupCache.Lookup lookup =
+                cache.lookup("Regex", mCatalogFile, lfns("f.a", "r.1", "f.x"));
+        ReplicaCatalog catalog = loadCatalog(new Regex());
+        lookup.resolve(catalog);
+        catalog.close();
+        assertEquals(2, lookup.getEntries().size());
+
+        // files looked up before are cached, including the negative lookup.
+        // other files may match the regex entries
+        lookup = cache.lookup("Regex", mCatalogFile, lfns("f.a", "r.1", "f.x", "r.2", "f.y"));
+        assertEquals(lfns("r.2", "f.y"), lookup.getMisses());
+        Collection<ReplicaCatalogEntry> rces = lookup.getEntries().get("r.1");
+        assertEquals(1, rces.size());
+        assertEquals("file:///data/r.1", rces.iterator().next().getPFN());
+
+        catalog = loadCatalog(new Regex());
+        lookup.resolve(catalog);
+        catalog.close();
+        assertEquals(3, lookup.getEntries().size());
+        lookup = cache.lookup("Regex", mCatalogFile, lfns("f.a", "r.1", "f.x", "r.2", "f.y"));
+        assertTrue(lookup.getMisses().isEmpty());
+        assertEquals(3, lookup.getEntries().size());
+    }
+
+    @Test
+    public void testLiteralMatchingRegex() throws IOException {
+        write(
+                "f.a file:///data/f.a site=\"local\"",
+                "\"f\\.[a-z]+\" file:///regex/[0] site=\"local\" regex=\"true\"");
+        ReplicaLookupCache cache = new ReplicaLookupCache(mDirectory, mLogger);
+        ReplicaLookupCache.Lookup lookup = cache.lookup("Regex", mCatalogFile, lfns("f.b"));
+        ReplicaCatalog catalog = loadCatalog(new Regex());
+        lookup.resolve(catalog);
+        catalog.close();
+        assertEquals(1, lookup.getEntries().get("f.b").size());
+
+        // the literal entry for f.a was not looked up, and is not cached
+        // without the replica from the regex entry
+        lookup = cache.lookup("Regex", mCatalogFile, lfns("f.a", "f.b"));
+        assertEquals(lfns("f.a"), lookup.getMisses());
+        catalog = loadCatalog(new Regex());
+        lookup.resolve(catalog);
+        catalog.close();
+
+        lookup = cache.lookup("Regex", mCatalogFile, lfns("f.a"));
+        assertTrue(lookup.getMisses().isEmpty());
+        Set<String> pfns = new TreeSet<String>();
+        for (ReplicaCatalogEntry rce : lookup.getEntries().get("f.a")) {
+            pfns.add(rce.getPFN());
+        }
+        assertEquals(
+                new TreeSet<String>(Arrays.asList("file:///data/f.a", "file:///regex/f.a")), pfns);
+    }
+
+    private Set<String> lfns(String... lfns) {
+        return new LinkedHashSet<String>(Arrays.asList(lfns));
+    }
+
+    private void write(String... lines) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new FileWriter(mCatalogFile))) {
+            for (String line : lines) {
+                pw.println(line);
+            }
+        }
+    }
+
+    private ReplicaCatalog loadSimpleFile() {
+        return loadCatalog(new SimpleFile());
+    }
+
+    private ReplicaCatalog loadCatalog(ReplicaCatalog catalog) {
+        Properties props = new Properties();
+        props.setProperty("file", mCatalogFile.getAbsolutePath());
+        props.setProperty("read.only", "true");
+        assertTrue(catalog.connect(props));
+        return catalog;
+    }
+}
@@ -319,6 +319,34 @@ public class JDBCRCTest {
         assertEquals(1, map.size());
     }
 
+    @Test
+    public void batchedLookup() {
+        Set<String> lfns = new HashSet();
+        for (int i = 0; i < 25; i++) {
+            String lfn = "f" + i;
+            lfns.add(lfn);
+            HashMap attr = new HashMap();
+            attr.put(ReplicaCatalogEntry.RESOURCE_HANDLE, (i % 2 == 0) ? "x" : "y");
+            attr.put("size", Integer.toString(i));
+            jdbcrc.insert(lfn, new ReplicaCatalogEntry("file:///a/" + lfn, attr));
+            jdbcrc.insert(lfn, new ReplicaCatalogEntry("file:///b/" + lfn, "z"));
+        }
+        // lfn with no mappings in the catalog
+        lfns.add("missing");
+
+        Map expected = jdbcrc.lookup(lfns);
+        Map expectedNoAttributes = jdbcrc.lookupNoAttributes(lfns);
+        Map expectedForHandle = jdbcrc.lookup(lfns, "x");
+
+        jdbcrc.setBatchSize(10);
+        long queries = jdbcrc.getBatchQueryCount();
+        assertEquals(expected, jdbcrc.lookup(lfns));
+        assertEquals(expectedNoAttributes, jdbcrc.lookupNoAttributes(lfns));
+        assertEquals(expectedForHandle, jdbcrc.lookup(lfns, "x"));
+        // 26 lfns in chunks of 10 for each of the three lookups
+        assertEquals(9, jdbcrc.getBatchQueryCount() - queries);
+    }
+
     @After
     public void tearDown() {
         jdbcrc.close();
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+/** Test class for the RegexIndex used by the Regex and YAML replica catalogs. */
+public class RegexIndexTest {
+
+    private static final String[] REGEXES = {
+        "(\\w+)_f[xyz]_(\\d+)\\.sgt.*",
+        "input_(\\d+)\\.txt",
+        "input_.*",
+        ".*\\.txt",
+        "^abc$",
+        "a|b",
+        "(?i)ABC",
+        "data[.]bin",
+        "f(o+)\\.dat",
+        "x{2}y",
+        "\\d+\\.out",
+        "log\\.\\w+",
+        "[]a]b",
+        "z\\p{Alpha}+q",
+        "pre(fix)?",
+        "out\\Q.\\E+x"
+    };
+
+    private static final String[] LFNS = {
+        "TEST_fy_3810.sgt.md5",
+        "input_1.txt",
+        "input_.txt",
+        "output.txt",
+        "abc",
+        "ABC",
+        "a",
+        "b",
+        "data.bin",
+        "dataxbin",
+        "foo.dat",
+        "f.dat",
+        "xxy",
+        "xy",
+        "12.out",
+        "log.a",
+        "log.",
+        "]b",
+        "ab",
+        "zabq",
+        "pre",
+        "prefix",
+        "out.x",
+        "out..x",
+        ""
+    };
+
+    @Test
+    public void testLiterals() {
+        assertArrayEquals(
+                new String[] {"input_", ".txt"}, RegexIndex.literals("input_(\\d+)\\.txt"));
+        assertArrayEquals(new String[] {"abc", "abc"}, RegexIndex.literals("^abc$"));
+        assertArrayEquals(new String[] {"", ".txt"}, RegexIndex.literals(".*\\.txt"));
+        assertArrayEquals(new String[] {"data", "bin"}, RegexIndex.literals("data[.]bin"));
+        assertArrayEquals(new String[] {"", "y"}, RegexIndex.literals("x{2}y"));
+        assertArrayEquals(new String[] {"pr", ""}, RegexIndex.literals("pre?"));
+        assertNull(RegexIndex.literals("a|b"));
+        assertNull(RegexIndex.literals("(?i)abc"));
+        assertNull(RegexIndex.literals("\\Qa.b\\E"));
+    }
+
+    @Test
+    public void testSubstitute() {
+        RegexIndex index = new RegexIndex();
+        Matcher m = Pattern.compile("(\\w+)_f[xyz]_(\\d+)\\.sgt.*").matcher("TEST_fy_3810.sgt.md5");
+        assertTrue(m.matches());
+        assertEquals(
+                "file://test.isi.edu/scratch/3810/TEST/TEST_fy_3810.sgt.md5",
+                index.substitute("file://test.isi.edu/scratch/[2]/[1]/[0]", m));
+        // placeholders beyond the group count are left as is
+        assertEquals("/a/[3]/[x]/TEST", index.substitute("/a/[3]/[x]/[1]", m));
+        assertEquals("/no/placeholders", index.substitute("/no/placeholders", m));
+    }
+
+    @Test
+    public void testCandidatesAgainstLinearScan() {
+        RegexIndex index = new RegexIndex();
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String regex : REGEXES) {
+            Pattern p = Pattern.compile(regex);
+            index.put(regex, p);
+            patterns.add(p);
+        }
+        for (String lfn : LFNS) {
+            assertEquals("Matches for " + lfn, linearScan(patterns, lfn), indexed(index, lfn));
+        }
+    }
+
+    @Test
+    public void testRandomCandidatesAgainstLinearScan() {
+        Random r = new Random(42);
+        String alphabet = "ab._1";
+        RegexIndex index = new RegexIndex();
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (int i = 0; i < 500; i++) {
+            String regex =
+                    random(r, alphabet, r.nextInt(4)).replace(".", "\\.")
+                            + (r.nextBoolean() ? "(.*)" : "[ab]+")
+                            + random(r, alphabet, r.nextInt(4)).replace(".", "\\.");
+            if (index.get(regex) == null) {
+                Pattern p = Pattern.compile(regex);
+                index.put(regex, p);
+                patterns.add(p);
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            String lfn = random(r, alphabet, r.nextInt(8));
+            assertEquals("Matches for " + lfn, linearScan(patterns, lfn), indexed(index, lfn));
+        }
+    }
+
+    private List<String> linearScan(List<Pattern> patterns, String lfn) {
+        List<String> result = new ArrayList<String>();
+        for (Pattern p : patterns) {
+            if (p.matcher(lfn).matches()) {
+                result.add(p.pattern());
+            }
+        }
+        return result;
+    }
+
+    private List<String> indexed(RegexIndex index, String lfn) {
+        List<String> result = new ArrayList<String>();
+        for (String regex : index.candidates(lfn)) {
+            if (index.get(regex).matcher(lfn).matches()) {
+                result.add(regex);
+            }
+        }
+        return result;
+    }
+
+    private String random(Random r, String alphabet, int length) {
+        char[] c = new char[length];
+        for (int i = 0; i < length; i++) {
+            c[i] = alphabet.charAt(r.nextInt(alphabet.length()));
+        }
+        return new String(c);
+    }
+}
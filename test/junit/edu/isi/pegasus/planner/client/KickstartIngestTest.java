@@ -0,0 +1,279 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.client;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.invocation.InvocationRecord;
+import edu.isi.pegasus.planner.parser.InvocationParser;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.griphyn.vdl.dbschema.InvocationSchema;
+import org.griphyn.vdl.directive.ParseKickstart;
+import org.griphyn.vdl.toolkit.FriendlyNudge;
+import org.griphyn.vdl.util.ChimeraProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the bulk ingestion of kickstart invocation records into the provenance tracking catalog,
+ * against SQLite databases created from the tables in the test input directory.
+ */
+public class KickstartIngestTest {
+
+    /** The tables written for an invocation record. */
+    private static final String[] TABLES = {
+        "ptc_uname", "ptc_rusage", "ptc_stat", "ptc_invocation", "ptc_job", "ptc_lfn"
+    };
+
+    private static final String URL_PROPERTY = "pegasus.catalog.provenance.db.url";
+
+    private DefaultTestSetup mSetup;
+
+    private File mDirectory;
+
+    private List<InvocationSchema> mSchemas;
+
+    @Before
+    public void setUp() throws IOException {
+        mSetup = new DefaultTestSetup();
+        mSetup.setInputDirectory(this.getClass());
+        mDirectory = Files.createTempDirectory("ptc").toFile();
+        mSchemas = new ArrayList<InvocationSchema>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (InvocationSchema schema : mSchemas) {
+            schema.close();
+        }
+        System.clearProperty(URL_PROPERTY);
+        for (File f : mDirectory.listFiles()) {
+            f.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testBulkMatchesSequential() throws Exception {
+        List records = this.parse(12);
+        InvocationSchema sequential = this.createSchema("sequential");
+        for (Object ivr : records) {
+            sequential.saveInvocation((InvocationRecord) ivr);
+        }
+        InvocationSchema bulk = this.createSchema("bulk");
+        assertEquals(7, bulk.saveInvocations(records.subList(0, 7)));
+        assertEquals(5, bulk.saveInvocations(records.subList(7, 12)));
+
+        for (String table : TABLES) {
+            assertEquals(table, this.dump("sequential", table), this.dump("bulk", table));
+        }
+        // all records share the machine information
+        assertEquals(1, this.dump("bulk", "ptc_uname").size());
+    }
+
+    @Test
+    public void testDuplicatesSkipped() throws Exception {
+        List records = this.parse(5);
+        InvocationSchema bulk = this.createSchema("bulk");
+        List batch = new ArrayList(records.subList(0, 3));
+        batch.add(records.get(1));
+        assertEquals(3, bulk.saveInvocations(batch));
+        assertEquals(2, bulk.saveInvocations(records));
+        assertEquals(0, bulk.saveInvocations(records));
+        assertEquals(5, this.dump("bulk", "ptc_invocation").size());
+    }
+
+    @Test
+    public void testParseFiles() throws Exception {
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            files.add(this.createRecordFile(i).getPath());
+        }
+        files.add(new File(mDirectory, "missing.out").getPath());
+        File empty = new File(mDirectory, "empty.out");
+        empty.createNewFile();
+        files.add(empty.getPath());
+
+        ParseKickstart pks = new ParseKickstart(this.createSchema("parallel"), false);
+        pks.setThreads(3);
+        pks.setCommitSize(4);
+        Map result = pks.parseFiles(files);
+
+        assertEquals(files, new ArrayList(result.keySet()));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Arrays.asList(0), result.get(files.get(i)));
+        }
+        assertEquals(Arrays.asList(5), result.get(files.get(10)));
+        assertEquals(Arrays.asList(0), result.get(files.get(11)));
+        assertEquals(10, this.dump("parallel", "ptc_invocation").size());
+        assertEquals(10, this.dump("parallel", "ptc_job").size());
+    }
+
+    @Test
+    public void testInvalidRecordAfterValidRecords() throws Exception {
+        // a clustered job with an invalid record after two valid ones
+        File clustered = new File(mDirectory, "clustered.out");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2; i++) {
+            content.append(
+                    new String(
+                            Files.readAllBytes(this.createRecordFile(i).toPath()),
+                            StandardCharsets.UTF_8));
+        }
+        content.append("<invocation><broken></invocation>\n");
+        Files.write(clustered.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        ParseKickstart pks = new ParseKickstart(this.createSchema("single"), false);
+        try {
+            pks.parseFile(clustered.getPath());
+            fail("invalid record was not reported");
+        } catch (FriendlyNudge fn) {
+            assertEquals(5, fn.getResult());
+        }
+        assertEquals(2, this.dump("single", "ptc_invocation").size());
+
+        pks = new ParseKickstart(this.createSchema("parallel"), false);
+        pks.setThreads(2);
+        Map result = pks.parseFiles(Arrays.asList(clustered.getPath()));
+        assertEquals(Arrays.asList(5), result.get(clustered.getPath()));
+        assertEquals(2, this.dump("parallel", "ptc_invocation").size());
+    }
+
+    @Test(timeout = 60000)
+    public void testWorkerError() throws Exception {
+        ParseKickstart pks =
+                new ParseKickstart(this.createSchema("error"), false) {
+                    protected void parseRecords(String arg0, InvocationParser ip, List result) {
+                        throw new NoClassDefFoundError(arg0);
+                    }
+                };
+        pks.setThreads(2);
+        try {
+            pks.parseFiles(Arrays.asList("a.out", "b.out", "c.out"));
+            fail("error on the worker thread was not reported");
+        } catch (NoClassDefFoundError e) {
+            // the error is passed on to the caller instead of the caller waiting forever
+        }
+    }
+
+    /**
+     * Parses records that differ in the pid of kickstart.
+     *
+     * @param count the number of records
+     * @return the invocation records
+     */
+    private List parse(int count) throws IOException {
+        InvocationParser ip =
+                new InvocationParser(ChimeraProperties.instance().getPTCSchemaLocation());
+        List result = new ArrayList();
+        for (int i = 0; i < count; i++) {
+            String xml = new String(Files.readAllBytes(this.createRecordFile(i).toPath()), "UTF-8");
+            result.add(ip.parse(new StringReader(xml)));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a kickstart output file from the one in the test input directory.
+     *
+     * @param i the index of the record, that determines the pid of kickstart
+     * @return the file
+     */
+    private File createRecordFile(int i) throws IOException {
+        File template = new File(mSetup.getInputDirectory(), "kickstart.out");
+        String content = new String(Files.readAllBytes(template.toPath()), StandardCharsets.UTF_8);
+        File f = new File(mDirectory, "record." + i + ".out");
+        Files.write(
+                f.toPath(),
+                content.replace("pid=\"23370\"", "pid=\"" + (1000 + i) + "\"")
+                        .getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    /**
+     * Creates a SQLite database with the provenance tracking tables, and connects to it.
+     *
+     * @param name the name of the database
+     * @return the schema
+     */
+    private InvocationSchema createSchema(String name) throws Exception {
+        String ddl =
+                new String(
+                        Files.readAllBytes(
+                                new File(mSetup.getInputDirectory(), "ptc-sqlite.sql").toPath()),
+                        StandardCharsets.UTF_8);
+        try (Connection c = DriverManager.getConnection(this.url(name));
+                Statement s = c.createStatement()) {
+            for (String statement : ddl.replaceAll("--[^\n]*", "").split(";")) {
+                if (!statement.trim().isEmpty()) {
+                    s.executeUpdate(statement);
+                }
+            }
+        }
+        System.setProperty(URL_PROPERTY, this.url(name));
+        InvocationSchema schema = new InvocationSchema("SQLite");
+        // the driver logs all of JDBC onto stderr
+        DriverManager.setLogWriter(null);
+        mSchemas.add(schema);
+        return schema;
+    }
+
+    /**
+     * Returns the rows of a table in the order of insertion, without the time of insertion.
+     *
+     * @param name the name of the database
+     * @param table the table
+     * @return the rows
+     */
+    private List<List<Object>> dump(String name, String table) throws Exception {
+        List<List<Object>> result = new ArrayList<List<Object>>();
+        try (Connection c = DriverManager.getConnection(this.url(name));
+                Statement s = c.createStatement();
+                ResultSet rs = s.executeQuery("SELECT * FROM " + table)) {
+            ResultSetMetaData md = rs.getMetaData();
+            while (rs.next()) {
+                List<Object> row = new ArrayList<Object>();
+                for (int i = 1; i <= md.getColumnCount(); i++) {
+                    // the time of insertion differs between databases
+                    if (!md.getColumnName(i).equals("creationtime")) {
+                        row.add(rs.getObject(i));
+                    }
+                }
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private String url(String name) {
+        return "jdbc:sqlite:" + new File(mDirectory, name + ".db").getPath();
+    }
+}
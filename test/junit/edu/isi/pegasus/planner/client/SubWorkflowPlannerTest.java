@@ -0,0 +1,331 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.client;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.FindExecutable;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.dax.ADAG;
+import edu.isi.pegasus.planner.dax.DAX;
+import edu.isi.pegasus.planner.dax.Job;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+/**
+ * Test class for the eager planning of sub workflows, and the sharing of parsed catalogs between
+ * the planners for sub workflows.
+ */
+public class SubWorkflowPlannerTest {
+
+    /** The pattern for the names of the properties files written out by the planner. */
+    private static final String PROPERTIES_FILE = "pegasus\\.[0-9]+\\.properties";
+
+    @Test
+    public void testSiteStoreSharing() throws IOException {
+        LogManager logger = LogManagerFactory.loadSingletonInstance();
+        File source = File.createTempFile("sites", ".yml");
+        try {
+            Files.write(source.toPath(), "pegasus: 5.0\n".getBytes());
+            SubWorkflowPlanner outer = new SubWorkflowPlanner(logger, 2);
+            assertNull(outer.getSiteStore(source));
+
+            SiteStore store = new SiteStore();
+            store.addEntry(new SiteCatalogEntry("condorpool"));
+            outer.putSiteStore(source, store);
+
+            // the planners for nested sub workflows share the parsed catalogs
+            SubWorkflowPlanner inner = new SubWorkflowPlanner(logger, 2, outer);
+            SiteStore shared = inner.getSiteStore(source);
+            assertNotNull(shared);
+            assertTrue(shared.contains("condorpool"));
+
+            // each planner gets its own copy of the entries
+            shared.addEntry(new SiteCatalogEntry("local"));
+            assertFalse(outer.getSiteStore(source).contains("local"));
+            assertNotSame(
+                    shared.lookup("condorpool"), outer.getSiteStore(source).lookup("condorpool"));
+
+            // a modified catalog is parsed again
+            Files.write(source.toPath(), "pegasus: 5.0\nsites: []\n".getBytes());
+            assertNull(inner.getSiteStore(source));
+
+            // nothing to plan
+            assertEquals(0, inner.size());
+            inner.planAll();
+        } finally {
+            source.delete();
+        }
+    }
+
+    /**
+     * Plans a workflow with sub workflows eagerly, one at a time in the planner JVM and
+     * concurrently in separate JVMs, and checks that the two result in the same submit directories.
+     * Requires HTCondor, as the planner writes out the DAGMan submit files with condor_submit_dag.
+     */
+    @Test
+    public void testConcurrentMatchesSequential() throws Exception {
+        assumeNotNull(FindExecutable.findExec("condor_submit_dag"));
+        Path dir = Files.createTempDirectory("pegasus-subwf");
+        try {
+            File workflow = this.writeCatalogsAndWorkflows(dir.toFile());
+            Map<String, String> sequential = this.plan(dir.toFile(), workflow, 1);
+            Map<String, String> concurrent = this.plan(dir.toFile(), workflow, 3);
+
+            // sub1 and sub2 are planned eagerly. sub3 is not, as its DAX file is
+            // generated by the grandparent of the DAX job
+            for (Map<String, String> files : new Map[] {sequential, concurrent}) {
+                assertTrue(files.containsKey("run/pegasus-plan_sub1.pre.log.000"));
+                assertTrue(files.containsKey("run/pegasus-plan_sub2.pre.log.000"));
+                assertFalse(files.containsKey("run/pegasus-plan_sub3.pre.log.000"));
+                assertTrue(files.containsKey("run/00/00/pegasus-plan_sub3.pre.sh"));
+                assertTrue(this.containsFile(files, "inner-0.dag", 2));
+            }
+            assertEquals(sequential.keySet(), concurrent.keySet());
+            for (Map.Entry<String, String> entry : sequential.entrySet()) {
+                assertEquals(entry.getKey(), entry.getValue(), concurrent.get(entry.getKey()));
+            }
+        } finally {
+            this.delete(dir);
+        }
+    }
+
+    /**
+     * Writes out the catalogs and the workflows. The outer level workflow has two independent DAX
+     * jobs, and a third one whose DAX file is generated by a grandparent job, that refers to the
+     * DAX file by an LFN that differs from the basename of the file.
+     *
+     * @param dir the directory to write to
+     * @return the outer level workflow
+     */
+    private File writeCatalogsAndWorkflows(File dir) throws IOException {
+        String path = dir.getAbsolutePath();
+        this.write(
+                new File(dir, "sites.yml"),
+                "pegasus: \"5.0\"\n"
+                        + "sites:\n"
+                        + "  - name: local\n"
+                        + "    directories:\n"
+                        + "      - type: sharedScratch\n"
+                        + "        path: "
+                        + path
+                        + "/scratch\n"
+                        + "        fileServers:\n"
+                        + "          - operation: all\n"
+                        + "            url: file://"
+                        + path
+                        + "/scratch\n"
+                        + "      - type: localStorage\n"
+                        + "        path: "
+                        + path
+                        + "/output\n"
+                        + "        fileServers:\n"
+                        + "          - operation: all\n"
+                        + "            url: file://"
+                        + path
+                        + "/output\n"
+                        + "    profiles:\n"
+                        + "      env:\n"
+                        + "        PEGASUS_HOME: /usr\n"
+                        + "        CONDOR_HOME: /usr\n"
+                        + "  - name: condorpool\n"
+                        + "    directories:\n"
+                        + "      - type: sharedScratch\n"
+                        + "        path: /scratch\n"
+                        + "        fileServers:\n"
+                        + "          - operation: all\n"
+                        + "            url: gsiftp://condor.example.org/scratch\n"
+                        + "    profiles:\n"
+                        + "      pegasus:\n"
+                        + "        style: condor\n"
+                        + "      env:\n"
+                        + "        PEGASUS_HOME: /usr\n"
+                        + "      condor:\n"
+                        + "        universe: vanilla\n");
+        this.write(
+                new File(dir, "tc.yml"),
+                "pegasus: \"5.0\"\n"
+                        + "transformations:\n"
+                        + "  - name: work\n"
+                        + "    sites:\n"
+                        + "      - name: condorpool\n"
+                        + "        pfn: /usr/bin/work\n"
+                        + "        type: installed\n");
+        StringBuilder rc = new StringBuilder("pegasus: \"5.0\"\nreplicas:\n");
+        for (String[] replica :
+                new String[][] {
+                    {"sub1.yml", "sub1.yml"}, {"sub2.yml", "sub2.yml"}, {"inner.dax", "sub3.yml"}
+                }) {
+            rc.append("  - lfn: ")
+                    .append(replica[0])
+                    .append("\n    pfns:\n      - site: local\n        pfn: ")
+                    .append(new File(dir, replica[1]).getAbsolutePath())
+                    .append("\n");
+        }
+        this.write(new File(dir, "rc.yml"), rc.toString());
+
+        for (int i = 1; i <= 3; i++) {
+            ADAG sub = new ADAG("inner");
+            for (int j = 0; j < 3; j++) {
+                Job job = new Job("ID" + j, "work");
+                job.addArgument("-o out." + i + "." + j);
+                job.uses(
+                        new edu.isi.pegasus.planner.dax.File("out." + i + "." + j),
+                        edu.isi.pegasus.planner.dax.File.LINK.OUTPUT);
+                sub.addJob(job);
+                if (j > 0) {
+                    sub.addDependency("ID" + (j - 1), "ID" + j);
+                }
+            }
+            sub.writeToFile(new File(dir, "sub" + i + ".yml").getAbsolutePath(), ADAG.FORMAT.yaml);
+        }
+
+        ADAG outer = new ADAG("outer");
+        for (int i = 1; i <= 2; i++) {
+            DAX dax = new DAX("sub" + i, "sub" + i + ".yml");
+            dax.uses(
+                    new edu.isi.pegasus.planner.dax.File("sub" + i + ".yml"),
+                    edu.isi.pegasus.planner.dax.File.LINK.INPUT);
+            outer.addDAX(dax);
+        }
+        Job gen = new Job("gen", "work");
+        gen.uses(
+                new edu.isi.pegasus.planner.dax.File("inner.dax"),
+                edu.isi.pegasus.planner.dax.File.LINK.OUTPUT);
+        outer.addJob(gen);
+        outer.addJob(new Job("mid", "work"));
+        DAX sub3 = new DAX("sub3", "inner.dax");
+        sub3.addArgument("--basename inner");
+        sub3.uses(
+                new edu.isi.pegasus.planner.dax.File("inner.dax"),
+                edu.isi.pegasus.planner.dax.File.LINK.INPUT);
+        outer.addDAX(sub3);
+        outer.addDependency("gen", "mid");
+        outer.addDependency("mid", "sub3");
+        File workflow = new File(dir, "outer.yml");
+        outer.writeToFile(workflow.getAbsolutePath(), ADAG.FORMAT.yaml);
+        return workflow;
+    }
+
+    /**
+     * Plans the outer level workflow, and returns the files in the submit directory.
+     *
+     * @param dir the directory with the catalogs
+     * @param workflow the outer level workflow
+     * @param threads the number of sub workflows to plan at a time
+     * @return the contents of the files by their path relative to the submit directory, with the
+     *     contents that differ between planner runs masked
+     */
+    private Map<String, String> plan(File dir, File workflow, int threads) throws Exception {
+        File submit = new File(dir, "submit-" + threads);
+        PegasusProperties properties = PegasusProperties.nonSingletonInstance();
+        properties.setProperty("pegasus.catalog.site.file", new File(dir, "sites.yml").getPath());
+        properties.setProperty("pegasus.catalog.replica", "YAML");
+        properties.setProperty("pegasus.catalog.replica.file", new File(dir, "rc.yml").getPath());
+        properties.setProperty("pegasus.catalog.transformation", "YAML");
+        properties.setProperty(
+                "pegasus.catalog.transformation.file", new File(dir, "tc.yml").getPath());
+        properties.setProperty("pegasus.data.configuration", "sharedfs");
+        properties.setProperty("pegasus.code.generator.subwf.eager", "true");
+        properties.setProperty("pegasus.code.generator.subwf.threads", Integer.toString(threads));
+
+        LogManager logger = LogManagerFactory.loadNonSingletonInstance(properties);
+        logger.logEventStart("test.pegasus.planner", "threads", Integer.toString(threads));
+        CPlanner planner = new CPlanner(logger);
+        planner.initialize(properties);
+        PlannerOptions options =
+                planner.parseCommandLineArguments(
+                        new String[] {
+                            "--dir",
+                            submit.getAbsolutePath(),
+                            "--relative-dir",
+                            "run",
+                            "--sites",
+                            "condorpool",
+                            "--output-sites",
+                            "local",
+                            "--cleanup",
+                            "none",
+                            "--force",
+                            workflow.getAbsolutePath()
+                        });
+        planner.plan(options, null);
+        logger.logEventCompletion();
+
+        Map<String, String> files = new TreeMap<String, String>();
+        try (Stream<Path> paths = Files.walk(submit.toPath())) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                if (!Files.isRegularFile(p)) {
+                    continue;
+                }
+                // the properties files are written out with a random name
+                String name =
+                        submit.toPath()
+                                .relativize(p)
+                                .toString()
+                                .replaceAll(PROPERTIES_FILE, "pegasus.properties");
+                String contents = "";
+                if (name.endsWith(".dag") || name.endsWith(".sub") || name.endsWith(".sh")) {
+                    contents =
+                            new String(Files.readAllBytes(p), StandardCharsets.UTF_8)
+                                    .replace(submit.getAbsolutePath(), "SUBMIT")
+                                    .replaceAll(
+                                            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}",
+                                            "UUID")
+                                    .replaceAll("[0-9]{8}T[0-9]{6}[-+][0-9]{4}", "TIMESTAMP")
+                                    .replaceAll(PROPERTIES_FILE, "pegasus.properties");
+                }
+                files.put(name, contents);
+            }
+        }
+        return files;
+    }
+
+    private boolean containsFile(Map<String, String> files, String basename, int count) {
+        int found = 0;
+        for (String name : files.keySet()) {
+            if (new File(name).getName().equals(basename)) {
+                found++;
+            }
+        }
+        return found == count;
+    }
+
+    private void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(java.util.Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+-- The provenance tracking catalog tables written by
+-- org.griphyn.vdl.dbschema.InvocationSchema, for SQLite.
+CREATE TABLE ptc_uname (
+  id          INTEGER PRIMARY KEY,
+  archmode    VARCHAR(16),
+  sysname     VARCHAR(64),
+  os_release  VARCHAR(64),
+  machine     VARCHAR(64)
+);
+
+CREATE TABLE ptc_rusage (
+  id          INTEGER PRIMARY KEY,
+  utime       DOUBLE PRECISION,
+  stime       DOUBLE PRECISION,
+  minflt      INTEGER,
+  majflt      INTEGER,
+  nswaps      INTEGER,
+  nsignals    INTEGER,
+  nvcsw       INTEGER,
+  nivcsw      INTEGER
+);
+
+CREATE TABLE ptc_stat (
+  id          INTEGER PRIMARY KEY,
+  errno       INTEGER,
+  fname       TEXT,
+  fdesc       INTEGER,
+  size        INTEGER,
+  mode        INTEGER,
+  inode       INTEGER,
+  atime       TIMESTAMP,
+  ctime       TIMESTAMP,
+  mtime       TIMESTAMP,
+  uid         INTEGER,
+  gid         INTEGER
+);
+
+CREATE TABLE ptc_invocation (
+  id            INTEGER PRIMARY KEY,
+  creator       VARCHAR(16),
+  creationtime  TIMESTAMP,
+  wf_label      VARCHAR(32),
+  wf_time       TIMESTAMP,
+  version       VARCHAR(4),
+  start         TIMESTAMP,
+  duration      DOUBLE PRECISION,
+  tr_namespace  VARCHAR(255),
+  tr_name       VARCHAR(255),
+  tr_version    VARCHAR(20),
+  dv_namespace  VARCHAR(255),
+  dv_name       VARCHAR(255),
+  dv_version    VARCHAR(20),
+  resource      VARCHAR(48),
+  host          VARCHAR(64),
+  pid           INTEGER,
+  uid           INTEGER,
+  gid           INTEGER,
+  cwd           TEXT,
+  arch          INTEGER REFERENCES ptc_uname(id),
+  total         DOUBLE PRECISION
+);
+
+CREATE TABLE ptc_job (
+  id          INTEGER REFERENCES ptc_invocation(id),
+  type        CHAR(1),
+  start       TIMESTAMP,
+  duration    DOUBLE PRECISION,
+  pid         INTEGER,
+  rusage      INTEGER REFERENCES ptc_rusage(id),
+  stat        INTEGER REFERENCES ptc_stat(id),
+  exitcode    INTEGER,
+  exit_msg    TEXT,
+  args        TEXT
+);
+
+CREATE TABLE ptc_lfn (
+  id          INTEGER REFERENCES ptc_invocation(id),
+  stat        INTEGER REFERENCES ptc_stat(id),
+  initial     CHAR(1),
+  lfn         VARCHAR(255)
+);
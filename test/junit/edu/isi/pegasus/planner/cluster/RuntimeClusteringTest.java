@@ -18,6 +18,7 @@ package edu.isi.pegasus.planner.cluster;
 import static org.junit.Assert.*;
 
 import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.namespace.Pegasus;
 import edu.isi.pegasus.planner.test.DefaultTestSetup;
@@ -56,6 +57,8 @@ public class RuntimeClusteringTest {
     public void setUp() throws NoSuchMethodException {
         mTestSetup = new DefaultTestSetup();
         mCluster = new Horizontal();
+        mLogger = LogManagerFactory.loadSingletonInstance();
+        mLogger.logEventStart("test.cluster.runtime", "setup", "0");
 
         Class[] parameters = new Class[2];
         parameters[0] = List.class;
@@ -89,8 +92,97 @@ public class RuntimeClusteringTest {
         assertEquals(jobs.size(), results.size());
     }
 
+    @Test
+    public void testBalancedClusterNum() throws IllegalAccessException, InvocationTargetException {
+        List<Job> jobs = new LinkedList<Job>();
+        for (String runtime : new String[] {"2", "6", "3", "4", "1", "5", "3", "4", "2"}) {
+            Job j = new Job();
+            j.setName(runtime);
+            j.vdsNS.construct(Pegasus.RUNTIME_KEY, runtime);
+            jobs.add(j);
+        }
+
+        List<List<Job>> results = (List<List<Job>>) mBestFitMethod.invoke(mCluster, jobs, 3);
+        assertEquals(3, results.size());
+        // longest first into the least loaded cluster balances 30 seconds of work exactly
+        for (List<Job> bin : results) {
+            assertEquals(10, runtime(bin), 0);
+        }
+    }
+
+    @Test
+    public void testMaxRunTime() throws Exception {
+        Method method =
+                mCluster.getClass().getDeclaredMethod("bestFitBinPack", List.class, double.class);
+        method.setAccessible(true);
+        List<Job> jobs = new LinkedList<Job>();
+        for (String runtime : new String[] {"2", "5", "4", "7", "1", "3", "20", "8"}) {
+            Job j = new Job();
+            j.setName(runtime);
+            j.vdsNS.construct(Pegasus.RUNTIME_KEY, runtime);
+            jobs.add(j);
+        }
+
+        List<List<Job>> results = (List<List<Job>>) method.invoke(mCluster, jobs, 10d);
+        // the job that exceeds the maximum runtime is not clustered
+        int count = 0;
+        for (List<Job> bin : results) {
+            assertTrue(runtime(bin) <= 10);
+            for (Job j : bin) {
+                assertNotEquals("20", j.getName());
+            }
+            count += bin.size();
+        }
+        assertEquals(7, count);
+        // best fit decreasing packs 30 seconds of work into full clusters
+        assertEquals(3, results.size());
+        assertEquals("[8, 2]", names(results.get(0)));
+        assertEquals("[7, 3]", names(results.get(1)));
+        assertEquals("[5, 4, 1]", names(results.get(2)));
+    }
+
+    @Test
+    public void testStatistics() {
+        List<String> items = new LinkedList<String>();
+        items.add("a");
+        items.add("b");
+        items.add("c");
+        items.add("d");
+        BinPacker<String> packer = new BinPacker<String>(items, new double[] {6, 5, 2, 9});
+        List<List<String>> bins = packer.packByCapacity(8);
+        assertEquals("[[a, c], [b]]", bins.toString());
+        assertEquals("[d]", packer.getUnpacked().toString());
+
+        BinPacker.Statistics statistics = packer.getStatistics();
+        assertEquals(2, statistics.getBins());
+        assertEquals(5, statistics.getMin(), 0);
+        assertEquals(8, statistics.getMax(), 0);
+        assertEquals(6.5, statistics.getMean(), 0);
+        assertEquals(1.5, statistics.getStandardDeviation(), 0.0001);
+        assertEquals(8 / 6.5, statistics.getImbalance(), 0.0001);
+        assertEquals(0.8125, statistics.getUtilization(), 0.0001);
+        assertEquals(1, statistics.getUnpacked());
+    }
+
+    private double runtime(List<Job> bin) {
+        double runtime = 0;
+        for (Job j : bin) {
+            runtime += Double.parseDouble((String) j.vdsNS.get(Pegasus.RUNTIME_KEY));
+        }
+        return runtime;
+    }
+
+    private String names(List<Job> bin) {
+        List<String> names = new LinkedList<String>();
+        for (Job j : bin) {
+            names.add(j.getName());
+        }
+        return names.toString();
+    }
+
     @After
     public void tearDown() {
+        mLogger.logEventCompletion();
         mLogger = null;
         mTestSetup = null;
         mCluster = null;
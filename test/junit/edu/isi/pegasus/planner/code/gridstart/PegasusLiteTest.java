@@ -0,0 +1,249 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.code.gridstart;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.FindExecutable;
+import edu.isi.pegasus.planner.classes.Job;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test class for the shared PegasusLite wrappers. */
+public class PegasusLiteTest {
+
+    private static final String PROLOGUE =
+            "#!/bin/bash\n"
+                    + "set -e\n"
+                    + "pegasus_lite_start_dir=`pwd`\n"
+                    + "cd work\n"
+                    + "pegasus-transfer() { tr -d ' \\n'; echo; }\n";
+
+    private static final String EPILOGUE = "echo \"epilogue $task_var\"\n";
+
+    private static final String COMMAND = "echo \"$task_var\" '$HOME'";
+
+    private static final String TASK =
+            "task_var=\"from task\"\n"
+                    + "pegasus-transfer 1>&2 << 'eof'\n"
+                    + "[\n"
+                    + " { \"lfn\": \"f.a\",\n"
+                    + "   \"url\": \"file://$PWD/f.a\" }\n"
+                    + "]\n"
+                    + "eof\n"
+                    + "cat << 'EOF'\n"
+                    + "$HOME\n"
+                    + "  indented\n"
+                    + "EOF\n"
+                    + "cat << EOF\n"
+                    + "$task_var\n"
+                    + "EOF\n"
+                    + COMMAND
+                    + "\n"
+                    + "printenv "
+                    + PegasusLite.PEGASUS_LITE_PARAMETER_ENV_PREFIX
+                    + "1 || echo unexported\n";
+
+    private static final String OUTPUT =
+            "[{\"lfn\":\"f.a\",\"url\":\"file://$PWD/f.a\"}]\n"
+                    + "$HOME\n"
+                    + "  indented\n"
+                    + "from task\n"
+                    + "from task $HOME\n"
+                    + "unexported\n"
+                    + "epilogue from task\n";
+
+    private Path mDir;
+
+    private PegasusLite mPegasusLite;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("pegasus-lite");
+        mPegasusLite = new PegasusLite();
+        mPegasusLite.mLogger = LogManagerFactory.loadSingletonInstance();
+        mPegasusLite.mSubmitDir = mDir.toString();
+        mPegasusLite.mSharedWrappers = new HashSet<String>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(mDir)) {
+            paths.sorted(java.util.Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testSharedWrapperReuse() throws Exception {
+        String skeleton = mPegasusLite.parameterizeTask(TASK, COMMAND, new LinkedList<String>());
+        File wrapper = mPegasusLite.getSharedWrapper(PROLOGUE, skeleton, EPILOGUE);
+        assertEquals(wrapper, mPegasusLite.getSharedWrapper(PROLOGUE, skeleton, EPILOGUE));
+        assertTrue(wrapper.canExecute());
+
+        // the wrapper is named by the first 8 bytes of the SHA-256 digest of its contents
+        byte[] contents = Files.readAllBytes(wrapper.toPath());
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(contents);
+        StringBuilder name = new StringBuilder(PegasusLite.SHARED_WRAPPER_PREFIX);
+        for (int i = 0; i < 8; i++) {
+            name.append(String.format("%02x", digest[i]));
+        }
+        assertEquals(name.append(".sh").toString(), wrapper.getName());
+        assertEquals(PROLOGUE + skeleton + EPILOGUE, new String(contents, StandardCharsets.UTF_8));
+
+        // a wrapper written out by an earlier planner run is not rewritten
+        Files.write(wrapper.toPath(), "modified".getBytes(StandardCharsets.UTF_8));
+        mPegasusLite.mSharedWrappers.clear();
+        assertEquals(wrapper, mPegasusLite.getSharedWrapper(PROLOGUE, skeleton, EPILOGUE));
+        assertEquals("modified", new String(Files.readAllBytes(wrapper.toPath())));
+
+        // a different setup results in a different wrapper
+        File other = mPegasusLite.getSharedWrapper(PROLOGUE + "x=1\n", skeleton, EPILOGUE);
+        assertNotEquals(wrapper, other);
+        assertEquals(2, mDir.toFile().list().length);
+    }
+
+    @Test
+    public void testParameterizeTask() {
+        List<String> parameters = new LinkedList<String>();
+        String skeleton = mPegasusLite.parameterizeTask(TASK, COMMAND, parameters);
+        assertEquals(
+                Arrays.asList(
+                        "[{ \"lfn\": \"f.a\",\"url\": \"file://$PWD/f.a\" }]",
+                        "$HOME\n  indented",
+                        COMMAND),
+                parameters);
+
+        // the skeleton has none of the parameters, so that it is the same for
+        // jobs that differ only in their files and arguments
+        for (String parameter : parameters) {
+            assertFalse(skeleton.contains(parameter));
+        }
+        String other = TASK.replace("f.a", "f.b").replace("$HOME", "$USER");
+        List<String> otherParameters = new LinkedList<String>();
+        assertEquals(
+                skeleton,
+                mPegasusLite.parameterizeTask(
+                        other, COMMAND.replace("$HOME", "$USER"), otherParameters));
+        assertEquals(3, otherParameters.size());
+        assertNotEquals(parameters, otherParameters);
+
+        // here documents with an unquoted delimiter are left as they are
+        assertTrue(skeleton.contains("cat << EOF\n$task_var\nEOF\n"));
+
+        // nothing to parameterize
+        parameters.clear();
+        String plain = "echo plain\n";
+        assertEquals(plain, mPegasusLite.parameterizeTask(plain, COMMAND, parameters));
+        assertTrue(parameters.isEmpty());
+    }
+
+    @Test
+    public void testInlineParameters() {
+        Job job = new Job();
+        assertTrue(mPegasusLite.inlineParameters(job, Arrays.asList("a b", "$HOME\n")));
+        assertEquals(
+                "a b",
+                decode(job.envVariables.get(PegasusLite.PEGASUS_LITE_PARAMETER_ENV_PREFIX + 1)));
+        assertEquals(
+                "$HOME\n",
+                decode(job.envVariables.get(PegasusLite.PEGASUS_LITE_PARAMETER_ENV_PREFIX + 2)));
+
+        StringBuilder large = new StringBuilder();
+        while (large.length() < PegasusLite.MAX_INLINED_PARAMETERS_LENGTH) {
+            large.append(TASK);
+        }
+        job = new Job();
+        assertFalse(mPegasusLite.inlineParameters(job, Arrays.asList("a", large.toString())));
+        assertNull(job.envVariables.get(PegasusLite.PEGASUS_LITE_PARAMETER_ENV_PREFIX + 1));
+    }
+
+    @Test
+    public void testTaskFromEnvironment() throws Exception {
+        assumeNotNull(FindExecutable.findExec("bash"), FindExecutable.findExec("base64"));
+        List<String> parameters = new LinkedList<String>();
+        String skeleton = mPegasusLite.parameterizeTask(TASK, COMMAND, parameters);
+        File wrapper = mPegasusLite.getSharedWrapper(PROLOGUE, skeleton, EPILOGUE);
+        Job job = new Job();
+        assertTrue(mPegasusLite.inlineParameters(job, parameters));
+
+        ProcessBuilder builder = new ProcessBuilder(wrapper.getAbsolutePath());
+        for (int i = 1; i <= parameters.size(); i++) {
+            String key = PegasusLite.PEGASUS_LITE_PARAMETER_ENV_PREFIX + i;
+            builder.environment().put(key, (String) job.envVariables.get(key));
+        }
+        assertEquals(OUTPUT, this.run(builder));
+    }
+
+    @Test
+    public void testTaskFromFile() throws Exception {
+        assumeNotNull(FindExecutable.findExec("bash"));
+        File wrapper =
+                mPegasusLite.getSharedWrapper(PROLOGUE, PegasusLite.TASK_FILE_SNIPPET, EPILOGUE);
+        File task = new File(mDir.toFile(), "job" + PegasusLite.TASK_FILE_SUFFIX);
+        Files.write(task.toPath(), TASK.getBytes(StandardCharsets.UTF_8));
+
+        ProcessBuilder builder = new ProcessBuilder(wrapper.getAbsolutePath(), task.getName());
+        assertEquals(OUTPUT, this.run(builder));
+    }
+
+    private String decode(Object value) {
+        return new String(Base64.getDecoder().decode((String) value), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs a wrapper in the test directory, and returns what it writes to stdout.
+     *
+     * @param builder the builder for the wrapper
+     * @return the output
+     */
+    private String run(ProcessBuilder builder) throws Exception {
+        Files.createDirectories(mDir.resolve("work"));
+        builder.directory(mDir.toFile());
+        builder.redirectErrorStream(true);
+        Process p = builder.start();
+        String output = new String(readAll(p), StandardCharsets.UTF_8);
+        assertEquals(output, 0, p.waitFor());
+        return output;
+    }
+
+    private byte[] readAll(Process p) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = p.getInputStream().read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.common;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PhaseProfile;
+import edu.isi.pegasus.planner.classes.PlannerMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests the profiling of the planner phases. */
+public class PlannerProfilerTest {
+
+    private LogManager mLogger;
+
+    @Before
+    public void setUp() {
+        mLogger = LogManagerFactory.loadSingletonInstance();
+        mLogger.logEventStart("test.planner.profiler", "setup", "0");
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        PlannerMetrics metrics = new PlannerMetrics();
+        PlannerProfiler profiler = new PlannerProfiler(bag(metrics, null));
+        assertFalse(profiler.isEnabled());
+        profiler.start("parse");
+        assertNull(profiler.stop());
+        assertNull(metrics.getPhaseProfiles());
+    }
+
+    @Test
+    public void testPhasesRecorded() {
+        PlannerMetrics metrics = new PlannerMetrics();
+        PlannerProfiler profiler = new PlannerProfiler(bag(metrics, "true"));
+        assertTrue(profiler.isEnabled());
+
+        profiler.start("parse");
+        List<String> garbage = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            garbage.add("lfn." + i);
+        }
+        // starting a phase stops the previous one
+        profiler.start("clustering");
+        PhaseProfile clustering = profiler.stop();
+        assertNull(profiler.stop());
+
+        List<PhaseProfile> profiles = metrics.getPhaseProfiles();
+        assertEquals(2, profiles.size());
+        assertEquals("parse", profiles.get(0).getName());
+        assertSame(clustering, profiles.get(1));
+        PhaseProfile parse = profiles.get(0);
+        assertTrue(parse.getWallTime() >= 0);
+        assertTrue(parse.getPeakHeap() > 0);
+        if (parse.getAllocatedBytes() != -1) {
+            assertTrue(parse.getAllocatedBytes() > garbage.size());
+        }
+        assertTrue(metrics.toString().contains("parse"));
+    }
+
+    private PegasusBag bag(PlannerMetrics metrics, String phases) {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        if (phases != null) {
+            props.setProperty(PegasusProperties.PEGASUS_METRICS_PHASES_PROPERTY, phases);
+        }
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        bag.add(PegasusBag.PLANNER_METRICS, metrics);
+        return bag;
+    }
+}
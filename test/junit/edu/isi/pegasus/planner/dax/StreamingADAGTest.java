@@ -0,0 +1,230 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.dax;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.dax.Invoke.WHEN;
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.dax.Callback;
+import edu.isi.pegasus.planner.parser.dax.DAXParser;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/** Tests that the streaming workflow builder writes the same workflow as the ADAG. */
+public class StreamingADAGTest {
+
+    private static final int JOBS = 20;
+
+    @Test
+    public void testXMLMatchesADAG() throws IOException {
+        ADAG adag = new ADAG("stream");
+        StringWriter writer = new StringWriter();
+        StreamingADAG streaming = new StreamingADAG("stream", writer, ADAG.FORMAT.xml);
+        this.populate(adag, streaming);
+
+        StringWriter expected = new StringWriter();
+        adag.writeTo(expected, ADAG.FORMAT.xml);
+        assertEquals(this.stripDate(expected.toString()), this.stripDate(writer.toString()));
+    }
+
+    @Test
+    public void testYAMLMatchesADAG() throws IOException {
+        ADAG adag = new ADAG("stream");
+        StringWriter writer = new StringWriter();
+        StreamingADAG streaming = new StreamingADAG("stream", writer);
+        this.populate(adag, streaming);
+
+        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+        JsonNode expected = mapper.readTree(adag.toYAML());
+        JsonNode actual = mapper.readTree(writer.toString());
+        assertEquals(this.edges(expected), this.edges(actual));
+        assertEquals((JOBS - 1) + (JOBS - 2), this.edges(actual).size());
+        for (JsonNode node : new JsonNode[] {expected, actual}) {
+            ((ObjectNode) node).remove(ADAG.PEGASUS_VENDOR_EXTENSION_KEY);
+            ((ObjectNode) node).remove("jobDependencies");
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testForwardReferences() throws IOException {
+        StringWriter writer = new StringWriter();
+        StreamingADAG streaming = new StreamingADAG("stream", writer);
+        streaming.addDependency("a", "b");
+        streaming.addJob(new Job("a", "pegasus", "preprocess", "1.0"));
+        streaming.addJob(new Job("b", "pegasus", "preprocess", "1.0"));
+        streaming.close();
+
+        JsonNode workflow = new ObjectMapper(new YAMLFactory()).readTree(writer.toString());
+        assertEquals(new TreeSet<String>(Arrays.asList("a->b")), this.edges(workflow));
+    }
+
+    @Test
+    public void testRepeatedDependencies() throws IOException {
+        java.io.File file = java.io.File.createTempFile("stream", ".yml");
+        try {
+            StreamingADAG streaming =
+                    new StreamingADAG("stream", new FileWriter(file), ADAG.FORMAT.yaml);
+            for (String id : new String[] {"a", "b", "c"}) {
+                streaming.addJob(new Job(id, "pegasus", "preprocess", "1.0"));
+            }
+            streaming.addDependency("a", "b");
+            streaming.addDependency("a", "b");
+            streaming.addDependency("a", "c");
+            streaming.addDependency("a", "b");
+            streaming.close();
+
+            // only the repeat added right after the dependency is dropped
+            JsonNode workflow = new ObjectMapper(new YAMLFactory()).readTree(file);
+            List<String> children = new ArrayList<String>();
+            for (JsonNode child : workflow.get("jobDependencies").get(0).get("children")) {
+                children.add(child.asText());
+            }
+            assertEquals(Arrays.asList("b", "c", "b"), children);
+
+            // the planner merges the others
+            ADag dag = this.parse(file);
+            assertEquals(1, this.node(dag, "b").getParents().size());
+            assertEquals(2, this.node(dag, "a").getChildren().size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMissingReference() throws IOException {
+        StreamingADAG streaming = new StreamingADAG("stream", new StringWriter());
+        streaming.addJob(new Job("a", "pegasus", "preprocess", "1.0"));
+        streaming.addDependency("a", "b");
+        streaming.close();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFileAfterJob() {
+        StreamingADAG streaming = new StreamingADAG("stream", new StringWriter());
+        streaming.addJob(new Job("a", "pegasus", "preprocess", "1.0"));
+        streaming.addFile(new File("f.a"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDuplicateJob() {
+        StreamingADAG streaming = new StreamingADAG("stream", new StringWriter());
+        streaming.addJob(new Job("a", "pegasus", "preprocess", "1.0"));
+        streaming.addJob(new Job("a", "pegasus", "preprocess", "1.0"));
+    }
+
+    /**
+     * Adds the same workflow to both, a chain where each job also depends on the first job. The
+     * dependencies are added grouped by child, before the child.
+     */
+    private void populate(ADAG adag, StreamingADAG streaming) throws IOException {
+        adag.addNotification(WHEN.start, "cmd");
+        streaming.addNotification(WHEN.start, "cmd");
+        adag.addMetaData("key", "value");
+        streaming.addMetaData("key", "value");
+        File fa = new File("f.0");
+        fa.addPhysicalFile("file:///scratch/f.0", "local");
+        adag.addFile(fa);
+        streaming.addFile(fa);
+        Executable e = new Executable("pegasus", "process", "1.0");
+        e.setArchitecture(Executable.ARCH.X86).setOS(Executable.OS.LINUX);
+        e.addPhysicalFile(new PFN("/path", "local"));
+        adag.addExecutable(e);
+        streaming.addExecutable(e);
+
+        for (int i = 0; i < JOBS; i++) {
+            Job job = new Job("ID" + i, "pegasus", "process", "1.0");
+            File in = new File("f." + i);
+            File out = new File("f." + (i + 1));
+            job.addArgument("-i ").addArgument(in).addArgument(" -o ").addArgument(out);
+            job.uses(in, File.LINK.INPUT);
+            job.uses(out, File.LINK.OUTPUT);
+            job.addProfile(Profile.NAMESPACE.dagman, "retry", "3");
+            if (i > 1) {
+                streaming.addDependency("ID0", "ID" + i, "first");
+                streaming.addDependency("ID" + (i - 1), "ID" + i);
+            }
+            streaming.addJob(job);
+            adag.addJob(job);
+            if (i > 1) {
+                adag.addDependency("ID0", "ID" + i, "first");
+                adag.addDependency("ID" + (i - 1), "ID" + i);
+            }
+        }
+        streaming.addDependency("ID0", "ID1");
+        adag.addDependency("ID0", "ID1");
+        streaming.close();
+    }
+
+    /** Parses a workflow with the parser the planner uses. */
+    private ADag parse(java.io.File file) {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        LogManager logger = LogManagerFactory.loadSingletonInstance(props);
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, logger);
+        DAXParser p =
+                DAXParserFactory.loadDAXParser(
+                        bag, DAXParserFactory.DEFAULT_CALLBACK_CLASS, file.getAbsolutePath());
+        Callback cb = p.getDAXCallback();
+        p.parse(file.getAbsolutePath());
+        return (ADag) cb.getConstructedObject();
+    }
+
+    private GraphNode node(ADag dag, String id) {
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            if (id.equals(
+                    ((edu.isi.pegasus.planner.classes.Job) node.getContent()).getLogicalID())) {
+                return node;
+            }
+        }
+        throw new RuntimeException("No job with id " + id);
+    }
+
+    private Set<String> edges(JsonNode workflow) {
+        Set<String> edges = new TreeSet<String>();
+        for (JsonNode dependency : workflow.get("jobDependencies")) {
+            for (JsonNode child : dependency.get("children")) {
+                assertTrue(edges.add(dependency.get("id").asText() + "->" + child.asText()));
+            }
+        }
+        return edges;
+    }
+
+    private String stripDate(String xml) {
+        return xml.replaceAll("<!-- generated on: [^>]*-->", "");
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.estimate;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests the Aspen estimator against stand-in estimate clients, that record their invocations. */
+public class AspenTest {
+
+    private File mDirectory;
+
+    private LogManager mLogger;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("aspen").toFile();
+        mLogger = LogManagerFactory.loadSingletonInstance();
+        mLogger.logEventStart("test.estimate.aspen", "setup", "0");
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        for (File f : mDirectory.listFiles()) {
+            f.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testBatchMode() throws IOException {
+        writeClient(true);
+        Aspen aspen = load();
+        List<Job> jobs = jobs("1", "2", "1", "3", "2");
+        aspen.estimate(jobs);
+        assertEquals(1, invocations().size());
+        assertEquals("--batch", invocations().get(0));
+
+        for (Job job : jobs) {
+            String size = (String) job.getMetadata().get("size");
+            Map<String, String> estimates = aspen.getAllEstimates(job);
+            assertEquals(Integer.parseInt(size) * 10 + "", estimates.get("runtime"));
+            assertEquals(size, aspen.getMemory(job));
+        }
+        // everything is answered from the cache
+        assertEquals(1, invocations().size());
+    }
+
+    @Test
+    public void testFallback() throws IOException {
+        writeClient(false);
+        Aspen aspen = load();
+        List<Job> jobs = jobs("1", "2", "1", "3", "2");
+        aspen.estimate(jobs);
+        for (Job job : jobs) {
+            String size = (String) job.getMetadata().get("size");
+            assertEquals(Integer.parseInt(size) * 10 + "", aspen.getRuntime(job));
+        }
+        // the failed batch invocation, and one invocation per distinct metadata
+        List<String> invocations = invocations();
+        assertEquals(4, invocations.size());
+        assertEquals("--batch", invocations.get(0));
+        assertEquals("app=keg size=1", invocations.get(1));
+
+        // batch mode is not retried
+        aspen.estimate(jobs("4"));
+        assertEquals(4, invocations().size());
+    }
+
+    private Aspen load() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty(Aspen.ASPEN_BIN_PROPERTY_KEY, mDirectory.getAbsolutePath());
+        props.setProperty(Aspen.ASPEN_MODELS_PROPERTY_KEY, mDirectory.getAbsolutePath());
+        PegasusBag bag = new PegasusBag();
+        bag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        bag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        Aspen aspen = new Aspen();
+        aspen.initialize(new ADag(), bag);
+        return aspen;
+    }
+
+    private List<Job> jobs(String... sizes) {
+        List<Job> jobs = new ArrayList<Job>();
+        for (String size : sizes) {
+            Job job = new Job();
+            job.addMetadata("size", size);
+            job.addMetadata("app", "keg");
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    private List<String> invocations() throws IOException {
+        File f = new File(mDirectory, "invocations");
+        return f.exists() ? Files.readAllLines(f.toPath()) : new ArrayList<String>();
+    }
+
+    /**
+     * Writes a stand-in estimate client, that estimates the runtime as ten times the size.
+     *
+     * @param batch whether the client supports batch mode
+     */
+    private void writeClient(boolean batch) throws IOException {
+        File client = new File(mDirectory, Aspen.PEGASUS_ASPEN_CLIENT_NAME);
+        try (PrintWriter pw = new PrintWriter(new FileWriter(client))) {
+            pw.println("#!/bin/sh");
+            pw.println("echo \"$*\" >> \"$(dirname \"$0\")/invocations\"");
+            pw.println("estimate() {");
+            pw.println("  for arg in \"$@\"; do");
+            pw.println("    case $arg in size=*) n=${arg#size=};; esac");
+            pw.println("  done");
+            pw.println("  echo runtime=$((n * 10))");
+            pw.println("  echo memory=$n");
+            pw.println("}");
+            pw.println("if [ \"$1\" = \"--batch\" ]; then");
+            if (batch) {
+                pw.println("  while read line; do");
+                pw.println("    estimate $line");
+                pw.println("    echo");
+                pw.println("  done");
+                pw.println("  exit 0");
+            } else {
+                pw.println("  echo \"unknown option $1\" 1>&2");
+                pw.println("  exit 1");
+            }
+            pw.println("fi");
+            pw.println("estimate \"$@\"");
+        }
+        client.setExecutable(true);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.classes.Job;
+import org.junit.Test;
+
+/** Tests the copy on write sharing of profiles between cloned namespace objects. */
+public class NamespaceCloneTest {
+
+    @Test
+    public void testCopyOnWrite() {
+        Condor original = new Condor();
+        original.construct("universe", "vanilla");
+        original.construct("request_memory", "1024");
+
+        Condor clone = (Condor) original.clone();
+        assertSame(original.mProfileMap, clone.mProfileMap);
+        assertEquals("vanilla", clone.get("universe"));
+
+        // modifying the clone does not modify the original, and vice versa
+        clone.construct("universe", "local");
+        assertEquals("vanilla", original.get("universe"));
+        assertEquals("local", clone.get("universe"));
+        original.removeKey("request_memory");
+        assertNull(original.get("request_memory"));
+        assertEquals("1024", clone.get("request_memory"));
+
+        Condor another = (Condor) clone.clone();
+        another.reset();
+        assertTrue(another.isEmpty());
+        assertEquals(2, clone.size());
+    }
+
+    @Test
+    public void testInterning() {
+        Pegasus a = new Pegasus();
+        a.construct("style", "condor");
+        a.construct("runtime", "10");
+        Pegasus b = new Pegasus();
+        b.construct("runtime", "10");
+        b.construct("style", "condor");
+
+        // identical profiles are shared across independently constructed objects
+        Pegasus ca = (Pegasus) a.clone();
+        Pegasus cb = (Pegasus) b.clone();
+        assertSame(ca.mProfileMap, cb.mProfileMap);
+        assertSame(a.mProfileMap, b.mProfileMap);
+
+        // different namespaces with the same profiles are not shared
+        Selector s = new Selector();
+        s.construct("style", "condor");
+        s.construct("runtime", "10");
+        assertNotSame(ca.mProfileMap, ((Selector) s.clone()).mProfileMap);
+    }
+
+    @Test
+    public void testOrderIsPreserved() {
+        ENV a = new ENV();
+        a.construct("PATH", "/bin");
+        a.construct("HOME", "/home");
+        ENV b = new ENV();
+        b.construct("HOME", "/home");
+        b.construct("PATH", "/bin");
+
+        ENV ca = (ENV) a.clone();
+        ENV cb = (ENV) b.clone();
+        assertEquals("[PATH, HOME]", ca.keySet().toString());
+        assertEquals("[HOME, PATH]", cb.keySet().toString());
+
+        // an empty namespace clones to an empty modifiable namespace
+        ENV empty = (ENV) new ENV(new java.util.HashMap()).clone();
+        assertNull(empty.removeKey("PATH"));
+    }
+
+    @Test
+    public void testJobClone() {
+        Job job = new Job();
+        job.condorVariables.construct("universe", "vanilla");
+        job.dagmanVariables.construct("retry", "3");
+        job.vdsNS.construct("style", "condor");
+        job.envVariables.construct("PATH", "/bin");
+
+        Job clone = (Job) job.clone();
+        clone.vdsNS.construct("style", "glite");
+        clone.dagmanVariables.construct("retry", "1");
+        assertEquals("condor", job.vdsNS.get("style"));
+        assertEquals("3", job.dagmanVariables.get("RETRY"));
+        assertEquals("1", clone.dagmanVariables.get("RETRY"));
+        assertEquals("/bin", clone.envVariables.get("PATH"));
+    }
+}
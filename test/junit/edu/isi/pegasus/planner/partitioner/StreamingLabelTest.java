@@ -0,0 +1,203 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.LabelBag;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the streaming label partitioner constructs the same partitions and relations as the
+ * label partitioner.
+ */
+public class StreamingLabelTest {
+
+    private LogManager mLogger;
+
+    private PegasusProperties mProps;
+
+    @Before
+    public void setUp() {
+        mProps = PegasusProperties.nonSingletonInstance();
+        mLogger = LogManagerFactory.loadSingletonInstance(mProps);
+        mLogger.logEventStart("test.partitioner.streaming", "setup", "0");
+        LabelBag.setLabelKey("label");
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testOpenParentPartition() {
+        // the partition for b is complete, while the one for its
+        // parent a1 still grows for three more levels
+        String[][] edges = {
+            {"a1", "a2"},
+            {"a2", "a3"},
+            {"a3", "a4"},
+            {"a4", "a5"},
+            {"a1", "b"},
+            {"b", "c"},
+            {"c", "d"},
+            {"d", "e"},
+            {"a4", "e"}
+        };
+        Map<String, String> labels = new HashMap<String, String>();
+        for (String id : new String[] {"a1", "a2", "a3", "a4", "a5"}) {
+            labels.put(id, "chain");
+        }
+        labels.put("c", "x");
+        labels.put("d", "x");
+
+        RecordingCallback expected = partition(false, edges, labels);
+        RecordingCallback actual = partition(true, edges, labels);
+        assertEquals(expected.mPartitions, actual.mPartitions);
+        assertEquals(expected.mRelations, actual.mRelations);
+        assertEquals(expected.mLabelled, actual.mLabelled);
+        assertEquals("[ID2<-ID1, ID3<-ID2, ID4<-ID1, ID4<-ID3]", actual.mRelations.toString());
+        // b's partition was passed before the chain, and its relation after the chain
+        assertTrue(actual.mOrder.indexOf("ID2") < actual.mOrder.indexOf("ID1"));
+        assertTrue(actual.mOrder.indexOf("ID2<-ID1") > actual.mOrder.indexOf("ID1"));
+        assertTrue(actual.mDone);
+    }
+
+    @Test
+    public void testPipelines() {
+        // pipelines of 30 levels, labelled in segments of 3 levels, with
+        // each job also depending on the previous level of the next pipeline
+        int width = 20;
+        int depth = 30;
+        List<String[]> edges = new ArrayList<String[]>();
+        Map<String, String> labels = new HashMap<String, String>();
+        for (int i = 0; i < width; i++) {
+            for (int l = 0; l < depth; l++) {
+                String id = "p" + i + "_" + l;
+                if (i % 4 != 0) {
+                    labels.put(id, "p" + i + "_s" + (l / 3));
+                }
+                if (l > 0) {
+                    edges.add(new String[] {"p" + i + "_" + (l - 1), id});
+                    edges.add(new String[] {"p" + ((i + 1) % width) + "_" + (l - 1), id});
+                }
+            }
+        }
+        String[][] e = edges.toArray(new String[0][]);
+        RecordingCallback expected = partition(false, e, labels);
+        RecordingCallback actual = partition(true, e, labels);
+        assertEquals(expected.mPartitions, actual.mPartitions);
+        assertEquals(expected.mRelations, actual.mRelations);
+        assertEquals(expected.mLabelled, actual.mLabelled);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidLabelledGraph() {
+        // x appears again after a gap of a level
+        String[][] edges = {{"a", "b"}, {"b", "c"}};
+        Map<String, String> labels = new HashMap<String, String>();
+        labels.put("a", "x");
+        labels.put("c", "x");
+        partition(true, edges, labels);
+    }
+
+    private RecordingCallback partition(
+            boolean streaming, String[][] edges, Map<String, String> labels) {
+        Map<String, GraphNode> graph = new LinkedHashMap<String, GraphNode>();
+        for (String[] edge : edges) {
+            GraphNode parent = node(graph, edge[0], labels);
+            GraphNode child = node(graph, edge[1], labels);
+            parent.addChild(child);
+            child.addParent(parent);
+        }
+        GraphNode root = new GraphNode("dummy", "dummy");
+        root.setBag(new LabelBag());
+        for (GraphNode node : graph.values()) {
+            if (node.getParents().isEmpty()) {
+                root.addChild(node);
+            }
+        }
+        RecordingCallback c = new RecordingCallback();
+        Partitioner p =
+                streaming
+                        ? new StreamingLabel(root, graph, mProps)
+                        : new Label(root, graph, mProps);
+        p.determinePartitions(c);
+        return c;
+    }
+
+    private GraphNode node(Map<String, GraphNode> graph, String id, Map<String, String> labels) {
+        GraphNode node = graph.get(id);
+        if (node == null) {
+            node = new GraphNode(id, id);
+            LabelBag bag = new LabelBag();
+            bag.add(LabelBag.LABEL_KEY, labels.get(id));
+            node.setBag(bag);
+            graph.put(id, node);
+        }
+        return node;
+    }
+
+    /** A callback that records the partitions and relations passed to it. */
+    private static class RecordingCallback implements Callback {
+
+        private Map<String, Set<String>> mPartitions = new TreeMap<String, Set<String>>();
+
+        private Set<String> mLabelled = new TreeSet<String>();
+
+        private Set<String> mRelations = new TreeSet<String>();
+
+        private List<String> mOrder = new ArrayList<String>();
+
+        private boolean mDone;
+
+        public void cbPartition(Partition partition) {
+            mPartitions.put(partition.getID(), new TreeSet<String>(partition.getNodeIDs()));
+            if (partition.hasAssociatedLabel()) {
+                mLabelled.add(partition.getID());
+            }
+            mOrder.add(partition.getID());
+        }
+
+        public void cbParents(String child, List parents) {
+            for (Object parent : parents) {
+                assertTrue(mPartitions.containsKey(child));
+                assertTrue(mPartitions.containsKey(parent));
+                mRelations.add(child + "<-" + parent);
+                mOrder.add(child + "<-" + parent);
+            }
+        }
+
+        public void cbDone() {
+            mDone = true;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.refiner.ReduceEdges;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/** Tests the CompactGraph against the MapGraph implementation. */
+public class CompactGraphTest {
+
+    @Test
+    public void testBasicOperations() {
+        Graph g = new CompactGraph();
+        for (String id : new String[] {"A", "B", "C", "D"}) {
+            g.addNode(new GraphNode(id, id));
+        }
+        g.addEdge("A", "B");
+        g.addEdge("A", "C");
+        g.addEdge("B", "D");
+        g.addEdge("C", "D");
+
+        assertEquals(4, g.size());
+        assertEquals("[A]", ids(g.getRoots()).toString());
+        assertEquals("[D]", ids(g.getLeaves()).toString());
+        GraphNode a = g.getNode("A");
+        assertTrue(a.getChildren().contains(g.getNode("B")));
+        assertTrue(a.getChildren().contains(new GraphNode("C", "C")));
+        assertFalse(a.getChildren().contains(g.getNode("D")));
+
+        // removing a node connects its parents to its children
+        assertTrue(g.remove("B"));
+        assertFalse(g.remove("B"));
+        assertNull(g.getNode("B"));
+        assertEquals(3, g.size());
+        assertEquals("[A->C, A->D, C->D]", edges(g).toString());
+
+        // modifying the edges while iterating over them
+        for (GraphNode child : a.getChildren()) {
+            a.removeChild(child);
+            child.removeParent(a);
+        }
+        assertEquals("[C->D]", edges(g).toString());
+        assertEquals("[A, C]", ids(g.getRoots()).toString());
+
+        g.addRoot(new GraphNode("R", "R"));
+        assertEquals("[C->D, R->A, R->C]", edges(g).toString());
+        assertFalse(g.hasCycles());
+
+        g.resetEdges();
+        assertTrue(edges(g).isEmpty());
+        assertEquals(3 + 1, g.getRoots().size());
+    }
+
+    @Test
+    public void testRandomAgainstMapGraph() {
+        Random r = new Random(3);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            int size = 1 + r.nextInt(3000);
+            Graph expected = new MapGraph(true);
+            Graph actual = new CompactGraph();
+            for (int i = 0; i < size; i++) {
+                expected.addNode(new GraphNode("n" + i, "n" + i));
+                actual.addNode(new GraphNode("n" + i, "n" + i));
+            }
+            // edges are only added from lower to higher ids to keep it a DAG
+            for (int i = 0; i < size * 3; i++) {
+                int p = r.nextInt(size);
+                int c = r.nextInt(size);
+                if (p < c) {
+                    expected.addEdge("n" + p, "n" + c);
+                    actual.addEdge("n" + p, "n" + c);
+                }
+            }
+            assertEquivalent(expected, actual);
+
+            // random removal of edges and nodes
+            for (int i = 0; i < size; i++) {
+                String id = "n" + r.nextInt(size);
+                GraphNode e = expected.getNode(id);
+                GraphNode a = actual.getNode(id);
+                if (e == null) {
+                    assertNull(a);
+                    continue;
+                }
+                switch (r.nextInt(3)) {
+                    case 0:
+                        assertTrue(expected.remove(id));
+                        assertTrue(actual.remove(id));
+                        break;
+
+                    case 1:
+                        if (!e.getChildren().isEmpty()) {
+                            GraphNode child = e.getChildren().iterator().next();
+                            e.removeChild(child);
+                            child.removeParent(e);
+                            a.removeChild(child);
+                            actual.getNode(child.getID()).removeParent(a);
+                        }
+                        break;
+
+                    default:
+                        int c = Integer.parseInt(id.substring(1)) + 1 + r.nextInt(10);
+                        if (expected.getNode("n" + c) != null) {
+                            expected.addEdge(id, "n" + c);
+                            actual.addEdge(id, "n" + c);
+                        }
+                }
+            }
+            assertEquivalent(expected, actual);
+            ((CompactGraph) actual).compact();
+            assertEquivalent(expected, actual);
+
+            // a valid topological order
+            Set<String> seen = new HashSet<String>();
+            for (Iterator<GraphNode> it = actual.topologicalSortIterator(); it.hasNext(); ) {
+                GraphNode node = it.next();
+                for (GraphNode parent : node.getParents()) {
+                    assertTrue(seen.contains(parent.getID()));
+                }
+                seen.add(node.getID());
+            }
+            assertEquals(actual.size(), seen.size());
+        }
+    }
+
+    @Test
+    public void testReduceEdges() {
+        Random r = new Random(5);
+        Graph expected = new MapGraph();
+        Graph actual = new CompactGraph();
+        int size = 500;
+        for (int i = 0; i < size; i++) {
+            expected.addNode(new GraphNode("n" + i, "n" + i));
+            actual.addNode(new GraphNode("n" + i, "n" + i));
+        }
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < Math.min(size, i + 20); j++) {
+                if (r.nextDouble() < 0.2) {
+                    expected.addEdge("n" + i, "n" + j);
+                    actual.addEdge("n" + i, "n" + j);
+                }
+            }
+        }
+        new ReduceEdges(ReduceEdges.ALGORITHM.bitset).reduce(expected);
+        new ReduceEdges(ReduceEdges.ALGORITHM.bitset).reduce(actual);
+        assertEquals(edges(expected), edges(actual));
+    }
+
+    private void assertEquivalent(Graph expected, Graph actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(edges(expected), edges(actual));
+        assertEquals(reverseEdges(expected), reverseEdges(actual));
+        assertEquals(ids(expected.getRoots()), ids(actual.getRoots()));
+        assertEquals(ids(expected.getLeaves()), ids(actual.getLeaves()));
+    }
+
+    private Set<String> ids(List<GraphNode> nodes) {
+        Set<String> result = new TreeSet<String>();
+        for (GraphNode node : nodes) {
+            result.add(node.getID());
+        }
+        return result;
+    }
+
+    private Set<String> edges(Graph g) {
+        Set<String> result = new TreeSet<String>();
+        for (Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            for (GraphNode child : node.getChildren()) {
+                result.add(node.getID() + "->" + child.getID());
+            }
+        }
+        return result;
+    }
+
+    private Set<String> reverseEdges(Graph g) {
+        Set<String> result = new TreeSet<String>();
+        List<GraphNode> nodes = new ArrayList<GraphNode>();
+        for (Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ) {
+            nodes.add(it.next());
+        }
+        for (GraphNode node : nodes) {
+            for (GraphNode parent : node.getParents()) {
+                result.add(parent.getID() + "->" + node.getID());
+            }
+        }
+        return result;
+    }
+}
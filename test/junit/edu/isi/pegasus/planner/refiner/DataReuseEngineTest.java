@@ -36,6 +36,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -308,6 +309,52 @@ public class DataReuseEngineTest {
         mProps.removeProperty("pegasus.data.reuse.scope");
     }
 
+    /**
+     * Test for reducing the workflow with multiple threads. The jobs deleted should be the same,
+     * and in the same order, as when the workflow is reduced with a single thread.
+     */
+    @Test
+    public void testParallelReduction() {
+        mLogger.logEventStart("test.refiner.datareuse", "set", Integer.toString(mTestNumber++));
+        Set<String> filesInRC = new HashSet();
+        filesInRC.add("f.c1");
+        filesInRC.add("f.c2");
+        filesInRC.add("f.d");
+
+        List<String> expected = this.reduce("blackdiamond.dax", filesInRC);
+        mProps.setProperty("pegasus.data.reuse.threads", "4");
+        List<String> actual = this.reduce("blackdiamond.dax", filesInRC);
+        mProps.removeProperty("pegasus.data.reuse.threads");
+
+        assertEquals(
+                "[analyze_ID0000004, findrange_ID0000002, findrange_ID0000003]",
+                new TreeSet(expected).toString());
+        assertEquals("Deleted Jobs don't match ", expected, actual);
+        mLogger.logEventCompletion();
+        System.out.println("\n");
+    }
+
+    /**
+     * Reduces a workflow and returns the ids of the deleted jobs, in the order they were deleted.
+     *
+     * @param basename the dax file basename in the input directory
+     * @param filesInRC the files in the replica catalog
+     * @return the ids of the deleted jobs
+     */
+    private List<String> reduce(String basename, Set<String> filesInRC) {
+        ADag dax = ((DataReuseEngineTestSetup) mTestSetup).loadDAX(mBag, basename);
+        MyReplicaCatalogBridge rcb = new MyReplicaCatalogBridge(dax, mBag);
+        rcb.addFilesInReplica(filesInRC);
+
+        DataReuseEngine engine = new DataReuseEngine(dax, mBag);
+        engine.reduceWorkflow(dax, rcb);
+        List<String> result = new LinkedList();
+        for (Job job : engine.getDeletedJobs()) {
+            result.add(job.getID());
+        }
+        return result;
+    }
+
     @After
     public void tearDown() {
         mLogger = null;
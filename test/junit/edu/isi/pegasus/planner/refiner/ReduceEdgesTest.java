@@ -0,0 +1,186 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/** Test class to test the algorithms for reducing the edges in the workflow. */
+public class ReduceEdgesTest {
+
+    @Test
+    public void testDiamondWithShortcuts() {
+        String[][] edges = {
+            {"a", "b"}, {"a", "c"}, {"b", "d"}, {"c", "d"},
+            {"b", "e"}, {"d", "e"}, {"a", "e"}, {"c", "e"}
+        };
+        Graph g = this.createGraph(new String[] {"a", "b", "c", "d", "e"}, edges);
+        new ReduceEdges(ReduceEdges.ALGORITHM.bitset).reduce(g);
+        assertEquals("[a->b, a->c, b->d, c->d, d->e]", this.edges(g).toString());
+    }
+
+    @Test
+    public void testAgainstLCA() {
+        String[] nodes = {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k"};
+        String[][] edges = {
+            {"a", "b"}, {"a", "g"}, {"b", "c"}, {"b", "d"}, {"b", "f"}, {"c", "f"}, {"d", "e"},
+            {"e", "f"}, {"g", "d"}, {"g", "h"}, {"h", "i"}, {"i", "j"}, {"j", "k"}, {"k", "f"}
+        };
+        Graph expected = this.createGraph(nodes, edges);
+        new ReduceEdges(ReduceEdges.ALGORITHM.dfs).reduce(expected);
+        Graph actual = this.createGraph(nodes, edges);
+        new ReduceEdges("bitset").reduce(actual);
+        assertEquals(this.edges(expected), this.edges(actual));
+        assertFalse(this.edges(actual).contains("b->f"));
+    }
+
+    @Test
+    public void testRandomAgainstTransitiveClosure() {
+        Random r = new Random(7);
+        for (int iteration = 0; iteration < 50; iteration++) {
+            int size = 2 + r.nextInt(150);
+            double density = r.nextDouble() * 0.2;
+            String[] nodes = new String[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = "n" + i;
+            }
+            Graph g = new MapGraph();
+            for (String node : nodes) {
+                g.addNode(new GraphNode(node, node));
+            }
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    if (r.nextDouble() < density) {
+                        g.addEdge(nodes[i], nodes[j]);
+                    }
+                }
+            }
+            Set<String> closure = this.closure(g, nodes);
+            new ReduceEdges(ReduceEdges.ALGORITHM.bitset).reduce(g);
+
+            // no redundant edges remain
+            for (String edge : this.edges(g)) {
+                String[] pc = edge.split("->");
+                GraphNode parent = g.getNode(pc[0]);
+                for (GraphNode child : parent.getChildren()) {
+                    if (!child.getID().equals(pc[1])) {
+                        assertFalse(
+                                "Redundant edge " + edge,
+                                this.reachable(g, child, g.getNode(pc[1])));
+                    }
+                }
+            }
+            // reachability is preserved
+            assertEquals(closure, this.closure(g, nodes));
+        }
+    }
+
+    @Test
+    public void testRandomAgainstLCA() {
+        // the lca based algorithm does not always remove all the redundant
+        // edges. it should however never remove an edge that the bitset
+        // based algorithm retains.
+        Random r = new Random(11);
+        for (int iteration = 0; iteration < 100; iteration++) {
+            int size = 2 + r.nextInt(14);
+            String[] nodes = new String[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = "n" + i;
+            }
+            List<String[]> edges = new ArrayList<String[]>();
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    if (r.nextDouble() < 0.3) {
+                        edges.add(new String[] {nodes[i], nodes[j]});
+                    }
+                }
+            }
+            Graph expected = this.createGraph(nodes, edges.toArray(new String[0][]));
+            Set<String> closure = this.closure(expected, nodes);
+            new ReduceEdges(ReduceEdges.ALGORITHM.dfs).reduce(expected);
+            Graph actual = this.createGraph(nodes, edges.toArray(new String[0][]));
+            new ReduceEdges(ReduceEdges.ALGORITHM.bitset).reduce(actual);
+
+            assertTrue(this.edges(expected).containsAll(this.edges(actual)));
+            assertEquals(closure, this.closure(expected, nodes));
+            assertEquals(closure, this.closure(actual, nodes));
+        }
+    }
+
+    private Graph createGraph(String[] nodes, String[][] edges) {
+        Graph g = new MapGraph();
+        for (String node : nodes) {
+            g.addNode(new GraphNode(node, node));
+        }
+        for (String[] edge : edges) {
+            g.addEdge(edge[0], edge[1]);
+        }
+        return g;
+    }
+
+    private Set<String> edges(Graph g) {
+        Set<String> result = new TreeSet<String>();
+        for (Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            for (GraphNode child : node.getChildren()) {
+                result.add(node.getID() + "->" + child.getID());
+            }
+        }
+        return result;
+    }
+
+    private Set<String> closure(Graph g, String[] nodes) {
+        Set<String> result = new TreeSet<String>();
+        for (String from : nodes) {
+            for (String to : nodes) {
+                if (!from.equals(to) && this.reachable(g, g.getNode(from), g.getNode(to))) {
+                    result.add(from + "->" + to);
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean reachable(Graph g, GraphNode from, GraphNode to) {
+        Set<GraphNode> visited = new HashSet<GraphNode>();
+        LinkedList<GraphNode> queue = new LinkedList<GraphNode>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            GraphNode node = queue.removeFirst();
+            if (node.equals(to)) {
+                return true;
+            }
+            for (GraphNode child : node.getChildren()) {
+                if (visited.add(child)) {
+                    queue.add(child);
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.client.CPlanner;
+import edu.isi.pegasus.planner.code.CodeGenerator;
+import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.dax.ADAG;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+/** Test class for the Transfer Engine, that refines workflows with the stage-in transfers. */
+public class TransferEngineTest {
+
+    /** The number of compute jobs in the workflow. */
+    private static final int JOBS = 60;
+
+    /** The workflow handed to the code generator by the last planner run. */
+    private static ADag mRefined;
+
+    /**
+     * A code generator that records the refined workflow handed to it, instead of writing out the
+     * code for it.
+     */
+    public static class RecordingGenerator implements CodeGenerator {
+
+        public RecordingGenerator() {}
+
+        public void initialize(PegasusBag bag) throws CodeGeneratorException {}
+
+        public Collection<File> generateCode(ADag dag) throws CodeGeneratorException {
+            mRefined = dag;
+            return new LinkedList<File>();
+        }
+
+        public void generateCode(ADag dag, Job job) throws CodeGeneratorException {}
+
+        public boolean startMonitoring() {
+            return false;
+        }
+
+        public void reset() throws CodeGeneratorException {}
+    }
+
+    @Test
+    public void testResolverThreadsMatchSequential() throws Exception {
+        Path dir = Files.createTempDirectory("pegasus-transfer");
+        try {
+            File workflow = this.writeCatalogsAndWorkflow(dir.toFile());
+            Map<String, String> sequential = this.refine(dir.toFile(), workflow, 1);
+            Map<String, String> concurrent = this.refine(dir.toFile(), workflow, 4);
+
+            assertTrue(sequential.containsKey("stage_in_local_condorpool_0_0"));
+            assertEquals(sequential.keySet(), concurrent.keySet());
+            for (Map.Entry<String, String> entry : sequential.entrySet()) {
+                assertEquals(entry.getKey(), entry.getValue(), concurrent.get(entry.getKey()));
+            }
+        } finally {
+            this.delete(dir);
+        }
+    }
+
+    /**
+     * Writes out the catalogs and the workflow. Each job reads an input file shared with other
+     * jobs, an input file of its own, and the output of an earlier job. Some of the input files
+     * have replicas on both the local and the execution site.
+     *
+     * @param dir the directory to write to
+     * @return the workflow
+     */
+    private File writeCatalogsAndWorkflow(File dir) throws IOException {
+        String path = dir.getAbsolutePath();
+        this.write(
+                new File(dir, "sites.yml"),
+                "pegasus: \"5.0\"\n"
+                        + "sites:\n"
+                        + "  - name: local\n"
+                        + "    directories:\n"
+                        + "      - type: sharedScratch\n"
+                        + "        path: "
+                        + path
+                        + "/scratch\n"
+                        + "        fileServers:\n"
+                        + "          - operation: all\n"
+                        + "            url: file://"
+                        + path
+                        + "/scratch\n"
+                        + "      - type: localStorage\n"
+                        + "        path: "
+                        + path
+                        + "/output\n"
+                        + "        fileServers:\n"
+                        + "          - operation: all\n"
+                        + "            url: file://"
+                        + path
+                        + "/output\n"
+                        + "    profiles:\n"
+                        + "      env:\n"
+                        + "        PEGASUS_HOME: /usr\n"
+                        + "  - name: condorpool\n"
+                        + "    directories:\n"
+                        + "      - type: sharedScratch\n"
+                        + "        path: /scratch\n"
+                        + "        fileServers:\n"
+                        + "          - operation: all\n"
+                        + "            url: gsiftp://condor.example.org/scratch\n"
+                        + "    profiles:\n"
+                        + "      pegasus:\n"
+                        + "        style: condor\n"
+                        + "      env:\n"
+                        + "        PEGASUS_HOME: /usr\n");
+        this.write(
+                new File(dir, "tc.yml"),
+                "pegasus: \"5.0\"\n"
+                        + "transformations:\n"
+                        + "  - name: work\n"
+                        + "    sites:\n"
+                        + "      - name: condorpool\n"
+                        + "        pfn: /usr/bin/work\n"
+                        + "        type: installed\n");
+
+        StringBuilder rc = new StringBuilder("pegasus: \"5.0\"\nreplicas:\n");
+        ADAG adag = new ADAG("transfer");
+        for (int i = 0; i < JOBS; i++) {
+            edu.isi.pegasus.planner.dax.Job job =
+                    new edu.isi.pegasus.planner.dax.Job("ID" + i, "work");
+            String shared = "shared." + (i % 7);
+            String own = "own." + i;
+            for (String lfn : new String[] {shared, own}) {
+                job.uses(
+                        new edu.isi.pegasus.planner.dax.File(lfn),
+                        edu.isi.pegasus.planner.dax.File.LINK.INPUT);
+            }
+            job.uses(
+                    new edu.isi.pegasus.planner.dax.File("out." + i),
+                    edu.isi.pegasus.planner.dax.File.LINK.OUTPUT);
+            if (i >= 10) {
+                job.uses(
+                        new edu.isi.pegasus.planner.dax.File("out." + (i - 10)),
+                        edu.isi.pegasus.planner.dax.File.LINK.INPUT);
+            }
+            adag.addJob(job);
+            if (i >= 10) {
+                adag.addDependency("ID" + (i - 10), "ID" + i);
+            }
+
+            rc.append(this.replica(own, "local", "file://" + path + "/input/" + own));
+            if (i % 3 == 0) {
+                rc.append(
+                        this.replica(own, "condorpool", "gsiftp://condor.example.org/data/" + own));
+            }
+            if (i < 7) {
+                rc.append(this.replica(shared, "local", "file://" + path + "/input/" + shared));
+            }
+        }
+        this.write(new File(dir, "rc.yml"), rc.toString());
+
+        File workflow = new File(dir, "workflow.yml");
+        adag.writeToFile(workflow.getAbsolutePath(), ADAG.FORMAT.yaml);
+        return workflow;
+    }
+
+    /**
+     * Plans the workflow, with the stage-in transfers resolved by a number of threads, and returns
+     * a description of each job in the refined workflow.
+     *
+     * @param dir the directory with the catalogs
+     * @param workflow the workflow
+     * @param threads the number of stage-in resolver threads
+     * @return map indexed by the job id, with the fields, the file transfers and the parents of the
+     *     job
+     */
+    private Map<String, String> refine(File dir, File workflow, int threads) throws Exception {
+        File submit = new File(dir, "submit-" + threads);
+        PegasusProperties properties = PegasusProperties.nonSingletonInstance();
+        properties.setProperty("pegasus.catalog.site.file", new File(dir, "sites.yml").getPath());
+        properties.setProperty("pegasus.catalog.replica", "YAML");
+        properties.setProperty("pegasus.catalog.replica.file", new File(dir, "rc.yml").getPath());
+        properties.setProperty("pegasus.catalog.transformation", "YAML");
+        properties.setProperty(
+                "pegasus.catalog.transformation.file", new File(dir, "tc.yml").getPath());
+        properties.setProperty("pegasus.data.configuration", "sharedfs");
+        properties.setProperty("pegasus.code.generator", RecordingGenerator.class.getName());
+        // the compute jobs of clustered registration jobs are listed in no particular order
+        properties.setProperty("pegasus.register", "false");
+        properties.setProperty(
+                "pegasus.transfer.stagein.resolver.threads", Integer.toString(threads));
+
+        LogManager logger = LogManagerFactory.loadNonSingletonInstance(properties);
+        logger.logEventStart("test.pegasus.refiner", "threads", Integer.toString(threads));
+        CPlanner planner = new CPlanner(logger);
+        planner.initialize(properties);
+        PlannerOptions options =
+                planner.parseCommandLineArguments(
+                        new String[] {
+                            "--dir",
+                            submit.getAbsolutePath(),
+                            "--relative-dir",
+                            "run",
+                            "--sites",
+                            "condorpool",
+                            "--output-sites",
+                            "local",
+                            "--cleanup",
+                            "none",
+                            "--force",
+                            workflow.getAbsolutePath()
+                        });
+        mRefined = null;
+        planner.executeCommand(options);
+        logger.logEventCompletion();
+        assertNotNull(mRefined);
+
+        Map<String, String> jobs = new TreeMap<String, String>();
+        for (Iterator<GraphNode> it = mRefined.jobIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            Job job = (Job) node.getContent();
+            StringBuilder sb = new StringBuilder();
+            sb.append(job.toString()).append("\ntransfers:");
+            for (Set<PegasusFile> files : new Set[] {job.getInputFiles(), job.getOutputFiles()}) {
+                Set<String> transfers = new TreeSet<String>();
+                for (PegasusFile pf : files) {
+                    if (pf instanceof FileTransfer) {
+                        transfers.add(pf.toString());
+                    }
+                }
+                sb.append("\n").append(transfers);
+            }
+            Set<String> parents = new TreeSet<String>();
+            for (GraphNode parent : node.getParents()) {
+                parents.add(parent.getID());
+            }
+            sb.append("\nparents: ").append(parents);
+            jobs.put(
+                    job.getID(),
+                    sb.toString()
+                            .replace(submit.getAbsolutePath(), "SUBMIT")
+                            .replaceAll("pegasus\\.[0-9]+\\.properties", "pegasus.properties"));
+        }
+        return jobs;
+    }
+
+    private String replica(String lfn, String site, String pfn) {
+        return "  - lfn: "
+                + lfn
+                + "\n    pfns:\n      - site: "
+                + site
+                + "\n        pfn: "
+                + pfn
+                + "\n";
+    }
+
+    private void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(java.util.Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner.cleanup;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests the cleanup jobs added by the InPlace cleanup strategy. */
+public class InPlaceTest {
+
+    private LogManager mLogger;
+
+    private PegasusBag mBag;
+
+    @Before
+    public void setUp() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        mLogger = LogManagerFactory.loadSingletonInstance(props);
+        mLogger.logEventStart("test.refiner.cleanup.inplace", "setup", "0");
+        mBag = new PegasusBag();
+        mBag.add(PegasusBag.PEGASUS_PROPERTIES, props);
+        mBag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testChainWithSharedFile() {
+        // a -> b -> c, with all of them reading the file ref
+        Graph g = new MapGraph();
+        this.addJob(g, "a", new String[] {"ref", "a.in"}, "a.out");
+        this.addJob(g, "b", new String[] {"ref", "a.out"}, "b.out");
+        this.addJob(g, "c", new String[] {"ref", "b.out"}, "c.out");
+        g.addEdge("a", "b");
+        g.addEdge("b", "c");
+
+        this.cleanup(g);
+        Map<String, GraphNode> cleanedBy = this.verify(g);
+        // the shared file is removed after the last job reading it
+        GraphNode cleanup = cleanedBy.get("ref");
+        assertEquals(1, cleanup.getParents().size());
+        assertEquals("c", cleanup.getParents().iterator().next().getID());
+    }
+
+    @Test
+    public void testRandomWorkflows() {
+        Random r = new Random(5);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            int size = 2 + r.nextInt(100);
+            Graph g = new MapGraph();
+            List<List<String>> inputs = new ArrayList<List<String>>();
+            for (int i = 0; i < size; i++) {
+                inputs.add(new ArrayList<String>());
+                inputs.get(i).add("ref" + r.nextInt(3));
+                inputs.get(i).add("in" + i);
+            }
+            List<String[]> edges = new ArrayList<String[]>();
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    if (r.nextDouble() < 0.05) {
+                        edges.add(new String[] {"n" + i, "n" + j});
+                        inputs.get(j).add("out" + i);
+                    }
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                this.addJob(g, "n" + i, inputs.get(i).toArray(new String[0]), "out" + i);
+            }
+            for (String[] edge : edges) {
+                g.addEdge(edge[0], edge[1]);
+            }
+
+            this.cleanup(g);
+            this.verify(g);
+        }
+    }
+
+    /**
+     * Adds a compute job to the graph.
+     *
+     * @param g the graph
+     * @param id the id of the job
+     * @param inputs the lfns of the input files
+     * @param output the lfn of the output file, that is not transferred
+     */
+    private void addJob(Graph g, String id, String[] inputs, String output) {
+        Job job = new Job();
+        job.setName(id);
+        job.setTXName("process");
+        job.setJobType(Job.COMPUTE_JOB);
+        job.setSiteHandle("compute");
+        job.setStagingSiteHandle("staging");
+        for (String lfn : inputs) {
+            job.addInputFile(new PegasusFile(lfn));
+        }
+        PegasusFile out = new PegasusFile(output);
+        out.setTransferFlag(PegasusFile.TRANSFER_NOT);
+        job.addOutputFile(out);
+        g.addNode(new GraphNode(id, job));
+    }
+
+    /**
+     * Adds the cleanup jobs to the graph.
+     *
+     * @param g the graph
+     */
+    private void cleanup(Graph g) {
+        InPlace strategy = new InPlace();
+        strategy.initialize(mBag, new RecordingCleanup());
+        strategy.addCleanupJobs(g);
+    }
+
+    /**
+     * Verifies that every file is cleaned up exactly once, by a cleanup job that runs after all the
+     * jobs using the file.
+     *
+     * @param g the graph with the cleanup jobs
+     * @return the cleanup nodes indexed by the lfns they clean up
+     */
+    private Map<String, GraphNode> verify(Graph g) {
+        Map<String, GraphNode> cleanedBy = new HashMap<String, GraphNode>();
+        Map<String, List<GraphNode>> usedBy = new HashMap<String, List<GraphNode>>();
+        for (Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            Job job = (Job) node.getContent();
+            if (job.getJobType() == Job.CLEANUP_JOB) {
+                for (Object o : job.getInputFiles()) {
+                    String lfn = ((PegasusFile) o).getLFN();
+                    assertNull("File cleaned up twice " + lfn, cleanedBy.put(lfn, node));
+                }
+                continue;
+            }
+            Set<PegasusFile> files = new HashSet<PegasusFile>(job.getInputFiles());
+            files.addAll(job.getOutputFiles());
+            for (PegasusFile pf : files) {
+                List<GraphNode> users = usedBy.get(pf.getLFN());
+                if (users == null) {
+                    users = new LinkedList<GraphNode>();
+                    usedBy.put(pf.getLFN(), users);
+                }
+                users.add(node);
+            }
+        }
+        assertEquals(usedBy.keySet(), cleanedBy.keySet());
+        for (Map.Entry<String, List<GraphNode>> entry : usedBy.entrySet()) {
+            GraphNode cleanup = cleanedBy.get(entry.getKey());
+            for (GraphNode user : entry.getValue()) {
+                assertTrue(
+                        entry.getKey() + " cleaned up before " + user.getID(),
+                        this.reachable(user, cleanup));
+            }
+        }
+        return cleanedBy;
+    }
+
+    private boolean reachable(GraphNode from, GraphNode to) {
+        Set<GraphNode> visited = new HashSet<GraphNode>();
+        LinkedList<GraphNode> queue = new LinkedList<GraphNode>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            GraphNode node = queue.removeFirst();
+            if (node.equals(to)) {
+                return true;
+            }
+            for (GraphNode child : node.getChildren()) {
+                if (visited.add(child)) {
+                    queue.add(child);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** A cleanup implementation that creates cleanup jobs listing the files to be deleted. */
+    private static class RecordingCleanup implements CleanupImplementation {
+
+        public void initialize(PegasusBag bag) {}
+
+        public Job createCleanupJob(String id, List files, Job job) {
+            Job cleanup = new Job();
+            cleanup.setName(id);
+            cleanup.setTXName("cleanup");
+            cleanup.setJobType(Job.CLEANUP_JOB);
+            cleanup.setSiteHandle(job.getStagingSiteHandle());
+            for (Object file : files) {
+                cleanup.addInputFile((PegasusFile) file);
+            }
+            return cleanup;
+        }
+    }
+}
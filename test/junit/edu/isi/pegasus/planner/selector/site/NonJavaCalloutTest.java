@@ -0,0 +1,159 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.site;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.Directory;
+import edu.isi.pegasus.planner.catalog.site.classes.FileServer;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the batch mode of the NonJavaCallout site selector, against a stand-in site selector that
+ * maps a job on the basis of its id.
+ */
+public class NonJavaCalloutTest {
+
+    /** The candidate sites, in the order passed to the site selector. */
+    private static final List<String> SITES = Arrays.asList("siteA", "siteB", "siteC");
+
+    private PegasusBag mBag;
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    private String mSelector;
+
+    @Before
+    public void setUp() {
+        DefaultTestSetup setup = new DefaultTestSetup();
+        setup.setInputDirectory(this.getClass());
+        mSelector = new File(setup.getInputDirectory(), "hash-selector.py").getAbsolutePath();
+
+        mProps = PegasusProperties.nonSingletonInstance();
+        mProps.setProperty("pegasus.selector.site.env.PATH", System.getenv("PATH"));
+        mProps.setProperty("pegasus.selector.site.timeout", "30");
+        mLogger = LogManagerFactory.loadSingletonInstance(mProps);
+        mLogger.logEventStart("test.selector.site.nonjava", "setup", "0");
+
+        mBag = new PegasusBag();
+        mBag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        mBag.add(PegasusBag.PEGASUS_PROPERTIES, mProps);
+        SiteStore store = new SiteStore();
+        for (String site : SITES) {
+            SiteCatalogEntry entry = new SiteCatalogEntry(site);
+            Directory d = new Directory();
+            d.setType(Directory.TYPE.shared_scratch);
+            d.addFileServer(new FileServer("gsiftp", "gsiftp://" + site, "/scratch"));
+            entry.addDirectory(d);
+            store.addEntry(entry);
+        }
+        mBag.add(PegasusBag.SITE_STORE, store);
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testBatches() {
+        this.testBatch("7", 30);
+    }
+
+    @Test
+    public void testWholeWorkflow() {
+        this.testBatch("0", 30);
+    }
+
+    @Test
+    public void testSelectorExitsEarly() {
+        mProps.setProperty("pegasus.selector.site.path", "/bin/true");
+        mProps.setProperty("pegasus.selector.site.batch", "true");
+        ADag dag = this.createWorkflow(5);
+        NonJavaCallout selector = new NonJavaCallout();
+        selector.initialize(mBag);
+        selector.mapWorkflow(dag, SITES);
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ) {
+            Job job = (Job) it.next().getContent();
+            assertNull(job.getSiteHandle());
+        }
+    }
+
+    private void testBatch(String size, int jobs) {
+        mProps.setProperty("pegasus.selector.site.path", mSelector);
+        mProps.setProperty("pegasus.selector.site.batch", "true");
+        mProps.setProperty("pegasus.selector.site.batch.size", size);
+        ADag dag = this.createWorkflow(jobs);
+        NonJavaCallout selector = new NonJavaCallout();
+        selector.initialize(mBag);
+        selector.mapWorkflow(dag, SITES);
+
+        for (Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ) {
+            Job job = (Job) it.next().getContent();
+            int sum = 0;
+            for (char c : job.getLogicalID().toCharArray()) {
+                sum += c;
+            }
+            assertEquals(job.getID(), SITES.get(sum % SITES.size()), job.getSiteHandle());
+        }
+    }
+
+    /**
+     * Creates a workflow of a chain of jobs, each reading the output of the previous job.
+     *
+     * @param jobs the number of jobs
+     * @return the workflow
+     */
+    private ADag createWorkflow(int jobs) {
+        ADag dag = new ADag();
+        dag.setLabel("batch");
+        for (int i = 0; i < jobs; i++) {
+            Job job = new Job();
+            job.setTXName("process");
+            job.setJobType(Job.COMPUTE_JOB);
+            job.setName("process_ID" + i);
+            job.setLogicalID("ID" + i);
+            if (i > 0) {
+                job.addInputFile(new PegasusFile("f." + (i - 1)));
+            }
+            job.addOutputFile(new PegasusFile("f." + i));
+            dag.add(job);
+            if (i > 0) {
+                dag.addNewRelation("process_ID" + (i - 1), "process_ID" + i);
+            }
+        }
+        return dag;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2007-2020 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.site.heft;
+
+import static org.junit.Assert.*;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test class for the HEFT scheduling algorithm. */
+public class AlgorithmTest {
+
+    private PegasusBag mBag;
+
+    private LogManager mLogger;
+
+    /** The number of lookups against the mapper. */
+    private int mSiteListLookups;
+
+    private int mTCLookups;
+
+    @Before
+    public void setUp() {
+        mBag = new PegasusBag();
+        mLogger = LogManagerFactory.loadSingletonInstance();
+        mLogger.logEventStart("test.selector.site.heft", "setup", "0");
+        mBag.add(PegasusBag.PEGASUS_LOGMANAGER, mLogger);
+        mBag.add(PegasusBag.PEGASUS_PROPERTIES, PegasusProperties.nonSingletonInstance());
+
+        // sites without a grid gateway have the default number of free nodes
+        SiteStore store = new SiteStore();
+        store.addEntry(new SiteCatalogEntry("fast"));
+        store.addEntry(new SiteCatalogEntry("slow"));
+        mBag.add(PegasusBag.SITE_STORE, store);
+
+        mSiteListLookups = 0;
+        mTCLookups = 0;
+        mBag.add(
+                PegasusBag.TRANSFORMATION_MAPPER,
+                new Mapper(mBag) {
+                    public Map getSiteMap(
+                            String namespace, String name, String version, List siteids) {
+                        return null;
+                    }
+
+                    public String getMode() {
+                        return "test";
+                    }
+
+                    public List getSiteList(
+                            String namespace, String name, String version, List siteids) {
+                        mSiteListLookups++;
+                        return new ArrayList(siteids);
+                    }
+
+                    public List getTCList(
+                            String namespace, String name, String version, String siteid) {
+                        mTCLookups++;
+                        TransformationCatalogEntry entry =
+                                new TransformationCatalogEntry(namespace, name, version);
+                        entry.setResourceId(siteid);
+                        entry.addProfile(
+                                new Profile(
+                                        Profile.VDS,
+                                        Algorithm.RUNTIME_PROFILE_KEY,
+                                        siteid.equals("fast") ? "10" : "20"));
+                        return Collections.singletonList(entry);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testSiteProcessorHeap() {
+        Site site = new Site("local", 2);
+        assertEquals(0, site.getAvailableTime(0));
+        site.scheduleJob(0, 10);
+        // the second processor is as yet unused
+        assertEquals(0, site.getAvailableTime(0));
+        site.scheduleJob(0, 5);
+        assertEquals(5, site.getAvailableTime(3));
+        site.scheduleJob(5, 8);
+        assertEquals(8, site.getAvailableTime(6));
+        site.scheduleJob(8, 9);
+        assertEquals(12, site.getAvailableTime(12));
+        site.scheduleJob(12, 20);
+        assertEquals(10, site.getAvailableTime(0));
+    }
+
+    @Test
+    public void testChain() {
+        ADag dag = workflow(3, 0);
+        Algorithm heft = new Algorithm(mBag);
+        heft.schedule(dag, Arrays.asList("fast"));
+
+        // the roots are charged the communication cost from the dummy root
+        assertEquals("fast", site(dag, "ID0"));
+        assertEquals(2L, start(dag, "ID0"));
+        assertEquals(12L, finish(dag, "ID0"));
+        assertEquals(22L, finish(dag, "ID1"));
+        assertEquals(32L, finish(dag, "ID2"));
+        assertEquals(32L, heft.getMakespan());
+        assertNull(dag.getNode("dummy"));
+    }
+
+    @Test
+    public void testForkJoin() {
+        ADag dag = workflow(2, 40);
+        Algorithm heft = new Algorithm(mBag);
+        heft.schedule(dag, Arrays.asList("fast", "slow"));
+
+        long makespan = -1;
+        for (Iterator<GraphNode> it = dag.nodeIterator(); it.hasNext(); ) {
+            GraphNode node = it.next();
+            String site = site(dag, node.getID());
+            assertTrue(site.equals("fast") || site.equals("slow"));
+            assertEquals(
+                    site.equals("fast") ? 10 : 20,
+                    finish(dag, node.getID()) - start(dag, node.getID()));
+            for (GraphNode parent : node.getParents()) {
+                assertTrue(finish(dag, parent.getID()) <= start(dag, node.getID()));
+            }
+            makespan = Math.max(makespan, finish(dag, node.getID()));
+        }
+        assertEquals(makespan, heft.getMakespan());
+
+        // at most 10 processors are used on each site at a time
+        for (String site : new String[] {"fast", "slow"}) {
+            for (long t = 0; t < makespan; t++) {
+                int running = 0;
+                for (Iterator<GraphNode> it = dag.nodeIterator(); it.hasNext(); ) {
+                    GraphNode node = it.next();
+                    String id = node.getID();
+                    if (site(dag, id).equals(site) && start(dag, id) <= t && t < finish(dag, id)) {
+                        running++;
+                    }
+                }
+                assertTrue(running <= Algorithm.DEFAULT_NUMBER_OF_FREE_NODES);
+            }
+        }
+        assertTrue(site(dag, "ID1").equals("fast"));
+
+        // the mapper lookups are memoized per transformation and site
+        assertEquals(1, mSiteListLookups);
+        assertEquals(2, mTCLookups);
+    }
+
+    /**
+     * Creates a workflow with a chain of jobs, with a fan out of jobs between the first and the
+     * second job in the chain.
+     *
+     * @param chain the length of the chain
+     * @param fanout the number of jobs in the fan out
+     * @return the workflow
+     */
+    private ADag workflow(int chain, int fanout) {
+        ADag dag = new ADag();
+        for (int i = 0; i < chain + fanout; i++) {
+            Job job = new Job();
+            job.setName("ID" + i);
+            job.setTransformation("pegasus", "work", "1.0");
+            job.setJobType(Job.COMPUTE_JOB);
+            dag.add(job);
+        }
+        for (int i = 1; i < chain; i++) {
+            if (i == 1 && fanout > 0) {
+                for (int j = chain; j < chain + fanout; j++) {
+                    dag.addEdge("ID0", "ID" + j);
+                    dag.addEdge("ID" + j, "ID1");
+                }
+            } else {
+                dag.addEdge("ID" + (i - 1), "ID" + i);
+            }
+        }
+        return dag;
+    }
+
+    private String site(ADag dag, String id) {
+        return (String) dag.getNode(id).getBag().get(HeftBag.SCHEDULED_SITE);
+    }
+
+    private long start(ADag dag, String id) {
+        return (Long) dag.getNode(id).getBag().get(HeftBag.ACTUAL_START_TIME);
+    }
+
+    private long finish(ADag dag, String id) {
+        return (Long) dag.getNode(id).getBag().get(HeftBag.ACTUAL_FINISH_TIME);
+    }
+}
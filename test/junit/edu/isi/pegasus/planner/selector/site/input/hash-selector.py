@@ -0,0 +1,69 @@
+#!/usr/bin/env python3
+"""
+A stand-in external site selector for the NonJavaCallout site selector.
+
+Picks a site for a job on the basis of the sum of the characters in the job
+id, so that a job is mapped to the same site whether the selector is invoked
+once per job with a temporary file, or once per workflow in the batch mode.
+"""
+
+import sys
+
+
+def select(sites, job_id):
+    if not sites:
+        return "NONE"
+    return sites[sum(ord(c) for c in job_id) % len(sites)]
+
+
+def add_site(sites, value):
+    site = value.split()[0]
+    if site not in sites:
+        sites.append(site)
+
+
+def per_job(path):
+    sites = []
+    job_id = ""
+    with open(path) as f:
+        for line in f:
+            key, _, value = line.rstrip("\n").partition("=")
+            if key == "resource.id":
+                add_site(sites, value)
+            elif key == "job.id":
+                job_id = value
+    print("SOLUTION:%s" % select(sites, job_id))
+
+
+def batch():
+    sites = []
+    jobs = []
+    number = None
+    job_id = ""
+    for line in sys.stdin:
+        line = line.rstrip("\n")
+        if line == "flush":
+            for n, j in jobs:
+                sys.stdout.write("SOLUTION:%s:%s\n" % (n, select(sites, j)))
+            sys.stdout.flush()
+            jobs = []
+            continue
+        if line == "end":
+            if number is not None:
+                jobs.append((number, job_id))
+            number = None
+            continue
+        key, _, value = line.partition("=")
+        if key == "resource.id":
+            add_site(sites, value)
+        elif key == "job":
+            number = value
+        elif key == "job.id":
+            job_id = value
+
+
+if __name__ == "__main__":
+    if len(sys.argv) > 1 and sys.argv[1] == "--batch":
+        batch()
+    else:
+        per_job(sys.argv[1])
@@ -25,9 +25,21 @@ import org.junit.runners.Suite;
     edu.isi.pegasus.common.util.FileDetectorTest.class,
     edu.isi.pegasus.planner.namespace.PegasusTest.class,
     edu.isi.pegasus.planner.namespace.MetadataTest.class,
+    edu.isi.pegasus.planner.namespace.NamespaceCloneTest.class,
     edu.isi.pegasus.planner.catalog.replica.ReplicaFactoryTest.class,
     edu.isi.pegasus.planner.catalog.replica.classes.ReplicaStoreTest.class,
+    edu.isi.pegasus.planner.catalog.replica.classes.ReplicaLookupCacheTest.class,
+    edu.isi.pegasus.planner.client.SubWorkflowPlannerTest.class,
+    edu.isi.pegasus.planner.selector.site.heft.AlgorithmTest.class,
+    edu.isi.pegasus.planner.estimate.AspenTest.class,
+    edu.isi.pegasus.common.logging.logger.DefaultTest.class,
+    edu.isi.pegasus.planner.common.PlannerProfilerTest.class,
+    edu.isi.pegasus.planner.partitioner.StreamingLabelTest.class,
+    edu.isi.pegasus.planner.refiner.cleanup.InPlaceTest.class,
+    edu.isi.pegasus.planner.selector.site.NonJavaCalloutTest.class,
+    edu.isi.pegasus.planner.client.KickstartIngestTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.RegexRCTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.RegexIndexTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.YAMLRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.MetaRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.JDBCRCTest.class,
@@ -52,6 +64,7 @@ import org.junit.runners.Suite;
     edu.isi.pegasus.planner.classes.NotificationsTest.class,
     edu.isi.pegasus.planner.cluster.RuntimeClusteringTest.class,
     edu.isi.pegasus.planner.code.GridStartTest.class,
+    edu.isi.pegasus.planner.code.gridstart.PegasusLiteTest.class,
     edu.isi.pegasus.planner.code.generator.condor.CondorEnvironmentEscapeTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.GliteTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.CondorTest.class,
@@ -62,12 +75,19 @@ import org.junit.runners.Suite;
     edu.isi.pegasus.planner.mapper.output.FixedOutputMapperTest.class,
     edu.isi.pegasus.planner.refiner.DataReuseEngineTest.class,
     edu.isi.pegasus.planner.refiner.InterPoolEngineTest.class,
+    edu.isi.pegasus.planner.refiner.ReduceEdgesTest.class,
+    edu.isi.pegasus.planner.refiner.TransferEngineTest.class,
     edu.isi.pegasus.common.util.GLiteEscapeTest.class,
     edu.isi.pegasus.common.util.VariableExpanderTest.class,
     edu.isi.pegasus.planner.partitioner.graph.CycleCheckerTest.class,
+    edu.isi.pegasus.planner.partitioner.graph.CompactGraphTest.class,
     edu.isi.pegasus.planner.parser.DAXParserFactoryTest.class,
     edu.isi.pegasus.planner.parser.dax.DAXParser3Test.class,
     edu.isi.pegasus.planner.parser.dax.DAXParser5Test.class,
-    edu.isi.pegasus.planner.dax.ADAGTest.class
+    edu.isi.pegasus.planner.dax.ADAGTest.class,
+    edu.isi.pegasus.planner.dax.StreamingADAGTest.class,
+    org.griphyn.vdl.router.CacheTest.class,
+    org.griphyn.vdl.router.RouteTest.class,
+    org.griphyn.vdl.dbschema.InMemorySchemaTest.class
 })
 public class AllTests {}
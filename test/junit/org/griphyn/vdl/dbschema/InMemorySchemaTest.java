@@ -0,0 +1,81 @@
+/*
+ * This file or a portion of this file is licensed under the terms of
+ * the Globus Toolkit Public License, found in file ../GTPL, or at
+ * http://www.globus.org/toolkit/download/license.html. This notice must
+ * appear in redistributions of this file, with or without modification.
+ *
+ * Redistributions of this Software, with or without modification, must
+ * reproduce the GTPL in: (1) the Software, or (2) the Documentation or
+ * some other similar material which is provided with the Software (if
+ * any).
+ *
+ * Copyright 1999-2004 University of Chicago and The University of
+ * Southern California. All rights reserved.
+ */
+package org.griphyn.vdl.dbschema;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.griphyn.vdl.classes.Definitions;
+import org.griphyn.vdl.classes.Derivation;
+import org.griphyn.vdl.classes.LFN;
+import org.griphyn.vdl.classes.Pass;
+import org.griphyn.vdl.classes.Scalar;
+import org.junit.Test;
+
+/** Test class for the in-memory database schema. */
+public class InMemorySchemaTest {
+
+    private static final int DERIVATIONS = 12;
+
+    @Test
+    public void testSearchFilenamesMatchesSearchFilename() throws Exception {
+        InMemorySchema schema = new InMemorySchema(this.definitions());
+        List<String> lfns = new ArrayList<String>();
+        for (int i = 0; i <= DERIVATIONS; i++) {
+            lfns.add("f." + i);
+        }
+        lfns.add("shared");
+        lfns.add("common");
+        lfns.add("missing");
+
+        for (int link : new int[] {LFN.INPUT, LFN.OUTPUT, LFN.INOUT, -1}) {
+            Map found = schema.searchFilenames(lfns, link);
+            assertEquals(lfns.size(), found.size());
+            for (String lfn : lfns) {
+                assertEquals(
+                        lfn + " with link " + link,
+                        schema.searchFilename(lfn, link),
+                        found.get(lfn));
+            }
+        }
+        Map found = schema.searchFilenames(lfns, -1);
+        assertEquals(DERIVATIONS, ((List) found.get("common")).size());
+        assertTrue(((List) found.get("missing")).isEmpty());
+        assertTrue(schema.searchFilenames(new ArrayList<String>(), -1).isEmpty());
+    }
+
+    /**
+     * Creates a chain of derivations, each reading the output of the previous one from a list, and
+     * a common input file. Every third derivation also updates a shared file.
+     */
+    private Definitions definitions() {
+        Definitions definitions = new Definitions();
+        for (int i = 0; i < DERIVATIONS; i++) {
+            Derivation dv = new Derivation("d" + i, "process");
+            org.griphyn.vdl.classes.List inputs =
+                    new org.griphyn.vdl.classes.List(new Scalar(new LFN("f." + i, LFN.INPUT)));
+            inputs.addScalar(new Scalar(new LFN("common", LFN.INPUT)));
+            dv.addPass(new Pass("in", inputs));
+            dv.addPass(new Pass("out", new Scalar(new LFN("f." + (i + 1), LFN.OUTPUT))));
+            if (i % 3 == 0) {
+                dv.addPass(new Pass("state", new Scalar(new LFN("shared", LFN.INOUT))));
+            }
+            definitions.addDefinition(dv);
+        }
+        return definitions;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file or a portion of this file is licensed under the terms of
+ * the Globus Toolkit Public License, found in file ../GTPL, or at
+ * http://www.globus.org/toolkit/download/license.html. This notice must
+ * appear in redistributions of this file, with or without modification.
+ *
+ * Redistributions of this Software, with or without modification, must
+ * reproduce the GTPL in: (1) the Software, or (2) the Documentation or
+ * some other similar material which is provided with the Software (if
+ * any).
+ *
+ * Copyright 1999-2004 University of Chicago and The University of
+ * Southern California. All rights reserved.
+ */
+package org.griphyn.vdl.router;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+/** Test class for the size-bounded LFN and TR cache of the router. */
+public class CacheTest {
+
+    @Test
+    public void testCapacity() {
+        Cache cache = new Cache(600, 3);
+        assertEquals(3, cache.getCapacity());
+        for (String key : new String[] {"a", "b", "c", "d", "e"}) {
+            cache.set(key, key);
+        }
+        assertEquals(3, cache.size());
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("e", cache.get("e"));
+
+        long[] stats = cache.getStatistics();
+        assertEquals(5, stats[Cache.INSERT]);
+        assertEquals(2, stats[Cache.EVICTED]);
+        assertEquals(2, stats[Cache.MISS]);
+        assertEquals(1, stats[Cache.HIT]);
+
+        // updating an existing entry does not evict
+        cache.set("e", "f");
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getStatistics()[Cache.UPDATE]);
+        assertEquals(2, cache.getStatistics()[Cache.EVICTED]);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Cache cache = new Cache(600, 2);
+        cache.set("a", "a");
+        cache.set("b", "b");
+        assertEquals("a", cache.get("a"));
+        cache.set("c", "c");
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a"));
+
+        // peeking counts as a use, but not towards the statistics
+        assertEquals("c", cache.peek("c"));
+        cache.set("d", "d");
+        assertNull(cache.peek("a"));
+        assertEquals("c", cache.peek("c"));
+        long[] stats = cache.getStatistics();
+        assertEquals(2, stats[Cache.HIT]);
+        assertEquals(1, stats[Cache.MISS]);
+        assertEquals(2, stats[Cache.EVICTED]);
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        Cache cache = new Cache(1, 2);
+        cache.set("a", "a");
+        Thread.sleep(600);
+        // a request does not extend the lifetime of an entry
+        assertEquals("a", cache.get("a"));
+        Thread.sleep(600);
+        assertNull(cache.peek("a"));
+        assertEquals(1, cache.size());
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+
+        long[] stats = cache.getStatistics();
+        assertEquals(1, stats[Cache.HIT]);
+        assertEquals(1, stats[Cache.EXPIRED]);
+        assertEquals(0, stats[Cache.MISS]);
+    }
+
+    @Test
+    public void testNegativeEntries() {
+        Cache cache = new Cache(600);
+        cache.set("none", Collections.EMPTY_LIST);
+        cache.set("some", Arrays.asList("dv"));
+        assertEquals(Collections.EMPTY_LIST, cache.get("none"));
+        assertEquals(Arrays.asList("dv"), cache.get("some"));
+
+        long[] stats = cache.getStatistics();
+        assertEquals(2, stats[Cache.HIT]);
+        assertEquals(1, stats[Cache.NEGATIVE]);
+        assertTrue(cache.toString().contains("neg=1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalCapacity() {
+        new Cache(600, 0);
+    }
+}
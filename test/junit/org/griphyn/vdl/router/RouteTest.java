@@ -0,0 +1,96 @@
+/*
+ * This file or a portion of this file is licensed under the terms of
+ * the Globus Toolkit Public License, found in file ../GTPL, or at
+ * http://www.globus.org/toolkit/download/license.html. This notice must
+ * appear in redistributions of this file, with or without modification.
+ *
+ * Redistributions of this Software, with or without modification, must
+ * reproduce the GTPL in: (1) the Software, or (2) the Documentation or
+ * some other similar material which is provided with the Software (if
+ * any).
+ *
+ * Copyright 1999-2004 University of Chicago and The University of
+ * Southern California. All rights reserved.
+ */
+package org.griphyn.vdl.router;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.griphyn.vdl.classes.Definitions;
+import org.griphyn.vdl.classes.Derivation;
+import org.griphyn.vdl.classes.LFN;
+import org.griphyn.vdl.classes.Pass;
+import org.griphyn.vdl.classes.Scalar;
+import org.griphyn.vdl.dbschema.InMemorySchema;
+import org.junit.Test;
+
+/** Test class for the LFN caches of the stack of databases the router searches. */
+public class RouteTest {
+
+    /** An in-memory database that is cached like a remote one, and counts its searches. */
+    private static class CountingSchema extends InMemorySchema {
+
+        int mSearches;
+
+        CountingSchema(String lfn) throws Exception {
+            super(new Definitions());
+            Derivation dv = new Derivation("make." + lfn, "make");
+            dv.addPass(new Pass("out", new Scalar(new LFN(lfn, LFN.OUTPUT))));
+            this.m_memory.addDefinition(dv);
+        }
+
+        public boolean cachingMakesSense() {
+            return true;
+        }
+
+        public List searchFilename(String lfn, int link) throws SQLException {
+            mSearches++;
+            return super.searchFilename(lfn, link);
+        }
+
+        public Map searchFilenames(Collection lfns, int link) throws SQLException {
+            mSearches += lfns.size();
+            return super.searchFilenames(lfns, link);
+        }
+    }
+
+    @Test
+    public void testPrefetchAnswersFromCaches() throws Exception {
+        CountingSchema bottom = new CountingSchema("f.bottom");
+        CountingSchema top = new CountingSchema("f.top");
+        Route.DatabaseSchemaStack stack = new Route(bottom).new DatabaseSchemaStack(bottom);
+        stack.push(top);
+
+        List<String> lfns = Arrays.asList("f.top", "f.bottom", "f.unknown");
+        assertEquals(3, stack.prefetchOutputs(lfns));
+        assertEquals(3, top.mSearches);
+        assertEquals(2, bottom.mSearches);
+
+        assertEquals(1, stack.derivationsWithOutput("f.top").size());
+        assertEquals(1, stack.derivationsWithOutput("f.bottom").size());
+        assertTrue(stack.derivationsWithOutput("f.unknown").isEmpty());
+        assertEquals(0, stack.prefetchOutputs(lfns));
+        assertEquals(3, top.mSearches);
+        assertEquals(2, bottom.mSearches);
+    }
+
+    @Test
+    public void testNegativeEntriesAtEachLevel() throws Exception {
+        CountingSchema bottom = new CountingSchema("f.bottom");
+        CountingSchema top = new CountingSchema("f.top");
+        Route.DatabaseSchemaStack stack = new Route(bottom).new DatabaseSchemaStack(bottom);
+        stack.push(top);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(stack.derivationsWithOutput("f.unknown").isEmpty());
+            assertEquals(1, stack.derivationsWithOutput("f.bottom").size());
+            assertEquals(2, top.mSearches);
+            assertEquals(2, bottom.mSearches);
+        }
+    }
+}